@@ -0,0 +1,109 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.RandomDoubleVectorDatabaseConnection;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Reproducible synthetic data sets for the benchmarks.
+ *
+ * All data is generated from a fixed seed, so that results of different
+ * versions can be compared.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public final class BenchmarkData {
+  /**
+   * Default random seed.
+   */
+  public static final long SEED = 0L;
+
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private BenchmarkData() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Generate a database of uniform random vectors.
+   *
+   * @param dim Dimensionality
+   * @param size Number of vectors
+   * @param indexes Index factories to use
+   * @return Initialized database
+   */
+  public static Database randomDatabase(int dim, int size, IndexFactory<?, ?>... indexes) {
+    RandomDoubleVectorDatabaseConnection dbc = new RandomDoubleVectorDatabaseConnection(dim, size, new RandomFactory(SEED), null);
+    Database db = new StaticArrayDatabase(dbc, indexes.length > 0 ? Arrays.asList(indexes) : null);
+    db.initialize();
+    return db;
+  }
+
+  /**
+   * Get the vector relation of a database.
+   *
+   * @param db Database
+   * @return Vector relation
+   */
+  public static Relation<NumberVector> vectors(Database db) {
+    return db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  /**
+   * Generate a CSV file of uniform random vectors with a label column.
+   *
+   * @param dim Dimensionality
+   * @param size Number of vectors
+   * @return File contents
+   */
+  public static byte[] randomCSV(int dim, int size) {
+    Random rnd = new RandomFactory(SEED).getSingleThreadedRandom();
+    ByteArrayOutputStream buf = new ByteArrayOutputStream(size * dim * 20);
+    PrintStream out = new PrintStream(buf);
+    for(int i = 0; i < size; i++) {
+      for(int d = 0; d < dim; d++) {
+        out.print(rnd.nextDouble());
+        out.print(',');
+      }
+      out.print("label");
+      out.println(i % 10);
+    }
+    out.flush();
+    return buf.toByteArray();
+  }
+}
@@ -0,0 +1,135 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Benchmark of iterating over the different DBID collections.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DBIDIterationBenchmark {
+  /**
+   * Number of ids.
+   */
+  @Param({ "100000" })
+  int size;
+
+  /**
+   * Static range of ids.
+   */
+  DBIDRange range;
+
+  /**
+   * Shuffled array of the same ids.
+   */
+  ArrayModifiableDBIDs array;
+
+  /**
+   * Hash set of the same ids.
+   */
+  HashSetModifiableDBIDs set;
+
+  @Setup
+  public void setup() {
+    range = DBIDUtil.generateStaticDBIDRange(size);
+    array = DBIDUtil.newArray(range);
+    DBIDUtil.randomShuffle(array, new RandomFactory(BenchmarkData.SEED));
+    set = DBIDUtil.newHashSet(range);
+  }
+
+  @Benchmark
+  public long range() {
+    long sum = 0;
+    for(DBIDIter it = range.iter(); it.valid(); it.advance()) {
+      sum += DBIDUtil.asInteger(it);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long array() {
+    long sum = 0;
+    for(DBIDIter it = array.iter(); it.valid(); it.advance()) {
+      sum += DBIDUtil.asInteger(it);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long arraySeek() {
+    long sum = 0;
+    DBIDArrayIter it = array.iter();
+    for(int i = size - 1; i >= 0; i--) {
+      sum += DBIDUtil.asInteger(it.seek(i));
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long hashSet() {
+    long sum = 0;
+    for(DBIDIter it = set.iter(); it.valid(); it.advance()) {
+      sum += DBIDUtil.asInteger(it);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int hashSetContains() {
+    int found = 0;
+    for(DBIDIter it = array.iter(); it.valid(); it.advance()) {
+      found += set.contains(it) ? 1 : 0;
+    }
+    return found;
+  }
+}
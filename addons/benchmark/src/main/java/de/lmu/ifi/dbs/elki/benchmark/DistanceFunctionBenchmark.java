@@ -0,0 +1,159 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.PackedSquaredEuclidean;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+
+/**
+ * Benchmark of the distance functions, computing the distances of one query
+ * vector to all vectors of a relation.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DistanceFunctionBenchmark {
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "10", "100" })
+  int dim;
+
+  /**
+   * Number of vectors.
+   */
+  @Param({ "10000" })
+  int size;
+
+  /**
+   * Data relation.
+   */
+  Relation<NumberVector> relation;
+
+  /**
+   * Object ids.
+   */
+  ArrayDBIDs ids;
+
+  /**
+   * Query vector.
+   */
+  NumberVector query;
+
+  /**
+   * Packed data, for the blocked computations.
+   */
+  double[] packed, transposed, norms, out;
+
+  @Setup
+  public void setup() {
+    relation = BenchmarkData.vectors(BenchmarkData.randomDatabase(dim, size));
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    DBIDArrayIter it = ids.iter();
+    query = relation.get(it);
+    packed = PackedSquaredEuclidean.pack(relation, it, dim);
+    transposed = new double[packed.length];
+    norms = new double[size];
+    out = new double[size];
+    PackedSquaredEuclidean.transpose(packed, 0, size, dim, transposed, norms);
+  }
+
+  /**
+   * Sum the distances to all objects.
+   *
+   * @param df Distance function
+   * @return Sum of distances
+   */
+  private double scan(PrimitiveDistanceFunction<? super NumberVector> df) {
+    double sum = 0.;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      sum += df.distance(query, relation.get(it));
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double euclidean() {
+    return scan(EuclideanDistanceFunction.STATIC);
+  }
+
+  @Benchmark
+  public double squaredEuclidean() {
+    return scan(SquaredEuclideanDistanceFunction.STATIC);
+  }
+
+  @Benchmark
+  public double manhattan() {
+    return scan(ManhattanDistanceFunction.STATIC);
+  }
+
+  @Benchmark
+  public double cosine() {
+    return scan(CosineDistanceFunction.STATIC);
+  }
+
+  @Benchmark
+  public double packedExact() {
+    double sum = 0.;
+    for(int off = 0; off < packed.length; off += dim) {
+      sum += PackedSquaredEuclidean.distance(packed, 0, packed, off, dim);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double[] packedOneToMany() {
+    PackedSquaredEuclidean.oneToMany(packed, 0, norms[0], transposed, norms, size, dim, out, 0);
+    return out;
+  }
+}
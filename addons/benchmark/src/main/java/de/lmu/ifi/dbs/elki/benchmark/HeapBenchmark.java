@@ -0,0 +1,147 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.TopBoundedHeap;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Benchmark of the heap data structures used by the kNN searches.
+ *
+ * The kNN heap is obtained from {@link DBIDUtil#newHeap}, which gives the
+ * DoubleIntegerDBIDKNNHeap of the default integer DBID implementation.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HeapBenchmark {
+  /**
+   * Number of values inserted.
+   */
+  @Param({ "100000" })
+  int size;
+
+  /**
+   * Heap size bound.
+   */
+  @Param({ "10", "100" })
+  int k;
+
+  /**
+   * Random values.
+   */
+  double[] values;
+
+  /**
+   * Boxed random values.
+   */
+  Double[] boxed;
+
+  /**
+   * Object ids.
+   */
+  DBIDRange ids;
+
+  @Setup
+  public void setup() {
+    values = new double[size];
+    boxed = new Double[size];
+    Random rnd = new RandomFactory(BenchmarkData.SEED).getSingleThreadedRandom();
+    for(int i = 0; i < size; i++) {
+      boxed[i] = values[i] = rnd.nextDouble();
+    }
+    ids = DBIDUtil.generateStaticDBIDRange(size);
+  }
+
+  @Benchmark
+  public double doubleMinHeap() {
+    DoubleMinHeap heap = new DoubleMinHeap(size);
+    for(double v : values) {
+      heap.add(v);
+    }
+    double sum = 0.;
+    while(!heap.isEmpty()) {
+      sum += heap.poll();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double doubleMinHeapBounded() {
+    DoubleMinHeap heap = new DoubleMinHeap(k);
+    for(double v : values) {
+      heap.add(v, k);
+    }
+    return heap.peek();
+  }
+
+  @Benchmark
+  public Double topBoundedHeap() {
+    TopBoundedHeap<Double> heap = new TopBoundedHeap<>(k);
+    for(Double v : boxed) {
+      heap.add(v);
+    }
+    return heap.peek();
+  }
+
+  @Benchmark
+  public double knnHeap() {
+    KNNHeap heap = DBIDUtil.newHeap(k);
+    double kdist = Double.POSITIVE_INFINITY;
+    int i = 0;
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      final double v = values[i];
+      if(v <= kdist) {
+        kdist = heap.insert(v, it);
+      }
+    }
+    return heap.toKNNList().getKNNDistance();
+  }
+}
@@ -0,0 +1,114 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansElkan;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeansLloyd;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.RandomlyChosenInitialMeans;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Benchmark of k-means with a fixed number of iterations. Lloyd and Elkan use
+ * the same initial means, so the time per iteration is comparable.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class KMeansBenchmark {
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "20" })
+  int dim;
+
+  /**
+   * Number of vectors.
+   */
+  @Param({ "100000" })
+  int size;
+
+  /**
+   * Number of clusters.
+   */
+  @Param({ "10", "100" })
+  int k;
+
+  /**
+   * Number of iterations.
+   */
+  @Param({ "10" })
+  int maxiter;
+
+  /**
+   * Database.
+   */
+  Database db;
+
+  /**
+   * Data relation.
+   */
+  Relation<NumberVector> relation;
+
+  @Setup
+  public void setup() {
+    db = BenchmarkData.randomDatabase(dim, size);
+    relation = BenchmarkData.vectors(db);
+  }
+
+  @Benchmark
+  public Clustering<KMeansModel> lloyd() {
+    return new KMeansLloyd<>(SquaredEuclideanDistanceFunction.STATIC, k, maxiter, new RandomlyChosenInitialMeans<>(new RandomFactory(BenchmarkData.SEED))).run(db, relation);
+  }
+
+  @Benchmark
+  public Clustering<KMeansModel> elkan() {
+    return new KMeansElkan<>(SquaredEuclideanDistanceFunction.STATIC, k, maxiter, new RandomlyChosenInitialMeans<>(new RandomFactory(BenchmarkData.SEED)), false).run(db, relation);
+  }
+}
@@ -0,0 +1,146 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree.MTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Benchmark of kNN queries using the in-memory R*-tree and M-tree, compared to
+ * a linear scan. Index construction is not part of the measurement.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class TreeKNNBenchmark {
+  /**
+   * Index to use.
+   */
+  @Param({ "rstar", "mtree", "scan" })
+  String index;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "8" })
+  int dim;
+
+  /**
+   * Number of vectors.
+   */
+  @Param({ "100000" })
+  int size;
+
+  /**
+   * Number of neighbors.
+   */
+  @Param({ "10" })
+  int k;
+
+  /**
+   * Number of queries per invocation.
+   */
+  @Param({ "1000" })
+  int queries;
+
+  /**
+   * Page size of the trees.
+   */
+  @Param({ "4096" })
+  int pagesize;
+
+  /**
+   * kNN query.
+   */
+  KNNQuery<NumberVector> knnq;
+
+  /**
+   * Query objects.
+   */
+  DBIDs sample;
+
+  @Setup
+  public void setup() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, pagesize);
+    final Database db;
+    switch(index){
+    case "rstar":
+      db = BenchmarkData.randomDatabase(dim, size, ClassGenericsUtil.<IndexFactory<?, ?>> parameterizeOrAbort(RStarTreeFactory.class, params));
+      break;
+    case "mtree":
+      db = BenchmarkData.randomDatabase(dim, size, ClassGenericsUtil.<IndexFactory<?, ?>> parameterizeOrAbort(MTreeFactory.class, params));
+      break;
+    default:
+      db = BenchmarkData.randomDatabase(dim, size);
+    }
+    Relation<NumberVector> relation = BenchmarkData.vectors(db);
+    DistanceQuery<NumberVector> dq = db.getDistanceQuery(relation, EuclideanDistanceFunction.STATIC);
+    knnq = db.getKNNQuery(dq, k);
+    sample = DBIDUtil.randomSample(relation.getDBIDs(), queries, new RandomFactory(BenchmarkData.SEED));
+  }
+
+  @Benchmark
+  public double knn() {
+    double sum = 0.;
+    for(DBIDIter it = sample.iter(); it.valid(); it.advance()) {
+      sum += knnq.getKNNForDBID(it, k).getKNNDistance();
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,38 @@
+/**
+ * JMH microbenchmarks of core ELKI code paths.
+ *
+ * In contrast to the benchmark algorithms in
+ * {@link de.lmu.ifi.dbs.elki.algorithm.benchmark}, these benchmarks use JMH
+ * to control warmup, forking and measurement, and use fixed random seeds for
+ * reproducible results across ELKI versions.
+ *
+ * Run with Gradle using {@code gradle :elki-benchmark:jmh -Pbench=Heap}, or
+ * build with the Maven profile {@code benchmark} and run
+ * {@code java -jar addons/benchmark/target/elki-benchmark-*.jar}.
+ *
+ * @author Erich Schubert
+ */
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.lmu.ifi.dbs.elki.benchmark;
@@ -209,7 +209,7 @@ public class TypeInformationSerializer implements ByteBufferSerializer<TypeInfor
       // Type class
       total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(object.getRestrictionClass().getName());
       // Name, or an empty string.
-      total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(object.getLabel());
+      total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(object.getLabel() != null ? object.getLabel() : "");
       // Serializer class
       total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(serializer.getClass().getName());
       return total;
@@ -293,7 +293,7 @@ public class TypeInformationSerializer implements ByteBufferSerializer<TypeInfor
       // Type class
       total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(object.getRestrictionClass().getName());
       // Name, or an empty string.
-      total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(object.getLabel());
+      total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(object.getLabel() != null ? object.getLabel() : "");
       // Serializer class
       total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(serializer.getClass().getName());
       // Dimensionality
@@ -405,7 +405,7 @@ public class TypeInformationSerializer implements ByteBufferSerializer<TypeInfor
       // Type class
       total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(object.getRestrictionClass().getName());
       // Name, or an empty string.
-      total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(object.getLabel());
+      total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(object.getLabel() != null ? object.getLabel() : "");
       // Serializer class
       total += ByteArrayUtil.STRING_SERIALIZER.getByteSize(serializer.getClass().getName());
       // Dimensionality
@@ -0,0 +1,38 @@
+package de.lmu.ifi.dbs.elki.database.query;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Marker interface for queries that can safely be used by multiple threads
+ * concurrently, as long as the underlying data and index are not modified.
+ * 
+ * Such queries do not keep any mutable per-query state in the query object,
+ * and only use statistics counters that are safe for concurrent use.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public interface ThreadSafeQuery extends DatabaseQuery {
+  // Empty marker interface
+}
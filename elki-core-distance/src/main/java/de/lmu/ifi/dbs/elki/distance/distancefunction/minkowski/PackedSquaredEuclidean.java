@@ -0,0 +1,205 @@
+package de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+
+/**
+ * Bulk computation of squared Euclidean distances on packed (contiguous,
+ * row-major) double arrays, for linear scans and distance matrix construction.
+ *
+ * {@link #distance} computes the exact distance, with the same order of
+ * operations as {@link SquaredEuclideanDistanceFunction}, but without the
+ * virtual calls of the {@link NumberVector} API.
+ *
+ * {@link #oneToMany} and {@link #manyToMany} use the decomposition
+ * \(||x-y||^2=||x||^2+||y||^2-2\langle x,y\rangle\) with precomputed squared
+ * norms. The candidate block is stored transposed, such that the inner loop
+ * is a simple multiply-add over an array, which the JIT compiler can
+ * vectorize. These values are subject to cancellation, and should only be used
+ * for filtering, with {@link #slack} as error bound, followed by an exact
+ * computation for the remaining candidates.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public final class PackedSquaredEuclidean {
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private PackedSquaredEuclidean() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Copy the vectors of a relation into a packed array, in the order of an
+   * array iterator.
+   *
+   * @param relation Data relation
+   * @param iter Iterator (will be reset)
+   * @param dim Dimensionality
+   * @return Packed data, row-major
+   */
+  public static double[] pack(Relation<? extends NumberVector> relation, DBIDArrayIter iter, int dim) {
+    iter.seek(0);
+    double[] data = new double[relation.size() * dim];
+    for(int off = 0; iter.valid(); iter.advance(), off += dim) {
+      pack(relation.get(iter), data, off, dim);
+    }
+    return data;
+  }
+
+  /**
+   * Copy a single vector into a packed array.
+   *
+   * @param v Vector
+   * @param data Output array
+   * @param off Offset in output array
+   * @param dim Dimensionality
+   */
+  public static void pack(NumberVector v, double[] data, int off, int dim) {
+    for(int d = 0; d < dim; d++) {
+      data[off + d] = v.doubleValue(d);
+    }
+  }
+
+  /**
+   * Exact squared Euclidean distance of two packed rows.
+   *
+   * @param a First array
+   * @param aoff Offset of the row in the first array
+   * @param b Second array
+   * @param boff Offset of the row in the second array
+   * @param dim Dimensionality
+   * @return Squared Euclidean distance
+   */
+  public static double distance(double[] a, int aoff, double[] b, int boff, int dim) {
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double delta = a[aoff + d] - b[boff + d];
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
+  /**
+   * Squared Euclidean norm of a packed row.
+   *
+   * @param a Data array
+   * @param off Offset of the row
+   * @param dim Dimensionality
+   * @return Squared norm
+   */
+  public static double norm(double[] a, int off, int dim) {
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double v = a[off + d];
+      agg += v * v;
+    }
+    return agg;
+  }
+
+  /**
+   * Transpose a block of packed rows, for use with {@link #oneToMany}, and
+   * compute their squared norms.
+   *
+   * @param data Packed rows
+   * @param off Offset of the first row
+   * @param n Number of rows
+   * @param dim Dimensionality
+   * @param out Output array, at least {@code n * dim}, column-major
+   * @param norms Output for the squared norms, at least {@code n}
+   */
+  public static void transpose(double[] data, int off, int n, int dim, double[] out, double[] norms) {
+    for(int j = 0; j < n; j++, off += dim) {
+      for(int d = 0; d < dim; d++) {
+        out[d * n + j] = data[off + d];
+      }
+      norms[j] = norm(data, off, dim);
+    }
+  }
+
+  /**
+   * Approximate squared distances of one packed row to a transposed block.
+   *
+   * @param q Query array
+   * @param qoff Offset of the query row
+   * @param qnorm Squared norm of the query
+   * @param bt Transposed block, see {@link #transpose}
+   * @param bnorms Squared norms of the block
+   * @param nb Number of rows in the block
+   * @param dim Dimensionality
+   * @param out Output array
+   * @param outoff Offset in the output array
+   */
+  public static void oneToMany(double[] q, int qoff, double qnorm, double[] bt, double[] bnorms, int nb, int dim, double[] out, int outoff) {
+    final int end = outoff + nb;
+    for(int j = outoff; j < end; j++) {
+      out[j] = 0.;
+    }
+    for(int d = 0, boff = 0; d < dim; d++, boff += nb) {
+      final double qd = -2. * q[qoff + d];
+      for(int j = outoff, b = boff; j < end; j++, b++) {
+        out[j] += qd * bt[b];
+      }
+    }
+    for(int j = outoff, b = 0; j < end; j++, b++) {
+      final double v = out[j] + qnorm + bnorms[b];
+      out[j] = v > 0. ? v : 0.;
+    }
+  }
+
+  /**
+   * Approximate squared distances of many packed rows to a transposed block.
+   *
+   * @param a Packed query rows
+   * @param anorms Squared norms of the query rows
+   * @param na Number of query rows
+   * @param bt Transposed block, see {@link #transpose}
+   * @param bnorms Squared norms of the block
+   * @param nb Number of rows in the block
+   * @param dim Dimensionality
+   * @param out Output array, {@code na * nb}, row-major
+   */
+  public static void manyToMany(double[] a, double[] anorms, int na, double[] bt, double[] bnorms, int nb, int dim, double[] out) {
+    for(int i = 0, aoff = 0, outoff = 0; i < na; i++, aoff += dim, outoff += nb) {
+      oneToMany(a, aoff, anorms[i], bt, bnorms, nb, dim, out, outoff);
+    }
+  }
+
+  /**
+   * Bound for the rounding error of the approximate distances.
+   *
+   * @param anorm Squared norm of the first vector
+   * @param bnorm Squared norm of the second vector
+   * @param dim Dimensionality
+   * @return Upper bound of the absolute error
+   */
+  public static double slack(double anorm, double bnorm, int dim) {
+    // The dot product error is bounded by dim * eps * |a| |b|.
+    return (dim + 4) * 0x1p-52 * (anorm + bnorm);
+  }
+}
@@ -29,6 +29,8 @@ import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import de.lmu.ifi.dbs.elki.data.HyperBoundingBox;
 import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
@@ -44,6 +46,7 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialIndexTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.PackedRStarTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.util.NodeArrayAdapter;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
@@ -95,6 +98,11 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
    */
   protected S settings;
 
+  /**
+   * Packed snapshot for queries, built on demand.
+   */
+  private PackedRStarTree packed;
+
   /**
    * Constructor.
    *
@@ -106,6 +114,31 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
     this.settings = settings;
   }
 
+  /**
+   * Get the packed snapshot of the tree, if enabled.
+   *
+   * The snapshot is discarded by {@link #invalidatePackedTree} when the tree
+   * is modified, and rebuilt on the next call.
+   *
+   * @return Packed tree, or {@code null} if packed queries are disabled.
+   */
+  public synchronized PackedRStarTree getPackedTree() {
+    if(!settings.isPackedQueries()) {
+      return null;
+    }
+    if(packed == null) {
+      packed = new PackedRStarTree(this);
+    }
+    return packed;
+  }
+
+  /**
+   * Discard the packed snapshot after a modification of the tree.
+   */
+  protected synchronized void invalidatePackedTree() {
+    packed = null;
+  }
+
   /**
    * Returns the path to the leaf entry in the specified subtree that represents
    * the data object with the specified mbr and id.
@@ -340,34 +373,143 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
    * @return the array of leaf nodes containing the objects
    */
   protected List<E> createBulkLeafNodes(List<E> objects) {
-    int minEntries = leafMinimum;
-    int maxEntries = leafCapacity;
-
-    ArrayList<E> result = new ArrayList<>();
-    List<List<E>> partitions = settings.bulkSplitter.partition(objects, minEntries, maxEntries);
+    List<List<E>> partitions = settings.bulkSplitter.partition(objects, leafMinimum, leafCapacity);
+    List<E> result = createBulkNodes(partitions, true);
 
-    for(List<E> partition : partitions) {
-      // create leaf node
-      N leafNode = createNewLeafNode();
+    if(getLogger().isDebugging()) {
+      getLogger().debugFine("numDataPages = " + result.size());
+    }
+    return result;
+  }
 
-      // insert data
-      for(E o : partition) {
-        leafNode.addLeafEntry(o);
+  /**
+   * Creates the nodes for the given partitions during bulk load.
+   *
+   * Nodes are filled (and their MBRs computed) in parallel using fork-join if
+   * there are enough of them. Page ids are assigned and the pages are written
+   * sequentially, so the resulting tree does not depend on the parallelism.
+   *
+   * @param partitions Partitions, one per node
+   * @param leaf Flag to build leaf nodes
+   * @return the directory entries of the new nodes
+   */
+  protected List<E> createBulkNodes(List<List<E>> partitions, boolean leaf) {
+    final int num = partitions.size();
+    ArrayList<N> nodes = new ArrayList<>(num);
+    ArrayList<E> result = new ArrayList<>(num);
+    for(int i = 0; i < num; i++) {
+      N node = leaf ? createNewLeafNode() : createNewDirectoryNode();
+      assignPageID(node);
+      nodes.add(node);
+      result.add(null);
+    }
+    BulkNodeTask task = new BulkNodeTask(partitions, nodes, result, leaf, 0, num);
+    if(num >= BULK_NODES_PER_TASK << 1 && ForkJoinPool.getCommonPoolParallelism() > 1) {
+      ForkJoinPool.commonPool().invoke(task);
+    }
+    else {
+      task.fill();
+    }
+    // write to file
+    for(N node : nodes) {
+      writeNode(node);
+      if(getLogger().isDebuggingFiner()) {
+        getLogger().debugFiner((leaf ? "Created leaf page " : "Directory page no: ") + node.getPageID());
       }
-      // write to file
-      writeNode(leafNode);
+    }
+    return result;
+  }
 
-      result.add(createNewDirectoryEntry(leafNode));
+  /**
+   * Minimum number of nodes filled by a single bulk load task.
+   */
+  private static final int BULK_NODES_PER_TASK = 32;
 
-      if(getLogger().isDebugging()) {
-        getLogger().debugFine("Created leaf page " + leafNode.getPageID());
+  /**
+   * Fork-join task to fill the nodes of a bulk load.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class BulkNodeTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Partitions to store.
+     */
+    private List<List<E>> partitions;
+
+    /**
+     * Nodes to fill.
+     */
+    private List<N> nodes;
+
+    /**
+     * Output directory entries.
+     */
+    private List<E> result;
+
+    /**
+     * Flag to build leaf nodes.
+     */
+    private boolean leaf;
+
+    /**
+     * Range of nodes to process.
+     */
+    private int begin, end;
+
+    /**
+     * Constructor.
+     *
+     * @param partitions Partitions
+     * @param nodes Nodes to fill
+     * @param result Output directory entries
+     * @param leaf Flag to build leaf nodes
+     * @param begin First node
+     * @param end End of range (exclusive)
+     */
+    BulkNodeTask(List<List<E>> partitions, List<N> nodes, List<E> result, boolean leaf, int begin, int end) {
+      this.partitions = partitions;
+      this.nodes = nodes;
+      this.result = result;
+      this.leaf = leaf;
+      this.begin = begin;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - begin <= BULK_NODES_PER_TASK) {
+        fill();
+        return;
       }
+      final int mid = (begin + end) >>> 1;
+      invokeAll(new BulkNodeTask(partitions, nodes, result, leaf, begin, mid), //
+          new BulkNodeTask(partitions, nodes, result, leaf, mid, end));
     }
 
-    if(getLogger().isDebugging()) {
-      getLogger().debugFine("numDataPages = " + result.size());
+    /**
+     * Fill the nodes of this task.
+     */
+    protected void fill() {
+      for(int i = begin; i < end; i++) {
+        final N node = nodes.get(i);
+        for(E o : partitions.get(i)) {
+          if(leaf) {
+            node.addLeafEntry(o);
+          }
+          else {
+            node.addDirectoryEntry(o);
+          }
+        }
+        result.set(i, createNewDirectoryEntry(node));
+      }
     }
-    return result;
   }
 
   /**
@@ -865,9 +1007,9 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
       super();
       Logging log = getLogger();
       final String prefix = AbstractRStarTree.this.getClass().getName();
-      distanceCalcs = log.isStatistics() ? log.newCounter(prefix + ".distancecalcs") : null;
-      knnQueries = log.isStatistics() ? log.newCounter(prefix + ".knnqueries") : null;
-      rangeQueries = log.isStatistics() ? log.newCounter(prefix + ".rangequeries") : null;
+      distanceCalcs = log.isStatistics() ? log.newConcurrentCounter(prefix + ".distancecalcs") : null;
+      knnQueries = log.isStatistics() ? log.newConcurrentCounter(prefix + ".knnqueries") : null;
+      rangeQueries = log.isStatistics() ? log.newConcurrentCounter(prefix + ".rangequeries") : null;
     }
 
     /**
@@ -40,6 +40,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -114,6 +115,11 @@ public abstract class AbstractRStarTreeFactory<O extends NumberVector, N extends
      */
     public static OptionID OVERFLOW_STRATEGY_ID = new OptionID("rtree.overflowtreatment", "The strategy to use for handling overflows.");
 
+    /**
+     * Flag to use a packed, read-only copy of the tree for Euclidean queries.
+     */
+    public static final OptionID PACKED_ID = new OptionID("rtree.packed", "Answer Euclidean queries on a packed, read-only copy of the tree. Faster for static data, but the copy is rebuilt after modifications.");
+
     /**
      * Tree settings
      */
@@ -148,6 +154,10 @@ public abstract class AbstractRStarTreeFactory<O extends NumberVector, N extends
       if(config.grab(overflowP)) {
         settings.setOverflowTreatment(overflowP.instantiateClass(config));
       }
+      Flag packedF = new Flag(PACKED_ID);
+      if(config.grab(packedF)) {
+        settings.packedQueries = packedF.isTrue();
+      }
       configBulkLoad(config);
     }
 
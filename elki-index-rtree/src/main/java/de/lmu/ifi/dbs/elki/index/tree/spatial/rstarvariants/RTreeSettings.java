@@ -68,6 +68,11 @@ public class RTreeSettings {
    */
   protected double relativeMinFill = 0.4;
 
+  /**
+   * Answer Euclidean queries using a packed snapshot of the tree.
+   */
+  protected boolean packedQueries = false;
+
   /**
    * Constructor with default values.
    */
@@ -134,4 +139,20 @@ public class RTreeSettings {
   public OverflowTreatment getOverflowTreatment() {
     return overflowTreatment;
   }
+
+  /**
+   * Enable or disable queries on a packed, read-only snapshot of the tree.
+   * 
+   * @param packedQueries Flag to enable packed queries
+   */
+  public void setPackedQueries(boolean packedQueries) {
+    this.packedQueries = packedQueries;
+  }
+
+  /**
+   * @return {@code true} when packed queries are enabled
+   */
+  public boolean isPackedQueries() {
+    return packedQueries;
+  }
 }
@@ -0,0 +1,109 @@
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+
+/**
+ * Euclidean kNN query on a packed snapshot of an R*-tree.
+ *
+ * The best-first search is the same as in {@link EuclideanRStarTreeKNNQuery},
+ * but the minimum distances of all entries of a node are computed at once from
+ * the contiguous coordinate arrays, and the priority queue stores primitive
+ * node numbers instead of candidate objects. Bulk queries use the regular
+ * tree. The snapshot is obtained from the tree for every query, so that the
+ * results follow modifications of the tree.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses PackedRStarTree
+ *
+ * @param <O> Vector type
+ */
+public class PackedEuclideanRStarTreeKNNQuery<O extends NumberVector> extends EuclideanRStarTreeKNNQuery<O> {
+  /**
+   * Constructor.
+   *
+   * @param tree Index to use
+   * @param relation Data relation to query
+   */
+  public PackedEuclideanRStarTreeKNNQuery(AbstractRStarTree<?, ?, ?> tree, Relation<? extends O> relation) {
+    super(tree, relation);
+  }
+
+  @Override
+  public KNNList getKNNForObject(O obj, int k) {
+    if(k < 1) {
+      throw new IllegalArgumentException("At least one neighbor has to be requested!");
+    }
+    // Current snapshot, rebuilt after modifications of the tree.
+    final PackedRStarTree packed = tree.getPackedTree();
+    if(packed == null) {
+      return super.getKNNForObject(obj, k);
+    }
+    tree.statistics.countKNNQuery();
+
+    final KNNHeap knnList = DBIDUtil.newHeap(k);
+    final DoubleIntegerMinHeap pq = new DoubleIntegerMinHeap(Math.min(k << 1, 21));
+    final double[] q = obj.toArray(), dists = new double[packed.maxEntries];
+    final DBIDArrayIter iter = packed.ids.iter();
+    final int[] ref = packed.ref;
+    double maxDist = Double.POSITIVE_INFINITY;
+    int node = 0; // Root
+    while(true) {
+      final int c = packed.squaredMinDists(node, q, dists);
+      final int s = packed.start[node];
+      if(packed.leaf[node]) {
+        for(int j = 0; j < c; j++) {
+          tree.statistics.countDistanceCalculation();
+          if(dists[j] <= maxDist) {
+            maxDist = knnList.insert(dists[j], iter.seek(ref[s + j]));
+          }
+        }
+      }
+      else {
+        for(int j = 0; j < c; j++) {
+          tree.statistics.countDistanceCalculation();
+          if(dists[j] <= maxDist) {
+            pq.add(dists[j], ref[s + j]);
+          }
+        }
+      }
+      if(pq.isEmpty() || pq.peekKey() > maxDist) {
+        break;
+      }
+      node = pq.peekValue();
+      pq.poll();
+    }
+    return knnList.toKNNListSqrt();
+  }
+}
@@ -0,0 +1,105 @@
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
+import net.jafama.FastMath;
+
+/**
+ * Euclidean range query on a packed snapshot of an R*-tree.
+ *
+ * The minimum distances of all entries of a node are computed at once from
+ * the contiguous coordinate arrays of the {@link PackedRStarTree}. The
+ * snapshot is obtained from the tree for every query, so that the results
+ * follow modifications of the tree.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses PackedRStarTree
+ *
+ * @param <O> Vector type
+ */
+public class PackedEuclideanRStarTreeRangeQuery<O extends NumberVector> extends EuclideanRStarTreeRangeQuery<O> {
+  /**
+   * Constructor.
+   *
+   * @param tree Index to use
+   * @param relation Relation to use.
+   */
+  public PackedEuclideanRStarTreeRangeQuery(AbstractRStarTree<?, ?, ?> tree, Relation<? extends O> relation) {
+    super(tree, relation);
+  }
+
+  @Override
+  public void getRangeForObject(O object, double range, ModifiableDoubleDBIDList result) {
+    // Current snapshot, rebuilt after modifications of the tree.
+    final PackedRStarTree packed = tree.getPackedTree();
+    if(packed == null) {
+      super.getRangeForObject(object, range, result);
+      return;
+    }
+    tree.statistics.countRangeQuery();
+    final double sqepsilon = range * range;
+    final double[] q = object.toArray(), dists = new double[packed.maxEntries];
+    final DBIDArrayIter iter = packed.ids.iter();
+    final int[] ref = packed.ref;
+
+    // Processing queue.
+    int[] pq = new int[101];
+    int ps = 0;
+    pq[ps++] = 0; // Root
+
+    // search in tree
+    while(ps > 0) {
+      final int node = pq[--ps]; // Pop last.
+      final int c = packed.squaredMinDists(node, q, dists);
+      final int s = packed.start[node];
+      if(packed.leaf[node]) {
+        for(int j = 0; j < c; j++) {
+          tree.statistics.countDistanceCalculation();
+          if(dists[j] <= sqepsilon) {
+            result.add(FastMath.sqrt(dists[j]), iter.seek(ref[s + j]));
+          }
+        }
+      }
+      else {
+        for(int j = 0; j < c; j++) {
+          if(dists[j] <= sqepsilon) {
+            if(ps == pq.length) { // Resize:
+              pq = Arrays.copyOf(pq, pq.length + (pq.length >>> 1));
+            }
+            pq[ps++] = ref[s + j];
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,205 @@
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.index.tree.LeafEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Read-only, packed snapshot of an R*-tree containing point data.
+ *
+ * The nodes are numbered in breadth-first order, and all bounding boxes are
+ * stored in a single primitive array. Within each node, the coordinates are
+ * laid out dimension by dimension (structure of arrays), such that the
+ * distances to all entries of a node can be computed in tight loops over
+ * contiguous memory, without dereferencing entry objects. Directory nodes store
+ * the lower bounds of all entries followed by the upper bounds; leaf nodes only
+ * store the points themselves.
+ *
+ * The snapshot is not updated when the tree is modified.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses AbstractRStarTree
+ */
+public class PackedRStarTree {
+  /**
+   * Dimensionality.
+   */
+  final int dim;
+
+  /**
+   * Offset of the first entry of each node, plus a final end marker.
+   */
+  final int[] start;
+
+  /**
+   * Offset of the coordinates of each node.
+   */
+  final int[] offset;
+
+  /**
+   * Leaf flags of the nodes.
+   */
+  final boolean[] leaf;
+
+  /**
+   * Entry references: the child node number for directory entries, the
+   * position in {@link #ids} for leaf entries.
+   */
+  final int[] ref;
+
+  /**
+   * Packed coordinates.
+   */
+  final double[] coords;
+
+  /**
+   * Object ids of the leaf entries.
+   */
+  final ArrayDBIDs ids;
+
+  /**
+   * Maximum number of entries in a node.
+   */
+  final int maxEntries;
+
+  /**
+   * Build a packed snapshot of a tree.
+   *
+   * @param tree Tree to pack, with point leaf entries
+   */
+  public PackedRStarTree(AbstractRStarTree<?, ?, ?> tree) {
+    super();
+    // Collect the nodes in breadth-first order.
+    List<AbstractRStarTreeNode<?, ?>> nodes = new ArrayList<>();
+    nodes.add(tree.getRoot());
+    int numEntries = 0, numLeafEntries = 0, maxEntries = 0, dim = 0;
+    for(int i = 0; i < nodes.size(); i++) {
+      AbstractRStarTreeNode<?, ?> node = nodes.get(i);
+      final int c = node.getNumEntries();
+      numEntries += c;
+      maxEntries = c > maxEntries ? c : maxEntries;
+      if(c > 0) {
+        dim = node.getEntry(0).getDimensionality();
+      }
+      if(node.isLeaf()) {
+        numLeafEntries += c;
+        continue;
+      }
+      for(int j = 0; j < c; j++) {
+        nodes.add(tree.getNode(((SpatialDirectoryEntry) node.getEntry(j)).getPageID()));
+      }
+    }
+    final long numCoords = (((long) numEntries << 1) - numLeafEntries) * dim;
+    if(numCoords > 0x7FFF_FFFAL) {
+      throw new AbortException("Packed R*-tree coordinates (" + numCoords + " values) exceed the Java array size limit.");
+    }
+    final int numNodes = nodes.size();
+    this.dim = dim;
+    this.maxEntries = maxEntries;
+    this.start = new int[numNodes + 1];
+    this.offset = new int[numNodes];
+    this.leaf = new boolean[numNodes];
+    this.ref = new int[numEntries];
+    this.coords = new double[(int) numCoords];
+    ArrayModifiableDBIDs ids = DBIDUtil.newArray(numLeafEntries);
+    // Fill the arrays. Children were numbered in the same order above.
+    int e = 0, o = 0, child = 1;
+    for(int i = 0; i < numNodes; i++) {
+      AbstractRStarTreeNode<?, ?> node = nodes.get(i);
+      final int c = node.getNumEntries();
+      start[i] = e;
+      offset[i] = o;
+      leaf[i] = node.isLeaf();
+      for(int j = 0; j < c; j++, e++) {
+        SpatialEntry entry = node.getEntry(j);
+        if(leaf[i]) {
+          ref[e] = ids.size();
+          ids.add(((LeafEntry) entry).getDBID());
+          for(int d = 0, p = o + j; d < dim; d++, p += c) {
+            coords[p] = entry.getMin(d);
+          }
+        }
+        else {
+          ref[e] = child++;
+          for(int d = 0, p = o + j, q = o + j + dim * c; d < dim; d++, p += c, q += c) {
+            coords[p] = entry.getMin(d);
+            coords[q] = entry.getMax(d);
+          }
+        }
+      }
+      o += (leaf[i] ? 1 : 2) * dim * c;
+    }
+    start[numNodes] = e;
+    this.ids = ids;
+  }
+
+  /**
+   * Compute the squared Euclidean minimum distances of a query point to all
+   * entries of a node.
+   *
+   * @param node Node number
+   * @param q Query point
+   * @param dists Output buffer, of at least {@link #maxEntries} length
+   * @return Number of entries
+   */
+  int squaredMinDists(int node, double[] q, double[] dists) {
+    final int c = start[node + 1] - start[node];
+    int p = offset[node];
+    for(int j = 0; j < c; j++) {
+      dists[j] = 0.;
+    }
+    if(leaf[node]) {
+      for(int d = 0; d < dim; d++, p += c) {
+        final double qd = q[d];
+        for(int j = 0; j < c; j++) {
+          final double v = qd - coords[p + j];
+          dists[j] += v * v;
+        }
+      }
+      return c;
+    }
+    for(int d = 0, h = p + dim * c; d < dim; d++, p += c, h += c) {
+      final double qd = q[d];
+      for(int j = 0; j < c; j++) {
+        final double lo = coords[p + j] - qd, hi = qd - coords[h + j];
+        final double v = lo > hi ? lo : hi;
+        dists[j] += v > 0 ? v * v : 0.;
+      }
+    }
+    return c;
+  }
+}
@@ -40,6 +40,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.ThreadSafeQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
@@ -75,7 +76,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 title = "Ranking in spatial databases", //
 booktitle = "Advances in Spatial Databases - 4th Symposium, SSD'95", //
 url = "http://dx.doi.org/10.1007/3-540-60159-7_6")
-public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<O> {
+public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<O>, ThreadSafeQuery {
   /**
    * The index to use
    */
@@ -44,6 +44,8 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
  * @apiviz.uses AbstractRStarTree
  * @apiviz.uses EuclideanRStarTreeKNNQuery
  * @apiviz.uses EuclideanRStarTreeRangeQuery
+ * @apiviz.uses PackedEuclideanRStarTreeKNNQuery
+ * @apiviz.uses PackedEuclideanRStarTreeRangeQuery
  * @apiviz.has RangeQuery
  * @apiviz.has KNNQuery
  */
@@ -87,4 +89,42 @@ public final class RStarTreeUtil {
     }
     return new RStarTreeKNNQuery<>(tree, distanceQuery.getRelation(), df);
   }
-}
\ No newline at end of file
+
+  /**
+   * Get an RTree range query, using the packed representation for Euclidean
+   * distance when available.
+   * 
+   * @param <O> Object type
+   * @param tree Tree to query
+   * @param packed Use the packed snapshot of the tree
+   * @param distanceQuery distance query
+   * @param hints Optimizer hints
+   * @return Query object
+   */
+  @SuppressWarnings({ "cast", "unchecked" })
+  public static <O extends SpatialComparable> RangeQuery<O> getRangeQuery(AbstractRStarTree<?, ?, ?> tree, boolean packed, SpatialDistanceQuery<O> distanceQuery, Object... hints) {
+    if(packed && EuclideanDistanceFunction.STATIC.equals(distanceQuery.getDistanceFunction())) {
+      return (RangeQuery<O>) new PackedEuclideanRStarTreeRangeQuery<>(tree, (Relation<NumberVector>) distanceQuery.getRelation());
+    }
+    return getRangeQuery(tree, distanceQuery, hints);
+  }
+
+  /**
+   * Get an RTree knn query, using the packed representation for Euclidean
+   * distance when available.
+   * 
+   * @param <O> Object type
+   * @param tree Tree to query
+   * @param packed Use the packed snapshot of the tree
+   * @param distanceQuery distance query
+   * @param hints Optimizer hints
+   * @return Query object
+   */
+  @SuppressWarnings({ "cast", "unchecked" })
+  public static <O extends SpatialComparable> KNNQuery<O> getKNNQuery(AbstractRStarTree<?, ?, ?> tree, boolean packed, SpatialDistanceQuery<O> distanceQuery, Object... hints) {
+    if(packed && EuclideanDistanceFunction.STATIC.equals(distanceQuery.getDistanceFunction())) {
+      return (KNNQuery<O>) new PackedEuclideanRStarTreeKNNQuery<>(tree, (Relation<NumberVector>) distanceQuery.getRelation());
+    }
+    return getKNNQuery(tree, distanceQuery, hints);
+  }
+}
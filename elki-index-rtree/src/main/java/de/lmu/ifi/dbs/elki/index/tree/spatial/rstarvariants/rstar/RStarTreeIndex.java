@@ -102,6 +102,7 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
   @Override
   public void insert(DBIDRef id) {
     insertLeaf(createNewLeafEntry(id));
+    invalidatePackedTree();
   }
 
   /**
@@ -123,6 +124,7 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
         leafs.add(createNewLeafEntry(iter));
       }
       bulkLoad(leafs);
+      invalidatePackedTree();
     }
     else {
       for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
@@ -148,6 +150,7 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
       return false;
     }
     deletePath(deletionPath);
+    invalidatePackedTree();
     return true;
   }
 
@@ -169,7 +172,7 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
       return null;
     }
     SpatialDistanceQuery<O> dq = (SpatialDistanceQuery<O>) distanceQuery;
-    return RStarTreeUtil.getRangeQuery(this, dq, hints);
+    return RStarTreeUtil.getRangeQuery(this, settings.isPackedQueries(), dq, hints);
   }
 
   @Override
@@ -183,7 +186,7 @@ public class RStarTreeIndex<O extends NumberVector> extends RStarTree implements
       return null;
     }
     SpatialDistanceQuery<O> dq = (SpatialDistanceQuery<O>) distanceQuery;
-    return RStarTreeUtil.getKNNQuery(this, dq, hints);
+    return RStarTreeUtil.getKNNQuery(this, settings.isPackedQueries(), dq, hints);
   }
 
   @Override
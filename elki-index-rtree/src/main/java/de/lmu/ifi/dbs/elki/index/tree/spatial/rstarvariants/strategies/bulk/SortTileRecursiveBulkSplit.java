@@ -24,6 +24,8 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
  */
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialSingleMeanComparator;
@@ -44,6 +46,11 @@ import net.jafama.FastMath;
  * In: Proc. 13th International Conference on Data Engineering, 1997
  * </p>
  * 
+ * Large data sets are partitioned in parallel using fork-join: the slab
+ * boundaries are found by recursive bisection, so that the slabs can be
+ * processed independently. The resulting partitions are the same as with the
+ * sequential algorithm, except for the handling of ties.
+ * 
  * @author Erich Schubert
  * @since 0.5.0
  */
@@ -55,9 +62,17 @@ public class SortTileRecursiveBulkSplit extends AbstractBulkSplit {
    */
   public static final SortTileRecursiveBulkSplit STATIC = new SortTileRecursiveBulkSplit();
 
+  /**
+   * Minimum number of objects to partition in parallel.
+   */
+  private static final int PARALLEL_THRESHOLD = 1 << 14;
+
   @Override
   public <T extends SpatialComparable> List<List<T>> partition(List<T> spatialObjects, int minEntries, int maxEntries) {
     final int dims = spatialObjects.get(0).getDimensionality();
+    if(spatialObjects.size() >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+      return ForkJoinPool.commonPool().invoke(new SlabTask<>(spatialObjects, 0, spatialObjects.size(), 0, dims, maxEntries));
+    }
     final int p = (int) FastMath.ceil(spatialObjects.size() / (double) maxEntries);
     List<List<T>> ret = new ArrayList<>(p);
     strPartition(spatialObjects, 0, spatialObjects.size(), 0, dims, maxEntries, new SpatialSingleMeanComparator(0), ret);
@@ -100,6 +115,139 @@ public class SortTileRecursiveBulkSplit extends AbstractBulkSplit {
     }
   }
 
+  /**
+   * Fork-join task to partition a range of slabs.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <T> data type
+   */
+  private class SlabTask<T extends SpatialComparable> extends RecursiveTask<List<List<T>>> {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Object list.
+     */
+    private List<T> objs;
+
+    /**
+     * Interval to partition at this depth.
+     */
+    private int start, end;
+
+    /**
+     * Iteration depth, total number of dimensions, maximum page size.
+     */
+    private int depth, dims, maxEntries;
+
+    /**
+     * Number of slabs of the interval, and range of slabs to process.
+     */
+    private int s, lo, hi;
+
+    /**
+     * Constructor for partitioning a complete interval.
+     * 
+     * @param objs Object list
+     * @param start Interval start
+     * @param end Interval end
+     * @param depth Iteration depth
+     * @param dims Total number of dimensions
+     * @param maxEntries Maximum page size
+     */
+    SlabTask(List<T> objs, int start, int end, int depth, int dims, int maxEntries) {
+      this.objs = objs;
+      this.start = start;
+      this.end = end;
+      this.depth = depth;
+      this.dims = dims;
+      this.maxEntries = maxEntries;
+      final int p = (int) FastMath.ceil((end - start) / (double) maxEntries);
+      this.s = (int) FastMath.ceil(FastMath.pow(p, 1.0 / (dims - depth)));
+      this.lo = 0;
+      this.hi = s;
+    }
+
+    /**
+     * Constructor for a subrange of slabs.
+     * 
+     * @param parent Parent task
+     * @param lo First slab
+     * @param hi End of slab range (exclusive)
+     */
+    SlabTask(SlabTask<T> parent, int lo, int hi) {
+      this.objs = parent.objs;
+      this.start = parent.start;
+      this.end = parent.end;
+      this.depth = parent.depth;
+      this.dims = parent.dims;
+      this.maxEntries = parent.maxEntries;
+      this.s = parent.s;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    /**
+     * Get the boundary of a slab.
+     * 
+     * @param i Slab number
+     * @return Start of the slab
+     */
+    private int boundary(int i) {
+      final double len = end - start; // double intentional!
+      return start + (int) ((i * len) / s);
+    }
+
+    @Override
+    protected List<List<T>> compute() {
+      final int s2 = boundary(lo), e2 = boundary(hi);
+      if(e2 - s2 < PARALLEL_THRESHOLD) {
+        // Small enough: partition sequentially.
+        List<List<T>> ret = new ArrayList<>();
+        SpatialSingleMeanComparator c = new SpatialSingleMeanComparator(depth);
+        for(int i = lo; i < hi; i++) {
+          final int s3 = boundary(i), e3 = boundary(i + 1);
+          if(e3 < e2) {
+            c.setDimension(depth);
+            QuickSelect.quickSelect(objs, c, s3, e2, e3);
+          }
+          if(depth + 1 == dims) {
+            ret.add(objs.subList(s3, e3));
+          }
+          else {
+            strPartition(objs, s3, e3, depth + 1, dims, maxEntries, c, ret);
+          }
+        }
+        return ret;
+      }
+      if(hi - lo == 1) {
+        if(depth + 1 == dims) {
+          List<List<T>> ret = new ArrayList<>(1);
+          ret.add(objs.subList(s2, e2));
+          return ret;
+        }
+        // Descend
+        return new SlabTask<>(objs, s2, e2, depth + 1, dims, maxEntries).compute();
+      }
+      // Bisect the slab range, then process both halves independently.
+      final int mid = (lo + hi) >>> 1, m = boundary(mid);
+      if(m < e2) {
+        QuickSelect.quickSelect(objs, new SpatialSingleMeanComparator(depth), s2, e2, m);
+      }
+      SlabTask<T> left = new SlabTask<>(this, lo, mid);
+      left.fork();
+      List<List<T>> ret = new SlabTask<>(this, mid, hi).compute();
+      List<List<T>> lret = left.join();
+      lret.addAll(ret);
+      return lret;
+    }
+  }
+
   /**
    * Parameterization class.
    * 
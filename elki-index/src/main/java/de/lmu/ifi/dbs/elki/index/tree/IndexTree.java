@@ -184,6 +184,16 @@ public abstract class IndexTree<N extends Node<E>, E extends Entry> implements I
     return getNode(getPageID(entry));
   }
 
+  /**
+   * Assign a page id to a new node, without writing it yet.
+   *
+   * @param node Node to assign an id
+   * @return the page id
+   */
+  protected int assignPageID(N node) {
+    return file.setPageID(node);
+  }
+
   /**
    * Write a node to the backing storage.
    *
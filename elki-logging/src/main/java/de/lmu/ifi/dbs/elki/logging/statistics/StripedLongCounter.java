@@ -0,0 +1,81 @@
+package de.lmu.ifi.dbs.elki.logging.statistics;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Class to count events in a thread-safe counter, using striping to avoid
+ * contention when many threads increment the counter concurrently.
+ * 
+ * In contrast to {@link AtomicLongCounter}, the increment methods do not
+ * compute the current value, as this would need to sum all stripes, and
+ * always return 0. Use {@link #getValue()} to read the counter.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class StripedLongCounter extends AbstractStatistic implements Counter {
+  /**
+   * The counter to use.
+   */
+  LongAdder counter = new LongAdder();
+
+  /**
+   * Constructor.
+   * 
+   * @param key Key to report.
+   */
+  public StripedLongCounter(String key) {
+    super(key);
+  }
+
+  @Override
+  public long increment() {
+    counter.increment();
+    return 0L;
+  }
+
+  @Override
+  public long decrement() {
+    counter.decrement();
+    return 0L;
+  }
+
+  @Override
+  public long increment(long i) {
+    counter.add(i);
+    return 0L;
+  }
+
+  @Override
+  public long getValue() {
+    return counter.sum();
+  }
+
+  @Override
+  public String formatValue() {
+    return Long.toString(getValue());
+  }
+}
@@ -24,7 +24,7 @@ package de.lmu.ifi.dbs.elki.logging.statistics;
  */
 
 /**
- * Class to count events in a thread-safe counter.
+ * Class to count events in a counter that is not thread-safe.
  * 
  * @author Erich Schubert
  * @since 0.5.0
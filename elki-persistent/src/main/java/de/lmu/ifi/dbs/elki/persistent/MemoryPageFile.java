@@ -31,6 +31,10 @@ import de.lmu.ifi.dbs.elki.logging.Logging;
  * A memory based implementation of a PageFile that simulates I/O-access.<br>
  * Implemented as a Map with keys representing the ids of the saved pages.
  * 
+ * Reading pages does not acquire a lock, so that read-only index structures
+ * can be queried by multiple threads concurrently. Pages must not be written
+ * or deleted while other threads are reading.
+ * 
  * @author Elke Achtert
  * @since 0.2
  * 
@@ -59,7 +63,7 @@ public class MemoryPageFile<P extends Page> extends AbstractStoringPageFile<P> {
   }
 
   @Override
-  public synchronized P readPage(int pageID) {
+  public P readPage(int pageID) {
     countRead();
     return file.get(pageID);
   }
@@ -54,6 +54,9 @@ public interface PageFile<P extends Page> {
   /**
    * Reads the page with the given id from this file.
    * 
+   * Implementations must allow concurrent reads from multiple threads, as long
+   * as the file is not modified at the same time.
+   * 
    * @param pageID the id of the page to be returned
    * @return the page with the given pageId
    */
@@ -159,7 +159,17 @@ public class GriDBSCAN<V extends NumberVector> extends AbstractDistanceBasedAlgo
       LOG.warning("Invalid grid width (less than 2*epsilon, recommended 10*epsilon). Increasing grid width automatically.");
       gridwidth = 2. * epsilon;
     }
-    return new Instance<V>(getDistanceFunction(), epsilon, minpts, gridwidth).run(relation);
+    return newInstance(gridwidth).run(relation);
+  }
+
+  /**
+   * Create the instance for a single run.
+   *
+   * @param gridwidth Grid width
+   * @return Instance
+   */
+  protected Instance<V> newInstance(double gridwidth) {
+    return new Instance<V>(getDistanceFunction(), epsilon, minpts, gridwidth);
   }
 
   /**
@@ -274,31 +284,7 @@ public class GriDBSCAN<V extends NumberVector> extends AbstractDistanceBasedAlgo
       final DBIDs ids = relation.getDBIDs();
       final int size = ids.size();
 
-      // Domain of the database
-      this.domain = RelationUtil.computeMinMax(relation);
-      this.dim = domain[0].length;
-      this.offset = new double[dim];
-      this.cells = new int[dim];
-      // Compute the grid start, and the number of cells in each dimension.
-      long numcells = computeGridBaseOffsets();
-      if(numcells > size) {
-        LOG.warning("The generated grid has more cells than data points. This may need excessive amounts of memory.");
-      }
-      else if(numcells == 1) {
-        LOG.warning("All data is in a single cell. This has degenerated to a non-indexed DBSCAN!");
-      }
-      else if(numcells <= dim * dim) {
-        LOG.warning("There are only " + numcells + " cells. This will likely be slower than regular DBSCAN!");
-      }
-
-      // Build the data grid.
-      buildGrid(relation, (int) numcells, offset);
-      if(grid.size() <= dim) {
-        LOG.warning("There are only " + grid.size() + " occupied cells. This will likely be slower than regular DBSCAN!");
-      }
-
-      // Check grid cell counts:
-      int mincells = checkGridCellSizes(size, numcells);
+      int mincells = initializeGrid(relation);
 
       // (Temporary) store the cluster ID assigned.
       clusterids = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_TEMP, Assignment.class);
@@ -391,6 +377,41 @@ public class GriDBSCAN<V extends NumberVector> extends AbstractDistanceBasedAlgo
       return result;
     }
 
+    /**
+     * Compute the value domain, build the grid, and check the grid cell sizes.
+     *
+     * @param relation Data relation
+     * @return Number of cells with at least minPts objects
+     */
+    protected int initializeGrid(Relation<V> relation) {
+      final int size = relation.size();
+      // Domain of the database
+      this.domain = RelationUtil.computeMinMax(relation);
+      this.dim = domain[0].length;
+      this.offset = new double[dim];
+      this.cells = new int[dim];
+      // Compute the grid start, and the number of cells in each dimension.
+      long numcells = computeGridBaseOffsets();
+      if(numcells > size) {
+        LOG.warning("The generated grid has more cells than data points. This may need excessive amounts of memory.");
+      }
+      else if(numcells == 1) {
+        LOG.warning("All data is in a single cell. This has degenerated to a non-indexed DBSCAN!");
+      }
+      else if(numcells <= dim * dim) {
+        LOG.warning("There are only " + numcells + " cells. This will likely be slower than regular DBSCAN!");
+      }
+
+      // Build the data grid.
+      buildGrid(relation, (int) numcells, offset);
+      if(grid.size() <= dim) {
+        LOG.warning("There are only " + grid.size() + " occupied cells. This will likely be slower than regular DBSCAN!");
+      }
+
+      // Check grid cell counts:
+      return checkGridCellSizes(size, numcells);
+    }
+
     /**
      * Update the shared arrays for core points (to conserve memory)
      *
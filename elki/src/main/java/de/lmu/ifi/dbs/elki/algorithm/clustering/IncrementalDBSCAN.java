@@ -0,0 +1,721 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.model.ClusterModel;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.index.DynamicIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.hierarchy.Hierarchy;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Incremental version of DBSCAN, which maintains the clustering when objects
+ * are inserted into or deleted from the database.
+ * 
+ * The result of this algorithm is an {@link IncrementalClustering}, which is
+ * attached to the data relation as a {@link DynamicIndex}. Thus it is notified
+ * of every insertion and deletion, and only updates the core status, the
+ * cluster membership, and merges or splits clusters in the affected epsilon
+ * neighborhoods. The clusters are materialized lazily when the clustering is
+ * accessed.
+ * 
+ * Splits are detected by expanding the remaining core objects of the affected
+ * cluster in interleaved searches, one object at a time. Searches that meet are
+ * merged, and once only a single search is left, it keeps the old cluster.
+ * Therefore only the separated (usually smaller) parts are traversed
+ * completely.
+ * 
+ * Border objects are assigned to the cluster of the first core object found,
+ * as in DBSCAN, so their assignment can differ from a static run.
+ * 
+ * Reference:
+ * <p>
+ * M. Ester, H.-P. Kriegel, J. Sander, M. Wimmer, X. Xu<br />
+ * Incremental Clustering for Mining in a Data Warehousing Environment<br />
+ * In Proc. 24th Int. Conf. on Very Large Data Bases (VLDB '98)
+ * </p>
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @apiviz.has IncrementalClustering
+ * 
+ * @param <O> the type of Object the algorithm is applied to
+ */
+@Title("Incremental DBSCAN")
+@Description("DBSCAN clustering, which is updated incrementally on insertions and deletions.")
+@Reference(authors = "M. Ester, H.-P. Kriegel, J. Sander, M. Wimmer, X. Xu", //
+    title = "Incremental Clustering for Mining in a Data Warehousing Environment", //
+    booktitle = "Proc. 24th Int. Conf. on Very Large Data Bases (VLDB '98)", //
+    url = "http://www.vldb.org/conf/1998/p323.pdf")
+public class IncrementalDBSCAN<O> extends AbstractDistanceBasedAlgorithm<O, Clustering<Model>> implements ClusteringAlgorithm<Clustering<Model>> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(IncrementalDBSCAN.class);
+
+  /**
+   * Holds the epsilon radius threshold.
+   */
+  protected double epsilon;
+
+  /**
+   * Holds the minimum cluster size.
+   */
+  protected int minpts;
+
+  /**
+   * Constructor with parameters.
+   *
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts parameter
+   */
+  public IncrementalDBSCAN(DistanceFunction<? super O> distanceFunction, double epsilon, int minpts) {
+    super(distanceFunction);
+    this.epsilon = epsilon;
+    this.minpts = minpts;
+  }
+
+  /**
+   * Performs the DBSCAN algorithm on the given database, and attaches the
+   * result to the relation to receive updates.
+   *
+   * @param relation Data relation
+   * @return Incremental clustering
+   */
+  public IncrementalClustering<O> run(Relation<O> relation) {
+    RangeQuery<O> rangeQuery = QueryUtil.getRangeQuery(relation, getDistanceFunction());
+    IncrementalClustering<O> result = new IncrementalClustering<>(relation, rangeQuery, epsilon, minpts);
+    result.initialize();
+    relation.getHierarchy().add(relation, result);
+    return result;
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(getDistanceFunction().getInputTypeRestriction());
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * DBSCAN clustering that is maintained on insertions and deletions.
+   * 
+   * Cluster ids are managed with a union-find structure, so that merging two
+   * clusters does not need to relabel their members.
+   * 
+   * @author Erich Schubert
+   * 
+   * @param <O> Object type
+   */
+  public static class IncrementalClustering<O> extends Clustering<Model> implements DynamicIndex {
+    /**
+     * Noise label.
+     */
+    private static final int NOISE = 0;
+
+    /**
+     * Data relation.
+     */
+    private Relation<O> relation;
+
+    /**
+     * Range query.
+     */
+    private RangeQuery<O> rangeQuery;
+
+    /**
+     * Query radius.
+     */
+    private double epsilon;
+
+    /**
+     * Minimum number of neighbors of core objects.
+     */
+    private int minpts;
+
+    /**
+     * Number of neighbors (including the object itself).
+     */
+    private WritableIntegerDataStore counts;
+
+    /**
+     * Cluster labels, {@link #NOISE} for noise.
+     */
+    private WritableIntegerDataStore labels;
+
+    /**
+     * Union-find forest of cluster labels.
+     */
+    private int[] parent = new int[16];
+
+    /**
+     * Number of cluster labels allocated.
+     */
+    private int numlabels = 1;
+
+    /**
+     * Number of range queries performed on updates.
+     */
+    private long queries;
+
+    /**
+     * Materialized clusters, {@code null} if outdated.
+     */
+    private Clustering<Model> clusters;
+
+    /**
+     * Constructor.
+     * 
+     * @param relation Data relation
+     * @param rangeQuery Range query
+     * @param epsilon Query radius
+     * @param minpts Minimum number of neighbors of core objects
+     */
+    public IncrementalClustering(Relation<O> relation, RangeQuery<O> rangeQuery, double epsilon, int minpts) {
+      super("DBSCAN Clustering", "dbscan-clustering");
+      this.relation = relation;
+      this.rangeQuery = rangeQuery;
+      this.epsilon = epsilon;
+      this.minpts = minpts;
+    }
+
+    /**
+     * Run the static DBSCAN algorithm, recording the neighbor counts of all
+     * objects.
+     */
+    @Override
+    public void initialize() {
+      DBIDs ids = relation.getDBIDs();
+      counts = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_HOT, 0);
+      labels = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_HOT, NOISE);
+      HashSetModifiableDBIDs processed = DBIDUtil.newHashSet(ids.size());
+      FiniteProgress objprog = LOG.isVerbose() ? new FiniteProgress("Processing objects", ids.size(), LOG) : null;
+      ArrayModifiableDBIDs seeds = DBIDUtil.newArray();
+      DBIDVar seed = DBIDUtil.newVar();
+      for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+        if(!processed.add(iditer)) {
+          continue;
+        }
+        DoubleDBIDList neighbors = rangeQuery.getRangeForDBID(iditer, epsilon);
+        counts.putInt(iditer, neighbors.size());
+        LOG.incrementProcessed(objprog);
+        if(neighbors.size() < minpts) {
+          continue;
+        }
+        final int label = newLabel();
+        labels.putInt(iditer, label);
+        expandNeighbors(neighbors, label, processed, seeds);
+        while(!seeds.isEmpty()) {
+          seeds.pop(seed);
+          neighbors = rangeQuery.getRangeForDBID(seed, epsilon);
+          counts.putInt(seed, neighbors.size());
+          LOG.incrementProcessed(objprog);
+          if(neighbors.size() >= minpts) {
+            expandNeighbors(neighbors, label, processed, seeds);
+          }
+        }
+      }
+      LOG.ensureCompleted(objprog);
+      clusters = null;
+    }
+
+    /**
+     * Assign the unlabeled neighbors of a core object to its cluster.
+     * 
+     * @param neighbors Neighbors
+     * @param label Cluster label
+     * @param processed Objects already processed
+     * @param seeds Seeds to expand
+     */
+    private void expandNeighbors(DoubleDBIDList neighbors, int label, HashSetModifiableDBIDs processed, ArrayModifiableDBIDs seeds) {
+      for(DoubleDBIDListIter neighbor = neighbors.iter(); neighbor.valid(); neighbor.advance()) {
+        if(labels.intValue(neighbor) != NOISE) {
+          continue;
+        }
+        labels.putInt(neighbor, label);
+        if(processed.add(neighbor)) {
+          seeds.add(neighbor);
+        }
+      }
+    }
+
+    /**
+     * Allocate a new cluster label.
+     * 
+     * @return New label
+     */
+    private int newLabel() {
+      if(numlabels == parent.length) {
+        int[] tmp = new int[parent.length << 1];
+        System.arraycopy(parent, 0, tmp, 0, parent.length);
+        parent = tmp;
+      }
+      parent[numlabels] = numlabels;
+      return numlabels++;
+    }
+
+    /**
+     * Find the current cluster of a label.
+     * 
+     * @param label Label
+     * @return Representative label
+     */
+    private int find(int label) {
+      while(parent[label] != label) {
+        label = parent[label] = parent[parent[label]];
+      }
+      return label;
+    }
+
+    /**
+     * Current cluster of an object.
+     * 
+     * @param id Object
+     * @return Cluster label, or {@link #NOISE}
+     */
+    private int clusterOf(DBIDRef id) {
+      final int label = labels.intValue(id);
+      return label == NOISE ? NOISE : find(label);
+    }
+
+    /**
+     * Test whether an object is a core object.
+     * 
+     * @param id Object
+     * @return {@code true} if core
+     */
+    private boolean isCore(DBIDRef id) {
+      return counts.intValue(id) >= minpts;
+    }
+
+    /**
+     * Range query, excluding a particular object.
+     * 
+     * @param obj Query object
+     * @param exclude Object to exclude (for deletions)
+     * @return Neighbors
+     */
+    private ArrayModifiableDBIDs neighbors(O obj, DBIDRef exclude) {
+      ++queries;
+      DoubleDBIDList res = rangeQuery.getRangeForObject(obj, epsilon);
+      ArrayModifiableDBIDs neighbors = DBIDUtil.newArray(res.size());
+      for(DoubleDBIDListIter it = res.iter(); it.valid(); it.advance()) {
+        if(!DBIDUtil.equal(it, exclude)) {
+          neighbors.add(it);
+        }
+      }
+      return neighbors;
+    }
+
+    @Override
+    public void insert(DBIDRef id) {
+      clusters = null;
+      ArrayModifiableDBIDs neighbors = neighbors(relation.get(id), id);
+      counts.putInt(id, neighbors.size() + 1);
+      labels.putInt(id, NOISE);
+      // Objects that became core objects.
+      ArrayModifiableDBIDs newcores = DBIDUtil.newArray();
+      for(DBIDIter it = neighbors.iter(); it.valid(); it.advance()) {
+        final int c = counts.intValue(it) + 1;
+        counts.putInt(it, c);
+        if(c == minpts) {
+          newcores.add(it);
+        }
+      }
+      if(isCore(id)) {
+        connectCore(id, neighbors);
+      }
+      for(DBIDIter it = newcores.iter(); it.valid(); it.advance()) {
+        connectCore(it, neighbors(relation.get(it), id));
+        // The new object was counted, but may not have been found.
+        if(labels.intValue(id) == NOISE) {
+          labels.putInt(id, clusterOf(it));
+        }
+      }
+      if(labels.intValue(id) == NOISE) {
+        // Border object of an existing core?
+        for(DBIDIter it = neighbors.iter(); it.valid(); it.advance()) {
+          if(isCore(it)) {
+            labels.putInt(id, clusterOf(it));
+            break;
+          }
+        }
+      }
+    }
+
+    /**
+     * Connect a new core object to the clusters of its neighbors.
+     * 
+     * @param core New core object
+     * @param neighbors Neighbors of the core object
+     */
+    private void connectCore(DBIDRef core, DBIDs neighbors) {
+      int label = clusterOf(core);
+      for(DBIDIter it = neighbors.iter(); it.valid(); it.advance()) {
+        if(!isCore(it)) {
+          continue;
+        }
+        final int other = clusterOf(it);
+        if(other == NOISE || other == label) {
+          continue;
+        }
+        if(label == NOISE) {
+          label = other;
+        }
+        else { // Merge clusters, keeping the smaller label.
+          parent[Math.max(label, other)] = Math.min(label, other);
+          label = Math.min(label, other);
+        }
+      }
+      if(label == NOISE) {
+        label = newLabel();
+      }
+      labels.putInt(core, label);
+      for(DBIDIter it = neighbors.iter(); it.valid(); it.advance()) {
+        if(labels.intValue(it) == NOISE) {
+          labels.putInt(it, label);
+        }
+      }
+    }
+
+    @Override
+    public boolean delete(DBIDRef id) {
+      if(counts.intValue(id) == 0) {
+        return false; // Not known.
+      }
+      clusters = null;
+      final boolean wascore = isCore(id);
+      ArrayModifiableDBIDs neighbors = neighbors(relation.get(id), id);
+      counts.delete(id);
+      labels.delete(id);
+      // Core objects that lost their core status.
+      ArrayModifiableDBIDs lost = DBIDUtil.newArray();
+      for(DBIDIter it = neighbors.iter(); it.valid(); it.advance()) {
+        final int c = counts.intValue(it) - 1;
+        counts.putInt(it, c);
+        if(c == minpts - 1) {
+          lost.add(it);
+        }
+      }
+      if(!wascore && lost.isEmpty()) {
+        return true;
+      }
+      // Remaining core objects in the neighborhood of lost cores, and objects
+      // whose border status needs to be verified.
+      HashSetModifiableDBIDs seeds = DBIDUtil.newHashSet();
+      HashSetModifiableDBIDs borders = DBIDUtil.newHashSet();
+      if(wascore) {
+        collectAffected(neighbors, seeds, borders);
+      }
+      for(DBIDIter it = lost.iter(); it.valid(); it.advance()) {
+        borders.add(it);
+        collectAffected(neighbors(relation.get(it), id), seeds, borders);
+      }
+      // Process each affected cluster separately.
+      while(!seeds.isEmpty()) {
+        DBIDIter first = seeds.iter();
+        final int label = clusterOf(first);
+        ArrayModifiableDBIDs cseeds = DBIDUtil.newArray();
+        for(DBIDIter it = seeds.iter(); it.valid(); it.advance()) {
+          if(clusterOf(it) == label) {
+            cseeds.add(it);
+          }
+        }
+        seeds.removeDBIDs(cseeds);
+        if(cseeds.size() > 1) {
+          splitCluster(cseeds, label, id);
+        }
+      }
+      // Reassign border objects.
+      for(DBIDIter it = borders.iter(); it.valid(); it.advance()) {
+        int label = NOISE;
+        for(DBIDIter n = neighbors(relation.get(it), id).iter(); n.valid(); n.advance()) {
+          if(isCore(n)) {
+            final int l = clusterOf(n);
+            label = label == NOISE || l == clusterOf(it) ? l : label;
+          }
+        }
+        labels.putInt(it, label);
+      }
+      return true;
+    }
+
+    /**
+     * Collect the core objects and border candidates in a neighborhood.
+     * 
+     * @param neighbors Neighborhood of a lost core object
+     * @param seeds Output: remaining core objects
+     * @param borders Output: non-core objects
+     */
+    private void collectAffected(DBIDs neighbors, HashSetModifiableDBIDs seeds, HashSetModifiableDBIDs borders) {
+      for(DBIDIter it = neighbors.iter(); it.valid(); it.advance()) {
+        (isCore(it) ? seeds : borders).add(it);
+      }
+    }
+
+    /**
+     * Detect and relabel a split of a cluster.
+     * 
+     * Each seed starts a search over the core objects. All searches advance one
+     * object at a time, and merge when they meet. A search
+     * that completes while others are still active found a separated part,
+     * which receives a new label. The last remaining search keeps the old
+     * label, and does not need to complete.
+     * 
+     * @param seeds Remaining core objects of the cluster, next to lost cores
+     * @param label Cluster label
+     * @param deleted Deleted object, to be ignored
+     */
+    private void splitCluster(ArrayModifiableDBIDs seeds, int label, DBIDRef deleted) {
+      final int m = seeds.size();
+      WritableIntegerDataStore search = DataStoreUtil.makeIntegerStorage(seeds, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+      int[] owner = new int[m];
+      List<ArrayModifiableDBIDs> queues = new ArrayList<>(m);
+      List<ArrayModifiableDBIDs> members = new ArrayList<>(m);
+      List<ArrayModifiableDBIDs> borders = new ArrayList<>(m);
+      int i = 0;
+      for(DBIDIter it = seeds.iter(); it.valid(); it.advance(), i++) {
+        owner[i] = i;
+        search.putInt(it, i);
+        ArrayModifiableDBIDs queue = DBIDUtil.newArray();
+        queue.add(it);
+        queues.add(queue);
+        members.add(DBIDUtil.newArray(queue));
+        borders.add(DBIDUtil.newArray());
+      }
+      DBIDVar cur = DBIDUtil.newVar();
+      int active = m;
+      while(active > 1) {
+        for(i = 0; i < m && active > 1; i++) {
+          ArrayModifiableDBIDs queue = queues.get(i);
+          if(queue == null) {
+            continue; // Merged, or completed.
+          }
+          if(queue.isEmpty()) {
+            // This part is separated from the remainder of the cluster.
+            final int nlabel = newLabel();
+            for(DBIDIter it = members.get(i).iter(); it.valid(); it.advance()) {
+              labels.putInt(it, nlabel);
+            }
+            for(DBIDIter it = borders.get(i).iter(); it.valid(); it.advance()) {
+              if(clusterOf(it) == label) {
+                labels.putInt(it, nlabel);
+              }
+            }
+            queues.set(i, null);
+            --active;
+            continue;
+          }
+          for(DBIDIter it = neighbors(relation.get(queue.pop(cur)), deleted).iter(); it.valid(); it.advance()) {
+            if(!isCore(it)) {
+              borders.get(i).add(it);
+              continue;
+            }
+            int j = search.intValue(it);
+            if(j < 0) {
+              search.putInt(it, i);
+              queue.add(it);
+              members.get(i).add(it);
+              continue;
+            }
+            while(owner[j] != j) {
+              j = owner[j];
+            }
+            if(j != i) { // Searches meet: merge.
+              owner[j] = i;
+              queue.addDBIDs(queues.get(j));
+              members.get(i).addDBIDs(members.get(j));
+              borders.get(i).addDBIDs(borders.get(j));
+              queues.set(j, null);
+              members.set(j, null);
+              borders.set(j, null);
+              --active;
+            }
+          }
+        }
+      }
+      search.destroy();
+    }
+
+    @Override
+    public void insertAll(DBIDs ids) {
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        insert(iter);
+      }
+    }
+
+    @Override
+    public void deleteAll(DBIDs ids) {
+      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        delete(iter);
+      }
+    }
+
+    /**
+     * Materialize the current clusters.
+     * 
+     * @return Clustering
+     */
+    private Clustering<Model> getClusters() {
+      if(clusters != null) {
+        return clusters;
+      }
+      int[] map = new int[numlabels];
+      List<ModifiableDBIDs> members = new ArrayList<>();
+      ModifiableDBIDs noise = DBIDUtil.newArray();
+      for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
+        final int label = clusterOf(iditer);
+        if(label == NOISE) {
+          noise.add(iditer);
+          continue;
+        }
+        if(map[label] == 0) {
+          members.add(DBIDUtil.newArray());
+          map[label] = members.size();
+        }
+        members.get(map[label] - 1).add(iditer);
+      }
+      Clustering<Model> result = new Clustering<>(getLongName(), getShortName());
+      for(ModifiableDBIDs ids : members) {
+        result.addToplevelCluster(new Cluster<Model>(ids, ClusterModel.CLUSTER));
+      }
+      result.addToplevelCluster(new Cluster<Model>(noise, true, ClusterModel.CLUSTER));
+      return clusters = result;
+    }
+
+    @Override
+    public List<Cluster<Model>> getToplevelClusters() {
+      return getClusters().getToplevelClusters();
+    }
+
+    @Override
+    public Hierarchy<Cluster<Model>> getClusterHierarchy() {
+      return getClusters().getClusterHierarchy();
+    }
+
+    @Override
+    public List<Cluster<Model>> getAllClusters() {
+      return getClusters().getAllClusters();
+    }
+
+    @Override
+    public Hierarchy.Iter<Cluster<Model>> iterToplevelClusters() {
+      return getClusters().iterToplevelClusters();
+    }
+
+    @Override
+    public void addToplevelCluster(Cluster<Model> clus) {
+      throw new UnsupportedOperationException("Clusters of an incremental clustering cannot be modified.");
+    }
+
+    @Override
+    public void addChildCluster(Cluster<Model> parent, Cluster<Model> child) {
+      throw new UnsupportedOperationException("Clusters of an incremental clustering cannot be modified.");
+    }
+
+    @Override
+    public void logStatistics() {
+      LOG.statistics(new LongStatistic(IncrementalDBSCAN.class.getName() + ".update-queries", queries));
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<O> extends AbstractDistanceBasedAlgorithm.Parameterizer<O> {
+    /**
+     * Holds the epsilon radius threshold.
+     */
+    protected double epsilon;
+
+    /**
+     * Holds the minimum cluster size.
+     */
+    protected int minpts;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      DoubleParameter epsilonP = new DoubleParameter(DBSCAN.Parameterizer.EPSILON_ID) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+      if(config.grab(epsilonP)) {
+        epsilon = epsilonP.getValue();
+      }
+
+      IntParameter minptsP = new IntParameter(DBSCAN.Parameterizer.MINPTS_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(minptsP)) {
+        minpts = minptsP.getValue();
+      }
+    }
+
+    @Override
+    protected IncrementalDBSCAN<O> makeInstance() {
+      return new IncrementalDBSCAN<>(distanceFunction, epsilon, minpts);
+    }
+  }
+}
@@ -0,0 +1,613 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.ClusterModel;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.WeightedQuickUnionInteger;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Partitioned variant of {@link GriDBSCAN}.
+ *
+ * Every grid cell, including its epsilon-overlap with the neighboring cells, is
+ * clustered independently as a self-contained partition, in parallel. The
+ * local cluster labels are then reconciled using a union-find data structure:
+ * two local clusters are merged if they share a point that is a core point in
+ * at least one partition. Because the home cell of every point contains its
+ * full epsilon neighborhood, this yields the same clusters as DBSCAN (up to
+ * the usual ambiguity of border points).
+ *
+ * Optionally, the partitions can be spilled to temporary files before
+ * processing, such that the working set of the clustering step is bounded by
+ * the partitions currently being processed.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf Instance
+ *
+ * @param <V> the type of vector the algorithm is applied to
+ */
+public class ParallelGriDBSCAN<V extends NumberVector> extends GriDBSCAN<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelGriDBSCAN.class);
+
+  /**
+   * Spill partitions to disk.
+   */
+  protected boolean spill;
+
+  /**
+   * Constructor with parameters.
+   *
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts parameter
+   * @param gridwidth Grid width
+   * @param spill Spill partitions to temporary files
+   */
+  public ParallelGriDBSCAN(NumberVectorDistanceFunction<? super V> distanceFunction, double epsilon, int minpts, double gridwidth, boolean spill) {
+    super(distanceFunction, epsilon, minpts, gridwidth);
+    this.spill = spill;
+  }
+
+  @Override
+  protected GriDBSCAN.Instance<V> newInstance(double gridwidth) {
+    return new Instance<V>(getDistanceFunction(), epsilon, minpts, gridwidth, spill);
+  }
+
+  /**
+   * Instance, for a single run.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.composedOf Partition
+   *
+   * @param <V> Vector type
+   */
+  protected static class Instance<V extends NumberVector> extends GriDBSCAN.Instance<V> {
+    /**
+     * Spill partitions to disk.
+     */
+    protected boolean spill;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param epsilon Epsilon
+     * @param minpts MinPts
+     * @param gridwidth Grid width
+     * @param spill Spill partitions to temporary files
+     */
+    public Instance(DistanceFunction<? super V> distanceFunction, double epsilon, int minpts, double gridwidth, boolean spill) {
+      super(distanceFunction, epsilon, minpts, gridwidth);
+      this.spill = spill;
+    }
+
+    @Override
+    public Clustering<Model> run(Relation<V> relation) {
+      final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      final int size = ids.size();
+      initializeGrid(relation);
+
+      // Map object ids to array offsets, used as global object identifiers.
+      WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        offsets.putInt(it, it.getOffset());
+      }
+      // Process the cells in a deterministic order.
+      long[] keys = new long[grid.size()];
+      int numpart = 0;
+      for(TLongObjectIterator<ModifiableDBIDs> it = grid.iterator(); it.hasNext();) {
+        it.advance();
+        if(it.value().size() >= minpts) {
+          keys[numpart++] = it.key();
+        }
+      }
+      Arrays.sort(keys, 0, numpart);
+      Partition[] parts = new Partition[numpart];
+      // Spill files, to remove them even if the processing fails.
+      File[] files = spill ? new File[numpart] : null;
+      try {
+        for(int i = 0; i < numpart; i++) {
+          parts[i] = makePartition(relation, grid.get(keys[i]), offsets);
+          if(files != null) {
+            files[i] = parts[i].file;
+          }
+        }
+        offsets.destroy();
+        grid = null; // Partitions are self-contained now.
+        LOG.statistics(new LongStatistic(ParallelGriDBSCAN.class.getName() + ".partitions", numpart));
+
+        Merger merger = new Merger(size);
+        FiniteProgress cprog = LOG.isVerbose() ? new FiniteProgress("Processing grid cells", numpart, LOG) : null;
+        ParallelCore core = ParallelCore.getCore();
+        if(core.getParallelism() <= 1 || numpart <= 1) {
+          for(int i = 0; i < numpart; i++) {
+            merger.merge(parts[i].call());
+            parts[i] = null;
+            LOG.incrementProcessed(cprog);
+          }
+        }
+        else {
+          // Bound the number of partitions in memory.
+          final int maxpending = core.getParallelism() << 1;
+          core.connect();
+          try {
+            ArrayDeque<Future<Partition>> pending = new ArrayDeque<>(maxpending);
+            for(int i = 0; i < numpart; i++) {
+              if(pending.size() >= maxpending) {
+                merger.merge(pending.poll().get());
+                LOG.incrementProcessed(cprog);
+              }
+              pending.add(core.submit(parts[i]));
+              parts[i] = null;
+            }
+            while(!pending.isEmpty()) {
+              merger.merge(pending.poll().get());
+              LOG.incrementProcessed(cprog);
+            }
+          }
+          catch(ExecutionException e) {
+            throw new AbortException("Parallel GriDBSCAN failed.", e.getCause());
+          }
+          catch(InterruptedException e) {
+            throw new AbortException("GriDBSCAN interrupted.");
+          }
+          finally {
+            core.disconnect();
+          }
+        }
+        LOG.ensureCompleted(cprog);
+        return merger.buildResult(ids);
+      }
+      finally {
+        if(files != null) {
+          for(File file : files) {
+            if(file != null && file.exists() && !file.delete()) {
+              LOG.warning("Could not delete temporary file " + file);
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Build the data partition of a single cell.
+     *
+     * @param relation Data relation
+     * @param cellids Objects in the cell
+     * @param offsets Object offsets
+     * @return Partition
+     */
+    private Partition makePartition(Relation<V> relation, ModifiableDBIDs cellids, WritableIntegerDataStore offsets) {
+      final int m = cellids.size();
+      int[] offs = new int[m];
+      NumberVector[] vecs = new NumberVector[m];
+      int i = 0;
+      for(DBIDIter it = cellids.iter(); it.valid(); it.advance(), i++) {
+        offs[i] = offsets.intValue(it);
+        vecs[i] = relation.get(it);
+      }
+      Partition part = new Partition(distanceFunction, epsilon, minpts, offs, vecs);
+      if(spill) {
+        part.spill(dim);
+      }
+      return part;
+    }
+  }
+
+  /**
+   * A self-contained data partition, clustered by a local DBSCAN.
+   *
+   * @author Erich Schubert
+   */
+  private static class Partition implements Callable<Partition> {
+    /**
+     * Local noise marker.
+     */
+    private static final int LOCAL_NOISE = Integer.MIN_VALUE;
+
+    /**
+     * Distance function.
+     */
+    private NumberVectorDistanceFunction<?> distanceFunction;
+
+    /**
+     * Query radius.
+     */
+    private double epsilon;
+
+    /**
+     * Minimum number of neighbors.
+     */
+    private int minpts;
+
+    /**
+     * Global offsets of the objects.
+     */
+    int[] offs;
+
+    /**
+     * Object vectors, or {@code null} when spilled.
+     */
+    private NumberVector[] vecs;
+
+    /**
+     * Spill file, or {@code null} when in memory.
+     */
+    File file;
+
+    /**
+     * Local cluster labels: {@code c} for core points, {@code -c} for border
+     * points, and 0 for noise.
+     */
+    int[] labels;
+
+    /**
+     * Number of local clusters.
+     */
+    int nclusters;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param epsilon Query radius
+     * @param minpts Minimum number of neighbors
+     * @param offs Global offsets
+     * @param vecs Object vectors
+     */
+    Partition(DistanceFunction<?> distanceFunction, double epsilon, int minpts, int[] offs, NumberVector[] vecs) {
+      this.distanceFunction = (NumberVectorDistanceFunction<?>) distanceFunction;
+      this.epsilon = epsilon;
+      this.minpts = minpts;
+      this.offs = offs;
+      this.vecs = vecs;
+    }
+
+    /**
+     * Write the partition to a temporary file, and release the memory.
+     *
+     * @param dim Dimensionality
+     */
+    void spill(int dim) {
+      try {
+        file = File.createTempFile("elki-gridbscan", ".bin");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+          out.writeInt(offs.length);
+          out.writeInt(dim);
+          for(int i = 0; i < offs.length; i++) {
+            out.writeInt(offs[i]);
+            final NumberVector vec = vecs[i];
+            for(int d = 0; d < dim; d++) {
+              out.writeDouble(vec.doubleValue(d));
+            }
+          }
+        }
+      }
+      catch(IOException e) {
+        throw new AbortException("Could not spill partition to disk.", e);
+      }
+      offs = null;
+      vecs = null;
+    }
+
+    /**
+     * Read a spilled partition back into memory.
+     */
+    private void load() {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        final int m = in.readInt(), dim = in.readInt();
+        offs = new int[m];
+        vecs = new NumberVector[m];
+        for(int i = 0; i < m; i++) {
+          offs[i] = in.readInt();
+          double[] v = new double[dim];
+          for(int d = 0; d < dim; d++) {
+            v[d] = in.readDouble();
+          }
+          vecs[i] = DoubleVector.wrap(v);
+        }
+      }
+      catch(IOException e) {
+        throw new AbortException("Could not read spilled partition.", e);
+      }
+      finally {
+        file.delete();
+        file = null;
+      }
+    }
+
+    @Override
+    public Partition call() {
+      if(file != null) {
+        load();
+      }
+      final int m = vecs.length;
+      labels = new int[m];
+      int[] neighbors = new int[m], queue = new int[m];
+      int c = 0;
+      for(int i = 0; i < m; i++) {
+        if(labels[i] != 0) {
+          continue;
+        }
+        int n = rangeQuery(i, neighbors);
+        if(n < minpts) {
+          labels[i] = LOCAL_NOISE;
+          continue;
+        }
+        labels[i] = ++c;
+        int qlen = 0;
+        // Expand the cluster, starting with the first core point.
+        while(true) {
+          for(int j = 0; j < n; j++) {
+            final int o = neighbors[j], l = labels[o];
+            if(l == 0) {
+              labels[o] = -c;
+              queue[qlen++] = o;
+            }
+            else if(l == LOCAL_NOISE) {
+              labels[o] = -c;
+            }
+          }
+          if(qlen == 0) {
+            break;
+          }
+          final int p = queue[--qlen];
+          n = rangeQuery(p, neighbors);
+          if(n >= minpts) {
+            labels[p] = c;
+          }
+          else {
+            n = 0; // Border point, do not expand.
+          }
+        }
+      }
+      for(int i = 0; i < m; i++) {
+        if(labels[i] == LOCAL_NOISE) {
+          labels[i] = 0;
+        }
+      }
+      nclusters = c;
+      vecs = null; // No longer needed.
+      return this;
+    }
+
+    /**
+     * Linear scan range query within the partition.
+     *
+     * @param q Query offset
+     * @param neighbors Output buffer
+     * @return Number of neighbors
+     */
+    private int rangeQuery(int q, int[] neighbors) {
+      final NumberVector vq = vecs[q];
+      int n = 0;
+      for(int j = 0; j < vecs.length; j++) {
+        if(distanceFunction.distance(vq, vecs[j]) <= epsilon) {
+          neighbors[n++] = j;
+        }
+      }
+      return n;
+    }
+  }
+
+  /**
+   * Merge the local clusterings into a global clustering.
+   *
+   * @author Erich Schubert
+   */
+  private static class Merger {
+    /**
+     * Union-find over the local clusters of all partitions.
+     */
+    private WeightedQuickUnionInteger uf = new WeightedQuickUnionInteger();
+
+    /**
+     * First cluster assignment of each object (plus one; 0 is noise).
+     */
+    private int[] first;
+
+    /**
+     * Objects known to be core points.
+     */
+    private long[] core;
+
+    /**
+     * Border assignments not yet resolved: object offset, cluster.
+     */
+    private TIntArrayList pending = new TIntArrayList();
+
+    /**
+     * Constructor.
+     *
+     * @param size Data set size
+     */
+    Merger(int size) {
+      first = new int[size];
+      core = BitsUtil.zero(size);
+    }
+
+    /**
+     * Merge the result of a single partition.
+     *
+     * @param part Partition
+     */
+    void merge(Partition part) {
+      int[] gids = new int[part.nclusters + 1];
+      for(int c = 1; c <= part.nclusters; c++) {
+        gids[c] = uf.nextIndex(1);
+      }
+      final int[] offs = part.offs, labels = part.labels;
+      for(int i = 0; i < offs.length; i++) {
+        final int l = labels[i], o = offs[i];
+        if(l == 0) {
+          continue;
+        }
+        final int g = gids[l > 0 ? l : -l];
+        if(l > 0) {
+          BitsUtil.setI(core, o);
+        }
+        if(first[o] == 0) {
+          first[o] = g + 1;
+        }
+        else if(l > 0 || BitsUtil.get(core, o)) {
+          uf.union(first[o] - 1, g);
+        }
+        else {
+          pending.add(o);
+          pending.add(g);
+        }
+      }
+    }
+
+    /**
+     * Resolve pending merges, and build the final clustering.
+     *
+     * @param ids Object ids, in offset order
+     * @return Clustering
+     */
+    Clustering<Model> buildResult(ArrayDBIDs ids) {
+      // Border records seen before the object was known to be core.
+      for(int i = 0; i < pending.size(); i += 2) {
+        final int o = pending.getQuick(i);
+        if(BitsUtil.get(core, o)) {
+          uf.union(first[o] - 1, pending.getQuick(i + 1));
+        }
+      }
+      pending = null;
+      int[] cnum = new int[uf.size()];
+      Arrays.fill(cnum, -1);
+      ModifiableDBIDs[] clusters = new ModifiableDBIDs[uf.size()];
+      ModifiableDBIDs noise = DBIDUtil.newArray();
+      int numc = 0;
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final int f = first[it.getOffset()];
+        if(f == 0) {
+          noise.add(it);
+          continue;
+        }
+        final int root = uf.find(f - 1);
+        int cn = cnum[root];
+        if(cn < 0) {
+          cn = cnum[root] = numc++;
+          clusters[cn] = DBIDUtil.newArray();
+        }
+        clusters[cn].add(it);
+      }
+      Clustering<Model> result = new Clustering<>("DBSCAN Clustering", "dbscan-clustering");
+      for(int i = 0; i < numc; i++) {
+        result.addToplevelCluster(new Cluster<Model>(clusters[i], ClusterModel.CLUSTER));
+      }
+      if(noise.size() > 0) {
+        result.addToplevelCluster(new Cluster<Model>(noise, true, ClusterModel.CLUSTER));
+      }
+      return result;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Vector type to use
+   */
+  public static class Parameterizer<O extends NumberVector> extends GriDBSCAN.Parameterizer<O> {
+    /**
+     * Flag to spill the partitions to temporary files before clustering.
+     */
+    public static final OptionID SPILL_ID = new OptionID("gridbscan.spill", "Write the grid partitions to temporary files before clustering, to bound memory usage.");
+
+    /**
+     * Spill partitions to disk.
+     */
+    protected boolean spill;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      Flag spillF = new Flag(SPILL_ID);
+      if(config.grab(spillF)) {
+        spill = spillF.isTrue();
+      }
+    }
+
+    @Override
+    protected ParallelGriDBSCAN<O> makeInstance() {
+      return new ParallelGriDBSCAN<>((NumberVectorDistanceFunction<? super O>) distanceFunction, epsilon, minpts, gridwidth, spill);
+    }
+  }
+}
@@ -148,6 +148,29 @@ public class DiagonalGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public DiagonalGaussianModel emptyCopy() {
+    return new DiagonalGaussianModel(0., new double[mean.length], norm, new double[mean.length]);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<EMModel> other, double scale) {
+    DiagonalGaussianModel o = (DiagonalGaussianModel) other;
+    assert (o.mean.length == mean.length);
+    final double owsum = o.wsum * scale;
+    if(!(owsum > 0.)) {
+      return;
+    }
+    final double nwsum = wsum + owsum;
+    final double f = owsum / nwsum, g = wsum * f;
+    for(int i = 0; i < mean.length; i++) {
+      final double delta = o.mean[i] - mean[i];
+      variances[i] += o.variances[i] * scale + delta * delta * g;
+      mean[i] += delta * f;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep() {
     if(wsum > 0.) {
@@ -96,29 +96,32 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
   /**
    * Number of clusters
    */
-  private int k;
+  protected int k;
 
   /**
    * Delta parameter
    */
-  private double delta;
+  protected double delta;
 
   /**
    * Factory for producing the initial cluster model.
    */
-  private EMClusterModelFactory<V, M> mfactory;
+  protected EMClusterModelFactory<V, M> mfactory;
 
   /**
    * Maximum number of iterations to allow
    */
-  private int maxiter;
+  protected int maxiter;
 
   /**
    * Retain soft assignments.
    */
-  private boolean soft;
+  protected boolean soft;
 
-  private static final double MIN_LOGLIKELIHOOD = -100000;
+  /**
+   * Minimum log likelihood of a single object.
+   */
+  protected static final double MIN_LOGLIKELIHOOD = -100000;
 
   /**
    * Soft assignment result type.
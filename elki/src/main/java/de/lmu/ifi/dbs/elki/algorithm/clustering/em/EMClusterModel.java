@@ -51,6 +51,26 @@ public interface EMClusterModel<M extends MeanModel> {
    */
   void finalizeEStep();
 
+  /**
+   * Create an empty model of the same type and dimensionality, which can be
+   * used to collect the statistics of a part of the data with
+   * {@link #updateE}. These partial statistics are combined with
+   * {@link #mergeE}.
+   * 
+   * @return Empty model
+   */
+  EMClusterModel<M> emptyCopy();
+
+  /**
+   * Merge the statistics collected by another model into this model. Used
+   * between {@link #beginEStep()} and {@link #finalizeEStep()}, in place of
+   * calling {@link #updateE} for each vector seen by the other model.
+   * 
+   * @param other Model with partial statistics, see {@link #emptyCopy()}
+   * @param scale Factor for the weights of the other model
+   */
+  void mergeE(EMClusterModel<M> other, double scale);
+
   /**
    * Estimate the likelihood of a vector.
    * 
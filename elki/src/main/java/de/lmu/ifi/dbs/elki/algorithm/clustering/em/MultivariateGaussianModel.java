@@ -123,6 +123,20 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
     this.wsum = 0.;
   }
 
+  /**
+   * Constructor for an empty model, without inverting the covariance matrix.
+   * 
+   * @param dim Dimensionality
+   * @param norm Normalization factor.
+   */
+  private MultivariateGaussianModel(int dim, double norm) {
+    this.mean = new double[dim];
+    this.norm = norm;
+    this.normDistrFactor = 1. / FastMath.sqrt(norm);
+    this.nmea = new double[dim];
+    this.covariance = new double[dim][dim];
+  }
+
   @Override
   public void beginEStep() {
     wsum = 0.;
@@ -159,6 +173,39 @@ public class MultivariateGaussianModel implements EMClusterModel<EMModel> {
     System.arraycopy(nmea, 0, mean, 0, nmea.length);
   }
 
+  @Override
+  public MultivariateGaussianModel emptyCopy() {
+    return new MultivariateGaussianModel(mean.length, norm);
+  }
+
+  @Override
+  public void mergeE(EMClusterModel<EMModel> other, double scale) {
+    MultivariateGaussianModel o = (MultivariateGaussianModel) other;
+    assert (o.mean.length == mean.length);
+    final double owsum = o.wsum * scale;
+    if(!(owsum > 0.)) {
+      return;
+    }
+    final double nwsum = wsum + owsum;
+    final double f = owsum / nwsum, g = wsum * f;
+    for(int i = 0; i < mean.length; i++) {
+      nmea[i] = o.mean[i] - mean[i];
+    }
+    // Pooled scatter: both parts, plus the scatter of the two means.
+    for(int i = 0; i < mean.length; i++) {
+      final double[] rowi = covariance[i], orowi = o.covariance[i];
+      for(int j = i; j < mean.length; j++) {
+        final double v = rowi[j] + orowi[j] * scale + nmea[i] * nmea[j] * g;
+        rowi[j] = v;
+        covariance[j][i] = v;
+      }
+    }
+    for(int i = 0; i < mean.length; i++) {
+      mean[i] += nmea[i] * f;
+    }
+    wsum = nwsum;
+  }
+
   @Override
   public void finalizeEStep() {
     if(wsum > Double.MIN_NORMAL) {
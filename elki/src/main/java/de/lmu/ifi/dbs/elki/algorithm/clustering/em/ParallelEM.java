@@ -0,0 +1,612 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.MeanModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.GreaterConstraint;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+import net.jafama.FastMath;
+
+/**
+ * Parallel version of EM clustering, with an optional mini-batch mode.
+ * 
+ * The data is split into blocks, whose number and size only depend on the data
+ * size. For each block, the expectation step computes the log-likelihood and
+ * the cluster probabilities, and directly collects the weighted statistics of
+ * each cluster into a partial model (see {@link EMClusterModel#emptyCopy()}).
+ * The partial models are then merged in block order, so the result does not
+ * depend on the number of threads. Because the expectation and maximization
+ * steps are fused, the cluster probabilities of all objects are only stored if
+ * soft assignments are requested.
+ * 
+ * If a mini-batch size is given, the models are instead updated after every
+ * mini-batch using stepwise EM: the running statistics are interpolated with
+ * the statistics of the current batch with step size \((t+1)^{-\alpha}\). One
+ * iteration then is one pass over the data in random order.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.2
+ * 
+ * @param <V> vector type to analyze
+ * @param <M> model type to produce
+ */
+@Reference(authors = "P. Liang, D. Klein", //
+    title = "Online EM for Unsupervised Models", //
+    booktitle = "Proc. Human Language Technologies: The 2009 Annual Conference of the North American Chapter of the ACL", //
+    url = "http://www.aclweb.org/anthology/N09-1069")
+public class ParallelEM<V extends NumberVector, M extends MeanModel> extends EM<V, M> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelEM.class);
+
+  /**
+   * Maximum number of blocks per pass.
+   */
+  private static final int MAX_BLOCKS = 64;
+
+  /**
+   * Minimum block size.
+   */
+  private static final int MIN_BLOCKSIZE = 256;
+
+  /**
+   * Mini-batch size, 0 to process all data in each iteration.
+   */
+  protected int minibatch;
+
+  /**
+   * Decay exponent of the mini-batch step size.
+   */
+  protected double decay;
+
+  /**
+   * Random generator for the mini-batch order.
+   */
+  protected RandomFactory rnd;
+
+  /**
+   * Constructor.
+   * 
+   * @param k k parameter
+   * @param delta delta parameter
+   * @param mfactory EM cluster model factory
+   * @param maxiter Maximum number of iterations
+   * @param soft Include soft assignments
+   */
+  public ParallelEM(int k, double delta, EMClusterModelFactory<V, M> mfactory, int maxiter, boolean soft) {
+    this(k, delta, mfactory, maxiter, soft, 0, 1., RandomFactory.DEFAULT);
+  }
+
+  /**
+   * Constructor.
+   * 
+   * @param k k parameter
+   * @param delta delta parameter
+   * @param mfactory EM cluster model factory
+   * @param maxiter Maximum number of iterations
+   * @param soft Include soft assignments
+   * @param minibatch Mini-batch size, 0 to use all data in each iteration
+   * @param decay Decay exponent of the mini-batch step size, in (0.5;1]
+   * @param rnd Random generator for the mini-batch order
+   */
+  public ParallelEM(int k, double delta, EMClusterModelFactory<V, M> mfactory, int maxiter, boolean soft, int minibatch, double decay, RandomFactory rnd) {
+    super(k, delta, mfactory, maxiter, soft);
+    this.minibatch = minibatch;
+    this.decay = decay;
+    this.rnd = rnd;
+  }
+
+  @Override
+  public Clustering<M> run(Database database, Relation<V> relation) {
+    if(relation.size() == 0) {
+      throw new IllegalArgumentException("database empty: must contain elements");
+    }
+    // initial models
+    if(LOG.isVerbose()) {
+      LOG.verbose("initializing " + k + " models");
+    }
+    List<? extends EMClusterModel<M>> models = mfactory.buildInitialModels(database, relation, k, SquaredEuclideanDistanceFunction.STATIC);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+    int[] assignment = new int[size];
+    double[][] probs = isSoft() ? new double[size][] : null;
+
+    ParallelCore core = ParallelCore.getCore();
+    if(core.getParallelism() <= 1 || size < MIN_BLOCKSIZE << 1) {
+      core = null;
+    }
+    else {
+      core.connect();
+    }
+    try {
+      if(minibatch > 0 && minibatch < size) {
+        models = iterateMiniBatch(relation, ids, models, core);
+        double emNew = expectation(relation, ids, 0, size, models, null, assignment, probs, core).loglik / size;
+        if(LOG.isVerbose()) {
+          LOG.verbose("final expectation value: " + emNew);
+        }
+      }
+      else {
+        models = iterate(relation, ids, models, assignment, probs, core);
+      }
+    }
+    finally {
+      if(core != null) {
+        core.disconnect();
+      }
+    }
+
+    if(LOG.isVerbose()) {
+      LOG.verbose("assigning clusters");
+    }
+    // fill result with clusters and models
+    List<ModifiableDBIDs> hardClusters = new ArrayList<>(k);
+    for(int i = 0; i < k; i++) {
+      hardClusters.add(DBIDUtil.newArray());
+    }
+    for(DBIDArrayIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+      hardClusters.get(assignment[iditer.getOffset()]).add(iditer);
+    }
+    Clustering<M> result = new Clustering<>("EM Clustering", "em-clustering");
+    for(int i = 0; i < k; i++) {
+      result.addToplevelCluster(new Cluster<>(hardClusters.get(i), models.get(i).finalizeCluster()));
+    }
+    if(isSoft()) {
+      WritableDataStore<double[]> probClusterIGivenX = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_SORTED, double[].class);
+      for(DBIDArrayIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+        probClusterIGivenX.put(iditer, probs[iditer.getOffset()]);
+      }
+      result.addChildResult(new MaterializedRelation<>("cluster assignments", "em-soft-score", SOFT_TYPE, probClusterIGivenX, ids));
+    }
+    return result;
+  }
+
+  /**
+   * Iterate EM on the full data set.
+   * 
+   * @param relation Data relation
+   * @param ids Object ids
+   * @param models Initial models
+   * @param assignment Output: hard assignment
+   * @param probs Output: soft assignment, may be {@code null}
+   * @param core Parallel core, may be {@code null}
+   * @return Final models
+   */
+  protected List<? extends EMClusterModel<M>> iterate(Relation<V> relation, ArrayDBIDs ids, List<? extends EMClusterModel<M>> models, int[] assignment, double[][] probs, ParallelCore core) {
+    final int size = ids.size();
+    List<EMClusterModel<M>> cur = new ArrayList<>(models);
+    // Models for the next iteration.
+    List<EMClusterModel<M>> next = emptyCopies(models);
+    double emOld = Double.NaN;
+    for(int it = 0;; it++) {
+      final boolean last = maxiter >= 0 && it >= maxiter;
+      Partial<M> stats = expectation(relation, ids, 0, size, cur, last ? null : next, assignment, probs, core);
+      final double emNew = stats.loglik / size;
+      if(LOG.isVerbose()) {
+        LOG.verbose("iteration " + it + " - expectation value: " + emNew);
+      }
+      if(last || (it > 0 && (Math.abs(emOld - emNew) <= delta || emOld > emNew))) {
+        return cur;
+      }
+      for(int i = 0; i < k; i++) {
+        EMClusterModel<M> m = next.get(i);
+        m.finalizeEStep();
+        m.setWeight(stats.wsum[i] / size);
+      }
+      List<EMClusterModel<M>> tmp = cur;
+      cur = next;
+      next = tmp;
+      for(EMClusterModel<M> m : next) {
+        m.beginEStep();
+      }
+      emOld = emNew;
+    }
+  }
+
+  /**
+   * Iterate stepwise EM on mini-batches.
+   * 
+   * @param relation Data relation
+   * @param ids Object ids
+   * @param models Initial models
+   * @param core Parallel core, may be {@code null}
+   * @return Final models
+   */
+  protected List<? extends EMClusterModel<M>> iterateMiniBatch(Relation<V> relation, ArrayDBIDs ids, List<? extends EMClusterModel<M>> models, ParallelCore core) {
+    final int size = ids.size();
+    ArrayModifiableDBIDs order = DBIDUtil.newArray(ids);
+    Random random = rnd.getSingleThreadedRandom();
+    // Running statistics, and spare storage to compute the next statistics.
+    List<EMClusterModel<M>> running = emptyCopies(models), spare = emptyCopies(models);
+    double[] rweight = new double[k];
+    long t = 0;
+    double emOld = Double.NaN;
+    for(int it = 1; it <= maxiter || maxiter < 0; it++) {
+      DBIDUtil.randomShuffle(order, random);
+      double loglik = 0.;
+      for(int start = 0; start < size; start += minibatch) {
+        final int end = Math.min(start + minibatch, size);
+        final double eta = FastMath.pow(++t, -decay);
+        final double scale = eta / (end - start);
+        for(int i = 0; i < k; i++) {
+          EMClusterModel<M> m = spare.get(i);
+          m.beginEStep();
+          m.mergeE(running.get(i), 1. - eta);
+          rweight[i] *= 1. - eta;
+        }
+        Partial<M> stats = expectation(relation, order, start, end, models, spare, scale, null, null, core);
+        loglik += stats.loglik;
+        List<EMClusterModel<M>> tmp = running;
+        running = spare;
+        spare = tmp;
+        // Maximization step, from the running statistics.
+        for(int i = 0; i < k; i++) {
+          rweight[i] += stats.wsum[i] * scale;
+          EMClusterModel<M> m = models.get(i);
+          m.beginEStep();
+          m.mergeE(running.get(i), 1.);
+          m.finalizeEStep();
+          m.setWeight(rweight[i]);
+        }
+      }
+      final double emNew = loglik / size;
+      if(LOG.isVerbose()) {
+        LOG.verbose("iteration " + it + " - expectation value: " + emNew);
+      }
+      if(Math.abs(emOld - emNew) <= delta) {
+        break;
+      }
+      emOld = emNew;
+    }
+    return models;
+  }
+
+  /**
+   * Create empty copies of the models, to collect statistics.
+   * 
+   * @param models Models
+   * @return Empty models
+   */
+  private static <M extends MeanModel> List<EMClusterModel<M>> emptyCopies(List<? extends EMClusterModel<M>> models) {
+    List<EMClusterModel<M>> copies = new ArrayList<>(models.size());
+    for(EMClusterModel<M> m : models) {
+      EMClusterModel<M> c = m.emptyCopy();
+      c.beginEStep();
+      copies.add(c);
+    }
+    return copies;
+  }
+
+  /**
+   * Expectation step on a range of objects, collecting the statistics for the
+   * next maximization step.
+   * 
+   * @param relation Data relation
+   * @param ids Object ids
+   * @param start First offset
+   * @param end End offset (exclusive)
+   * @param models Current models
+   * @param next Models to collect the statistics into, may be {@code null}
+   * @param assignment Output: hard assignment, may be {@code null}
+   * @param probs Output: soft assignment, may be {@code null}
+   * @param core Parallel core, may be {@code null}
+   * @return Log-likelihood and weight sums
+   */
+  private Partial<M> expectation(Relation<V> relation, ArrayDBIDs ids, int start, int end, List<? extends EMClusterModel<M>> models, List<EMClusterModel<M>> next, int[] assignment, double[][] probs, ParallelCore core) {
+    return expectation(relation, ids, start, end, models, next, 1., assignment, probs, core);
+  }
+
+  /**
+   * Expectation step on a range of objects, collecting the statistics for the
+   * next maximization step.
+   * 
+   * @param relation Data relation
+   * @param ids Object ids
+   * @param start First offset
+   * @param end End offset (exclusive)
+   * @param models Current models
+   * @param next Models to collect the statistics into, may be {@code null}
+   * @param scale Weight of the collected statistics
+   * @param assignment Output: hard assignment, may be {@code null}
+   * @param probs Output: soft assignment, may be {@code null}
+   * @param core Parallel core, may be {@code null}
+   * @return Log-likelihood and (unscaled) weight sums
+   */
+  private Partial<M> expectation(Relation<V> relation, ArrayDBIDs ids, int start, int end, List<? extends EMClusterModel<M>> models, List<EMClusterModel<M>> next, double scale, int[] assignment, double[][] probs, ParallelCore core) {
+    final int blocksize = Math.max(MIN_BLOCKSIZE, (end - start + MAX_BLOCKS - 1) / MAX_BLOCKS);
+    List<Partial<M>> blocks = new ArrayList<>();
+    for(int bstart = start; bstart < end; bstart += blocksize) {
+      blocks.add(new Partial<>(relation, ids, bstart, Math.min(bstart + blocksize, end), models, next != null, assignment, probs));
+    }
+    try {
+      if(core == null || blocks.size() == 1) {
+        for(Partial<M> block : blocks) {
+          block.call();
+        }
+      }
+      else {
+        List<Future<Partial<M>>> futures = new ArrayList<>(blocks.size());
+        for(Partial<M> block : blocks) {
+          futures.add(core.submit(block));
+        }
+        for(Future<Partial<M>> fut : futures) {
+          fut.get();
+        }
+      }
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Parallel EM failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("EM interrupted.");
+    }
+    // Merge in block order, for deterministic results.
+    Partial<M> total = blocks.get(0);
+    for(int b = 0; b < blocks.size(); b++) {
+      Partial<M> block = blocks.get(b);
+      if(next != null) {
+        for(int i = 0; i < k; i++) {
+          next.get(i).mergeE(block.stats.get(i), scale);
+        }
+      }
+      if(b > 0) {
+        total.loglik += block.loglik;
+        for(int i = 0; i < k; i++) {
+          total.wsum[i] += block.wsum[i];
+        }
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Expectation step on a block of objects.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   *
+   * @param <M> Model type
+   */
+  private static class Partial<M extends MeanModel> implements Callable<Partial<M>> {
+    /**
+     * Data relation.
+     */
+    Relation<? extends NumberVector> relation;
+
+    /**
+     * Object ids.
+     */
+    ArrayDBIDs ids;
+
+    /**
+     * Range of offsets to process.
+     */
+    int start, end;
+
+    /**
+     * Current models.
+     */
+    List<? extends EMClusterModel<M>> models;
+
+    /**
+     * Partial statistics, may be {@code null}.
+     */
+    List<EMClusterModel<M>> stats;
+
+    /**
+     * Output assignments, may be {@code null}.
+     */
+    int[] assignment;
+
+    /**
+     * Output probabilities, may be {@code null}.
+     */
+    double[][] probs;
+
+    /**
+     * Sum of the log-likelihoods.
+     */
+    double loglik;
+
+    /**
+     * Sum of the cluster probabilities.
+     */
+    double[] wsum;
+
+    /**
+     * Constructor.
+     * 
+     * @param relation Data relation
+     * @param ids Object ids
+     * @param start First offset
+     * @param end End offset (exclusive)
+     * @param models Current models
+     * @param collect Collect statistics for the next maximization step
+     * @param assignment Output: hard assignment, may be {@code null}
+     * @param probs Output: soft assignment, may be {@code null}
+     */
+    Partial(Relation<? extends NumberVector> relation, ArrayDBIDs ids, int start, int end, List<? extends EMClusterModel<M>> models, boolean collect, int[] assignment, double[][] probs) {
+      this.relation = relation;
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+      this.models = models;
+      this.stats = collect ? emptyCopies(models) : null;
+      this.assignment = assignment;
+      this.probs = probs;
+      this.wsum = new double[models.size()];
+    }
+
+    @Override
+    public Partial<M> call() {
+      final int k = models.size();
+      double[] p = new double[k];
+      DBIDArrayIter iditer = ids.iter();
+      for(int off = start; off < end; off++) {
+        iditer.seek(off);
+        NumberVector vec = relation.get(iditer);
+        double priorProbability = 0.;
+        for(int i = 0; i < k; i++) {
+          priorProbability += p[i] = models.get(i).estimateDensity(vec);
+        }
+        double logP = Math.max(FastMath.log(priorProbability), MIN_LOGLIKELIHOOD);
+        loglik += (logP == logP) ? logP : 0.; /* avoid NaN */
+
+        int maxIndex = 0;
+        double currentMax = 0.;
+        for(int i = 0; i < k; i++) {
+          // do not divide by zero!
+          final double prob = priorProbability > 0. ? p[i] / priorProbability : 0.;
+          p[i] = prob;
+          if(prob > currentMax) {
+            maxIndex = i;
+            currentMax = prob;
+          }
+          if(stats != null && prob > 0.) {
+            stats.get(i).updateE(vec, prob);
+          }
+          wsum[i] += prob;
+        }
+        if(assignment != null) {
+          assignment[off] = maxIndex;
+        }
+        if(probs != null) {
+          probs[off] = p.clone();
+        }
+      }
+      return this;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector, M extends MeanModel> extends EM.Parameterizer<V, M> {
+    /**
+     * Parameter for the mini-batch size. By default, all data is processed in
+     * each iteration.
+     */
+    public static final OptionID MINIBATCH_ID = new OptionID("em.minibatch", //
+        "Mini-batch size for stepwise (online) EM. By default, all data is used in each iteration.");
+
+    /**
+     * Parameter for the decay exponent alpha of the step size
+     * \((t+1)^{-\alpha}\) in mini-batch mode.
+     */
+    public static final OptionID DECAY_ID = new OptionID("em.minibatch.decay", //
+        "Decay exponent alpha of the mini-batch step size (t+1)^-alpha, in (0.5;1].");
+
+    /**
+     * Random generator seed for the mini-batch order.
+     */
+    public static final OptionID SEED_ID = new OptionID("em.minibatch.seed", //
+        "Random generator seed for the order of the mini-batches.");
+
+    /**
+     * Mini-batch size.
+     */
+    protected int minibatch = 0;
+
+    /**
+     * Step size decay.
+     */
+    protected double decay = 1.;
+
+    /**
+     * Random generator.
+     */
+    protected RandomFactory rnd = RandomFactory.DEFAULT;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter minibatchP = new IntParameter(MINIBATCH_ID)//
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT) //
+          .setOptional(true);
+      if(config.grab(minibatchP)) {
+        minibatch = minibatchP.getValue();
+      }
+      if(minibatch > 0) {
+        DoubleParameter decayP = new DoubleParameter(DECAY_ID, .7) //
+            .addConstraint(new GreaterConstraint(.5)) //
+            .addConstraint(CommonConstraints.LESS_EQUAL_ONE_DOUBLE);
+        if(config.grab(decayP)) {
+          decay = decayP.getValue();
+        }
+        RandomParameter rndP = new RandomParameter(SEED_ID);
+        if(config.grab(rndP)) {
+          rnd = rndP.getValue();
+        }
+      }
+    }
+
+    @Override
+    protected ParallelEM<V, M> makeInstance() {
+      return new ParallelEM<>(k, delta, initializer, maxiter, false, minibatch, decay, rnd);
+    }
+  }
+}
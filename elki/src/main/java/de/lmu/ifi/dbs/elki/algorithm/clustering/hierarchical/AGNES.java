@@ -23,6 +23,10 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
 import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
@@ -38,9 +42,9 @@ import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
-import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -50,11 +54,18 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * data has become a single cluster.
  *
  * This is the naive O(n^3) algorithm. See {@link SLINK} for a much faster
- * algorithm (however, only for single-linkage).
+ * algorithm (however, only for single-linkage), and {@link NNChain} for an
+ * O(n^2) algorithm for reducible linkages. For Ward, centroid and median
+ * linkage on vector data, {@link MatrixFreeHierarchicalClustering} avoids the
+ * O(n^2) memory of the distance matrix.
  *
  * This implementation uses the pointer-based representation used by SLINK, so
  * that the extraction algorithms we have can be used with either of them.
  *
+ * For large data sets, the distance matrix is initialized and searched by
+ * multiple threads, in stripes of rows. It can be stored with single precision
+ * to halve the memory usage.
+ *
  * The algorithm is believed to be first published (for single-linkage) by:
  * <p>
  * P. H. Sneath<br />
@@ -110,6 +121,11 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    */
   LinkageMethod linkage = WardLinkageMethod.STATIC;
 
+  /**
+   * Store the distance matrix with single precision.
+   */
+  boolean single = false;
+
   /**
    * Constructor.
    *
@@ -117,8 +133,20 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param linkage Linkage method
    */
   public AGNES(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage) {
+    this(distanceFunction, linkage, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param single Store the distance matrix with single precision
+   */
+  public AGNES(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage, boolean single) {
     super(distanceFunction);
     this.linkage = linkage;
+    this.single = single;
   }
 
   /**
@@ -142,40 +170,40 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
     ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
     final int size = ids.size();
 
-    if(size > 0x10000) {
-      throw new AbortException("This implementation does not scale to data sets larger than " + //
-      0x10000 // = 65535
-      + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
-    }
     if(SingleLinkageMethod.class.isInstance(linkage)) {
       LOG.verbose("Notice: SLINK is a much faster algorithm for single-linkage clustering!");
     }
 
     // Compute the initial (lower triangular) distance matrix.
-    double[] scratch = new double[triangleSize(size)];
+    LinkageMatrix scratch = new LinkageMatrix(ids, single);
     DBIDArrayIter ix = ids.iter(), iy = ids.iter();
-    boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(getDistanceFunction()));
-    initializeDistanceMatrix(scratch, dq, ix, iy, square);
-
-    // Initialize space for result:
-    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids);
-
-    // Repeat until everything merged into 1 cluster
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
-    int wsize = size;
-    for(int i = 1; i < size; i++) {
-      int x = findMerge(wsize, scratch, ix, iy, builder);
-      if(x == wsize - 1) {
-        --wsize;
-        for(ix.seek(wsize - 1); builder.isLinked(ix); ix.retract()) {
+    scratch.connect();
+    try {
+      scratch.initialize(dq, isSquared(linkage, getDistanceFunction()));
+
+      // Initialize space for result:
+      PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids);
+
+      // Repeat until everything merged into 1 cluster
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
+      int wsize = size;
+      for(int i = 1; i < size; i++) {
+        int x = findMerge(wsize, scratch, ix, iy, builder);
+        if(x == wsize - 1) {
           --wsize;
+          for(ix.seek(wsize - 1); builder.isLinked(ix); ix.retract()) {
+            --wsize;
+          }
         }
+        LOG.incrementProcessed(prog);
       }
-      LOG.incrementProcessed(prog);
-    }
-    LOG.ensureCompleted(prog);
+      LOG.ensureCompleted(prog);
 
-    return builder.complete();
+      return builder.complete();
+    }
+    finally {
+      scratch.disconnect();
+    }
   }
 
   /**
@@ -189,25 +217,15 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
   }
 
   /**
-   * Initialize a distance matrix.
+   * Test whether the distance matrix needs to store squared distances.
    *
-   * @param scratch Scratch space to be used.
-   * @param dq Distance query
-   * @param ix Data iterator
-   * @param iy Data iterator
-   * @param square Flag to use squared distances.
+   * @param linkage Linkage method
+   * @param distanceFunction Distance function
+   * @return {@code true} if the distances need to be squared
    */
-  protected static <O> void initializeDistanceMatrix(double[] scratch, DistanceQuery<O> dq, DBIDArrayIter ix, DBIDArrayIter iy, boolean square) {
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        double dist = dq.distance(ix, iy);
-        // Ward uses variances -- i.e. squared values
-        dist = square ? (dist * dist) : dist;
-        scratch[pos] = dist;
-        pos++;
-      }
-    }
+  protected static boolean isSquared(LinkageMethod linkage, DistanceFunction<?> distanceFunction) {
+    // Ward uses variances -- i.e. squared values
+    return WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(distanceFunction));
   }
 
   /**
@@ -220,26 +238,28 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param builder Pointer representation builder
    * @return x, for shrinking the working set.
    */
-  protected int findMerge(int size, double[] scratch, DBIDArrayIter ix, DBIDArrayIter iy, PointerHierarchyRepresentationBuilder builder) {
+  protected int findMerge(int size, LinkageMatrix scratch, DBIDArrayIter ix, DBIDArrayIter iy, PointerHierarchyRepresentationBuilder builder) {
     double mindist = Double.POSITIVE_INFINITY;
     int x = -1, y = -1;
-    // Find minimum:
-    for(int ox = 0, xbase = 0; ox < size; xbase += ox++) {
-      // Skip if object has already joined a cluster:
-      if(builder.isLinked(ix.seek(ox))) {
-        continue;
+    if(!scratch.isParallel()) {
+      MinimumSearch search = new MinimumSearch(scratch, builder, ix, iy, 0, size).call();
+      mindist = search.mindist;
+      x = search.x;
+      y = search.y;
+    }
+    else {
+      final int[] bounds = LinkageMatrix.stripes(size, scratch.numTasks());
+      List<MinimumSearch> tasks = new ArrayList<>(bounds.length - 1);
+      for(int i = 1; i < bounds.length; i++) {
+        final ArrayDBIDs ids = scratch.getDBIDs();
+        tasks.add(new MinimumSearch(scratch, builder, ids.iter(), ids.iter(), bounds[i - 1], bounds[i]));
       }
-      assert(xbase == triangleSize(ox));
-      for(int oy = 0; oy < ox; oy++) {
-        // Skip if object has already joined a cluster:
-        if(builder.isLinked(iy.seek(oy))) {
-          continue;
-        }
-        final int idx = xbase + oy;
-        if(scratch[idx] <= mindist) {
-          mindist = scratch[idx];
-          x = ox;
-          y = oy;
+      // Combine in order, with the same tie breaking as the serial scan.
+      for(MinimumSearch search : scratch.runTasks(tasks)) {
+        if(search.x >= 0 && search.mindist <= mindist) {
+          mindist = search.mindist;
+          x = search.x;
+          y = search.y;
         }
       }
     }
@@ -248,6 +268,88 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
     return x;
   }
 
+  /**
+   * Search the minimum in a stripe of rows of the distance matrix.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class MinimumSearch implements Callable<MinimumSearch> {
+    /**
+     * Distance matrix.
+     */
+    private final LinkageMatrix scratch;
+
+    /**
+     * Hierarchy builder.
+     */
+    private final PointerHierarchyRepresentationBuilder builder;
+
+    /**
+     * Iterators to use.
+     */
+    private final DBIDArrayIter ix, iy;
+
+    /**
+     * Row range.
+     */
+    private final int from, to;
+
+    /**
+     * Minimum found.
+     */
+    double mindist = Double.POSITIVE_INFINITY;
+
+    /**
+     * Position of the minimum.
+     */
+    int x = -1, y = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param scratch Distance matrix
+     * @param builder Hierarchy builder
+     * @param ix First iterator
+     * @param iy Second iterator
+     * @param from First row
+     * @param to End row (exclusive)
+     */
+    MinimumSearch(LinkageMatrix scratch, PointerHierarchyRepresentationBuilder builder, DBIDArrayIter ix, DBIDArrayIter iy, int from, int to) {
+      this.scratch = scratch;
+      this.builder = builder;
+      this.ix = ix;
+      this.iy = iy;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public MinimumSearch call() {
+      for(int ox = from, xbase = triangleSize(from); ox < to; xbase += ox++) {
+        // Skip if object has already joined a cluster:
+        if(builder.isLinked(ix.seek(ox))) {
+          continue;
+        }
+        assert(xbase == triangleSize(ox));
+        for(int oy = 0; oy < ox; oy++) {
+          // Skip if object has already joined a cluster:
+          if(builder.isLinked(iy.seek(oy))) {
+            continue;
+          }
+          final double v = scratch.get(xbase + oy);
+          if(v <= mindist) {
+            mindist = v;
+            x = ox;
+            y = oy;
+          }
+        }
+      }
+      return this;
+    }
+  }
+
   /**
    * Execute the cluster merge.
    *
@@ -260,7 +362,7 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param x First matrix position
    * @param y Second matrix position
    */
-  protected void merge(int size, double[] scratch, DBIDArrayIter ix, DBIDArrayIter iy, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y) {
+  protected void merge(int size, LinkageMatrix scratch, DBIDArrayIter ix, DBIDArrayIter iy, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y) {
     // Avoid allocating memory, by reusing existing iterators:
     ix.seek(x);
     iy.seek(y);
@@ -292,7 +394,7 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
    * @param sizex Old size of first cluster
    * @param sizey Old size of second cluster
    */
-  protected void updateMatrix(int size, double[] scratch, DBIDArrayIter ij, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+  protected void updateMatrix(int size, LinkageMatrix scratch, DBIDArrayIter ij, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
     // Update distance matrix. Note: miny < minx
     final int xbase = triangleSize(x), ybase = triangleSize(y);
 
@@ -304,7 +406,7 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
       }
       final int sizej = builder.getSize(ij);
       final int yb = ybase + j;
-      scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], sizej, mindist);
+      scratch.set(yb, linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(yb), sizej, mindist));
     }
     j++; // Skip y
     // Write to (j, y), with y < j < x
@@ -315,7 +417,7 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
       }
       final int sizej = builder.getSize(ij);
       final int jb = jbase + y;
-      scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], sizej, mindist);
+      scratch.set(jb, linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(jb), sizej, mindist));
     }
     jbase += j++; // Skip x
     // Write to (j, y), with y < x < j
@@ -324,7 +426,7 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
         continue;
       }
       final int sizej = builder.getSize(ij);
-      scratch[jbase + y] = linkage.combine(sizex, scratch[jbase + x], sizey, scratch[jbase + y], sizej, mindist);
+      scratch.set(jbase + y, linkage.combine(sizex, scratch.get(jbase + x), sizey, scratch.get(jbase + y), sizej, mindist));
     }
   }
 
@@ -354,11 +456,21 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
      */
     public static final OptionID LINKAGE_ID = new OptionID("hierarchical.linkage", "Linkage method to use (e.g. Ward, Single-Link)");
 
+    /**
+     * Flag to store the distance matrix with single precision.
+     */
+    public static final OptionID FLOAT_ID = new OptionID("hierarchical.float", "Store the distance matrix with single precision, to halve the memory usage.");
+
     /**
      * Current linkage in use.
      */
     protected LinkageMethod linkage;
 
+    /**
+     * Store the distance matrix with single precision.
+     */
+    protected boolean single = false;
+
     @Override
     protected void makeOptions(Parameterization config) {
       // We don't call super, because we want a different default distance.
@@ -372,11 +484,16 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
       if(config.grab(linkageP)) {
         linkage = linkageP.instantiateClass(config);
       }
+
+      Flag floatF = new Flag(FLOAT_ID);
+      if(config.grab(floatF)) {
+        single = floatF.isTrue();
+      }
     }
 
     @Override
     protected AGNES<O> makeInstance() {
-      return new AGNES<>(distanceFunction, linkage);
+      return new AGNES<>(distanceFunction, linkage, single);
     }
   }
 }
@@ -23,7 +23,10 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
@@ -39,8 +42,8 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanD
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
-import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -86,6 +89,11 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    */
   LinkageMethod linkage = WardLinkageMethod.STATIC;
 
+  /**
+   * Store the distance matrix with single precision.
+   */
+  boolean single = false;
+
   /**
    * Constructor.
    *
@@ -93,8 +101,20 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param linkage Linkage method
    */
   public AnderbergHierarchicalClustering(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage) {
+    this(distanceFunction, linkage, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param single Store the distance matrix with single precision
+   */
+  public AnderbergHierarchicalClustering(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage, boolean single) {
     super(distanceFunction);
     this.linkage = linkage;
+    this.single = single;
   }
 
   /**
@@ -109,26 +129,24 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
     final int size = ids.size();
 
-    if(size > 0x10000) {
-      throw new AbortException("This implementation does not scale to data sets larger than " + //
-      0x10000 // = 65535
-      + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
-    }
     if(SingleLinkageMethod.class.isInstance(linkage)) {
       LOG.verbose("Notice: SLINK is a much faster algorithm for single-linkage clustering!");
     }
 
     // Compute the initial (lower triangular) distance matrix.
-    double[] scratch = new double[AGNES.triangleSize(size)];
+    LinkageMatrix scratch = new LinkageMatrix(ids, single);
     DBIDArrayIter ix = ids.iter(), iy = ids.iter();
-    // Position counter - must agree with computeOffset!
-    final boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(dq.getDistanceFunction()));
-    AGNES.initializeDistanceMatrix(scratch, dq, ix, iy, square);
-
     // Arrays used for caching:
     double[] bestd = new double[size];
     int[] besti = new int[size];
-    initializeNNCache(scratch, bestd, besti);
+    scratch.connect();
+    try {
+      scratch.initialize(dq, AGNES.isSquared(linkage, dq.getDistanceFunction()));
+      initializeNNCache(scratch, bestd, besti);
+    }
+    finally {
+      scratch.disconnect();
+    }
 
     // Initialize space for result:
     PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids);
@@ -158,8 +176,12 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param bestd Best distance
    * @param besti Best index
    */
-  private static void initializeNNCache(double[] scratch, double[] bestd, int[] besti) {
+  private static void initializeNNCache(LinkageMatrix scratch, final double[] bestd, final int[] besti) {
     final int size = bestd.length;
+    if(scratch.isParallel()) {
+      initializeNNCacheParallel(scratch, bestd, besti);
+      return;
+    }
     Arrays.fill(bestd, Double.POSITIVE_INFINITY);
     Arrays.fill(besti, -1);
     for(int x = 0, p = 0; x < size; x++) {
@@ -167,7 +189,7 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
       double bestdx = Double.POSITIVE_INFINITY;
       int bestix = -1;
       for(int y = 0; y < x; y++, p++) {
-        final double v = scratch[p];
+        final double v = scratch.get(p);
         if(v < bestd[y]) {
           bestd[y] = v;
           besti[y] = x;
@@ -182,6 +204,52 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     }
   }
 
+  /**
+   * Initialize the NN cache with multiple threads.
+   *
+   * Every thread scans the complete rows (and columns) of a range of objects,
+   * in the same order as the serial version, so ties are resolved the same.
+   *
+   * @param scratch Scatch space
+   * @param bestd Best distance
+   * @param besti Best index
+   */
+  private static void initializeNNCacheParallel(final LinkageMatrix scratch, final double[] bestd, final int[] besti) {
+    final int size = bestd.length, num = scratch.numTasks();
+    List<Callable<Void>> tasks = new ArrayList<>(num);
+    for(int i = 0; i < num; i++) {
+      final int from = (int) ((long) size * i / num), to = (int) ((long) size * (i + 1) / num);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for(int j = from; j < to; j++) {
+            final int jbase = AGNES.triangleSize(j);
+            double bestdj = Double.POSITIVE_INFINITY;
+            int bestij = -1;
+            for(int i = 0, o = jbase; i < j; i++, o++) {
+              final double v = scratch.get(o);
+              if(v < bestdj) {
+                bestdj = v;
+                bestij = i;
+              }
+            }
+            for(int i = j + 1, o = jbase + j + j; i < size; o += i, i++) {
+              final double v = scratch.get(o);
+              if(v < bestdj) {
+                bestdj = v;
+                bestij = i;
+              }
+            }
+            bestd[j] = bestdj;
+            besti[j] = bestij;
+          }
+          return null;
+        }
+      });
+    }
+    scratch.runTasks(tasks);
+  }
+
   /**
    * Perform the next merge step.
    *
@@ -196,7 +264,7 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param builder Hierarchy builder
    * @return x, for shrinking the working set.
    */
-  protected int findMerge(int size, double[] scratch, DBIDArrayIter ix, DBIDArrayIter iy, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder) {
+  protected int findMerge(int size, LinkageMatrix scratch, DBIDArrayIter ix, DBIDArrayIter iy, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder) {
     double mindist = Double.POSITIVE_INFINITY;
     int x = -1, y = -1;
     // Find minimum:
@@ -230,7 +298,7 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param x First matrix position
    * @param y Second matrix position
    */
-  protected void merge(int size, double[] scratch, DBIDArrayIter ix, DBIDArrayIter iy, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y) {
+  protected void merge(int size, LinkageMatrix scratch, DBIDArrayIter ix, DBIDArrayIter iy, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y) {
     // Avoid allocating memory, by reusing existing iterators:
     ix.seek(x);
     iy.seek(y);
@@ -270,7 +338,7 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param sizex Old size of first cluster
    * @param sizey Old size of second cluster
    */
-  protected void updateMatrix(int size, double[] scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
+  protected void updateMatrix(int size, LinkageMatrix scratch, DBIDArrayIter ij, double[] bestd, int[] besti, PointerHierarchyRepresentationBuilder builder, double mindist, int x, int y, final int sizex, final int sizey) {
     // Update distance matrix. Note: miny < minx
     final int xbase = AGNES.triangleSize(x), ybase = AGNES.triangleSize(y);
 
@@ -282,7 +350,8 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
       }
       final int sizej = builder.getSize(ij);
       final int yb = ybase + j;
-      final double d = scratch[yb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[yb], sizej, mindist);
+      final double d = linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(yb), sizej, mindist);
+      scratch.set(yb, d);
       updateCache(size, scratch, bestd, besti, x, y, j, d);
     }
     j++; // Skip y
@@ -294,7 +363,8 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
       }
       final int sizej = builder.getSize(ij);
       final int jb = jbase + y;
-      final double d = scratch[jb] = linkage.combine(sizex, scratch[xbase + j], sizey, scratch[jb], sizej, mindist);
+      final double d = linkage.combine(sizex, scratch.get(xbase + j), sizey, scratch.get(jb), sizej, mindist);
+      scratch.set(jb, d);
       updateCache(size, scratch, bestd, besti, x, y, j, d);
     }
     jbase += j++; // Skip x
@@ -304,7 +374,8 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
         continue;
       }
       final int sizej = builder.getSize(ij);
-      final double d = scratch[jbase + y] = linkage.combine(sizex, scratch[jbase + x], sizey, scratch[jbase + y], sizej, mindist);
+      final double d = linkage.combine(sizex, scratch.get(jbase + x), sizey, scratch.get(jbase + y), sizej, mindist);
+      scratch.set(jbase + y, d);
       updateCache(size, scratch, bestd, besti, x, y, j, d);
     }
   }
@@ -321,7 +392,7 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
    * @param j Updated value d(y, j)
    * @param d New distance
    */
-  private void updateCache(int size, double[] scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
+  private void updateCache(int size, LinkageMatrix scratch, double[] bestd, int[] besti, int x, int y, int j, double d) {
     // New best
     if(d <= bestd[j]) {
       bestd[j] = d;
@@ -334,7 +405,7 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     }
   }
 
-  protected void findBest(int size, double[] scratch, double[] bestd, int[] besti, int j) {
+  protected void findBest(int size, LinkageMatrix scratch, double[] bestd, int[] besti, int j) {
     final int jbase = AGNES.triangleSize(j);
     // The distance has increased, we may no longer be the best merge.
     double bestdj = Double.POSITIVE_INFINITY;
@@ -343,8 +414,9 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
       if(besti[i] < 0) {
         continue;
       }
-      if(scratch[o] < bestdj) {
-        bestdj = scratch[o];
+      final double v = scratch.get(o);
+      if(v < bestdj) {
+        bestdj = v;
         bestij = i;
       }
     }
@@ -353,8 +425,9 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
       if(besti[i] < 0) {
         continue;
       }
-      if(scratch[o] < bestdj) {
-        bestdj = scratch[o];
+      final double v = scratch.get(o);
+      if(v < bestdj) {
+        bestdj = v;
         bestij = i;
       }
     }
@@ -388,6 +461,11 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
      */
     protected LinkageMethod linkage;
 
+    /**
+     * Store the distance matrix with single precision.
+     */
+    protected boolean single = false;
+
     @Override
     protected void makeOptions(Parameterization config) {
       // We don't call super, because we want a different default distance.
@@ -401,11 +479,16 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
       if(config.grab(linkageP)) {
         linkage = linkageP.instantiateClass(config);
       }
+
+      Flag floatF = new Flag(AGNES.Parameterizer.FLOAT_ID);
+      if(config.grab(floatF)) {
+        single = floatF.isTrue();
+      }
     }
 
     @Override
     protected AnderbergHierarchicalClustering<O> makeInstance() {
-      return new AnderbergHierarchicalClustering<>(distanceFunction, linkage);
+      return new AnderbergHierarchicalClustering<>(distanceFunction, linkage, single);
     }
   }
 }
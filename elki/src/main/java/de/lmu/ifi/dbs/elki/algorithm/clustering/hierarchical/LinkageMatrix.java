@@ -0,0 +1,389 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.PackedSquaredEuclidean;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+import net.jafama.FastMath;
+
+/**
+ * Lower triangular matrix of cluster distances, as used by the matrix-based
+ * hierarchical clustering algorithms.
+ *
+ * The values can be stored with single precision, which halves the memory
+ * requirements at the cost of precision. The rows of the triangle are
+ * independent, so initialization and scans can be split into stripes of rows
+ * with the same number of entries, which are processed by multiple threads
+ * when the matrix is large enough.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses ParallelCore
+ */
+public class LinkageMatrix {
+  /**
+   * Minimum number of matrix entries to use multiple threads.
+   */
+  protected static final int PARALLEL_MIN = 1 << 16;
+
+  /**
+   * Object ids.
+   */
+  protected final ArrayDBIDs ids;
+
+  /**
+   * Number of objects.
+   */
+  protected final int size;
+
+  /**
+   * Double precision storage, or {@code null}.
+   */
+  private final double[] dmat;
+
+  /**
+   * Single precision storage, or {@code null}.
+   */
+  private final float[] fmat;
+
+  /**
+   * Parallel core, {@code null} for single-threaded operation.
+   */
+  private ParallelCore core;
+
+  /**
+   * Constructor.
+   *
+   * @param ids Object ids
+   * @param single Use single precision
+   */
+  public LinkageMatrix(ArrayDBIDs ids, boolean single) {
+    super();
+    this.ids = ids;
+    this.size = ids.size();
+    if(size > 0x10000) {
+      throw new AbortException("This implementation does not scale to data sets larger than " + //
+          0x10000 // = 65535
+          + " instances (~16 GB RAM), at which point the Java maximum array size is reached.");
+    }
+    final int tsize = AGNES.triangleSize(size);
+    this.dmat = single ? null : new double[tsize];
+    this.fmat = single ? new float[tsize] : null;
+  }
+
+  /**
+   * Get a value.
+   *
+   * @param pos Position in the triangle
+   * @return Value
+   */
+  public double get(int pos) {
+    return dmat != null ? dmat[pos] : fmat[pos];
+  }
+
+  /**
+   * Set a value.
+   *
+   * @param pos Position in the triangle
+   * @param val New value
+   */
+  public void set(int pos, double val) {
+    if(dmat != null) {
+      dmat[pos] = val;
+    }
+    else {
+      fmat[pos] = (float) val;
+    }
+  }
+
+  /**
+   * Get the value for a pair of objects.
+   *
+   * @param x First object
+   * @param y Second object, different from x
+   * @return Value
+   */
+  public double get(int x, int y) {
+    return get(x > y ? AGNES.triangleSize(x) + y : AGNES.triangleSize(y) + x);
+  }
+
+  /**
+   * Get the number of objects.
+   *
+   * @return Size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get the object ids.
+   *
+   * @return Ids
+   */
+  public ArrayDBIDs getDBIDs() {
+    return ids;
+  }
+
+  /**
+   * Connect to the parallel core, if the matrix is large enough to benefit
+   * from multiple threads. Must be followed by {@link #disconnect()}.
+   */
+  public void connect() {
+    core = getParallelCore(size);
+    if(core != null) {
+      core.connect();
+    }
+  }
+
+  /**
+   * Disconnect from the parallel core.
+   */
+  public void disconnect() {
+    if(core != null) {
+      core.disconnect();
+      core = null;
+    }
+  }
+
+  /**
+   * Test whether scans should be split into multiple tasks.
+   *
+   * @return {@code true} when connected to a parallel core
+   */
+  public boolean isParallel() {
+    return core != null;
+  }
+
+  /**
+   * Number of tasks to split scans into.
+   *
+   * @return Number of tasks
+   */
+  public int numTasks() {
+    return core != null ? core.getParallelism() : 1;
+  }
+
+  /**
+   * Run tasks, in parallel if connected.
+   *
+   * @param tasks Tasks
+   * @param <T> Result type
+   * @return Results, in the order of the tasks
+   */
+  public <T> List<T> runTasks(List<? extends Callable<T>> tasks) {
+    return runTasks(core, tasks);
+  }
+
+  /**
+   * Initialize the distance matrix.
+   *
+   * For (squared) Euclidean distance on vectors of a fixed dimensionality, the
+   * vectors are packed into a contiguous array first, to avoid the per-pair
+   * overhead of the distance query; the values are exactly the same.
+   *
+   * @param dq Distance query
+   * @param square Flag to use squared distances.
+   * @param <O> Object type
+   */
+  public <O> void initialize(final DistanceQuery<O> dq, final boolean square) {
+    final double[] data = packVectors(dq);
+    final boolean sqrt = EuclideanDistanceFunction.STATIC.equals(dq.getDistanceFunction());
+    final int[] bounds = stripes(size, numTasks());
+    List<Callable<Void>> tasks = new ArrayList<>(bounds.length - 1);
+    for(int i = 1; i < bounds.length; i++) {
+      final int from = bounds[i - 1], to = bounds[i];
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          if(data != null) {
+            initializePacked(data, data.length / size, sqrt, square, from, to);
+          }
+          else {
+            initialize(dq, square, from, to);
+          }
+          return null;
+        }
+      });
+    }
+    runTasks(tasks);
+  }
+
+  /**
+   * Initialize a stripe of rows using a distance query.
+   *
+   * @param dq Distance query
+   * @param square Flag to use squared distances.
+   * @param from First row
+   * @param to End row (exclusive)
+   */
+  private void initialize(DistanceQuery<?> dq, boolean square, int from, int to) {
+    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    int pos = AGNES.triangleSize(from);
+    for(ix.seek(from); ix.getOffset() < to; ix.advance()) {
+      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
+        double dist = dq.distance(ix, iy);
+        // Ward uses variances -- i.e. squared values
+        set(pos++, square ? (dist * dist) : dist);
+      }
+    }
+  }
+
+  /**
+   * Initialize a stripe of rows from packed vectors.
+   *
+   * @param data Packed vectors
+   * @param dim Dimensionality
+   * @param sqrt Flag to take the square root (Euclidean distance)
+   * @param square Flag to use squared distances.
+   * @param from First row
+   * @param to End row (exclusive)
+   */
+  private void initializePacked(double[] data, int dim, boolean sqrt, boolean square, int from, int to) {
+    int pos = AGNES.triangleSize(from);
+    for(int x = from, xoff = from * dim; x < to; x++, xoff += dim) {
+      for(int yoff = 0; yoff < xoff; yoff += dim) {
+        double dist = PackedSquaredEuclidean.distance(data, xoff, data, yoff, dim);
+        dist = sqrt ? FastMath.sqrt(dist) : dist;
+        // Ward uses variances -- i.e. squared values
+        set(pos++, square ? (dist * dist) : dist);
+      }
+    }
+  }
+
+  /**
+   * Pack the vectors into a contiguous array, if the distance is (squared)
+   * Euclidean and the vectors have a fixed dimensionality.
+   *
+   * @param dq Distance query
+   * @return Packed vectors, or {@code null} if not applicable.
+   */
+  @SuppressWarnings("unchecked")
+  private <O> double[] packVectors(DistanceQuery<O> dq) {
+    final DistanceFunction<? super O> df = dq.getDistanceFunction();
+    if(!EuclideanDistanceFunction.STATIC.equals(df) && !SquaredEuclideanDistanceFunction.STATIC.equals(df)) {
+      return null;
+    }
+    final Relation<? extends O> relation = dq.getRelation();
+    if(!TypeUtil.NUMBER_VECTOR_FIELD.isAssignableFromType(relation.getDataTypeInformation())) {
+      return null;
+    }
+    final int dim = RelationUtil.dimensionality((Relation<? extends NumberVector>) relation);
+    if(dim <= 0) {
+      return null;
+    }
+    return PackedSquaredEuclidean.pack((Relation<? extends NumberVector>) relation, ids.iter(), dim);
+  }
+
+  /**
+   * Split the rows of a triangular matrix into stripes with approximately the
+   * same number of entries.
+   *
+   * @param size Number of rows
+   * @param num Number of stripes
+   * @return Stripe boundaries, of length {@code num + 1}
+   */
+  public static int[] stripes(int size, int num) {
+    int[] bounds = new int[num + 1];
+    final double total = AGNES.triangleSize(size);
+    for(int k = 1; k < num; k++) {
+      // Solve x * (x - 1) / 2 = total * k / num for x:
+      int x = (int) Math.ceil(.5 + FastMath.sqrt(.25 + 2. * total * k / num));
+      bounds[k] = Math.max(bounds[k - 1], Math.min(x, size));
+    }
+    bounds[num] = size;
+    return bounds;
+  }
+
+  /**
+   * Get the parallel core to use, if the data set is large enough and multiple
+   * processors are available.
+   *
+   * @param size Data set size
+   * @return Parallel core, or {@code null}
+   */
+  protected static ParallelCore getParallelCore(int size) {
+    final ParallelCore core = ParallelCore.getCore();
+    return (AGNES.triangleSize(size) >= PARALLEL_MIN && core.getParallelism() > 1) ? core : null;
+  }
+
+  /**
+   * Run a list of tasks, and collect their results in order.
+   *
+   * @param core Parallel core, {@code null} to run in the current thread
+   * @param tasks Tasks
+   * @param <T> Result type
+   * @return Results, in the order of the tasks
+   */
+  protected static <T> List<T> runTasks(ParallelCore core, List<? extends Callable<T>> tasks) {
+    List<T> results = new ArrayList<>(tasks.size());
+    try {
+      if(core == null) {
+        for(Callable<T> task : tasks) {
+          results.add(task.call());
+        }
+        return results;
+      }
+      List<Future<T>> futures = new ArrayList<>(tasks.size());
+      for(Callable<T> task : tasks) {
+        futures.add(core.submit(task));
+      }
+      for(Future<T> fut : futures) {
+        results.add(fut.get());
+      }
+      return results;
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Parallel hierarchical clustering failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Hierarchical clustering interrupted.");
+    }
+    catch(RuntimeException e) {
+      throw e;
+    }
+    catch(Exception e) {
+      throw new AbortException("Hierarchical clustering failed.", e);
+    }
+  }
+}
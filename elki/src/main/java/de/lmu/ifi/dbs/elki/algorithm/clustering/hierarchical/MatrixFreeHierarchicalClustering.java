@@ -0,0 +1,371 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.PackedSquaredEuclidean;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.WrongParameterValueException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Agglomerative hierarchical clustering for vector data, without a distance
+ * matrix.
+ *
+ * For Ward, centroid and median linkage with squared Euclidean distance, the
+ * distance of two clusters can be computed from their centroids and sizes
+ * alone. Instead of the O(n²) distance matrix used by {@link AGNES}, this
+ * implementation keeps the cluster centroids, and caches the nearest neighbor
+ * of every cluster. After a merge, only the clusters whose nearest neighbor was
+ * involved in the merge need to be searched again. This needs O(n·d) memory,
+ * and usually O(n²·d) time (the worst case is O(n³·d), as for Anderberg's
+ * algorithm).
+ *
+ * The resulting merge distances are the same as those of {@link AGNES} with
+ * squared Euclidean distance, up to floating point rounding.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf LinkageMethod
+ * @apiviz.composedOf PointerHierarchyRepresentationBuilder
+ *
+ * @param <V> Vector type
+ */
+public class MatrixFreeHierarchicalClustering<V extends NumberVector> extends AbstractAlgorithm<PointerHierarchyRepresentationResult> implements HierarchicalClusteringAlgorithm {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(MatrixFreeHierarchicalClustering.class);
+
+  /**
+   * Current linkage method in use.
+   */
+  LinkageMethod linkage = WardLinkageMethod.STATIC;
+
+  /**
+   * Constructor.
+   *
+   * @param linkage Linkage method, must be Ward, centroid or median linkage.
+   */
+  public MatrixFreeHierarchicalClustering(LinkageMethod linkage) {
+    super();
+    if(!isSupported(linkage)) {
+      throw new AbortException("Only Ward, centroid and median linkage can be computed without a distance matrix.");
+    }
+    this.linkage = linkage;
+  }
+
+  /**
+   * Test whether a linkage can be computed from the cluster centroids.
+   *
+   * @param linkage Linkage method
+   * @return {@code true} when supported
+   */
+  public static boolean isSupported(LinkageMethod linkage) {
+    return WardLinkageMethod.class.isInstance(linkage) //
+        || CentroidLinkageMethod.class.isInstance(linkage) //
+        || MedianLinkageMethod.class.isInstance(linkage);
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  public PointerHierarchyRepresentationResult run(Relation<V> relation) {
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size(), dim = RelationUtil.dimensionality(relation);
+    final boolean ward = WardLinkageMethod.class.isInstance(linkage);
+    final boolean median = MedianLinkageMethod.class.isInstance(linkage);
+
+    Centroids cent = new Centroids(PackedSquaredEuclidean.pack(relation, ids.iter(), dim), size, dim, ward);
+    // Nearest neighbor cache:
+    int[] nn = new int[size];
+    double[] nnd = new double[size];
+    initializeCache(cent, nn, nnd);
+
+    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids);
+    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
+    for(int i = 1; i < size; i++) {
+      // Find the closest pair:
+      double mindist = Double.POSITIVE_INFINITY;
+      int a = -1;
+      for(int j = 0; j < size; j++) {
+        if(cent.csize[j] > 0 && nnd[j] < mindist) {
+          mindist = nnd[j];
+          a = j;
+        }
+      }
+      assert (a >= 0 && nn[a] >= 0);
+      // We always merge the larger into the smaller index:
+      final int x = Math.max(a, nn[a]), y = Math.min(a, nn[a]);
+      if(LOG.isDebuggingFine()) {
+        LOG.debugFine("Merging: " + DBIDUtil.toString(ix.seek(x)) + " -> " + DBIDUtil.toString(iy.seek(y)) + " " + mindist);
+      }
+      builder.add(ix.seek(x), mindist, iy.seek(y));
+      cent.merge(x, y, median);
+      builder.setSize(iy, cent.csize[y]);
+      updateCache(cent, nn, nnd, x, y);
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+    return builder.complete();
+  }
+
+  /**
+   * Initialize the nearest neighbor cache.
+   *
+   * @param cent Cluster centroids
+   * @param nn Nearest neighbor output
+   * @param nnd Nearest neighbor distance output
+   */
+  private static void initializeCache(Centroids cent, int[] nn, double[] nnd) {
+    final int size = nn.length;
+    Arrays.fill(nn, -1);
+    Arrays.fill(nnd, Double.POSITIVE_INFINITY);
+    // Both rows are scanned in ascending order, as in findNN.
+    for(int a = 0; a < size; a++) {
+      for(int b = a + 1; b < size; b++) {
+        final double d = cent.distance(a, b);
+        if(d < nnd[a]) {
+          nnd[a] = d;
+          nn[a] = b;
+        }
+        if(d < nnd[b]) {
+          nnd[b] = d;
+          nn[b] = a;
+        }
+      }
+    }
+  }
+
+  /**
+   * Update the nearest neighbor cache after a merge.
+   *
+   * @param cent Cluster centroids
+   * @param nn Nearest neighbors
+   * @param nnd Nearest neighbor distances
+   * @param x Cluster that was removed
+   * @param y Cluster that was updated
+   */
+  private static void updateCache(Centroids cent, int[] nn, double[] nnd, int x, int y) {
+    final int size = nn.length;
+    double best = Double.POSITIVE_INFINITY;
+    int besti = -1;
+    for(int k = 0; k < size; k++) {
+      if(k == y || cent.csize[k] == 0) {
+        continue;
+      }
+      final double d = cent.distance(y, k);
+      if(d < best) {
+        best = d;
+        besti = k;
+      }
+      if(nn[k] == x || nn[k] == y) {
+        // The merged cluster is at least as close as any other cluster:
+        if(d <= nnd[k]) {
+          nnd[k] = d;
+          nn[k] = y;
+        }
+        else {
+          findNN(cent, nn, nnd, k);
+        }
+      }
+      else if(d < nnd[k]) {
+        // May happen with centroid and median linkage.
+        nnd[k] = d;
+        nn[k] = y;
+      }
+    }
+    nnd[y] = best;
+    nn[y] = besti;
+  }
+
+  /**
+   * Find the nearest neighbor of a cluster.
+   *
+   * @param cent Cluster centroids
+   * @param nn Nearest neighbors
+   * @param nnd Nearest neighbor distances
+   * @param a Cluster
+   */
+  private static void findNN(Centroids cent, int[] nn, double[] nnd, int a) {
+    final int size = nn.length;
+    double best = Double.POSITIVE_INFINITY;
+    int besti = -1;
+    for(int k = 0; k < size; k++) {
+      if(k == a || cent.csize[k] == 0) {
+        continue;
+      }
+      final double d = cent.distance(a, k);
+      if(d < best) {
+        best = d;
+        besti = k;
+      }
+    }
+    nnd[a] = best;
+    nn[a] = besti;
+  }
+
+  /**
+   * Cluster centroids and sizes, stored in a packed array.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class Centroids {
+    /**
+     * Packed centroids.
+     */
+    final double[] data;
+
+    /**
+     * Cluster sizes, 0 for clusters that were merged into another.
+     */
+    final int[] csize;
+
+    /**
+     * Dimensionality.
+     */
+    final int dim;
+
+    /**
+     * Use Ward's criterion (weighted by cluster sizes).
+     */
+    final boolean ward;
+
+    /**
+     * Constructor.
+     *
+     * @param data Packed vectors
+     * @param size Number of vectors
+     * @param dim Dimensionality
+     * @param ward Use Ward's criterion
+     */
+    Centroids(double[] data, int size, int dim, boolean ward) {
+      this.data = data;
+      this.csize = new int[size];
+      Arrays.fill(csize, 1);
+      this.dim = dim;
+      this.ward = ward;
+    }
+
+    /**
+     * Compute the linkage distance of two clusters.
+     *
+     * @param a First cluster
+     * @param b Second cluster
+     * @return Linkage distance
+     */
+    double distance(int a, int b) {
+      final double d = PackedSquaredEuclidean.distance(data, a * dim, data, b * dim, dim);
+      if(!ward) {
+        return d;
+      }
+      // Lance-Williams Ward, starting from squared Euclidean distances:
+      final int sa = csize[a], sb = csize[b];
+      return (2. * sa * sb / (sa + sb)) * d;
+    }
+
+    /**
+     * Merge cluster x into cluster y.
+     *
+     * @param x Cluster to remove
+     * @param y Cluster to update
+     * @param median Use the midpoint (median linkage) instead of the weighted
+     *        mean.
+     */
+    void merge(int x, int y, boolean median) {
+      final int sx = csize[x], sy = csize[y];
+      final double wx = median ? .5 : sx / (double) (sx + sy), wy = 1. - wx;
+      for(int i = 0, xo = x * dim, yo = y * dim; i < dim; i++) {
+        data[yo + i] = wx * data[xo + i] + wy * data[yo + i];
+      }
+      csize[y] = sx + sy;
+      csize[x] = 0;
+    }
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <V> Vector type
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractParameterizer {
+    /**
+     * Current linkage in use.
+     */
+    protected LinkageMethod linkage;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      ObjectParameter<LinkageMethod> linkageP = new ObjectParameter<>(AGNES.Parameterizer.LINKAGE_ID, LinkageMethod.class);
+      linkageP.setDefaultValue(WardLinkageMethod.class);
+      if(config.grab(linkageP)) {
+        linkage = linkageP.instantiateClass(config);
+        if(linkage != null && !isSupported(linkage)) {
+          config.reportError(new WrongParameterValueException(linkageP, linkageP.getValueAsString(), "Only Ward, centroid and median linkage can be computed without a distance matrix."));
+        }
+      }
+    }
+
+    @Override
+    protected MatrixFreeHierarchicalClustering<V> makeInstance() {
+      return new MatrixFreeHierarchicalClustering<>(linkage);
+    }
+  }
+}
@@ -23,6 +23,10 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
 import de.lmu.ifi.dbs.elki.algorithm.AbstractDistanceBasedAlgorithm;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
@@ -45,6 +49,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.index.distancematrix.PrecomputedDistanceMatrix;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import gnu.trove.map.hash.TIntObjectHashMap;
@@ -130,7 +135,7 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
     DBIDArrayMIter protiter = prots.iter();
     DBIDArrayIter ix = ids.iter(), iy = ids.iter();
 
-    initializeMatrices(dists, prots, dq, ix, iy);
+    initializeMatrices(dists, prots, dq, ids);
 
     FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("MiniMax clustering", size - 1, LOG) : null;
     for(int i = 1; i < size; i++) {
@@ -144,21 +149,53 @@ public class MiniMax<O> extends AbstractDistanceBasedAlgorithm<O, PointerPrototy
   /**
    * Initializes the inter-cluster distance matrix of possible merges
    * 
+   * For large data sets, the distances are computed by multiple threads, in
+   * stripes of rows of the matrix.
+   * 
    * @param distances The cluster distance matrix
+   * @param prots The prototype matrix
    * @param dq The distance query
-   * @param ix An iterator over the data base
-   * @param iy Another iterator over the data base
+   * @param ids Object ids
    */
-  protected static <O> void initializeMatrices(double[] distances, ArrayModifiableDBIDs prots, DistanceQuery<O> dq, DBIDArrayIter ix, DBIDArrayIter iy) {
-    int pos = 0;
+  protected static <O> void initializeMatrices(final double[] distances, ArrayModifiableDBIDs prots, final DistanceQuery<O> dq, final ArrayDBIDs ids) {
+    // The initial prototype of each pair is the second object.
+    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
     for(ix.seek(0); ix.valid(); ix.advance()) {
       for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        distances[pos] = dq.distance(ix, iy);
         prots.add(iy);
-        pos++;
       }
     }
-    assert (prots.size() == pos);
+    assert (prots.size() == distances.length);
+    final ParallelCore core = LinkageMatrix.getParallelCore(ids.size());
+    final int[] bounds = LinkageMatrix.stripes(ids.size(), core != null ? core.getParallelism() : 1);
+    List<Callable<Void>> tasks = new ArrayList<>(bounds.length - 1);
+    for(int i = 1; i < bounds.length; i++) {
+      final int from = bounds[i - 1], to = bounds[i];
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+          int pos = AGNES.triangleSize(from);
+          for(ix.seek(from); ix.getOffset() < to; ix.advance()) {
+            for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
+              distances[pos++] = dq.distance(ix, iy);
+            }
+          }
+          return null;
+        }
+      });
+    }
+    if(core != null) {
+      core.connect();
+    }
+    try {
+      LinkageMatrix.runTasks(core, tasks);
+    }
+    finally {
+      if(core != null) {
+        core.disconnect();
+      }
+    }
   }
 
   /**
@@ -110,7 +110,7 @@ public class MiniMaxAnderberg<O> extends AbstractDistanceBasedAlgorithm<O, Point
     DBIDArrayMIter protiter = prots.iter();
 
     DBIDArrayIter ix = ids.iter(), iy = ids.iter();
-    MiniMax.initializeMatrices(distances, prots, dq, ix, iy);
+    MiniMax.initializeMatrices(distances, prots, dq, ids);
 
     // Arrays used for caching:
     double[] bestd = new double[size];
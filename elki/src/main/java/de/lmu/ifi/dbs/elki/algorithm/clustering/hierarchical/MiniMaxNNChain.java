@@ -124,7 +124,7 @@ public class MiniMaxNNChain<O> extends AbstractDistanceBasedAlgorithm<O, Pointer
     DBIDArrayMIter protiter = prots.iter();
     DBIDArrayIter ix = ids.iter(), iy = ids.iter();
 
-    MiniMax.initializeMatrices(dists, prots, dq, ix, iy);
+    MiniMax.initializeMatrices(dists, prots, dq, ids);
 
     nnChainCore(size, dists, protiter, dq, ix, iy, builder, clusters);
 
@@ -0,0 +1,305 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.IntegerArray;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerComparator;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * NNchain clustering algorithm.
+ *
+ * The nearest-neighbor chain is followed until two clusters are reciprocal
+ * nearest neighbors, which are then merged. For reducible linkages (single,
+ * complete, group average, weighted average and Ward), such pairs are also
+ * merged by the naive algorithm, and the chain remains valid after the merge.
+ * This yields the same hierarchy as {@link AGNES} in O(n²) time, using the
+ * same distance matrix and pointer representation. As the merges are not
+ * found in the order of their height, they are sorted before building the
+ * result.
+ *
+ * Centroid and median linkage are not reducible; the result then may differ
+ * from {@link AGNES}.
+ *
+ * Reference:
+ * <p>
+ * F. Murtagh<br />
+ * A survey of recent advances in hierarchical clustering algorithms<br />
+ * The Computer Journal 26(4)
+ * </p>
+ * <p>
+ * D. Müllner<br />
+ * Modern hierarchical, agglomerative clustering algorithms<br />
+ * arXiv preprint arXiv:1109.2378
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf LinkageMethod
+ * @apiviz.composedOf PointerHierarchyRepresentationBuilder
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "F. Murtagh", //
+    title = "A survey of recent advances in hierarchical clustering algorithms", //
+    booktitle = "The Computer Journal 26(4)", //
+    url = "http://dx.doi.org/10.1093/comjnl/26.4.354")
+public class NNChain<O> extends AGNES<O> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(NNChain.class);
+
+  /**
+   * Additional literature:
+   */
+  @Reference(authors = "D. Müllner", //
+      title = "Modern hierarchical, agglomerative clustering algorithms", //
+      booktitle = "arXiv preprint arXiv:1109.2378", //
+      url = "https://arxiv.org/abs/1109.2378")
+  public static final Void ADDITIONAL_REFERENCE = null;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   */
+  public NNChain(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage) {
+    this(distanceFunction, linkage, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param single Store the distance matrix with single precision
+   */
+  public NNChain(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage, boolean single) {
+    super(distanceFunction, linkage, single);
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  @Override
+  public PointerHierarchyRepresentationResult run(Database db, Relation<O> relation) {
+    DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+
+    if(SingleLinkageMethod.class.isInstance(linkage)) {
+      LOG.verbose("Notice: SLINK is a much faster algorithm for single-linkage clustering!");
+    }
+    if(CentroidLinkageMethod.class.isInstance(linkage) || MedianLinkageMethod.class.isInstance(linkage)) {
+      LOG.warning("Centroid and median linkage are not reducible, NNChain may produce a different hierarchy than AGNES.");
+    }
+
+    // Compute the initial (lower triangular) distance matrix.
+    LinkageMatrix scratch = new LinkageMatrix(ids, single);
+    scratch.connect();
+    try {
+      scratch.initialize(dq, isSquared(linkage, getDistanceFunction()));
+    }
+    finally {
+      scratch.disconnect();
+    }
+
+    // Working state (linked objects and cluster sizes):
+    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids);
+    // Merges are not found in the order of their height, so we record them:
+    final int merges = Math.max(ids.size() - 1, 0);
+    int[] pairs = new int[merges << 1];
+    double[] heights = new double[merges];
+
+    nnChainCore(ids.size(), scratch, ids.iter(), ids.iter(), builder, pairs, heights);
+
+    return buildResult(ids, pairs, heights);
+  }
+
+  /**
+   * Build the result, adding the merges ordered by their height. Ties keep the
+   * order in which they were found.
+   *
+   * @param ids Object ids
+   * @param pairs Merged pairs (x, y), merging x into y
+   * @param heights Merge heights
+   * @return Hierarchy
+   */
+  private static PointerHierarchyRepresentationResult buildResult(ArrayDBIDs ids, final int[] pairs, final double[] heights) {
+    int[] order = new int[heights.length];
+    for(int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    IntegerArrayQuickSort.sort(order, new IntegerComparator() {
+      @Override
+      public int compare(int x, int y) {
+        final int c = Double.compare(heights[x], heights[y]);
+        return c != 0 ? c : Integer.compare(x, y);
+      }
+    });
+    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids);
+    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    for(int i : order) {
+      builder.add(ix.seek(pairs[i << 1]), heights[i], iy.seek(pairs[(i << 1) + 1]));
+    }
+    return builder.complete();
+  }
+
+  /**
+   * Uses NNChain as in "Modern hierarchical, agglomerative clustering
+   * algorithms" by Daniel Müllner
+   *
+   * @param size Data set size
+   * @param scratch Distance matrix
+   * @param ix First iterator
+   * @param iy Second iterator
+   * @param builder Hierarchy builder, for the working state
+   * @param pairs Output: merged pairs
+   * @param heights Output: merge heights
+   */
+  private void nnChainCore(int size, LinkageMatrix scratch, DBIDArrayIter ix, DBIDArrayIter iy, PointerHierarchyRepresentationBuilder builder, int[] pairs, double[] heights) {
+    // The maximum chain size = number of ids + 1
+    IntegerArray chain = new IntegerArray(size + 1);
+
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Running NNChain", size - 1, LOG) : null;
+    // Objects before this offset have all been merged already.
+    int first = 0;
+    for(int k = 1; k < size; k++) {
+      int a, b;
+      if(chain.size() <= 3) {
+        // Start a new chain with two arbitrary unmerged objects.
+        first = findUnlinked(first, size, ix, builder);
+        a = first;
+        b = findUnlinked(a + 1, size, ix, builder);
+        chain.clear();
+        chain.add(a);
+      }
+      else {
+        // The chain ends with (..., a, b, c, b) where b and c were merged.
+        final int last = chain.size - 1;
+        a = chain.get(last - 3);
+        // The retained cluster has the smaller index:
+        b = Math.min(chain.get(last - 2), chain.get(last - 1));
+        chain.remove(last - 2, 3);
+      }
+      // For ties, always prefer the previous element b, to avoid cycles.
+      double mindist = scratch.get(a, b);
+      do {
+        int c = b;
+        final int abase = triangleSize(a);
+        for(int i = first; i < a; i++) {
+          if(i != b && !builder.isLinked(ix.seek(i))) {
+            final double dist = scratch.get(abase + i);
+            if(dist < mindist) {
+              mindist = dist;
+              c = i;
+            }
+          }
+        }
+        for(int i = a + 1, ibase = triangleSize(i); i < size; ibase += i++) {
+          if(i != b && !builder.isLinked(ix.seek(i))) {
+            final double dist = scratch.get(ibase + a);
+            if(dist < mindist) {
+              mindist = dist;
+              c = i;
+            }
+          }
+        }
+        b = a;
+        a = c;
+        chain.add(a);
+      }
+      while(chain.size() < 3 || a != chain.get(chain.size - 3));
+
+      // We always merge the larger into the smaller index:
+      if(a < b) {
+        int tmp = a;
+        a = b;
+        b = tmp;
+      }
+      assert (mindist == scratch.get(a, b));
+      merge(size, scratch, ix, iy, builder, mindist, a, b);
+      pairs[(k - 1) << 1] = a;
+      pairs[((k - 1) << 1) + 1] = b;
+      heights[k - 1] = mindist;
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+  }
+
+  /**
+   * Find the next unlinked object.
+   *
+   * @param pos Starting position
+   * @param end End position
+   * @param ix Iterator to use
+   * @param builder Hierarchy builder
+   * @return Position of the next unlinked object
+   */
+  private static int findUnlinked(int pos, int end, DBIDArrayIter ix, PointerHierarchyRepresentationBuilder builder) {
+    for(ix.seek(pos); pos < end; ix.advance(), pos++) {
+      if(!builder.isLinked(ix)) {
+        return pos;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Object type
+   */
+  public static class Parameterizer<O> extends AGNES.Parameterizer<O> {
+    @Override
+    protected NNChain<O> makeInstance() {
+      return new NNChain<>(distanceFunction, linkage, single);
+    }
+  }
+}
@@ -34,10 +34,12 @@ import de.lmu.ifi.dbs.elki.algorithm.AbstractNumberVectorDistanceBasedAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.RandomlyChosenInitialMeans;
+import de.lmu.ifi.dbs.elki.data.Cluster;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.VectorUtil.SortDBIDsBySingleDimension;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
 import de.lmu.ifi.dbs.elki.data.model.Model;
 import de.lmu.ifi.dbs.elki.data.type.CombinedTypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
@@ -330,6 +332,42 @@ public abstract class AbstractKMeans<V extends NumberVector, M extends Model> ex
     return s;
   }
 
+  /**
+   * Wrap the final means and cluster members into a clustering result.
+   *
+   * @param relation Data relation
+   * @param means Cluster means
+   * @param clusters Cluster members
+   * @param varstat Compute and log the variance statistic
+   * @return Clustering
+   */
+  protected Clustering<KMeansModel> buildResult(Relation<V> relation, double[][] means, List<? extends DBIDs> clusters, boolean varstat) {
+    double totalvariance = 0.;
+    Clustering<KMeansModel> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    for(int i = 0; i < clusters.size(); i++) {
+      DBIDs ids = clusters.get(i);
+      if(ids.size() == 0) {
+        continue;
+      }
+      double[] mean = means[i];
+      double varsum = 0.;
+      if(varstat) {
+        DoubleVector mvec = DoubleVector.wrap(mean);
+        for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+          varsum += distanceFunction.distance(mvec, relation.get(it));
+        }
+        totalvariance += varsum;
+      }
+      KMeansModel model = new KMeansModel(mean, varsum);
+      result.addToplevelCluster(new Cluster<>(ids, model));
+    }
+    Logging log = getLogger();
+    if(log.isStatistics() && varstat) {
+      log.statistics(new DoubleStatistic(this.getClass().getName() + ".variance-sum", totalvariance));
+    }
+    return result;
+  }
+
   /**
    * Parameterization class.
    *
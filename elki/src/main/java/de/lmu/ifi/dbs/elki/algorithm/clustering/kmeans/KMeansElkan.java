@@ -29,7 +29,6 @@ import java.util.Arrays;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
-import de.lmu.ifi.dbs.elki.data.Cluster;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
@@ -42,14 +41,12 @@ import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
-import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
@@ -98,7 +95,7 @@ public class KMeansElkan<V extends NumberVector> extends AbstractKMeans<V, KMean
   /**
    * Flag whether to compute the final variance statistic.
    */
-  private boolean varstat = false;
+  protected boolean varstat = false;
 
   /**
    * Constructor.
@@ -187,30 +184,7 @@ public class KMeansElkan<V extends NumberVector> extends AbstractKMeans<V, KMean
     upper.destroy();
     lower.destroy();
 
-    // Wrap result
-    double totalvariance = 0.;
-    Clustering<KMeansModel> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
-    for(int i = 0; i < clusters.size(); i++) {
-      DBIDs ids = clusters.get(i);
-      if(ids.size() == 0) {
-        continue;
-      }
-      double[] mean = means[i];
-      double varsum = 0.;
-      if(varstat) {
-        DoubleVector mvec = DoubleVector.wrap(mean);
-        for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
-          varsum += distanceFunction.distance(mvec, relation.get(it));
-        }
-        totalvariance += varsum;
-      }
-      KMeansModel model = new KMeansModel(mean, varsum);
-      result.addToplevelCluster(new Cluster<>(ids, model));
-    }
-    if(LOG.isStatistics() && varstat) {
-      LOG.statistics(new DoubleStatistic(this.getClass().getName() + ".variance-sum", totalvariance));
-    }
-    return result;
+    return buildResult(relation, means, clusters, varstat);
   }
 
   /**
@@ -220,7 +194,7 @@ public class KMeansElkan<V extends NumberVector> extends AbstractKMeans<V, KMean
    * @param sep Output array of separation
    * @param cdist Center-to-Center distances
    */
-  private void recomputeSeperation(double[][] means, double[] sep, double[][] cdist) {
+  protected void recomputeSeperation(double[][] means, double[] sep, double[][] cdist) {
     final int k = means.length;
     assert (sep.length == k);
     boolean issquared = (distanceFunction instanceof SquaredEuclideanDistanceFunction);
@@ -366,7 +340,7 @@ public class KMeansElkan<V extends NumberVector> extends AbstractKMeans<V, KMean
    * @param dists Distances moved
    * @return Maximum distance moved
    */
-  private double maxMoved(double[][] means, double[][] newmeans, double[] dists) {
+  protected double maxMoved(double[][] means, double[][] newmeans, double[] dists) {
     assert (means.length == k);
     assert (newmeans.length == k);
     assert (dists.length == k);
@@ -0,0 +1,294 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+import net.jafama.FastMath;
+
+/**
+ * Shared code of the parallel processors for k-means variants that maintain
+ * per-object distance bounds, such as Elkan's and Hamerly's k-means.
+ *
+ * Each instance accumulates the changes to the cluster sums and sizes locally,
+ * and these are merged on cleanup.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @param <V> Vector type
+ */
+public abstract class AbstractBoundedKMeansProcessor<V extends NumberVector> implements Processor {
+  /**
+   * Data relation.
+   */
+  Relation<V> relation;
+
+  /**
+   * Distance function.
+   */
+  NumberVectorDistanceFunction<? super V> distance;
+
+  /**
+   * Assignment storage.
+   */
+  WritableIntegerDataStore assignment;
+
+  /**
+   * Upper bounds.
+   */
+  WritableDoubleDataStore upper;
+
+  /**
+   * Running sums of the clusters.
+   */
+  double[][] sums;
+
+  /**
+   * Cluster sizes.
+   */
+  int[] sizes;
+
+  /**
+   * Current means.
+   */
+  double[][] means;
+
+  /**
+   * Half the distance to the nearest other mean.
+   */
+  double[] sep;
+
+  /**
+   * Distance the means moved in the previous iteration, {@code null} in the
+   * first iteration.
+   */
+  double[] move;
+
+  /**
+   * Number of reassigned objects.
+   */
+  int changed;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param assignment Cluster assignment
+   * @param upper Upper bounds
+   * @param sums Running sums of the clusters
+   * @param sizes Cluster sizes
+   */
+  public AbstractBoundedKMeansProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, double[][] sums, int[] sizes) {
+    super();
+    this.relation = relation;
+    this.distance = distance;
+    this.assignment = assignment;
+    this.upper = upper;
+    this.sums = sums;
+    this.sizes = sizes;
+  }
+
+  /**
+   * Initialize the shared state for a new iteration.
+   *
+   * @param means Current means
+   * @param sep Half the separation of means (unused in the first iteration)
+   * @param move Distance moved by each mean, {@code null} for the first
+   *        iteration
+   */
+  protected void nextIteration(double[][] means, double[] sep, double[] move) {
+    this.means = means;
+    this.sep = sep;
+    this.move = move;
+    this.changed = 0;
+  }
+
+  /**
+   * Get the number of reassigned objects.
+   *
+   * @return Number of changes
+   */
+  public int changed() {
+    return changed;
+  }
+
+  /**
+   * Get the new means, computed from the cluster sums and sizes.
+   *
+   * @return New means
+   */
+  public double[][] getMeans() {
+    final int k = sums.length;
+    double[][] newmeans = new double[k][];
+    for(int i = 0; i < k; i++) {
+      final double[] sum = sums[i], mean = newmeans[i] = new double[sum.length];
+      final double f = sizes[i] > 0 ? 1. / sizes[i] : 1.;
+      for(int d = 0; d < sum.length; d++) {
+        mean[d] = sum[d] * f;
+      }
+    }
+    return newmeans;
+  }
+
+  @Override
+  public void cleanup(Processor.Instance inst) {
+    Instance<?> instance = (Instance<?>) inst;
+    synchronized(this) {
+      changed += instance.changed;
+      for(int i = 0; i < sizes.length; i++) {
+        final double[] dsum = instance.sums[i];
+        if(dsum == null) {
+          continue;
+        }
+        final double[] sum = sums[i];
+        for(int d = 0; d < sum.length; d++) {
+          sum[d] += dsum[d];
+        }
+        sizes[i] += instance.sizes[i];
+      }
+    }
+  }
+
+  /**
+   * Instance to process part of the data set, for a single iteration.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public abstract static class Instance<V extends NumberVector> implements Processor.Instance {
+    /**
+     * Data relation.
+     */
+    protected Relation<V> relation;
+
+    /**
+     * Distance function.
+     */
+    protected NumberVectorDistanceFunction<? super V> distance;
+
+    /**
+     * Use the square root of the distances.
+     */
+    protected boolean issquared;
+
+    /**
+     * Cluster assignment storage.
+     */
+    protected WritableIntegerDataStore assignment;
+
+    /**
+     * Upper bounds.
+     */
+    protected WritableDoubleDataStore upper;
+
+    /**
+     * Current means.
+     */
+    protected double[][] means;
+
+    /**
+     * Half the distance to the nearest other mean.
+     */
+    protected double[] sep;
+
+    /**
+     * Distance moved by the means, {@code null} in the first iteration.
+     */
+    protected double[] move;
+
+    /**
+     * Changes to the cluster sums; allocated on demand.
+     */
+    protected double[][] sums;
+
+    /**
+     * Changes to the cluster sizes.
+     */
+    protected int[] sizes;
+
+    /**
+     * Number of reassigned objects.
+     */
+    protected int changed = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent processor
+     */
+    protected Instance(AbstractBoundedKMeansProcessor<V> parent) {
+      super();
+      this.relation = parent.relation;
+      this.distance = parent.distance;
+      this.issquared = (distance instanceof SquaredEuclideanDistanceFunction);
+      this.assignment = parent.assignment;
+      this.upper = parent.upper;
+      this.means = parent.means;
+      this.sep = parent.sep;
+      this.move = parent.move;
+      final int k = means.length;
+      this.sums = new double[k][];
+      this.sizes = new int[k];
+    }
+
+    /**
+     * Compute the (metric) distance to a mean.
+     *
+     * @param fv Vector
+     * @param mean Mean
+     * @return Distance
+     */
+    protected double distance(V fv, double[] mean) {
+      final double dist = distance.distance(fv, DoubleVector.wrap(mean));
+      return issquared ? FastMath.sqrt(dist) : dist;
+    }
+
+    /**
+     * Add or remove a vector to the local cluster sums.
+     *
+     * @param fv Vector
+     * @param c Cluster number
+     * @param sign +1 or -1
+     */
+    protected void add(V fv, int c, int sign) {
+      double[] sum = sums[c];
+      if(sum == null) {
+        sum = sums[c] = new double[fv.getDimensionality()];
+      }
+      for(int d = 0; d < sum.length; d++) {
+        sum[d] += sign * fv.doubleValue(d);
+      }
+      sizes[c] += sign;
+    }
+  }
+}
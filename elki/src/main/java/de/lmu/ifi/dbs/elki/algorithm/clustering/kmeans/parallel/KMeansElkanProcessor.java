@@ -0,0 +1,193 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+
+/**
+ * Parallel processor for a single iteration of Elkan's k-means.
+ *
+ * The bounds are stored per object, so every instance only modifies the bounds
+ * of the objects it processes.
+ *
+ * The bound update after moving the means is folded into the next iteration,
+ * to avoid an additional pass over the data. The lower bounds of each object
+ * are stored in an array of length k.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has Instance
+ *
+ * @param <V> Vector type
+ */
+public class KMeansElkanProcessor<V extends NumberVector> extends AbstractBoundedKMeansProcessor<V> {
+  /**
+   * Lower bounds.
+   */
+  WritableDataStore<double[]> lower;
+
+  /**
+   * Half the distances between means.
+   */
+  double[][] cdist;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param assignment Cluster assignment
+   * @param upper Upper bounds
+   * @param lower Lower bounds
+   * @param sums Running sums of the clusters
+   * @param sizes Cluster sizes
+   */
+  public KMeansElkanProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, WritableDoubleDataStore upper, WritableDataStore<double[]> lower, double[][] sums, int[] sizes) {
+    super(relation, distance, assignment, upper, sums, sizes);
+    this.lower = lower;
+  }
+
+  /**
+   * Initialize for a new iteration.
+   *
+   * @param means Current means
+   * @param sep Half the separation of means (unused in the first iteration)
+   * @param cdist Half the distances between means (unused in the first
+   *        iteration)
+   * @param move Distance moved by each mean, {@code null} for the first
+   *        iteration
+   */
+  public void nextIteration(double[][] means, double[] sep, double[][] cdist, double[] move) {
+    nextIteration(means, sep, move);
+    this.cdist = cdist;
+  }
+
+  @Override
+  public Instance<V> instantiate(Executor executor) {
+    return new Instance<>(this);
+  }
+
+  /**
+   * Instance to process part of the data set, for a single iteration.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public static class Instance<V extends NumberVector> extends AbstractBoundedKMeansProcessor.Instance<V> {
+    /**
+     * Lower bounds.
+     */
+    private WritableDataStore<double[]> lower;
+
+    /**
+     * Half the distances between means.
+     */
+    private double[][] cdist;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent processor
+     */
+    protected Instance(KMeansElkanProcessor<V> parent) {
+      super(parent);
+      this.lower = parent.lower;
+      this.cdist = parent.cdist;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      final int orig = assignment.intValue(id);
+      final double[] l = lower.get(id);
+      if(move == null) {
+        // Initial assignment, computing all bounds.
+        V fv = relation.get(id);
+        double best = Double.POSITIVE_INFINITY;
+        int cur = -1;
+        for(int j = 0; j < means.length; j++) {
+          final double dist = distance(fv, means[j]);
+          l[j] = dist;
+          if(dist < best) {
+            cur = j;
+            best = dist;
+          }
+        }
+        assignment.putInt(id, cur);
+        upper.putDouble(id, best);
+        add(fv, cur, 1);
+        ++changed;
+        return;
+      }
+      // Apply the bound update of the previous iteration:
+      double u = upper.doubleValue(id) + move[orig];
+      for(int j = 0; j < l.length; j++) {
+        l[j] -= move[j];
+      }
+      // Upper bound check (#2):
+      if(u <= sep[orig]) {
+        upper.putDouble(id, u);
+        return;
+      }
+      boolean recompute_u = true; // Elkan's r(x)
+      V fv = relation.get(id);
+      // Check all (other) means:
+      int cur = orig;
+      for(int j = 0; j < means.length; j++) {
+        if(orig == j || u <= l[j] || u <= cdist[cur][j]) {
+          continue; // Condition #3 i-iii not satisfied
+        }
+        if(recompute_u) { // Need to update bound? #3a
+          u = distance(fv, means[cur]);
+          recompute_u = false; // Once only
+          if(u <= l[j] || u <= cdist[cur][j]) { // #3b
+            continue;
+          }
+        }
+        final double dist = distance(fv, means[j]);
+        l[j] = dist;
+        if(dist < u) {
+          cur = j;
+          u = dist;
+        }
+      }
+      upper.putDouble(id, u);
+      // Object is to be reassigned.
+      if(cur != orig) {
+        assignment.putInt(id, cur);
+        add(fv, cur, 1);
+        add(fv, orig, -1);
+        ++changed;
+      }
+    }
+  }
+}
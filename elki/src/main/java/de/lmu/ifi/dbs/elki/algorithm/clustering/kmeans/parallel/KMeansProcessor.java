@@ -150,8 +150,8 @@ public class KMeansProcessor<V extends NumberVector> implements Processor {
         }
         plusTimesEquals(cent, instance.centroids[i], 1. / sum);
         sizes[i] += sizeb;
-        plusEquals(varsum, instance.varsum);
       }
+      plusEquals(varsum, instance.varsum);
     }
   }
 
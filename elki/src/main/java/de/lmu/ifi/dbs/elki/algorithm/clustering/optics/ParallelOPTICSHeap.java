@@ -0,0 +1,418 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.optics;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.ThreadSafeQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.UpdatableHeap;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * The OPTICS algorithm, with the range queries computed in parallel.
+ *
+ * The expansion order is exactly the same as in {@link OPTICSHeap}. But
+ * whenever the neighborhood of the next object to expand is not yet known,
+ * the neighborhoods of a batch of likely successors are computed by worker
+ * threads: the candidates in the top levels of the heap, and the next objects
+ * of the outer loop. Because every object is expanded exactly once, all
+ * speculatively computed neighborhoods are used eventually.
+ *
+ * Range queries are only run concurrently if they are marked as
+ * {@link ThreadSafeQuery}; otherwise, this falls back to the serial
+ * algorithm.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf Instance
+ *
+ * @param <O> the type of DatabaseObjects handled by the algorithm
+ */
+public class ParallelOPTICSHeap<O> extends AbstractOPTICS<O> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelOPTICSHeap.class);
+
+  /**
+   * Number of queries to batch per thread.
+   */
+  private static final int BATCH_PER_THREAD = 16;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts value
+   */
+  public ParallelOPTICSHeap(DistanceFunction<? super O> distanceFunction, double epsilon, int minpts) {
+    super(distanceFunction, epsilon, minpts);
+  }
+
+  @Override
+  public ClusterOrder run(Database db, Relation<O> relation) {
+    DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
+    RangeQuery<O> rq = db.getRangeQuery(dq, epsilon);
+    ParallelCore core = ParallelCore.getCore();
+    if(!(rq instanceof ThreadSafeQuery) || core.getParallelism() <= 1) {
+      core = null;
+    }
+    else {
+      core.connect();
+    }
+    try {
+      return new Instance(relation, rq, core).run();
+    }
+    finally {
+      if(core != null) {
+        core.disconnect();
+      }
+    }
+  }
+
+  /**
+   * Instance for processing a single data set.
+   *
+   * @author Erich Schubert
+   */
+  private class Instance {
+    /**
+     * Holds a set of processed ids.
+     */
+    private ModifiableDBIDs processedIDs;
+
+    /**
+     * Heap of candidates.
+     */
+    UpdatableHeap<OPTICSHeapEntry> heap;
+
+    /**
+     * Output cluster order.
+     */
+    ClusterOrder clusterOrder;
+
+    /**
+     * IDs to process.
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Position of the outer loop.
+     */
+    private DBIDArrayIter seed;
+
+    /**
+     * Progress for logging.
+     */
+    FiniteProgress progress;
+
+    /**
+     * Range query.
+     */
+    RangeQuery<O> rangeQuery;
+
+    /**
+     * Parallel core, may be {@code null}.
+     */
+    ParallelCore core;
+
+    /**
+     * Neighborhoods computed ahead of time.
+     */
+    WritableDataStore<DoubleDBIDList> prefetched;
+
+    /**
+     * Number of neighborhoods computed ahead of time.
+     */
+    long numprefetched;
+
+    /**
+     * Constructor for a single data set.
+     *
+     * @param relation Data relation
+     * @param rangeQuery Range query
+     * @param core Parallel core, may be {@code null}
+     */
+    public Instance(Relation<O> relation, RangeQuery<O> rangeQuery, ParallelCore core) {
+      ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      processedIDs = DBIDUtil.newHashSet(ids.size());
+      clusterOrder = new ClusterOrder(ids, "OPTICS Clusterorder", "optics-clusterorder");
+      progress = LOG.isVerbose() ? new FiniteProgress("OPTICS", ids.size(), LOG) : null;
+      this.rangeQuery = rangeQuery;
+      this.core = core;
+      if(core != null) {
+        prefetched = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, DoubleDBIDList.class);
+      }
+      heap = new UpdatableHeap<>();
+    }
+
+    /**
+     * Process the data set.
+     *
+     * @return Cluster order result.
+     */
+    public ClusterOrder run() {
+      for(seed = ids.iter(); seed.valid(); seed.advance()) {
+        if(!processedIDs.contains(seed)) {
+          assert (heap.isEmpty());
+          expandClusterOrder(seed);
+        }
+      }
+      LOG.ensureCompleted(progress);
+      if(prefetched != null) {
+        prefetched.destroy();
+        LOG.statistics(new LongStatistic(ParallelOPTICSHeap.class.getName() + ".prefetched-queries", numprefetched));
+      }
+      return clusterOrder;
+    }
+
+    /**
+     * OPTICS-function expandClusterOrder.
+     *
+     * @param objectID the currently processed object
+     */
+    protected void expandClusterOrder(DBIDRef objectID) {
+      heap.add(new OPTICSHeapEntry(DBIDUtil.deref(objectID), null, Double.POSITIVE_INFINITY));
+
+      while(!heap.isEmpty()) {
+        final OPTICSHeapEntry current = heap.poll();
+        clusterOrder.add(current.objectID, current.reachability, current.predecessorID);
+        processedIDs.add(current.objectID);
+
+        DoubleDBIDList neighbors = getNeighbors(current.objectID);
+        if(neighbors.size() >= minpts) {
+          DoubleDBIDListIter neighbor = neighbors.iter();
+          final double coreDistance = neighbor.seek(minpts - 1).doubleValue();
+
+          for(neighbor.seek(0); neighbor.valid(); neighbor.advance()) {
+            if(processedIDs.contains(neighbor)) {
+              continue;
+            }
+            double reachability = MathUtil.max(neighbor.doubleValue(), coreDistance);
+            heap.add(new OPTICSHeapEntry(DBIDUtil.deref(neighbor), current.objectID, reachability));
+          }
+        }
+        LOG.incrementProcessed(progress);
+      }
+    }
+
+    /**
+     * Get the sorted neighbors of an object, computing a batch of likely
+     * successors in parallel if necessary.
+     *
+     * @param id Object
+     * @return Sorted neighbors
+     */
+    private DoubleDBIDList getNeighbors(DBIDRef id) {
+      if(core == null) {
+        return query(rangeQuery, id, epsilon);
+      }
+      DoubleDBIDList neighbors = prefetched.get(id);
+      if(neighbors == null) {
+        prefetch(id);
+        neighbors = prefetched.get(id);
+      }
+      prefetched.delete(id);
+      return neighbors;
+    }
+
+    /**
+     * Compute the neighborhoods of the given object, and of a batch of likely
+     * successors.
+     *
+     * @param id Object needed now
+     */
+    private void prefetch(DBIDRef id) {
+      final int batchsize = core.getParallelism() * BATCH_PER_THREAD;
+      HashSetModifiableDBIDs seen = DBIDUtil.newHashSet(batchsize);
+      ArrayModifiableDBIDs batch = DBIDUtil.newArray(batchsize);
+      seen.add(id);
+      batch.add(id);
+      // The upper levels of the heap will be expanded next.
+      for(UpdatableHeap<OPTICSHeapEntry>.UnorderedIter it = heap.unorderedIter(); it.valid() && batch.size() < batchsize; it.advance()) {
+        addCandidate(it.get().objectID, seen, batch);
+      }
+      // Followed by the next objects of the outer loop.
+      DBIDArrayIter it = ids.iter().seek(seed.getOffset() + 1);
+      for(; it.valid() && batch.size() < batchsize; it.advance()) {
+        addCandidate(it, seen, batch);
+      }
+      numprefetched += batch.size() - 1;
+      final int blocksize = (batch.size() + core.getParallelism() - 1) / core.getParallelism();
+      List<Future<DoubleDBIDList[]>> futures = new ArrayList<>();
+      for(int start = 0; start < batch.size(); start += blocksize) {
+        futures.add(core.submit(new Block<>(rangeQuery, epsilon, batch, start, Math.min(start + blocksize, batch.size()))));
+      }
+      try {
+        DBIDArrayIter bi = batch.iter();
+        for(Future<DoubleDBIDList[]> fut : futures) {
+          for(DoubleDBIDList neighbors : fut.get()) {
+            prefetched.put(bi, neighbors);
+            bi.advance();
+          }
+        }
+      }
+      catch(ExecutionException e) {
+        throw new AbortException("Parallel OPTICS failed.", e.getCause());
+      }
+      catch(InterruptedException e) {
+        throw new AbortException("OPTICS interrupted.");
+      }
+    }
+
+    /**
+     * Add a candidate to the batch, unless already known.
+     *
+     * @param cand Candidate
+     * @param seen Objects already in the batch
+     * @param batch Batch
+     */
+    private void addCandidate(DBIDRef cand, HashSetModifiableDBIDs seen, ArrayModifiableDBIDs batch) {
+      if(processedIDs.contains(cand) || prefetched.get(cand) != null || !seen.add(cand)) {
+        return;
+      }
+      batch.add(cand);
+    }
+  }
+
+  /**
+   * Compute the sorted neighborhood of an object.
+   *
+   * @param rangeQuery Range query
+   * @param id Object
+   * @param epsilon Query radius
+   * @param <O> Object type
+   * @return Sorted neighbors
+   */
+  private static <O> DoubleDBIDList query(RangeQuery<O> rangeQuery, DBIDRef id, double epsilon) {
+    ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList();
+    rangeQuery.getRangeForDBID(id, epsilon, neighbors);
+    neighbors.sort();
+    return neighbors;
+  }
+
+  /**
+   * Compute the neighborhoods of a block of objects.
+   *
+   * @author Erich Schubert
+   *
+   * @param <O> Object type
+   */
+  private static class Block<O> implements Callable<DoubleDBIDList[]> {
+    /**
+     * Range query.
+     */
+    private RangeQuery<O> rangeQuery;
+
+    /**
+     * Query radius.
+     */
+    private double epsilon;
+
+    /**
+     * Objects to query.
+     */
+    private ArrayDBIDs batch;
+
+    /**
+     * Block range.
+     */
+    private int start, end;
+
+    /**
+     * Constructor.
+     *
+     * @param rangeQuery Range query
+     * @param epsilon Query radius
+     * @param batch Objects to query
+     * @param start Block start
+     * @param end Block end
+     */
+    Block(RangeQuery<O> rangeQuery, double epsilon, ArrayDBIDs batch, int start, int end) {
+      this.rangeQuery = rangeQuery;
+      this.epsilon = epsilon;
+      this.batch = batch;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public DoubleDBIDList[] call() {
+      DoubleDBIDList[] result = new DoubleDBIDList[end - start];
+      DBIDArrayIter it = batch.iter().seek(start);
+      for(int i = 0; i < result.length; i++, it.advance()) {
+        result[i] = query(rangeQuery, it, epsilon);
+      }
+      return result;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<O> extends AbstractOPTICS.Parameterizer<O> {
+    @Override
+    protected ParallelOPTICSHeap<O> makeInstance() {
+      return new ParallelOPTICSHeap<>(distanceFunction, epsilon, minpts);
+    }
+  }
+}
@@ -26,6 +26,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.lmu.ifi.dbs.elki.data.BitVector;
 import de.lmu.ifi.dbs.elki.data.SparseFeatureVector;
@@ -33,19 +37,20 @@ import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.Database;
-import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.HashSetDBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerComparator;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
 /**
  * Eclat is a depth-first discovery algorithm for mining frequent itemsets.
@@ -55,16 +60,15 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * prefix lattice, stopping traversal when the minimum support is no longer
  * satisfied.
  *
- * This implementation is the basic algorithm only, and does not use diffsets.
- * Columns are represented using a sparse representation, which theoretically is
- * beneficial when the density is less than 1/31. This corresponds roughly to a
- * minimum support of 3% for 1-itemsets. When searching for itemsets with a
- * larger minimum support, it may be desirable to use a dense bitset
- * representation instead and/or implement an automatic switching technique!
+ * Transaction lists are stored either as sorted arrays of transaction numbers,
+ * or as bitsets when the density exceeds 1/32, where a bitset needs less
+ * memory; the representation is chosen for every list individually. Within
+ * each equivalence class, the algorithm switches from transaction lists to
+ * diffsets (the transactions of the prefix that do not contain the item) as
+ * soon as these are smaller in total, which is the case for dense data.
  *
- * Performance of this implementation is probably surpassed with a low-level C
- * implementation based on SIMD bitset operations as long as support of an
- * itemset is high, which are not easily accessible in Java.
+ * The equivalence classes of the individual items are independent, and are
+ * mined by multiple threads if multiple processors are available.
  *
  * Reference:
  * <p>
@@ -73,8 +77,17 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * Proc. 3rd ACM SIGKDD '97 Int. Conf. on Knowledge Discovery and Data Mining
  * </p>
  * 
+ * Diffsets:
+ * <p>
+ * M. J. Zaki and K. Gouda<br />
+ * Fast vertical mining using diffsets<br />
+ * Proc. 9th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining
+ * </p>
+ * 
  * @author Erich Schubert
  * @since 0.7.0
+ *
+ * @apiviz.uses ParallelCore
  */
 @Reference(title = "New Algorithms for Fast Discovery of Association Rules", //
 authors = "M.J. Zaki, S. Parthasarathy, M. Ogihara, and W. Li", //
@@ -91,6 +104,15 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
    */
   private static final String STAT = Eclat.class.getName() + ".";
 
+  /**
+   * Reference for diffsets.
+   */
+  @Reference(authors = "M. J. Zaki and K. Gouda", //
+      title = "Fast vertical mining using diffsets", //
+      booktitle = "Proc. 9th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining", //
+      url = "http://dx.doi.org/10.1145/956750.956788")
+  public static final Void DIFFSET_REFERENCE = null;
+
   /**
    * Constructor.
    *
@@ -118,17 +140,13 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
 
     LOG.verbose("Build 1-dimensional transaction lists.");
     Duration ctime = LOG.newDuration(STAT + "eclat.transposition.time").begin();
-    DBIDs[] idx = buildIndex(relation, dim, minsupp);
+    final int[] counts = countItemSupport(relation, dim);
+    final int[] idx = buildIndex(counts, minsupp);
+    final Tids[] sets = buildTransactionLists(relation, dim, counts, idx);
     LOG.statistics(ctime.end());
 
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building frequent itemsets", idx.length, LOG) : null;
     Duration etime = LOG.newDuration(STAT + "eclat.extraction.time").begin();
-    final List<Itemset> solution = new ArrayList<>();
-    for(int i = 0; i < idx.length; i++) {
-      LOG.incrementProcessed(prog);
-      extractItemsets(idx, i, minsupp, solution);
-    }
-    LOG.ensureCompleted(prog);
+    final List<Itemset> solution = extract(idx, counts, sets, minsupp, relation.size());
     Collections.sort(solution);
     LOG.statistics(etime.end());
 
@@ -136,89 +154,490 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
     return new FrequentItemsetsResult("Eclat", "eclat", solution, meta, relation.size());
   }
 
-  // TODO: implement diffsets.
-  private void extractItemsets(DBIDs[] idx, int start, int minsupp, List<Itemset> solution) {
-    int[] buf = new int[idx.length];
-    DBIDs iset = idx[start];
-    if(iset == null || iset.size() < minsupp) {
-      return;
+  /**
+   * Extract the frequent itemsets.
+   *
+   * The equivalence classes of the individual items are processed by multiple
+   * threads, each taking the next item when done with the previous one.
+   *
+   * @param idx Frequent items
+   * @param counts Item supports
+   * @param sets Transaction lists of the frequent items
+   * @param minsupp Minimum support
+   * @param n Number of transactions
+   * @return Frequent itemsets (not sorted)
+   */
+  private List<Itemset> extract(final int[] idx, final int[] counts, final Tids[] sets, final int minsupp, final int n) {
+    final int items = idx.length;
+    final int[] supp = new int[items];
+    for(int i = 0; i < items; i++) {
+      supp[i] = counts[idx[i]];
+    }
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building frequent itemsets", items, LOG) : null;
+    final AtomicInteger next = new AtomicInteger(0);
+    final ParallelCore core = ParallelCore.getCore();
+    final int threads = Math.min(core.getParallelism(), items);
+    if(threads <= 1) {
+      List<Itemset> solution = new ArrayList<>();
+      new Miner(idx, minsupp, n, solution).run(supp, sets, next, prog);
+      LOG.ensureCompleted(prog);
+      return solution;
+    }
+    List<Future<List<Itemset>>> futures = new ArrayList<>(threads);
+    core.connect();
+    try {
+      for(int i = 0; i < threads; i++) {
+        futures.add(core.submit(new Callable<List<Itemset>>() {
+          @Override
+          public List<Itemset> call() {
+            List<Itemset> solution = new ArrayList<>();
+            new Miner(idx, minsupp, n, solution).run(supp, sets, next, prog);
+            return solution;
+          }
+        }));
+      }
+      List<Itemset> solution = new ArrayList<>();
+      for(Future<List<Itemset>> fut : futures) {
+        solution.addAll(fut.get());
+      }
+      LOG.ensureCompleted(prog);
+      return solution;
     }
-    if(minlength <= 1) {
-      solution.add(new OneItemset(start, iset.size()));
+    catch(ExecutionException e) {
+      throw new AbortException("Parallel Eclat failed.", e.getCause());
     }
-    if(maxlength > 1) {
-      buf[0] = start;
-      extractItemsets(iset, idx, buf, 1, start + 1, minsupp, solution);
+    catch(InterruptedException e) {
+      throw new AbortException("Eclat interrupted.");
+    }
+    finally {
+      core.disconnect();
     }
   }
 
-  private void extractItemsets(DBIDs iset, DBIDs[] idx, int[] buf, int depth, int start, int minsupp, List<Itemset> solution) {
-    // TODO: reuse arrays.
-    final int depth1 = depth + 1;
-    for(int i = start; i < idx.length; i++) {
-      if(idx[i] == null) {
-        continue;
+  /**
+   * Depth-first miner for the equivalence classes; one instance per thread.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class Miner {
+    /**
+     * Frequent items, for translating back to the original dimensions.
+     */
+    private final int[] idx;
+
+    /**
+     * Minimum support.
+     */
+    private final int minsupp;
+
+    /**
+     * Number of transactions.
+     */
+    private final int n;
+
+    /**
+     * Output list.
+     */
+    private final List<Itemset> solution;
+
+    /**
+     * Current prefix.
+     */
+    private final int[] buf;
+
+    /**
+     * Constructor.
+     *
+     * @param idx Frequent items
+     * @param minsupp Minimum support
+     * @param n Number of transactions
+     * @param solution Output list
+     */
+    Miner(int[] idx, int minsupp, int n, List<Itemset> solution) {
+      this.idx = idx;
+      this.minsupp = minsupp;
+      this.n = n;
+      this.solution = solution;
+      this.buf = new int[idx.length];
+    }
+
+    /**
+     * Process the equivalence classes of the 1-itemsets.
+     *
+     * @param supp Item supports
+     * @param sets Transaction lists
+     * @param next Next item to process, shared by all threads
+     * @param prog Progress, may be {@code null}
+     */
+    void run(int[] supp, Tids[] sets, AtomicInteger next, FiniteProgress prog) {
+      final int[] items = new int[supp.length];
+      for(int i = 0; i < items.length; i++) {
+        items[i] = i;
       }
-      DBIDs ids = mergeJoin(iset, idx[i]);
-      if(ids.size() < minsupp) {
-        continue;
+      for(int i = next.getAndIncrement(); i < items.length; i = next.getAndIncrement()) {
+        if(minlength <= 1) {
+          solution.add(new OneItemset(idx[i], supp[i]));
+        }
+        if(maxlength > 1) {
+          buf[0] = i;
+          extract(items, supp, sets, items.length, false, i, 1);
+        }
+        LOG.incrementProcessed(prog);
+      }
+    }
+
+    /**
+     * Extract the itemsets with the prefix buf[0..depth-1] + items[i].
+     *
+     * @param items Items of the equivalence class
+     * @param supp Supports
+     * @param sets Transaction lists or diffsets
+     * @param size Size of the equivalence class
+     * @param diff Flag to indicate diffsets
+     * @param i Member of the equivalence class to extend
+     * @param depth Current prefix length
+     */
+    private void extract(int[] items, int[] supp, Tids[] sets, int size, boolean diff, int i, int depth) {
+      final int depth1 = depth + 1;
+      // The new equivalence class:
+      final int remaining = size - i - 1;
+      int[] citems = new int[remaining], csupp = new int[remaining];
+      Tids[] csets = new Tids[remaining];
+      int csize = 0;
+      long tidsum = 0, diffsum = 0;
+      buf[depth - 1] = items[i];
+      for(int j = i + 1; j < size; j++) {
+        final Tids s;
+        final int sup;
+        if(diff) {
+          // d(PXY) = d(PY) \ d(PX)
+          s = sets[j].difference(sets[i], n);
+          sup = supp[i] - s.size;
+        }
+        else {
+          s = sets[i].intersect(sets[j], n);
+          sup = s.size;
+        }
+        if(sup < minsupp) {
+          continue;
+        }
+        citems[csize] = items[j];
+        csupp[csize] = sup;
+        csets[csize++] = s;
+        tidsum += sup;
+        diffsum += supp[i] - sup;
+        buf[depth] = items[j];
+        if(depth1 >= minlength) {
+          solution.add(new SparseItemset(translate(depth1), sup));
+        }
       }
-      buf[depth] = i;
-      int[] items = Arrays.copyOf(buf, depth1);
-      if(depth1 >= minlength) {
-        solution.add(new SparseItemset(items, ids.size()));
+      if(csize < 2 || depth1 >= maxlength) {
+        return;
       }
-      if(depth1 <= maxlength) {
-        extractItemsets(ids, idx, buf, depth1, i + 1, minsupp, solution);
+      boolean cdiff = diff;
+      if(!diff && diffsum < tidsum) {
+        // Diffsets are smaller: d(PXY) = t(PX) \ t(PXY)
+        for(int j = 0; j < csize; j++) {
+          csets[j] = sets[i].difference(csets[j], n);
+        }
+        cdiff = true;
+      }
+      for(int j = 0; j < csize - 1; j++) {
+        extract(citems, csupp, csets, csize, cdiff, j, depth1);
       }
     }
-  }
 
-  private DBIDs mergeJoin(DBIDs first, DBIDs second) {
-    assert (!(first instanceof HashSetDBIDs));
-    assert (!(second instanceof HashSetDBIDs));
-    ArrayModifiableDBIDs ids = DBIDUtil.newArray();
+    /**
+     * Translate the current prefix back to the original dimensions.
+     *
+     * @param len Prefix length
+     * @return Sorted item dimensions
+     */
+    private int[] translate(int len) {
+      int[] indices = new int[len];
+      for(int i = 0; i < len; i++) {
+        indices[i] = idx[buf[i]];
+      }
+      Arrays.sort(indices);
+      return indices;
+    }
+  }
 
-    DBIDIter i1 = first.iter(), i2 = second.iter();
-    while(i1.valid() && i2.valid()) {
-      int c = DBIDUtil.compare(i1, i2);
-      if(c < 0) {
-        i1.advance();
+  /**
+   * Count the support of each 1-item.
+   *
+   * @param relation Data
+   * @param dim Maximum dimensionality
+   * @return Item counts
+   */
+  private int[] countItemSupport(final Relation<BitVector> relation, final int dim) {
+    final int[] counts = new int[dim];
+    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
+      SparseFeatureVector<?> bv = relation.get(iditer);
+      // TODO: only count those which satisfy minlength?
+      for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+        counts[bv.iterDim(it)]++;
       }
-      else if(c > 0) {
-        i2.advance();
+    }
+    return counts;
+  }
+
+  /**
+   * Select the frequent items, ordered by ascending support, which keeps the
+   * equivalence classes with many members small.
+   *
+   * @param counts Item counts
+   * @param minsupp Minimum support
+   * @return Frequent items
+   */
+  private int[] buildIndex(final int[] counts, int minsupp) {
+    int numfreq = 0;
+    for(int i = 0; i < counts.length; i++) {
+      if(counts[i] >= minsupp) {
+        ++numfreq;
       }
-      else {
-        ids.add(i1);
-        i1.advance();
-        i2.advance();
+    }
+    int[] idx = new int[numfreq];
+    for(int i = 0, j = 0; i < counts.length; i++) {
+      if(counts[i] >= minsupp) {
+        idx[j++] = i;
       }
     }
-    return ids;
+    IntegerArrayQuickSort.sort(idx, new IntegerComparator() {
+      @Override
+      public int compare(int x, int y) {
+        final int c = Integer.compare(counts[x], counts[y]);
+        return c != 0 ? c : Integer.compare(x, y);
+      }
+    });
+    return idx;
   }
 
-  private DBIDs[] buildIndex(Relation<BitVector> relation, int dim, int minsupp) {
-    ArrayModifiableDBIDs[] idx = new ArrayModifiableDBIDs[dim];
-    for(int i = 0; i < dim; i++) {
-      idx[i] = DBIDUtil.newArray();
+  /**
+   * Build the transaction lists of the frequent items.
+   *
+   * @param relation Data
+   * @param dim Dimensionality
+   * @param counts Item counts
+   * @param idx Frequent items
+   * @return Transaction lists
+   */
+  private Tids[] buildTransactionLists(Relation<BitVector> relation, int dim, int[] counts, int[] idx) {
+    final int n = relation.size();
+    int[] iidx = new int[dim];
+    Arrays.fill(iidx, -1);
+    Tids[] sets = new Tids[idx.length];
+    for(int i = 0; i < idx.length; i++) {
+      iidx[idx[i]] = i;
+      final int supp = counts[idx[i]];
+      sets[i] = Tids.isDense(supp, n) ? new Tids(BitsUtil.zero(n), supp) : new Tids(new int[supp], supp);
     }
-    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+    int[] fill = new int[idx.length];
+    int t = 0;
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance(), t++) {
       SparseFeatureVector<?> bv = relation.get(iter);
-      // TODO: only count those which satisfy minlength?
       for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
-        idx[bv.iterDim(it)].add(iter);
+        final int i = iidx[bv.iterDim(it)];
+        if(i < 0) {
+          continue; // Not frequent.
+        }
+        if(sets[i].bits != null) {
+          BitsUtil.setI(sets[i].bits, t);
+        }
+        else {
+          sets[i].tids[fill[i]++] = t;
+        }
+      }
+    }
+    return sets;
+  }
+
+  /**
+   * Set of transaction numbers, stored either as a sorted array or as a
+   * bitset.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static final class Tids {
+    /**
+     * Sorted transaction numbers, or {@code null}.
+     */
+    final int[] tids;
+
+    /**
+     * Bitset of transactions, or {@code null}.
+     */
+    final long[] bits;
+
+    /**
+     * Number of transactions.
+     */
+    final int size;
+
+    /**
+     * Constructor for sparse lists.
+     *
+     * @param tids Transaction numbers, sorted
+     * @param size Number of valid entries
+     */
+    Tids(int[] tids, int size) {
+      this.tids = tids;
+      this.bits = null;
+      this.size = size;
+    }
+
+    /**
+     * Constructor for bitsets.
+     *
+     * @param bits Bitset
+     * @param size Cardinality
+     */
+    Tids(long[] bits, int size) {
+      this.tids = null;
+      this.bits = bits;
+      this.size = size;
+    }
+
+    /**
+     * Choose the representation: a bitset needs less memory than an integer
+     * array when more than 1/32 of the transactions are contained.
+     *
+     * @param card Cardinality
+     * @param n Number of transactions
+     * @return {@code true} if a bitset should be used.
+     */
+    static boolean isDense(int card, int n) {
+      return card > (n >>> 5);
+    }
+
+    /**
+     * Make a set from a bitset, choosing the smaller representation.
+     *
+     * @param bits Bitset
+     * @param n Number of transactions
+     * @return Set
+     */
+    static Tids fromBits(long[] bits, int n) {
+      final int card = BitsUtil.cardinality(bits);
+      if(isDense(card, n)) {
+        return new Tids(bits, card);
+      }
+      int[] tids = new int[card];
+      for(int i = BitsUtil.nextSetBit(bits, 0), j = 0; i >= 0; i = BitsUtil.nextSetBit(bits, i + 1)) {
+        tids[j++] = i;
       }
+      return new Tids(tids, card);
     }
-    // Forget non-frequent 1-itemsets.
-    for(int i = 0; i < dim; i++) {
-      if(idx[i].size() < minsupp) {
-        idx[i] = null;
+
+    /**
+     * Make a set from a sparse list, trimming the array if most of it is
+     * unused, as the result may be kept for a long time.
+     *
+     * @param tids Transaction numbers, sorted
+     * @param size Number of valid entries
+     * @return Set
+     */
+    static Tids fromSparse(int[] tids, int size) {
+      return new Tids(size < (tids.length >>> 1) ? Arrays.copyOf(tids, size) : tids, size);
+    }
+
+    /**
+     * Intersect two sets.
+     *
+     * @param o Other set
+     * @param n Number of transactions
+     * @return Intersection
+     */
+    Tids intersect(Tids o, int n) {
+      if(bits != null && o.bits != null) {
+        return fromBits(BitsUtil.andCMin(bits, o.bits), n);
+      }
+      if(bits != null) {
+        return o.intersect(this, n);
       }
-      else {
-        idx[i].sort();
+      int[] out = new int[Math.min(size, o.size)];
+      int c = 0;
+      if(o.bits != null) {
+        for(int i = 0; i < size; i++) {
+          if(BitsUtil.get(o.bits, tids[i])) {
+            out[c++] = tids[i];
+          }
+        }
+        return fromSparse(out, c);
       }
+      // Merge join of two sorted lists:
+      for(int i = 0, j = 0; i < size && j < o.size;) {
+        final int a = tids[i], b = o.tids[j];
+        if(a < b) {
+          i++;
+        }
+        else if(a > b) {
+          j++;
+        }
+        else {
+          out[c++] = a;
+          i++;
+          j++;
+        }
+      }
+      return fromSparse(out, c);
+    }
+
+    /**
+     * Compute the difference {@code this \ o}.
+     *
+     * @param o Set to remove
+     * @param n Number of transactions
+     * @return Difference
+     */
+    Tids difference(Tids o, int n) {
+      if(bits != null) {
+        long[] out = BitsUtil.copy(bits);
+        if(o.bits != null) {
+          BitsUtil.nandI(out, o.bits);
+        }
+        else {
+          for(int i = 0; i < o.size; i++) {
+            BitsUtil.clearI(out, o.tids[i]);
+          }
+        }
+        return fromBits(out, n);
+      }
+      int[] out = new int[size];
+      int c = 0;
+      if(o.bits != null) {
+        for(int i = 0; i < size; i++) {
+          if(!BitsUtil.get(o.bits, tids[i])) {
+            out[c++] = tids[i];
+          }
+        }
+        return fromSparse(out, c);
+      }
+      // Merge of two sorted lists:
+      int i = 0;
+      for(int j = 0; i < size && j < o.size;) {
+        final int a = tids[i], b = o.tids[j];
+        if(a < b) {
+          out[c++] = a;
+          i++;
+        }
+        else if(a > b) {
+          j++;
+        }
+        else {
+          i++;
+          j++;
+        }
+      }
+      while(i < size) {
+        out[c++] = tids[i++];
+      }
+      return fromSparse(out, c);
     }
-    return idx;
   }
 
   @Override
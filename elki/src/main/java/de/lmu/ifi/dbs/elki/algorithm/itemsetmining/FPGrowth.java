@@ -26,6 +26,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.lmu.ifi.dbs.elki.data.BitVector;
 import de.lmu.ifi.dbs.elki.data.SparseFeatureVector;
@@ -42,10 +46,12 @@ import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerComparator;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
 /**
  * FP-Growth is an algorithm for mining the frequent itemsets by using a
@@ -58,8 +64,10 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * using a not too high support threshold, as it only prunes single items, not
  * item combinations.
  *
- * This implementation is in-memory only, and has not yet been carefully
- * optimized.
+ * This implementation is in-memory only. The tree is stored in compact integer
+ * arrays rather than node objects. If multiple processors are available, the
+ * items of the header table are mined by multiple threads, as their
+ * conditional pattern bases are independent.
  *
  * The worst case memory use probably is O(min(n*l,i^l)) where i is the number
  * of items, l the average itemset length, and n the number of items. The worst
@@ -78,6 +86,7 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * @since 0.7.0
  *
  * @apiviz.composedOf FPTree
+ * @apiviz.uses ParallelCore
  */
 @Reference(authors = "J. Han, J. Pei, Y. Yin", //
     title = "Mining frequent patterns without candidate generation", //
@@ -140,7 +149,7 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
     if(LOG.isDebuggingFinest()) {
       StringBuilder buf = new StringBuilder();
       buf.append("FP-tree:\n");
-      tree.appendTo(buf, new FPNode.Translator() {
+      tree.appendTo(buf, new FPTree.Translator() {
         @Override
         public void appendTo(StringBuilder buf, int i) {
           String l = meta.getLabel(idx[i]);
@@ -156,27 +165,7 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
     LOG.verbose("Extracting frequent patterns.");
     Duration etime = LOG.newDuration(STAT + "fp-growth.extraction.time").begin();
     final IndefiniteProgress itemp = LOG.isVerbose() ? new IndefiniteProgress("Frequent itemsets", LOG) : null;
-    final List<Itemset> solution = new ArrayList<>();
-    // Start extraction with the least frequent items
-    tree.extract(minsupp, minlength, maxlength, true, new FPTree.Collector() {
-      @Override
-      public void collect(int support, int[] data, int start, int plen) {
-        // Always translate the indexes back to the original values via 'idx'!
-        if(plen - start == 1) {
-          solution.add(new OneItemset(idx[data[start]], support));
-          LOG.incrementProcessed(itemp);
-          return;
-        }
-        // Copy from buffer to a permanent storage
-        int[] indices = new int[plen - start];
-        for(int i = start, j = 0; i < plen; i++) {
-          indices[j++] = idx[data[i]]; // Translate to original items
-        }
-        Arrays.sort(indices);
-        solution.add(new SparseItemset(indices, support));
-        LOG.incrementProcessed(itemp);
-      }
-    });
+    final List<Itemset> solution = extract(tree, minsupp, idx, itemp);
     LOG.setCompleted(itemp);
     Collections.sort(solution);
     LOG.statistics(etime.end());
@@ -185,6 +174,116 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
     return new FrequentItemsetsResult("FP-Growth", "fp-growth", solution, meta, relation.size());
   }
 
+  /**
+   * Extract the frequent itemsets from the tree.
+   *
+   * The items of the header table are independent tasks; if multiple
+   * processors are available, they are processed by multiple threads, each
+   * taking the next item when done with the previous one.
+   *
+   * @param tree FP-tree
+   * @param minsupp Minimum support
+   * @param idx Index to translate items back to the original dimensions
+   * @param itemp Progress, may be {@code null}
+   * @return Frequent itemsets (not sorted)
+   */
+  private List<Itemset> extract(final FPTree tree, final int minsupp, final int[] idx, final IndefiniteProgress itemp) {
+    final int tasks = tree.numTasks(minlength);
+    final ParallelCore core = ParallelCore.getCore();
+    final int threads = Math.min(core.getParallelism(), tasks);
+    if(threads <= 1) {
+      List<Itemset> solution = new ArrayList<>();
+      tree.extract(minsupp, minlength, maxlength, new ItemsetCollector(solution, idx, itemp));
+      return solution;
+    }
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Extracting itemsets", tasks, LOG) : null;
+    final AtomicInteger next = new AtomicInteger(tree.header.length - 1);
+    List<Future<List<Itemset>>> futures = new ArrayList<>(threads);
+    core.connect();
+    try {
+      for(int i = 0; i < threads; i++) {
+        futures.add(core.submit(new Callable<List<Itemset>>() {
+          @Override
+          public List<Itemset> call() {
+            List<Itemset> solution = new ArrayList<>();
+            tree.extract(minsupp, minlength, maxlength, next, prog, new ItemsetCollector(solution, idx, itemp));
+            return solution;
+          }
+        }));
+      }
+      List<Itemset> solution = new ArrayList<>();
+      for(Future<List<Itemset>> fut : futures) {
+        solution.addAll(fut.get());
+      }
+      LOG.ensureCompleted(prog);
+      return solution;
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Parallel FP-growth failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("FP-growth interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Collector translating the item numbers back to the original dimensions.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class ItemsetCollector implements FPTree.Collector {
+    /**
+     * Output list.
+     */
+    private final List<Itemset> solution;
+
+    /**
+     * Index to translate items back to the original dimensions.
+     */
+    private final int[] idx;
+
+    /**
+     * Progress, may be {@code null}.
+     */
+    private final IndefiniteProgress itemp;
+
+    /**
+     * Constructor.
+     *
+     * @param solution Output list
+     * @param idx Index to translate items
+     * @param itemp Progress
+     */
+    ItemsetCollector(List<Itemset> solution, int[] idx, IndefiniteProgress itemp) {
+      this.solution = solution;
+      this.idx = idx;
+      this.itemp = itemp;
+    }
+
+    @Override
+    public void collect(int support, int[] data, int start, int plen) {
+      // Always translate the indexes back to the original values via 'idx'!
+      if(plen - start == 1) {
+        solution.add(new OneItemset(idx[data[start]], support));
+        LOG.incrementProcessed(itemp);
+        return;
+      }
+      // Copy from buffer to a permanent storage
+      int[] indices = new int[plen - start];
+      for(int i = start, j = 0; i < plen; i++) {
+        indices[j++] = idx[data[i]]; // Translate to original items
+      }
+      Arrays.sort(indices);
+      solution.add(new SparseItemset(indices, support));
+      LOG.incrementProcessed(itemp);
+    }
+  }
+
   /**
    * Count the support of each 1-item.
    *
@@ -278,20 +377,54 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
   }
 
   /**
-   * FP-Tree data structure
+   * FP-Tree data structure.
    *
-   * @author Erich Schubert
+   * The nodes are stored in parallel integer arrays, indexed by the node
+   * number, with node 0 being the root. The parent-to-child navigation is only
+   * needed while building the tree, and is released by {@link #reduceMemory()}
+   * ; afterwards, each node uses four integers only. After building, the tree
+   * is read-only and can be mined by multiple threads.
    *
-   * @apiviz.composedOf FPNode
+   * @author Erich Schubert
    */
-  public static class FPTree extends FPNode {
+  public static class FPTree {
+    /**
+     * Initial capacity for the node arrays.
+     */
+    private static final int INITIAL_SIZE = 15;
+
+    /**
+     * Header table: first node of each item, or -1.
+     */
+    int[] header;
+
+    /**
+     * Node labels (item numbers), -1 for the root.
+     */
+    int[] key;
+
+    /**
+     * Node weights.
+     */
+    int[] count;
+
+    /**
+     * Parent node.
+     */
+    int[] parent;
+
+    /**
+     * Next node with the same label, or -1.
+     */
+    int[] sibling;
+
     /**
-     * Header table
+     * First child and next child of the parent, for building only.
      */
-    FPNode[] header;
+    int[] firstchild, nextchild;
 
     /**
-     * Number of nodes in the tree (statistics only).
+     * Number of nodes in the tree.
      */
     int nodes = 1;
 
@@ -301,8 +434,15 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
      * @param items Number of items in header table
      */
     public FPTree(int items) {
-      super(null, -1);
-      header = new FPNode[items];
+      header = new int[items];
+      Arrays.fill(header, -1);
+      key = new int[INITIAL_SIZE];
+      count = new int[INITIAL_SIZE];
+      parent = new int[INITIAL_SIZE];
+      sibling = new int[INITIAL_SIZE];
+      firstchild = new int[INITIAL_SIZE];
+      nextchild = new int[INITIAL_SIZE];
+      key[0] = parent[0] = sibling[0] = firstchild[0] = nextchild[0] = -1;
     }
 
     /**
@@ -314,45 +454,110 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
      * @param weight Weight
      */
     public void insert(int[] buf, int i, int l, int weight) {
-      insert(this, buf, i, l, weight);
+      assert (firstchild != null) : "Tree was already reduced.";
+      int node = 0;
+      count[node] += weight;
+      for(; i < l; i++) {
+        final int label = buf[i];
+        int child = firstchild[node];
+        while(child >= 0 && key[child] != label) {
+          child = nextchild[child];
+        }
+        node = child >= 0 ? child : newNode(node, label);
+        count[node] += weight;
+      }
     }
 
     /**
      * Create a new node of the FP-tree, linking it into the header table.
      *
-     * @param parent Parent node
+     * @param par Parent node
      * @param label Node label
      * @return New node
      */
-    public FPNode newNode(FPNode parent, int label) {
-      FPNode node = new FPNode(parent, label);
-      // Prepend to linked list - there is no benefit in keeping a particular
+    private int newNode(int par, int label) {
+      if(nodes == key.length) {
+        final int newsize = (nodes << 1) + 1;
+        key = Arrays.copyOf(key, newsize);
+        count = Arrays.copyOf(count, newsize);
+        parent = Arrays.copyOf(parent, newsize);
+        sibling = Arrays.copyOf(sibling, newsize);
+        firstchild = Arrays.copyOf(firstchild, newsize);
+        nextchild = Arrays.copyOf(nextchild, newsize);
+      }
+      final int node = nodes++;
+      key[node] = label;
+      count[node] = 0;
+      parent[node] = par;
+      // Prepend to linked lists - there is no benefit in keeping a particular
       // order, as far as I can tell.
-      node.sibling = header[label];
+      sibling[node] = header[label];
       header[label] = node;
-      ++nodes; // Statistics tracking only
+      firstchild[node] = -1;
+      nextchild[node] = firstchild[par];
+      firstchild[par] = node;
       return node;
     }
 
     /**
-     * Extract itemsets ending in the given item.
+     * Release the memory occupied for the parent-to-child navigation, which is
+     * no longer needed after building the tree (only child-to-parent is needed
+     * in extracting itemsets).
+     */
+    public void reduceMemory() {
+      firstchild = nextchild = null;
+      if(nodes < key.length) {
+        key = Arrays.copyOf(key, nodes);
+        count = Arrays.copyOf(count, nodes);
+        parent = Arrays.copyOf(parent, nodes);
+        sibling = Arrays.copyOf(sibling, nodes);
+      }
+    }
+
+    /**
+     * Extract all frequent itemsets.
+     *
+     * @param minsupp Minimum support
+     * @param minlength Minimum length
+     * @param maxlength Maximum length
+     * @param col Itemset collector
+     */
+    public void extract(int minsupp, int minlength, int maxlength, Collector col) {
+      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Extracting itemsets", numTasks(minlength), LOG) : null;
+      extract(minsupp, minlength, maxlength, new AtomicInteger(header.length - 1), prog, col);
+      LOG.ensureCompleted(prog);
+    }
+
+    /**
+     * Number of items to extract itemsets for.
+     *
+     * @param minlength Minimum length
+     * @return Number of header items that need to be processed
+     */
+    public int numTasks(int minlength) {
+      return Math.max(header.length - Math.max(minlength - 1, 0), 0);
+    }
+
+    /**
+     * Extract frequent itemsets, taking the items to process from a shared
+     * counter, so that multiple threads can mine the same tree.
      *
      * @param minsupp Minimum support
      * @param minlength Minimum length
      * @param maxlength Maximum length
-     * @param destruct Remove nodes
+     * @param next Next item to process, shared by all threads
+     * @param prog Progress, may be {@code null}
      * @param col Itemset collector
      */
-    public void extract(int minsupp, int minlength, int maxlength, boolean destruct, Collector col) {
+    public void extract(int minsupp, int minlength, int maxlength, AtomicInteger next, FiniteProgress prog, Collector col) {
       int[] buf = new int[header.length], buf2 = new int[header.length],
           buf3 = new int[header.length];
-      int stop = (minlength > 1) ? minlength - 1 : 0;
-      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Extracting itemsets", header.length - stop, LOG) : null;
-      for(int j = header.length - 1; j >= stop; --j) {
-        extract(minsupp, minlength, maxlength, j, buf, 0, buf2, buf3, destruct, col);
+      final int stop = (minlength > 1) ? minlength - 1 : 0;
+      // Start extraction with the least frequent items
+      for(int j = next.getAndDecrement(); j >= stop; j = next.getAndDecrement()) {
+        extract(minsupp, minlength, maxlength, j, buf, 0, buf2, buf3, col);
         LOG.incrementProcessed(prog);
       }
-      LOG.ensureCompleted(prog);
     }
 
     /**
@@ -366,38 +571,34 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
      * @param plen Postfix length
      * @param buf2 Scratch buffer
      * @param buf3 Scratch buffer
-     * @param destruct Remove nodes
      * @param col Itemset collector
      */
-    private void extract(int minsupp, int minlength, int maxlength, int item, int[] postfix, int plen, int[] buf2, int[] buf3, boolean destruct, Collector col) {
-      // Skip items that have disappeared from the tree
-      if(header[item] == null) {
+    private void extract(int minsupp, int minlength, int maxlength, int item, int[] postfix, int plen, int[] buf2, int[] buf3, Collector col) {
+      final int first = header[item];
+      // Skip items that do not occur in the tree
+      if(first < 0) {
         return;
       }
-      // No siblings, no children: single path only.
-      if(header[item].sibling == null && header[item].numchildren == 0) {
-        if(header[item].count >= minsupp) {
-          extractLinear(header[item].count, minlength, maxlength, item, postfix, plen, buf2, col);
-        }
-        if(destruct) {
-          header[item].parent.numchildren--;
-          header[item] = null;
+      // Only one node: the conditional pattern base is a single path.
+      if(sibling[first] < 0) {
+        if(count[first] >= minsupp) {
+          extractLinear(count[first], minlength, maxlength, first, postfix, plen, col);
         }
         return;
       }
       // Count total support.
       int support = 0;
-      for(FPNode cur = header[item]; cur != null; cur = cur.sibling) {
-        support += cur.count;
+      for(int cur = first; cur >= 0; cur = sibling[cur]) {
+        support += count[cur];
       }
       if(support < minsupp) {
         return;
       }
       // Check which parent items to keep in the projection.
-      Arrays.fill(buf3, 0);
-      for(FPNode cur = header[item]; cur != null; cur = cur.sibling) {
-        for(FPNode parent = cur.parent; parent.key >= 0; parent = parent.parent) {
-          buf3[parent.key] += cur.count;
+      Arrays.fill(buf3, 0, item, 0);
+      for(int cur = first; cur >= 0; cur = sibling[cur]) {
+        for(int p = parent[cur]; p > 0; p = parent[p]) {
+          buf3[key[p]] += count[cur];
         }
       }
       // For testing minimum length:
@@ -414,17 +615,16 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
         }
       }
       // Build projected tree:
-      final int last = item - 1;
       FPTree proj = new FPTree(item);
-      for(FPNode cur = header[item]; cur != null; cur = cur.sibling) {
+      for(int cur = first; cur >= 0; cur = sibling[cur]) {
         int j = buf2.length;
-        for(FPNode parent = cur.parent; parent.key >= 0; parent = parent.parent) {
-          if(buf3[parent.key] >= minsupp) {
-            buf2[--j] = parent.key;
+        for(int p = parent[cur]; p > 0; p = parent[p]) {
+          if(buf3[key[p]] >= minsupp) {
+            buf2[--j] = key[p];
           }
         }
         if(buf2.length - j >= mminlength) {
-          proj.insert(proj, buf2, j, buf2.length, cur.count);
+          proj.insert(buf2, j, buf2.length, count[cur]);
         }
       }
       // Release memory:
@@ -434,35 +634,31 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
       if(plen >= minlength && plen <= maxlength) {
         col.collect(support, postfix, 0, plen);
       }
-      for(int j = last; j >= 0; j--) {
-        proj.extract(minsupp, minlength, maxlength, j, postfix, plen, buf2, buf3, destruct, col);
-      }
-      if(destruct) {
-        header[item] = null;
+      for(int j = item - 1; j >= 0; j--) {
+        proj.extract(minsupp, minlength, maxlength, j, postfix, plen, buf2, buf3, col);
       }
     }
 
     /**
-     * Extract itemsets from a linear tree.
+     * Extract itemsets from a linear path of the tree.
      *
      * @param supp Current support
      * @param minlength Minimum length
      * @param maxlength Maximum length
-     * @param item Current item
+     * @param node Current node
      * @param postfix Postfix for extracted itemsets
      * @param plen Postfix length
-     * @param buf2 Scratch buffer
      * @param col Output collector
      */
-    private void extractLinear(int supp, int minlength, int maxlength, int item, int[] postfix, int plen, int[] buf2, Collector col) {
+    private void extractLinear(int supp, int minlength, int maxlength, int node, int[] postfix, int plen, Collector col) {
       // For testing minimum length:
       final int mminlength = minlength - plen;
       // Unsatisfiable even with current item:
-      if(item + 1 < mminlength) {
+      if(key[node] + 1 < mminlength) {
         return;
       }
       // Add current item:
-      postfix[plen++] = item;
+      postfix[plen++] = key[node];
       if(plen >= minlength && plen <= maxlength) {
         col.collect(supp, postfix, 0, plen);
       }
@@ -470,13 +666,12 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
       if(plen == maxlength) {
         return;
       }
-      assert (header[item] != null);
       // Look at parent nodes:
-      for(FPNode p = header[item].parent; p.key >= 0; p = p.parent) {
-        if(p.key < mminlength) {
+      for(int p = parent[node]; p > 0; p = parent[p]) {
+        if(key[p] + 1 < minlength - plen) {
           break; // Too short.
         }
-        extractLinear(supp, minlength, maxlength, p.key, postfix, plen, buf2, col);
+        extractLinear(supp, minlength, maxlength, p, postfix, plen, col);
       }
     }
 
@@ -505,94 +700,7 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
     public void logStatistics() {
       LOG.statistics(new LongStatistic(STAT + "items", header.length));
       LOG.statistics(new LongStatistic(STAT + "nodes", nodes));
-      LOG.statistics(new LongStatistic(STAT + "transactions", count));
-    }
-  }
-
-  /**
-   * A single node of the FP tree.
-   *
-   * @author Erich Schubert
-   */
-  // FIXME: keep children sorted, and use binary search for faster construction?
-  // Or even use a hashset?
-  public static class FPNode {
-    /**
-     * Parent node and next in sequence.
-     */
-    FPNode parent, sibling;
-
-    /**
-     * Key, weight, and number of children.
-     */
-    int key, count = 0, numchildren = 0;
-
-    /**
-     * Children.
-     */
-    FPNode[] children = EMPTY_CHILDREN;
-
-    /**
-     * Constant for leaf nodes.
-     */
-    final static FPNode[] EMPTY_CHILDREN = new FPNode[0];
-
-    /**
-     * Initial size, after sizes 0 and 1.
-     */
-    final int INITIAL_SIZE = 7;
-
-    /**
-     * Constructor.
-     *
-     * @param parent Parent node
-     * @param key Key
-     */
-    public FPNode(FPNode parent, int key) {
-      super();
-      this.parent = parent;
-      this.key = key;
-    }
-
-    /**
-     * Insert an itemset into the tree.
-     *
-     * @param buf Itemset buffer
-     * @param i Current index
-     * @param l Length
-     * @param weight Weight
-     */
-    public void insert(FPTree tree, int[] buf, int i, int l, int weight) {
-      count += weight;
-      if(i == l) {
-        return;
-      }
-      final int label = buf[i];
-      for(int j = 0; j < numchildren; j++) {
-        FPNode child = children[j];
-        if(child.key == label) {
-          child.insert(tree, buf, i + 1, l, weight);
-          return;
-        }
-      }
-      // Make sure we have enough room to insert.
-      if(numchildren == children.length) {
-        ensureSize();
-      }
-      FPNode sub = children[numchildren++] = tree.newNode(this, label);
-      sub.insert(tree, buf, i + 1, l, weight);
-    }
-
-    /**
-     * Ensure we have enough storage.
-     */
-    private void ensureSize() {
-      if(children == EMPTY_CHILDREN) {
-        children = new FPNode[1];
-        return;
-      }
-      int newsize = children.length == 1 ? INITIAL_SIZE : (children.length << 1);
-      children = Arrays.copyOf(children, newsize);
+      LOG.statistics(new LongStatistic(STAT + "transactions", count[0]));
     }
 
     /**
@@ -602,7 +710,8 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
      * @param t Translator to user-understandable items
      */
     public void appendTo(StringBuilder buf, Translator t) {
-      appendTo(buf, t, 0);
+      assert (firstchild != null) : "Tree was already reduced.";
+      appendTo(buf, t, 0, 0);
     }
 
     /**
@@ -615,35 +724,21 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
      *
      * @param buf Output buffer
      * @param t Translator to user-understandable items
+     * @param node Current node
      * @param depth Current depth
      */
-    private void appendTo(StringBuilder buf, Translator t, int depth) {
-      if(key >= 0) {
-        t.appendTo(buf, key);
+    private void appendTo(StringBuilder buf, Translator t, int node, int depth) {
+      if(key[node] >= 0) {
+        t.appendTo(buf, key[node]);
         buf.append(": ");
       }
-      buf.append(count).append("\n");
-      for(int i = 0; i < numchildren; i++) {
+      buf.append(count[node]).append("\n");
+      for(int c = firstchild[node]; c >= 0; c = nextchild[c]) {
         for(int j = depth; j > 0; j -= SPACES.length) {
           buf.append(SPACES, 0, Math.min(j, SPACES.length));
         }
-        children[i].appendTo(buf, t, depth + 1);
-      }
-    }
-
-    /**
-     * Release the memory occupied for the parent-to-child navigation, which is
-     * no longer needed after building the tree (only child-to-parent is needed
-     * in extracting itemsets).
-     */
-    public void reduceMemory() {
-      if(children == null) {
-        return;
-      }
-      for(int i = 0; i < numchildren; ++i) {
-        children[i].reduceMemory();
+        appendTo(buf, t, c, depth + 1);
       }
-      children = null;
     }
 
     /**
@@ -22,6 +22,8 @@ package de.lmu.ifi.dbs.elki.algorithm.projection;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
@@ -38,6 +40,7 @@ import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.io.FormatUtil;
@@ -53,6 +56,10 @@ import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
  * For larger data sets, use an index to make finding the nearest neighbors
  * faster, e.g. cover tree or k-d-tree.
  * 
+ * The quad tree is built, and the forces are computed, in parallel if
+ * multiple processors are available. Work is split into blocks of points that
+ * do not depend on the number of threads, so the result does not either.
+ * 
  * Reference:
  * <p>
  * L. van der Maaten<br />
@@ -62,6 +69,8 @@ import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
  *
  * @author Erich Schubert
  *
+ * @apiviz.has QuadTree
+ *
  * @param <O> Object type
  */
 @Reference(authors = "L. van der Maaten", //
@@ -155,15 +164,26 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
     }
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Iterative Optimization", iterations, LOG) : null;
     Duration timer = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".runtime.optimization").begin() : null;
-    // Optimize
-    for(int i = 0; i < iterations; i++) {
-      computeGradient(pij, sol, meta);
-      updateSolution(sol, meta, i);
-      // Undo early exaggeration
-      if(i == EARLY_EXAGGERATION_ITERATIONS) {
-        pij.scale(1. / EARLY_EXAGGERATION);
+    final ParallelCore core = getParallelCore(size);
+    if(core != null) {
+      core.connect();
+    }
+    try {
+      // Optimize
+      for(int i = 0; i < iterations; i++) {
+        computeGradient(pij, sol, meta, core);
+        updateSolution(sol, meta, i);
+        // Undo early exaggeration
+        if(i == EARLY_EXAGGERATION_ITERATIONS) {
+          pij.scale(1. / EARLY_EXAGGERATION);
+        }
+        LOG.incrementProcessed(prog);
+      }
+    }
+    finally {
+      if(core != null) {
+        core.disconnect();
       }
-      LOG.incrementProcessed(prog);
     }
     LOG.ensureCompleted(prog);
     if(timer != null) {
@@ -171,88 +191,231 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
     }
   }
 
-  private void computeGradient(AffinityMatrix pij, double[][] solution, double[] grad) {
-    final int dim3 = 3 * dim;
-    // Reset gradient / forces
-    for(int off = 0; off < grad.length; off += dim3) {
-      Arrays.fill(grad, off, off + dim, 0.);
-    }
+  /**
+   * Compute the gradient.
+   * 
+   * @param pij Affinity matrix
+   * @param solution Current solution
+   * @param grad Gradient output (in the meta array)
+   * @param core Parallel core, may be {@code null}
+   */
+  private void computeGradient(AffinityMatrix pij, double[][] solution, double[] grad, ParallelCore core) {
+    final int size = solution.length;
     // Compute repulsive forces first:
-    QuadTree tree = QuadTree.build(dim, solution);
+    QuadTree tree = QuadTree.build(dim, solution, core);
+    List<RepulsiveForces> repulsive = new ArrayList<>((size + BLOCKSIZE - 1) / BLOCKSIZE);
+    for(int start = 0; start < size; start += BLOCKSIZE) {
+      repulsive.add(new RepulsiveForces(grad, solution, tree, start, Math.min(start + BLOCKSIZE, size)));
+    }
     double z = 0.;
-    for(int i = 0, off = 0; i < solution.length; i++, off += dim3) {
-      z -= computeRepulsiveForces(grad, off, solution[i], tree);
+    for(Double bz : runTasks(core, repulsive)) {
+      z -= bz;
     }
-    // Normalize repulsive forces:
-    double s = 1 / z; // Scaling factor
-    for(int off = 0; off < grad.length; off += dim3) {
-      for(int j = 0; j < dim; j++) {
-        grad[off + j] *= s;
-      }
+    // Normalize repulsive forces, and compute attractive forces second
+    List<AttractiveForces> attractive = new ArrayList<>(repulsive.size());
+    for(int start = 0; start < size; start += BLOCKSIZE) {
+      attractive.add(new AttractiveForces(grad, pij, solution, 1 / z, start, Math.min(start + BLOCKSIZE, size)));
     }
-    // Compute attractive forces second
-    computeAttractiveForces(grad, pij, solution);
-  }
-
-  private void computeAttractiveForces(double[] attr, AffinityMatrix pij, double[][] sol) {
-    final int dim3 = 3 * dim;
-    for(int i = 0, off = 0; off < attr.length; i++, off += dim3) {
-      final double[] sol_i = sol[i];
-      for(int offj = pij.iter(i); pij.iterValid(i, offj); offj = pij.iterAdvance(i, offj)) {
-        final double[] sol_j = sol[pij.iterDim(i, offj)];
-        final double pij_ij = pij.iterValue(i, offj);
-        final double a = pij_ij / (1. + sqDist(sol_i, sol_j));
-        for(int k = 0; k < dim; k++) {
-          attr[off + k] += a * (sol_i[k] - sol_j[k]);
-        }
-      }
+    runTasks(core, attractive);
+    long dists = 0;
+    for(RepulsiveForces task : repulsive) {
+      dists += task.distances;
+    }
+    for(AttractiveForces task : attractive) {
+      dists += task.distances;
     }
+    projectedDistances.increment(dists);
   }
 
   /**
-   * Compute the repulsive forces for a single point
+   * Compute the repulsive forces for a block of points.
    * 
-   * @param rep_i Repulsive forces array
-   * @param off Point offset
-   * @param sol_i Solution vector
-   * @param node Quad tree
-   * @return force strength
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
    */
-  private double computeRepulsiveForces(double[] rep_i, int off, double[] sol_i, QuadTree node) {
-    final double[] center = node.center;
-    double dist = sqDist(sol_i, center);
-    // Barnes-Hut approximation:
-    if(node.weight == 1 || node.squareSize / dist < sqtheta) {
-      double u = 1. / (1. + dist);
-      double z = node.weight * u;
-      double a = z * u;
-      for(int k = 0; k < dim; k++) {
-        // TODO: van der Maaten avoids computing this difference twice (also
-        // done in sqDist) - we should also use this optimization.
-        rep_i[off + k] += a * (sol_i[k] - center[k]);
+  private class RepulsiveForces implements Callable<Double> {
+    /**
+     * Gradient output.
+     */
+    private final double[] grad;
+
+    /**
+     * Current solution.
+     */
+    private final double[][] solution;
+
+    /**
+     * Quad tree.
+     */
+    private final QuadTree tree;
+
+    /**
+     * Range of points.
+     */
+    private final int start, end;
+
+    /**
+     * Number of distance computations.
+     */
+    long distances = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param grad Gradient output
+     * @param solution Current solution
+     * @param tree Quad tree
+     * @param start First point
+     * @param end End point (exclusive)
+     */
+    RepulsiveForces(double[] grad, double[][] solution, QuadTree tree, int start, int end) {
+      this.grad = grad;
+      this.solution = solution;
+      this.tree = tree;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public Double call() {
+      final int dim3 = 3 * dim;
+      double z = 0.;
+      for(int i = start, off = start * dim3; i < end; i++, off += dim3) {
+        // Reset gradient / forces
+        Arrays.fill(grad, off, off + dim, 0.);
+        z += computeRepulsiveForces(grad, off, solution[i], tree);
       }
       return z;
     }
-    double z = 0.;
-    // Aggregate points in this node:
-    if(node.points != null) {
-      for(double[] point : node.points) {
-        double pdist = sqDist(sol_i, point);
-        double pz = 1. / (1. + pdist);
-        double a = pz * pz;
+
+    /**
+     * Compute the repulsive forces for a single point
+     * 
+     * @param rep_i Repulsive forces array
+     * @param off Point offset
+     * @param sol_i Solution vector
+     * @param node Quad tree
+     * @return force strength
+     */
+    private double computeRepulsiveForces(double[] rep_i, int off, double[] sol_i, QuadTree node) {
+      final double[] center = node.center;
+      double dist = squaredDistance(sol_i, center);
+      ++distances;
+      // Barnes-Hut approximation:
+      if(node.weight == 1 || node.squareSize / dist < sqtheta) {
+        double u = 1. / (1. + dist);
+        double z = node.weight * u;
+        double a = z * u;
         for(int k = 0; k < dim; k++) {
-          rep_i[off + k] += a * (sol_i[k] - point[k]);
+          // TODO: van der Maaten avoids computing this difference twice (also
+          // done in sqDist) - we should also use this optimization.
+          rep_i[off + k] += a * (sol_i[k] - center[k]);
+        }
+        return z;
+      }
+      double z = 0.;
+      // Aggregate points in this node:
+      if(node.points != null) {
+        for(double[] point : node.points) {
+          double pdist = squaredDistance(sol_i, point);
+          ++distances;
+          double pz = 1. / (1. + pdist);
+          double a = pz * pz;
+          for(int k = 0; k < dim; k++) {
+            rep_i[off + k] += a * (sol_i[k] - point[k]);
+          }
+          z += pz;
+        }
+      }
+      // Recurse into subtrees:
+      if(node.children != null) {
+        for(QuadTree child : node.children) {
+          z += computeRepulsiveForces(rep_i, off, sol_i, child);
         }
-        z += pz;
       }
+      return z;
     }
-    // Recurse into subtrees:
-    if(node.children != null) {
-      for(QuadTree child : node.children) {
-        z += computeRepulsiveForces(rep_i, off, sol_i, child);
+  }
+
+  /**
+   * Normalize the repulsive forces, and add the attractive forces, for a block
+   * of points.
+   * 
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class AttractiveForces implements Callable<Void> {
+    /**
+     * Gradient output.
+     */
+    private final double[] grad;
+
+    /**
+     * Affinity matrix.
+     */
+    private final AffinityMatrix pij;
+
+    /**
+     * Current solution.
+     */
+    private final double[][] solution;
+
+    /**
+     * Scaling factor of the repulsive forces.
+     */
+    private final double scale;
+
+    /**
+     * Range of points.
+     */
+    private final int start, end;
+
+    /**
+     * Number of distance computations.
+     */
+    long distances = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param grad Gradient output
+     * @param pij Affinity matrix
+     * @param solution Current solution
+     * @param scale Scaling factor of the repulsive forces
+     * @param start First point
+     * @param end End point (exclusive)
+     */
+    AttractiveForces(double[] grad, AffinityMatrix pij, double[][] solution, double scale, int start, int end) {
+      this.grad = grad;
+      this.pij = pij;
+      this.solution = solution;
+      this.scale = scale;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public Void call() {
+      final int dim3 = 3 * dim;
+      for(int i = start, off = start * dim3; i < end; i++, off += dim3) {
+        for(int j = 0; j < dim; j++) {
+          grad[off + j] *= scale;
+        }
+        final double[] sol_i = solution[i];
+        for(int offj = pij.iter(i); pij.iterValid(i, offj); offj = pij.iterAdvance(i, offj)) {
+          final double[] sol_j = solution[pij.iterDim(i, offj)];
+          final double pij_ij = pij.iterValue(i, offj);
+          final double a = pij_ij / (1. + squaredDistance(sol_i, sol_j));
+          ++distances;
+          for(int k = 0; k < dim; k++) {
+            grad[off + k] += a * (sol_i[k] - sol_j[k]);
+          }
+        }
       }
+      return null;
     }
-    return z;
   }
 
   @Override
@@ -324,7 +487,30 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
      * @return Quad tree
      */
     public static QuadTree build(int dim, double[][] data) {
-      return build(dim, data.clone(), 0, data.length);
+      return build(dim, data, null);
+    }
+
+    /**
+     * Construct the quad tree approximation, building the lower levels in
+     * parallel.
+     * 
+     * @param dim Dimensionality
+     * @param data Data set
+     * @param core Parallel core, may be {@code null}
+     * @return Quad tree
+     */
+    public static QuadTree build(int dim, double[][] data, ParallelCore core) {
+      data = data.clone();
+      if(core == null || data.length < 2 * PARALLEL_MIN) {
+        return build(dim, data, 0, data.length, null, 0);
+      }
+      // The top levels are built by the calling thread, the remaining
+      // subtrees are independent, and are built by worker threads.
+      final int tasksize = Math.max(PARALLEL_MIN, data.length / (core.getParallelism() << 2));
+      List<Callable<Void>> tasks = new ArrayList<>();
+      QuadTree root = build(dim, data, 0, data.length, tasks, tasksize);
+      runTasks(core, tasks);
+      return root;
     }
 
     /**
@@ -334,26 +520,53 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
      * @param data Input data (WILL BE MODIFIED)
      * @param begin Subset begin
      * @param end Subset end
+     * @param tasks Collect the splitting of subtrees smaller than
+     *        {@code tasksize} here, instead of performing it (may be
+     *        {@code null})
+     * @param tasksize Subtree size for parallel tasks
      * @return Subtree
      */
-    private static QuadTree build(int dim, double[][] data, int begin, int end) {
-      double[] minmax = computeExtend(dim, data, begin, end);
+    private static QuadTree build(final int dim, final double[][] data, final int begin, final int end, List<Callable<Void>> tasks, int tasksize) {
+      final double[] minmax = computeExtend(dim, data, begin, end);
       double squareSize = computeSquareSize(minmax);
       double[] mid = computeCenterofMass(dim, data, begin, end);
       // Leaf:
       final int size = end - begin;
       if(squareSize <= QUADTREE_MIN_RESOLUION) {
-        data = Arrays.copyOfRange(data, begin, end);
-        return new QuadTree(data, null, mid, size, squareSize);
+        return new QuadTree(Arrays.copyOfRange(data, begin, end), null, mid, size, squareSize);
+      }
+      final QuadTree node = new QuadTree(null, null, mid, size, squareSize);
+      if(tasks != null && size < tasksize) {
+        tasks.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            node.split(dim, data, begin, end, minmax, null, 0);
+            return null;
+          }
+        });
+        return node;
       }
+      node.split(dim, data, begin, end, minmax, tasks, tasksize);
+      return node;
+    }
 
+    /**
+     * Split a node, and set its children and singletons.
+     * 
+     * @param dim Dimensionality
+     * @param data Input data (WILL BE MODIFIED)
+     * @param begin Subset begin
+     * @param end Subset end
+     * @param minmax Bounding box
+     * @param tasks Output for parallel tasks (may be {@code null})
+     * @param tasksize Subtree size for parallel tasks
+     */
+    private void split(int dim, double[][] data, int begin, int end, double[] minmax, List<Callable<Void>> tasks, int tasksize) {
       ArrayList<double[]> singletons = new ArrayList<>();
       ArrayList<QuadTree> children = new ArrayList<>();
-      splitRecursively(data, begin, end, 0, dim, minmax, singletons, children);
-
-      double[][] sing = singletons.size() > 0 ? singletons.toArray(new double[singletons.size()][]) : null;
-      QuadTree[] chil = children.size() > 0 ? children.toArray(new QuadTree[children.size()]) : null;
-      return new QuadTree(sing, chil, mid, size, squareSize);
+      splitRecursively(data, begin, end, 0, dim, minmax, singletons, children, tasks, tasksize);
+      this.points = singletons.size() > 0 ? singletons.toArray(new double[singletons.size()][]) : null;
+      this.children = children.size() > 0 ? children.toArray(new QuadTree[children.size()]) : null;
     }
 
     /**
@@ -367,8 +580,10 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
      * @param minmax Bounding box
      * @param singletons Output for singletons
      * @param children Output for child nodes
+     * @param tasks Output for parallel tasks (may be {@code null})
+     * @param tasksize Subtree size for parallel tasks
      */
-    private static void splitRecursively(double[][] data, int begin, int end, int initdim, int dims, double[] minmax, ArrayList<double[]> singletons, ArrayList<QuadTree> children) {
+    private static void splitRecursively(double[][] data, int begin, int end, int initdim, int dims, double[] minmax, ArrayList<double[]> singletons, ArrayList<QuadTree> children, List<Callable<Void>> tasks, int tasksize) {
       final int len = end - begin;
       if(len <= 1) {
         if(len == 1) {
@@ -423,19 +638,19 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
       // Recursion into next dimension:
       if(cur < dims) {
         if(begin < l) {
-          splitRecursively(data, begin, l, cur, dims, minmax, singletons, children);
+          splitRecursively(data, begin, l, cur, dims, minmax, singletons, children, tasks, tasksize);
         }
         if(l < end) {
-          splitRecursively(data, l, end, cur, dims, minmax, singletons, children);
+          splitRecursively(data, l, end, cur, dims, minmax, singletons, children, tasks, tasksize);
         }
         return;
       }
       // Recurse into next depth:
       if(begin < l) {
-        children.add(build(dims, data, begin, l));
+        children.add(build(dims, data, begin, l, tasks, tasksize));
       }
       if(l < end) {
-        children.add(build(dims, data, l, end));
+        children.add(build(dims, data, l, end, tasks, tasksize));
       }
     }
 
@@ -553,6 +768,11 @@ public class BarnesHutTSNE<O> extends TSNE<O> {
       }
     }
     
+    @Override
+    protected void configBlocked(Parameterization config) {
+      // Barnes-Hut never stores the full matrix.
+    }
+
     @Override
     protected Class<?> getDefaultAffinity() {
       return NearestNeighborAffinityMatrixBuilder.class;
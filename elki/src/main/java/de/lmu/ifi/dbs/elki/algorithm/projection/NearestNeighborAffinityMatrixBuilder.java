@@ -22,6 +22,13 @@ package de.lmu.ifi.dbs.elki.algorithm.projection;
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
@@ -29,6 +36,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
+import de.lmu.ifi.dbs.elki.database.query.ThreadSafeQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
@@ -40,6 +48,7 @@ import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
 import de.lmu.ifi.dbs.elki.math.MeanVariance;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.DoubleArray;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.IntegerArray;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
@@ -56,6 +65,9 @@ import net.jafama.FastMath;
  * Journal of Machine Learning Research 15
  * </p>
  *
+ * The nearest neighbors are queried in blocks. With a linear scan, the blocks
+ * are processed in parallel if multiple processors are available.
+ *
  * TODO: this implementation currently differs in one major point: we do not
  * symmetrize the sparse pij matrix.
  *
@@ -78,6 +90,11 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
    */
   private int numberOfNeighbours;
 
+  /**
+   * Number of objects to process at once.
+   */
+  private static final int BLOCKSIZE = 256;
+
   /**
    * Constructor.
    *
@@ -137,24 +154,18 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
   protected void computePij(DBIDRange ids, KNNQuery<?> knnq, boolean square, int numberOfNeighbours, double[][] pij, int[][] indices, double initialScale) {
     Duration timer = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".runtime.neighborspijmatrix").begin() : null;
     final double logPerp = FastMath.log(perplexity);
-    // Scratch arrays, resizable
-    DoubleArray dists = new DoubleArray(numberOfNeighbours + 10);
-    IntegerArray inds = new IntegerArray(numberOfNeighbours + 10);
     // Compute nearest-neighbor sparse affinity matrix
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Finding neighbors and optimizing perplexity", ids.size(), LOG) : null;
-    MeanVariance mv = LOG.isStatistics() ? new MeanVariance() : null;
-    for(DBIDArrayIter ix = ids.iter(); ix.valid(); ix.advance()) {
-      dists.clear();
-      inds.clear();
-      KNNList neighbours = knnq.getKNNForDBID(ix, numberOfNeighbours + 1);
-      convertNeighbors(ids, ix, square, neighbours, dists, inds);
-      double beta = computeSigma(ix.getOffset(), dists, perplexity, logPerp, //
-          pij[ix.getOffset()] = new double[dists.size()]);
-      if(mv != null) {
-        mv.put(beta > 0 ? FastMath.sqrt(.5 / beta) : 0.); // Sigma
+    final double[] sigma = LOG.isStatistics() ? new double[ids.size()] : null;
+    final ParallelCore core = ParallelCore.getCore();
+    // Only run queries concurrently if they are known to be thread safe.
+    if(knnq instanceof ThreadSafeQuery && ids.size() >= 2 * BLOCKSIZE && core.getParallelism() > 1) {
+      computePijParallel(core, ids, knnq, square, numberOfNeighbours, logPerp, pij, indices, sigma, prog);
+    }
+    else {
+      for(int start = 0; start < ids.size(); start += BLOCKSIZE) {
+        computePijBlock(ids, knnq, square, numberOfNeighbours, logPerp, start, Math.min(start + BLOCKSIZE, ids.size()), pij, indices, sigma, prog);
       }
-      indices[ix.getOffset()] = inds.toArray();
-      LOG.incrementProcessed(prog);
     }
     LOG.ensureCompleted(prog);
     // Sum of the sparse affinity matrix:
@@ -187,13 +198,97 @@ public class NearestNeighborAffinityMatrixBuilder<O> extends PerplexityAffinityM
         }
       }
     }
-    if(LOG.isStatistics()) { // timer != null, mv != null
+    if(LOG.isStatistics()) { // timer != null, sigma != null
+      MeanVariance mv = new MeanVariance();
+      for(double sig : sigma) {
+        mv.put(sig);
+      }
       LOG.statistics(timer.end());
       LOG.statistics(new DoubleStatistic(NearestNeighborAffinityMatrixBuilder.class.getName() + ".sigma.average", mv.getMean()));
       LOG.statistics(new DoubleStatistic(NearestNeighborAffinityMatrixBuilder.class.getName() + ".sigma.stddev", mv.getSampleStddev()));
     }
   }
 
+  /**
+   * Compute the sparse pij in parallel blocks.
+   * 
+   * @param core Parallel core
+   * @param ids ID range
+   * @param knnq kNN query, must be safe for concurrent use
+   * @param square Use squared distances
+   * @param numberOfNeighbours Number of neighbors to get
+   * @param logPerp Log of the desired perplexity
+   * @param pij Output of distances
+   * @param indices Output of indexes
+   * @param sigma Output of the kernel bandwidths (may be {@code null})
+   * @param prog Progress (may be {@code null})
+   */
+  private void computePijParallel(ParallelCore core, final DBIDRange ids, final KNNQuery<?> knnq, final boolean square, final int numberOfNeighbours, final double logPerp, final double[][] pij, final int[][] indices, final double[] sigma, final FiniteProgress prog) {
+    List<Future<Void>> futures = new ArrayList<>((ids.size() + BLOCKSIZE - 1) / BLOCKSIZE);
+    core.connect();
+    try {
+      for(int start = 0; start < ids.size(); start += BLOCKSIZE) {
+        final int s = start, e = Math.min(start + BLOCKSIZE, ids.size());
+        futures.add(core.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            computePijBlock(ids, knnq, square, numberOfNeighbours, logPerp, s, e, pij, indices, sigma, prog);
+            return null;
+          }
+        }));
+      }
+      for(Future<Void> fut : futures) {
+        fut.get();
+      }
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Parallel affinity computation failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Affinity computation interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Compute the rows of the sparse pij for a block of objects.
+   * 
+   * @param ids ID range
+   * @param knnq kNN query
+   * @param square Use squared distances
+   * @param numberOfNeighbours Number of neighbors to get
+   * @param logPerp Log of the desired perplexity
+   * @param start First object offset
+   * @param end End offset (exclusive)
+   * @param pij Output of distances
+   * @param indices Output of indexes
+   * @param sigma Output of the kernel bandwidths (may be {@code null})
+   * @param prog Progress (may be {@code null})
+   */
+  private void computePijBlock(DBIDRange ids, KNNQuery<?> knnq, boolean square, int numberOfNeighbours, double logPerp, int start, int end, double[][] pij, int[][] indices, double[] sigma, FiniteProgress prog) {
+    // Scratch arrays, resizable
+    DoubleArray dists = new DoubleArray(numberOfNeighbours + 10);
+    IntegerArray inds = new IntegerArray(numberOfNeighbours + 10);
+    ArrayDBIDs block = ids.slice(start, end);
+    List<? extends KNNList> knns = knnq.getKNNForBulkDBIDs(block, numberOfNeighbours + 1);
+    int i = 0;
+    for(DBIDArrayIter ix = block.iter(); ix.valid(); ix.advance(), i++) {
+      dists.clear();
+      inds.clear();
+      convertNeighbors(ids, ix, square, knns.get(i), dists, inds);
+      final int off = ids.getOffset(ix);
+      double beta = computeSigma(off, dists, perplexity, logPerp, //
+          pij[off] = new double[dists.size()]);
+      if(sigma != null) {
+        sigma[off] = beta > 0 ? FastMath.sqrt(.5 / beta) : 0.;
+      }
+      indices[off] = inds.toArray();
+      LOG.incrementProcessed(prog);
+    }
+  }
+
   /**
    * Load a neighbor query result into a double and and integer array, also
    * removing the query point. This is necessary, because we have to modify the
@@ -20,8 +20,13 @@ package de.lmu.ifi.dbs.elki.algorithm.projection;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
@@ -38,6 +43,7 @@ import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
@@ -55,6 +61,12 @@ import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
  * t-Stochastic Neighbor Embedding is a projection technique designed for
  * visualization that tries to preserve the nearest neighbor structure.
  * 
+ * The affinities in the projected space are by default stored in a full
+ * matrix. With the blocked option, they are recomputed when needed instead,
+ * which avoids the quadratic memory at the cost of computing each distance
+ * three times instead of once. The gradient is computed in blocks of rows,
+ * in parallel if multiple processors are available.
+ * 
  * Reference:
  * <p>
  * L.J.P. van der Maaten, G.E. Hinton<br />
@@ -65,6 +77,8 @@ import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
  * @author Erich Schubert
  * @author Dominik Acker
  *
+ * @apiviz.uses ParallelCore
+ *
  * @param <O> Object type
  */
 @Reference(authors = "L.J.P. van der Maaten, G.E. Hinton", //
@@ -104,6 +118,17 @@ public class TSNE<O> extends AbstractProjectionAlgorithm<Relation<DoubleVector>>
    */
   protected static final double MIN_GAIN = 0.01;
 
+  /**
+   * Number of rows per block of work. The blocks do not depend on the number
+   * of processors, so that the results do not either.
+   */
+  protected static final int BLOCKSIZE = 256;
+
+  /**
+   * Minimum data set size for using multiple threads.
+   */
+  protected static final int PARALLEL_MIN = 1000;
+
   /**
    * Affinity matrix builder.
    */
@@ -144,6 +169,11 @@ public class TSNE<O> extends AbstractProjectionAlgorithm<Relation<DoubleVector>>
    */
   protected RandomFactory random;
 
+  /**
+   * Do not store the projected affinities.
+   */
+  protected boolean blocked = false;
+
   /**
    * Constructor with default values.
    *
@@ -180,6 +210,23 @@ public class TSNE<O> extends AbstractProjectionAlgorithm<Relation<DoubleVector>>
     this.random = random;
   }
 
+  /**
+   * Constructor.
+   *
+   * @param affinity Affinity matrix builder
+   * @param dim Output dimensionality
+   * @param finalMomentum Final momentum
+   * @param learningRate Learning rate
+   * @param iterations Number of iterations
+   * @param random Random generator
+   * @param keep Keep the original data (or remove it)
+   * @param blocked Recompute the projected affinities instead of storing them
+   */
+  public TSNE(AffinityMatrixBuilder<? super O> affinity, int dim, double finalMomentum, double learningRate, int iterations, RandomFactory random, boolean keep, boolean blocked) {
+    this(affinity, dim, finalMomentum, learningRate, iterations, random, keep);
+    this.blocked = blocked;
+  }
+
   public Relation<DoubleVector> run(Relation<O> relation) {
     AffinityMatrix pij = affinity.computeAffinityMatrix(relation, EARLY_EXAGGERATION);
 
@@ -242,20 +289,31 @@ public class TSNE<O> extends AbstractProjectionAlgorithm<Relation<DoubleVector>>
       Arrays.fill(meta, off, off + dim, 1.); // Initial learning rate
     }
     // Affinity matrix in projected space
-    double[][] qij = new double[size][size];
+    double[][] qij = blocked ? null : new double[size][size];
 
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Iterative Optimization", iterations, LOG) : null;
     Duration timer = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".runtime.optimization").begin() : null;
-    // Optimize
-    for(int it = 0; it < iterations; it++) {
-      double qij_sum = computeQij(qij, sol);
-      computeGradient(pij, qij, qij_sum, sol, meta);
-      updateSolution(sol, meta, it);
-      // Undo early exaggeration
-      if(it == EARLY_EXAGGERATION_ITERATIONS) {
-        pij.scale(1. / EARLY_EXAGGERATION);
+    final ParallelCore core = getParallelCore(size);
+    if(core != null) {
+      core.connect();
+    }
+    try {
+      // Optimize
+      for(int it = 0; it < iterations; it++) {
+        double qij_sum = computeQij(qij, sol, core);
+        computeGradient(pij, qij, qij_sum, sol, meta, core);
+        updateSolution(sol, meta, it);
+        // Undo early exaggeration
+        if(it == EARLY_EXAGGERATION_ITERATIONS) {
+          pij.scale(1. / EARLY_EXAGGERATION);
+        }
+        LOG.incrementProcessed(prog);
+      }
+    }
+    finally {
+      if(core != null) {
+        core.disconnect();
       }
-      LOG.incrementProcessed(prog);
     }
     LOG.ensureCompleted(prog);
     if(timer != null) {
@@ -263,21 +321,104 @@ public class TSNE<O> extends AbstractProjectionAlgorithm<Relation<DoubleVector>>
     }
   }
 
+  /**
+   * Get the parallel core to use, if the data set is large enough and multiple
+   * processors are available.
+   *
+   * @param size Data set size
+   * @return Parallel core, or {@code null}
+   */
+  protected static ParallelCore getParallelCore(int size) {
+    final ParallelCore core = ParallelCore.getCore();
+    return (size >= PARALLEL_MIN && core.getParallelism() > 1) ? core : null;
+  }
+
+  /**
+   * Run a list of tasks, and collect their results in order.
+   *
+   * @param core Parallel core, {@code null} to run in the current thread
+   * @param tasks Tasks
+   * @param <T> Result type
+   * @return Results, in the order of the tasks
+   */
+  protected static <T> List<T> runTasks(ParallelCore core, List<? extends Callable<T>> tasks) {
+    List<T> results = new ArrayList<>(tasks.size());
+    try {
+      if(core == null) {
+        for(Callable<T> task : tasks) {
+          results.add(task.call());
+        }
+        return results;
+      }
+      List<Future<T>> futures = new ArrayList<>(tasks.size());
+      for(Callable<T> task : tasks) {
+        futures.add(core.submit(task));
+      }
+      for(Future<T> fut : futures) {
+        results.add(fut.get());
+      }
+      return results;
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Parallel tSNE computation failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("tSNE computation interrupted.");
+    }
+    catch(RuntimeException e) {
+      throw e;
+    }
+    catch(Exception e) {
+      throw new AbortException("tSNE computation failed.", e);
+    }
+  }
+
   /**
    * Compute the qij of the solution, and the sum.
    * 
-   * @param qij Qij matrix (output)
+   * @param qij Qij matrix (output), may be {@code null} to only compute the sum
    * @param solution Solution matrix (input)
+   * @param core Parallel core, may be {@code null}
    * @return qij sum
    */
-  protected double computeQij(double[][] qij, double[][] solution) {
+  protected double computeQij(final double[][] qij, final double[][] solution, ParallelCore core) {
+    final int size = solution.length;
+    // Row i has i entries, so choose the blocks to have equally many entries.
+    final int nblocks = (size + BLOCKSIZE - 1) / BLOCKSIZE;
+    final double total = size * (size - 1.) * .5;
+    List<Callable<Double>> tasks = new ArrayList<>(nblocks);
+    for(int b = 1, start = 1; b <= nblocks && start < size; b++) {
+      // Solve end * (end - 1) / 2 = total * b / nblocks for end:
+      int end = (b == nblocks) ? size : (int) Math.ceil(.5 + Math.sqrt(.25 + 2. * total * b / nblocks));
+      end = Math.max(start + 1, Math.min(end, size));
+      final int s = start, e = end;
+      tasks.add(new Callable<Double>() {
+        @Override
+        public Double call() {
+          double sum = 0;
+          for(int i = s; i < e; i++) {
+            final double[] vi = solution[i];
+            if(qij == null) {
+              for(int j = 0; j < i; j++) {
+                sum += 1. / (1. + squaredDistance(vi, solution[j]));
+              }
+              continue;
+            }
+            final double[] qij_i = qij[i];
+            for(int j = 0; j < i; j++) {
+              sum += qij_i[j] = qij[j][i] = 1. / (1. + squaredDistance(vi, solution[j]));
+            }
+          }
+          return sum;
+        }
+      });
+      start = end;
+    }
     double qij_sum = 0;
-    for(int i = 1; i < qij.length; i++) {
-      final double[] qij_i = qij[i], vi = solution[i];
-      for(int j = 0; j < i; j++) {
-        qij_sum += qij_i[j] = qij[j][i] = 1. / (1. + sqDist(vi, solution[j]));
-      }
+    for(Double sum : runTasks(core, tasks)) {
+      qij_sum += sum;
     }
+    projectedDistances.increment(size * (size - 1L) >>> 1);
     return qij_sum * 2; // Symmetry
   }
 
@@ -299,27 +440,75 @@ public class TSNE<O> extends AbstractProjectionAlgorithm<Relation<DoubleVector>>
     return sum;
   }
 
+  /**
+   * Squared distance, in projection space, without counting. Safe to use from
+   * multiple threads.
+   * 
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Squared distance
+   */
+  protected static double squaredDistance(double[] v1, double[] v2) {
+    assert (v1.length == v2.length) : "Lengths do not agree: " + v1.length + " " + v2.length;
+    double sum = 0;
+    for(int i = 0; i < v1.length; i++) {
+      final double diff = v1[i] - v2[i];
+      sum += diff * diff;
+    }
+    return sum;
+  }
+
   /**
    * Compute the gradients.
    * 
    * @param pij Desired affinity matrix
-   * @param qij Projected affinity matrix
+   * @param qij Projected affinity matrix, {@code null} to recompute
    * @param qij_sum Normalization factor
    * @param sol Current solution coordinates
    * @param meta Point metadata
+   * @param core Parallel core, may be {@code null}
    */
-  protected void computeGradient(AffinityMatrix pij, double[][] qij, double qij_sum, double[][] sol, double[] meta) {
-    final int dim3 = dim * 3;
-    int size = pij.size();
-    for(int i = 0, off = 0; i < size; i++, off += dim3) {
-      final double[] sol_i = sol[i], qij_i = qij[i];
+  protected void computeGradient(final AffinityMatrix pij, final double[][] qij, final double qij_sum, final double[][] sol, final double[] meta, ParallelCore core) {
+    final int size = pij.size();
+    List<Callable<Void>> tasks = new ArrayList<>((size + BLOCKSIZE - 1) / BLOCKSIZE);
+    for(int start = 0; start < size; start += BLOCKSIZE) {
+      final int s = start, e = Math.min(start + BLOCKSIZE, size);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          computeGradient(pij, qij, qij_sum, sol, meta, s, e);
+          return null;
+        }
+      });
+    }
+    runTasks(core, tasks);
+    if(qij == null) {
+      projectedDistances.increment(size * (size - 1L));
+    }
+  }
+
+  /**
+   * Compute the gradients of a block of rows.
+   * 
+   * @param pij Desired affinity matrix
+   * @param qij Projected affinity matrix, {@code null} to recompute
+   * @param qij_sum Normalization factor
+   * @param sol Current solution coordinates
+   * @param meta Point metadata
+   * @param start First row
+   * @param end End row (exclusive)
+   */
+  private void computeGradient(AffinityMatrix pij, double[][] qij, double qij_sum, double[][] sol, double[] meta, int start, int end) {
+    final int dim3 = dim * 3, size = sol.length;
+    for(int i = start, off = start * dim3; i < end; i++, off += dim3) {
+      final double[] sol_i = sol[i], qij_i = qij != null ? qij[i] : null;
       Arrays.fill(meta, off, off + dim, 0.); // Clear gradient only
       for(int j = 0; j < size; j++) {
         if(i == j) {
           continue;
         }
         final double[] sol_j = sol[j];
-        final double qij_ij = qij_i[j];
+        final double qij_ij = qij_i != null ? qij_i[j] : 1. / (1. + squaredDistance(sol_i, sol_j));
         // Qij after scaling!
         final double q = MathUtil.max(qij_ij / qij_sum, MIN_QIJ);
         double a = (pij.get(i, j) - q) * qij_ij;
@@ -404,6 +593,11 @@ public class TSNE<O> extends AbstractProjectionAlgorithm<Relation<DoubleVector>>
      */
     public static final OptionID RANDOM_ID = new OptionID("tsne.seed", "Random generator seed");
 
+    /**
+     * Flag to not store the projected affinity matrix.
+     */
+    public static final OptionID BLOCKED_ID = new OptionID("tsne.blocked", "Recompute the affinities in the projected space in blocks, instead of storing the full matrix (saves quadratic memory).");
+
     /**
      * Affinity matrix builder.
      */
@@ -439,6 +633,11 @@ public class TSNE<O> extends AbstractProjectionAlgorithm<Relation<DoubleVector>>
      */
     protected boolean keep;
 
+    /**
+     * Do not store the projected affinities.
+     */
+    protected boolean blocked;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config); // Distance function
@@ -485,6 +684,18 @@ public class TSNE<O> extends AbstractProjectionAlgorithm<Relation<DoubleVector>>
 
       Flag keepF = new Flag(KEEP_ID);
       keep = config.grab(keepF) && keepF.isTrue();
+
+      configBlocked(config);
+    }
+
+    /**
+     * Configure the blocked computation of the projected affinities.
+     * 
+     * @param config Parameterization
+     */
+    protected void configBlocked(Parameterization config) {
+      Flag blockedF = new Flag(BLOCKED_ID);
+      blocked = config.grab(blockedF) && blockedF.isTrue();
     }
 
     /**
@@ -498,7 +709,7 @@ public class TSNE<O> extends AbstractProjectionAlgorithm<Relation<DoubleVector>>
 
     @Override
     protected TSNE<O> makeInstance() {
-      return new TSNE<>(affinity, dim, finalMomentum, learningRate, iterations, random, keep);
+      return new TSNE<>(affinity, dim, finalMomentum, learningRate, iterations, random, keep, blocked);
     }
   }
 }
@@ -32,14 +32,20 @@ import de.lmu.ifi.dbs.elki.database.AbstractDatabase;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.bundle.BundleWriter;
+import de.lmu.ifi.dbs.elki.datasource.bundle.ColumnarBundleWriter;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
  * Convert an input file to the more efficient ELKI bundle format.
  *
+ * Optionally, the columnar bundle format can be written, in which numerical
+ * vectors can be memory-mapped when loading.
+ *
  * @author Erich Schubert
  * @since 0.5.5
  */
@@ -59,6 +65,11 @@ public class ConvertToBundleApplication extends AbstractApplication {
    */
   private File outfile;
 
+  /**
+   * Write the columnar format.
+   */
+  private boolean columnar;
+
   /**
    * Constructor.
    *
@@ -66,9 +77,21 @@ public class ConvertToBundleApplication extends AbstractApplication {
    * @param outfile Output filename
    */
   public ConvertToBundleApplication(DatabaseConnection input, File outfile) {
+    this(input, outfile, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param input Data source configuration
+   * @param outfile Output filename
+   * @param columnar Write the columnar format
+   */
+  public ConvertToBundleApplication(DatabaseConnection input, File outfile, boolean columnar) {
     super();
     this.input = input;
     this.outfile = outfile;
+    this.columnar = columnar;
   }
 
   @Override
@@ -80,12 +103,15 @@ public class ConvertToBundleApplication extends AbstractApplication {
     if(LOG.isVerbose()) {
       LOG.verbose("Serializing to output file: " + outfile.toString());
     }
-    // TODO: make configurable?
-    BundleWriter writer = new BundleWriter();
     try {
       FileOutputStream fos = new FileOutputStream(outfile);
       FileChannel channel = fos.getChannel();
-      writer.writeBundleStream(bundle.asStream(), channel);
+      if(columnar) {
+        new ColumnarBundleWriter().writeBundle(bundle, channel);
+      }
+      else {
+        new BundleWriter().writeBundleStream(bundle.asStream(), channel);
+      }
       channel.close();
       fos.close();
     }
@@ -102,6 +128,11 @@ public class ConvertToBundleApplication extends AbstractApplication {
    * @apiviz.exclude
    */
   public static class Parameterizer extends AbstractApplication.Parameterizer {
+    /**
+     * Option to write the columnar bundle format.
+     */
+    public static final OptionID COLUMNAR_ID = new OptionID("bundle.columnar", "Write the columnar bundle format, which stores numerical vectors as memory-mappable blocks of doubles.");
+
     /**
      * The data input step.
      */
@@ -112,6 +143,11 @@ public class ConvertToBundleApplication extends AbstractApplication {
      */
     private File outfile;
 
+    /**
+     * Write the columnar format.
+     */
+    private boolean columnar;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -120,11 +156,15 @@ public class ConvertToBundleApplication extends AbstractApplication {
         input = inputP.instantiateClass(config);
       }
       outfile = super.getParameterOutputFile(config, "File name to serialize the bundle to.");
+      Flag columnarF = new Flag(COLUMNAR_ID);
+      if(config.grab(columnarF)) {
+        columnar = columnarF.isTrue();
+      }
     }
 
     @Override
     protected ConvertToBundleApplication makeInstance() {
-      return new ConvertToBundleApplication(input, outfile);
+      return new ConvertToBundleApplication(input, outfile, columnar);
     }
   }
 
@@ -24,17 +24,22 @@ package de.lmu.ifi.dbs.elki.database;
  */
 
 import java.util.Collection;
+import java.util.List;
 
+import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayStaticDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.DBIDView;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.PackedDoubleVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
 import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
@@ -44,7 +49,9 @@ import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.EnumParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -60,6 +67,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * @apiviz.landmark
  * @apiviz.composedOf ArrayStaticDBIDs
  * @apiviz.uses DatabaseConnection
+ * @apiviz.uses PackedDoubleVectorRelation
  */
 @Description("Database using an in-memory hashtable and at least providing linear scans.")
 public class StaticArrayDatabase extends AbstractDatabase {
@@ -83,6 +91,31 @@ public class StaticArrayDatabase extends AbstractDatabase {
    */
   protected DatabaseConnection databaseConnection;
 
+  /**
+   * Storage layout for vector relations.
+   */
+  protected VectorStorage storage;
+
+  /**
+   * Storage layout options for fixed-dimensional numerical vectors.
+   *
+   * @author Erich Schubert
+   */
+  public static enum VectorStorage {
+    /**
+     * Store one vector object per row.
+     */
+    OBJECTS,
+    /**
+     * Store all vectors in packed double arrays on the Java heap.
+     */
+    PACKED,
+    /**
+     * Store all vectors in packed, direct (off-heap) memory.
+     */
+    PACKED_DIRECT,
+  }
+
   /**
    * Constructor.
    *
@@ -90,8 +123,20 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @param indexFactories Indexes to add
    */
   public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories) {
+    this(databaseConnection, indexFactories, VectorStorage.OBJECTS);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param storage Storage layout for fixed-dimensional numerical vectors
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories, VectorStorage storage) {
     super();
     this.databaseConnection = databaseConnection;
+    this.storage = storage;
     this.ids = null;
     this.idrep = null;
 
@@ -146,13 +191,20 @@ public class StaticArrayDatabase extends AbstractDatabase {
       int numrel = bundle.metaLength();
       for(int i = 0; i < numrel; i++) {
         SimpleTypeInformation<?> meta = bundle.meta(i);
-        @SuppressWarnings("unchecked")
-        SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
-        WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
-        for(it.seek(0); it.valid(); it.advance()) {
-          store.put(it, bundle.data(it.getOffset(), i));
+        SimpleTypeInformation<Object> ometa = objectType(meta);
+        Relation<?> relation;
+        if(isPackable(meta) && (bundle.getColumn(i) instanceof PackedDoubleVectorRelation.Column || storage != VectorStorage.OBJECTS)) {
+          PackedDoubleVectorRelation packed = makePacked(bundle, i);
+          ometa = objectType(packed.getDataTypeInformation());
+          relation = packed;
+        }
+        else {
+          WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
+          for(it.seek(0); it.valid(); it.advance()) {
+            store.put(it, bundle.data(it.getOffset(), i));
+          }
+          relation = new MaterializedRelation<>(ometa, ids, null, store);
         }
-        Relation<?> relation = new MaterializedRelation<>(ometa, ids, null, store);
         relations.add(relation);
         getHierarchy().add(this, relation);
 
@@ -179,6 +231,56 @@ public class StaticArrayDatabase extends AbstractDatabase {
     }
   }
 
+  /**
+   * Build the packed relation for a bundle column.
+   *
+   * @param bundle Bundle
+   * @param i Column number
+   * @return Packed relation
+   */
+  private PackedDoubleVectorRelation makePacked(MultipleObjectsBundle bundle, int i) {
+    final SimpleTypeInformation<?> meta = bundle.meta(i);
+    final List<?> column = bundle.getColumn(i);
+    if(column instanceof PackedDoubleVectorRelation.Column) {
+      // Already packed (e.g. memory-mapped), use the storage as is.
+      PackedDoubleVectorRelation.Column pcol = (PackedDoubleVectorRelation.Column) column;
+      final int dim = pcol.getDimensionality();
+      return new PackedDoubleVectorRelation((DBIDRange) ids, dim, PackedDoubleVectorRelation.getLabels(meta, dim), pcol.getChunks());
+    }
+    final int dim = ((VectorFieldTypeInformation<?>) meta).getDimensionality();
+    PackedDoubleVectorRelation packed = new PackedDoubleVectorRelation((DBIDRange) ids, dim, PackedDoubleVectorRelation.getLabels(meta, dim), storage == VectorStorage.PACKED_DIRECT);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      packed.set(it, (NumberVector) bundle.data(it.getOffset(), i));
+    }
+    return packed;
+  }
+
+  /**
+   * Type information of a relation, for use with the untyped bundle columns.
+   *
+   * @param type Type information
+   * @return Same type information
+   */
+  @SuppressWarnings("unchecked")
+  private static SimpleTypeInformation<Object> objectType(SimpleTypeInformation<?> type) {
+    return (SimpleTypeInformation<Object>) type;
+  }
+
+  /**
+   * Test whether a relation can be stored in packed form.
+   *
+   * @param meta Type information
+   * @return {@code true} for fixed-dimensional numerical vectors
+   */
+  private boolean isPackable(SimpleTypeInformation<?> meta) {
+    if(!(ids instanceof DBIDRange) || !(meta instanceof VectorFieldTypeInformation)) {
+      return false;
+    }
+    VectorFieldTypeInformation<?> vmeta = (VectorFieldTypeInformation<?>) meta;
+    return vmeta.getDimensionality() > 0 && vmeta.mindim() == vmeta.maxdim() //
+        && NumberVector.class.isAssignableFrom(vmeta.getRestrictionClass());
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
@@ -192,6 +294,12 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @apiviz.exclude
    */
   public static class Parameterizer extends AbstractDatabase.Parameterizer {
+    /**
+     * Option to choose the storage layout of numerical vector relations.
+     */
+    public static final OptionID VECTOR_STORAGE_ID = new OptionID("db.vectorstorage", //
+        "Storage layout for fixed-dimensional numerical vectors: one object per vector, or packed contiguous arrays on the heap or in direct memory.");
+
     /**
      * Holds the database connection to get the initial data from.
      */
@@ -202,6 +310,11 @@ public class StaticArrayDatabase extends AbstractDatabase {
      */
     private Collection<IndexFactory<?, ?>> indexFactories;
 
+    /**
+     * Storage layout for vector relations.
+     */
+    private VectorStorage storage = VectorStorage.OBJECTS;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -215,11 +328,15 @@ public class StaticArrayDatabase extends AbstractDatabase {
       if(config.grab(indexFactoryP)) {
         indexFactories = indexFactoryP.instantiateClasses(config);
       }
+      EnumParameter<VectorStorage> storageP = new EnumParameter<>(VECTOR_STORAGE_ID, VectorStorage.class, VectorStorage.OBJECTS);
+      if(config.grab(storageP)) {
+        storage = storageP.getValue();
+      }
     }
 
     @Override
     protected StaticArrayDatabase makeInstance() {
-      return new StaticArrayDatabase(databaseConnection, indexFactories);
+      return new StaticArrayDatabase(databaseConnection, indexFactories, storage);
     }
   }
 }
@@ -27,11 +27,14 @@ package de.lmu.ifi.dbs.elki.database.query;
 /**
  * Marker interface for linear scan (slow, non-accelerated) queries.
  * 
+ * Linear scans do not use any index structure, and are safe for concurrent
+ * use.
+ * 
  * @author Erich Schubert
  * @since 0.4.0
  * 
  * @apiviz.uses de.lmu.ifi.dbs.elki.database.Database
  */
-public interface LinearScanQuery extends DatabaseQuery {
+public interface LinearScanQuery extends ThreadSafeQuery {
   // Empty marker interface
 }
@@ -28,6 +28,7 @@ import java.util.List;
 
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -35,8 +36,11 @@ import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.PackedDoubleVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.PackedSquaredEuclidean;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 
 /**
@@ -51,6 +55,7 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanD
  * @apiviz.uses PrimitiveDistanceQuery
  * @apiviz.uses EuclideanDistanceFunction
  * @apiviz.uses SquaredEuclideanDistanceFunction
+ * @apiviz.uses PackedSquaredEuclidean
  */
 public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends LinearScanPrimitiveDistanceKNNQuery<O> implements LinearScanQuery {
   /**
@@ -58,6 +63,11 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
    */
   private static final SquaredEuclideanDistanceFunction SQUARED = SquaredEuclideanDistanceFunction.STATIC;
 
+  /**
+   * Number of candidates processed at once in batch queries.
+   */
+  private static final int BLOCKSIZE = 64;
+
   /**
    * Constructor.
    *
@@ -89,6 +99,17 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
    */
   private KNNHeap linearScan(Relation<? extends O> relation, DBIDIter iter, final O obj, KNNHeap heap) {
     double max = Double.POSITIVE_INFINITY;
+    if(relation instanceof PackedDoubleVectorRelation) {
+      // Compute on the packed storage, without materializing the rows.
+      final PackedDoubleVectorRelation packed = (PackedDoubleVectorRelation) relation;
+      for(; iter.valid(); iter.advance()) {
+        final double dist = packed.squaredEuclidean(obj, iter);
+        if(dist <= max) {
+          max = heap.insert(dist, iter);
+        }
+      }
+      return heap;
+    }
     while(iter.valid()) {
       final double dist = SQUARED.distance(obj, relation.get(iter));
       if(dist <= max) {
@@ -120,22 +141,53 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
   /**
    * Perform a linear scan batch kNN for primitive distance functions.
    *
+   * For vectors of fixed dimensionality, the queries and candidates are packed
+   * into arrays, and candidates are filtered in blocks using precomputed norms.
+   * The remaining candidates are refined with the exact distance, so the
+   * results are the same as with the plain scan.
+   *
    * @param objs Objects list
    * @param heaps Heaps array
    */
   @Override
   protected void linearScanBatchKNN(List<O> objs, List<KNNHeap> heaps) {
+    final int dim = RelationUtil.dimensionality(relation);
+    if(dim <= 0) {
+      super.linearScanBatchKNN(objs, heaps);
+      return;
+    }
     final int size = objs.size();
-    // Linear scan style KNN.
-    for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-      O candidate = relation.get(iter);
-      for(int index = 0; index < size; index++) {
-        final KNNHeap heap = heaps.get(index);
-        final double dist = SQUARED.distance(objs.get(index), candidate);
-        if(dist <= heap.getKNNDistance()) {
-          heap.insert(dist, iter);
+    final double[] queries = new double[size * dim], qnorms = new double[size];
+    for(int i = 0, qoff = 0; i < size; i++, qoff += dim) {
+      PackedSquaredEuclidean.pack(objs.get(i), queries, qoff, dim);
+      qnorms[i] = PackedSquaredEuclidean.norm(queries, qoff, dim);
+    }
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int n = ids.size(), bsize = Math.min(BLOCKSIZE, n);
+    final double[] rows = new double[bsize * dim], trans = new double[bsize * dim];
+    final double[] bnorms = new double[bsize], dists = new double[bsize];
+    DBIDArrayIter iter = ids.iter();
+    for(int start = 0; start < n; start += bsize) {
+      final int nb = Math.min(bsize, n - start);
+      for(int j = 0; j < nb; j++) {
+        PackedSquaredEuclidean.pack(relation.get(iter.seek(start + j)), rows, j * dim, dim);
+      }
+      PackedSquaredEuclidean.transpose(rows, 0, nb, dim, trans, bnorms);
+      for(int i = 0, qoff = 0; i < size; i++, qoff += dim) {
+        final KNNHeap heap = heaps.get(i);
+        final double qnorm = qnorms[i];
+        PackedSquaredEuclidean.oneToMany(queries, qoff, qnorm, trans, bnorms, nb, dim, dists, 0);
+        double max = heap.getKNNDistance();
+        for(int j = 0; j < nb; j++) {
+          if(dists[j] - PackedSquaredEuclidean.slack(qnorm, bnorms[j], dim) > max) {
+            continue;
+          }
+          final double dist = PackedSquaredEuclidean.distance(queries, qoff, rows, j * dim, dim);
+          if(dist <= max) {
+            max = heap.insert(dist, iter.seek(start + j));
+          }
         }
       }
     }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,147 @@
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Wrapper for a kNN query, that answers bulk queries by splitting the query
+ * objects into blocks, and processing the blocks in parallel with
+ * {@link ParallelCore}. Each block is passed to the bulk query of the wrapped
+ * query, so implementations with a shared traversal (such as the batched
+ * linear scan) keep their benefits, and the block size keeps the working set
+ * of this shared traversal small enough for the CPU caches. With a single
+ * thread, the blocks are processed one after another.
+ *
+ * The wrapped query must be safe to use from multiple threads concurrently.
+ * This holds for the linear scan queries, but not for every index.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses ParallelCore
+ *
+ * @param <O> Object type
+ */
+public class ParallelBulkKNNQuery<O> implements KNNQuery<O> {
+  /**
+   * Default block size.
+   */
+  public static final int DEFAULT_BLOCKSIZE = 256;
+
+  /**
+   * Wrapped query.
+   */
+  private KNNQuery<O> inner;
+
+  /**
+   * Number of query objects per block.
+   */
+  private int blocksize;
+
+  /**
+   * Constructor.
+   *
+   * @param inner Query to parallelize
+   */
+  public ParallelBulkKNNQuery(KNNQuery<O> inner) {
+    this(inner, DEFAULT_BLOCKSIZE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param inner Query to parallelize
+   * @param blocksize Number of query objects per block
+   */
+  public ParallelBulkKNNQuery(KNNQuery<O> inner, int blocksize) {
+    super();
+    this.inner = inner;
+    this.blocksize = blocksize;
+  }
+
+  @Override
+  public KNNList getKNNForDBID(DBIDRef id, int k) {
+    return inner.getKNNForDBID(id, k);
+  }
+
+  @Override
+  public KNNList getKNNForObject(O obj, int k) {
+    return inner.getKNNForObject(obj, k);
+  }
+
+  @Override
+  public List<? extends KNNList> getKNNForBulkDBIDs(final ArrayDBIDs ids, final int k) {
+    final int size = ids.size();
+    final ParallelCore core = ParallelCore.getCore();
+    if(size <= blocksize) {
+      return inner.getKNNForBulkDBIDs(ids, k);
+    }
+    if(core.getParallelism() <= 1) {
+      // Process the blocks serially, to keep the working set small.
+      List<KNNList> result = new ArrayList<>(size);
+      for(int start = 0; start < size; start += blocksize) {
+        result.addAll(inner.getKNNForBulkDBIDs(ids.slice(start, Math.min(start + blocksize, size)), k));
+      }
+      return result;
+    }
+    core.connect();
+    try {
+      List<Future<List<? extends KNNList>>> parts = new ArrayList<>((size + blocksize - 1) / blocksize);
+      for(int start = 0; start < size; start += blocksize) {
+        final ArrayDBIDs block = ids.slice(start, Math.min(start + blocksize, size));
+        parts.add(core.submit(new Callable<List<? extends KNNList>>() {
+          @Override
+          public List<? extends KNNList> call() {
+            return inner.getKNNForBulkDBIDs(block, k);
+          }
+        }));
+      }
+      List<KNNList> result = new ArrayList<>(size);
+      for(Future<List<? extends KNNList>> fut : parts) {
+        result.addAll(fut.get());
+      }
+      return result;
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Parallel kNN query failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Parallel kNN query interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+}
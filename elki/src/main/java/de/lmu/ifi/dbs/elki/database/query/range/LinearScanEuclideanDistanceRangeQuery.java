@@ -30,6 +30,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.PackedDoubleVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
 import net.jafama.FastMath;
@@ -102,6 +103,20 @@ public class LinearScanEuclideanDistanceRangeQuery<O extends NumberVector> exten
     // This should be more precise, but slower:
     // upper = MathUtil.floatToDoubleUpper((float)range);
     final double sqrange = upper * upper;
+    if(relation instanceof PackedDoubleVectorRelation) {
+      // Compute on the packed storage, without materializing the rows.
+      final PackedDoubleVectorRelation packed = (PackedDoubleVectorRelation) relation;
+      for(; iter.valid(); iter.advance()) {
+        final double sqdistance = packed.squaredEuclidean(obj, iter);
+        if(sqdistance <= sqrange) {
+          final double dist = FastMath.sqrt(sqdistance);
+          if(dist <= range) { // double check, as we increased the radius above
+            result.add(dist, iter);
+          }
+        }
+      }
+      return;
+    }
     while(iter.valid()) {
       final double sqdistance = SQUARED.distance(obj, relation.get(iter));
       if(sqdistance <= sqrange) {
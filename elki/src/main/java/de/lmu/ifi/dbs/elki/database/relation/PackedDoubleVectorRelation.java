@@ -0,0 +1,501 @@
+package de.lmu.ifi.dbs.elki.database.relation;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.SpatialPrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import net.jafama.FastMath;
+
+/**
+ * Relation storing fixed-dimensional vectors in a contiguous, row-major block
+ * of doubles, instead of one {@link DoubleVector} object per row.
+ *
+ * The storage can be on the Java heap, in direct (off-heap) memory, or in any
+ * other {@link DoubleBuffer}, such as a memory-mapped file. To avoid the size
+ * limitations of Java buffers, the rows are split into chunks of at most
+ * {@link #MAX_CHUNK_BYTES} bytes.
+ *
+ * {@link #get} materializes the row as a {@link DoubleVector}, so the relation
+ * can be used wherever a {@link DoubleVector} relation is expected. Code that
+ * needs to access many values without allocations can use
+ * {@link #doubleValue(DBIDRef, int)} and {@link #squaredEuclidean} directly
+ * instead. Euclidean distance queries on this relation use the packed storage,
+ * and do not materialize the rows.
+ *
+ * This relation is read-only after construction, and requires the objects to
+ * be identified by a {@link DBIDRange}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.composedOf DoubleBuffer
+ * @apiviz.has DoubleVector
+ * @apiviz.has Column
+ * @apiviz.has EuclideanQuery
+ */
+public class PackedDoubleVectorRelation extends AbstractRelation<DoubleVector> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(PackedDoubleVectorRelation.class);
+
+  /**
+   * Maximum size of a single chunk, in bytes.
+   */
+  public static final int MAX_CHUNK_BYTES = 1 << 30;
+
+  /**
+   * Type information of the stored vectors.
+   */
+  private final VectorFieldTypeInformation<DoubleVector> type;
+
+  /**
+   * Object ids.
+   */
+  private final DBIDRange ids;
+
+  /**
+   * Dimensionality.
+   */
+  private final int dim;
+
+  /**
+   * Number of rows per chunk.
+   */
+  private final int rowsPerChunk;
+
+  /**
+   * Data chunks.
+   */
+  private final DoubleBuffer[] chunks;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * Constructor, allocating new (zero-filled) storage.
+   *
+   * @param ids Object ids
+   * @param dim Dimensionality
+   * @param labels Column labels (may be {@code null})
+   * @param direct Use direct (off-heap) memory
+   */
+  public PackedDoubleVectorRelation(DBIDRange ids, int dim, String[] labels, boolean direct) {
+    this(ids, dim, labels, allocate(ids.size(), dim, direct));
+  }
+
+  /**
+   * Constructor, using existing storage.
+   *
+   * Every chunk except the last must hold exactly
+   * {@link #rowsPerChunk(int)} rows.
+   *
+   * @param ids Object ids
+   * @param dim Dimensionality
+   * @param labels Column labels (may be {@code null})
+   * @param chunks Data chunks
+   */
+  public PackedDoubleVectorRelation(DBIDRange ids, int dim, String[] labels, DoubleBuffer[] chunks) {
+    super();
+    this.ids = ids;
+    this.dim = dim;
+    this.rowsPerChunk = rowsPerChunk(dim);
+    this.chunks = chunks;
+    this.type = new VectorFieldTypeInformation<>(DoubleVector.FACTORY, dim, labels);
+    assert (chunks.length == (ids.size() + rowsPerChunk - 1) / rowsPerChunk);
+  }
+
+  /**
+   * Copy the contents of an existing relation into packed storage.
+   *
+   * @param relation Relation to copy; must use a {@link DBIDRange}
+   * @param direct Use direct (off-heap) memory
+   * @return Packed relation
+   */
+  public static PackedDoubleVectorRelation pack(Relation<? extends NumberVector> relation, boolean direct) {
+    final SimpleTypeInformation<?> otype = relation.getDataTypeInformation();
+    final int dim = RelationUtil.dimensionality(relation);
+    PackedDoubleVectorRelation packed = new PackedDoubleVectorRelation((DBIDRange) relation.getDBIDs(), dim, getLabels(otype, dim), direct);
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance()) {
+      packed.set(it, relation.get(it));
+    }
+    return packed;
+  }
+
+  /**
+   * Get the column labels of a vector type, if available.
+   *
+   * @param type Type information
+   * @param dim Dimensionality
+   * @return Labels, or {@code null}
+   */
+  public static String[] getLabels(SimpleTypeInformation<?> type, int dim) {
+    if(!(type instanceof VectorFieldTypeInformation) || ((VectorFieldTypeInformation<?>) type).getLabel(0) == null) {
+      return null;
+    }
+    String[] labels = new String[dim];
+    for(int d = 0; d < dim; d++) {
+      labels[d] = ((VectorFieldTypeInformation<?>) type).getLabel(d);
+    }
+    return labels;
+  }
+
+  /**
+   * Number of rows stored in each chunk.
+   *
+   * @param dim Dimensionality
+   * @return Rows per chunk
+   */
+  public static int rowsPerChunk(int dim) {
+    return Math.max(1, MAX_CHUNK_BYTES / (ByteArrayUtil.SIZE_DOUBLE * Math.max(1, dim)));
+  }
+
+  /**
+   * Allocate the storage chunks.
+   *
+   * @param size Number of rows
+   * @param dim Dimensionality
+   * @param direct Use direct (off-heap) memory
+   * @return Chunks
+   */
+  private static DoubleBuffer[] allocate(int size, int dim, boolean direct) {
+    final int rows = rowsPerChunk(dim);
+    DoubleBuffer[] chunks = new DoubleBuffer[(size + rows - 1) / rows];
+    for(int i = 0, remaining = size; i < chunks.length; i++, remaining -= rows) {
+      final int len = Math.min(rows, remaining) * dim;
+      chunks[i] = direct ? ByteBuffer.allocateDirect(len * ByteArrayUtil.SIZE_DOUBLE).order(ByteOrder.nativeOrder()).asDoubleBuffer() : DoubleBuffer.allocate(len);
+    }
+    return chunks;
+  }
+
+  /**
+   * Store the values of a vector.
+   *
+   * @param id Object id
+   * @param vec Vector
+   */
+  public void set(DBIDRef id, NumberVector vec) {
+    assert (vec.getDimensionality() == dim) : "Dimensionality mismatch.";
+    final int row = ids.getOffset(id);
+    final DoubleBuffer chunk = chunks[row / rowsPerChunk];
+    final int off = (row % rowsPerChunk) * dim;
+    for(int d = 0; d < dim; d++) {
+      chunk.put(off + d, vec.doubleValue(d));
+    }
+  }
+
+  /**
+   * Direct access to a single value, without creating a view.
+   *
+   * @param id Object id
+   * @param d Dimension
+   * @return Value
+   */
+  public double doubleValue(DBIDRef id, int d) {
+    final int row = ids.getOffset(id);
+    return chunks[row / rowsPerChunk].get((row % rowsPerChunk) * dim + d);
+  }
+
+  /**
+   * Squared Euclidean distance of two stored vectors, computed on the packed
+   * storage.
+   *
+   * @param id1 First object id
+   * @param id2 Second object id
+   * @return Squared Euclidean distance
+   */
+  public double squaredEuclidean(DBIDRef id1, DBIDRef id2) {
+    final int row1 = ids.getOffset(id1), row2 = ids.getOffset(id2);
+    final DoubleBuffer chunk1 = chunks[row1 / rowsPerChunk], chunk2 = chunks[row2 / rowsPerChunk];
+    final int off1 = (row1 % rowsPerChunk) * dim, off2 = (row2 % rowsPerChunk) * dim;
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double delta = chunk1.get(off1 + d) - chunk2.get(off2 + d);
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
+  /**
+   * Squared Euclidean distance of a vector to a stored vector, computed on the
+   * packed storage.
+   *
+   * @param v Vector
+   * @param id Object id
+   * @return Squared Euclidean distance
+   */
+  public double squaredEuclidean(NumberVector v, DBIDRef id) {
+    if(v.getDimensionality() != dim) {
+      return SquaredEuclideanDistanceFunction.STATIC.distance(v, get(id));
+    }
+    final int row = ids.getOffset(id);
+    final DoubleBuffer chunk = chunks[row / rowsPerChunk];
+    final int off = (row % rowsPerChunk) * dim;
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double delta = v.doubleValue(d) - chunk.get(off + d);
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
+  /**
+   * Get the dimensionality of the stored vectors.
+   *
+   * @return Dimensionality
+   */
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public DistanceQuery<DoubleVector> getDistanceQuery(DistanceFunction<? super DoubleVector> distanceFunction, Object... hints) {
+    DistanceQuery<DoubleVector> dq = super.getDistanceQuery(distanceFunction, hints);
+    // Replace the default queries only, not those of an index.
+    if(dq != null && dq.getClass() == SpatialPrimitiveDistanceQuery.class) {
+      if(EuclideanDistanceFunction.STATIC.equals(distanceFunction)) {
+        return new EuclideanQuery(this, EuclideanDistanceFunction.STATIC, false);
+      }
+      if(SquaredEuclideanDistanceFunction.STATIC.equals(distanceFunction)) {
+        return new EuclideanQuery(this, SquaredEuclideanDistanceFunction.STATIC, true);
+      }
+    }
+    return dq;
+  }
+
+  @Override
+  public DoubleVector get(DBIDRef id) {
+    final int row = ids.getOffset(id);
+    return getRow(chunks[row / rowsPerChunk], (row % rowsPerChunk) * dim, dim);
+  }
+
+  /**
+   * Materialize a single row of the packed storage.
+   *
+   * @param chunk Data chunk
+   * @param off Offset of the row in the chunk
+   * @param dim Dimensionality
+   * @return Vector
+   */
+  private static DoubleVector getRow(DoubleBuffer chunk, int off, int dim) {
+    double[] values = new double[dim];
+    for(int d = 0; d < dim; d++) {
+      values[d] = chunk.get(off + d);
+    }
+    return DoubleVector.wrap(values);
+  }
+
+  @Override
+  public SimpleTypeInformation<DoubleVector> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public DBIDs getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  /**
+   * Set the relation name.
+   *
+   * @param name Relation name
+   */
+  public void setName(String name) {
+    this.name = name;
+  }
+
+  @Override
+  public String getLongName() {
+    return (name != null) ? name : type.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return "relation";
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Euclidean or squared Euclidean distance query on the packed storage,
+   * without materializing the rows.
+   *
+   * @author Erich Schubert
+   */
+  public static class EuclideanQuery extends SpatialPrimitiveDistanceQuery<DoubleVector> {
+    /**
+     * Packed relation.
+     */
+    private final PackedDoubleVectorRelation packed;
+
+    /**
+     * Return squared distances.
+     */
+    private final boolean squared;
+
+    /**
+     * Constructor.
+     *
+     * @param packed Packed relation
+     * @param distanceFunction Distance function
+     * @param squared Return squared distances
+     */
+    public EuclideanQuery(PackedDoubleVectorRelation packed, SpatialPrimitiveDistanceFunction<? super DoubleVector> distanceFunction, boolean squared) {
+      super(packed, distanceFunction);
+      this.packed = packed;
+      this.squared = squared;
+    }
+
+    @Override
+    public double distance(DBIDRef id1, DBIDRef id2) {
+      final double d = packed.squaredEuclidean(id1, id2);
+      return squared ? d : FastMath.sqrt(d);
+    }
+
+    @Override
+    public double distance(DoubleVector o1, DBIDRef id2) {
+      final double d = packed.squaredEuclidean(o1, id2);
+      return squared ? d : FastMath.sqrt(d);
+    }
+
+    @Override
+    public double distance(DBIDRef id1, DoubleVector o2) {
+      final double d = packed.squaredEuclidean(o2, id1);
+      return squared ? d : FastMath.sqrt(d);
+    }
+  }
+
+  /**
+   * Packed storage exposed as a list of vectors, for use as a column of a
+   * {@link de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle}.
+   *
+   * {@link de.lmu.ifi.dbs.elki.database.StaticArrayDatabase} recognizes such
+   * columns, and uses the chunks directly for the relation, without copying.
+   *
+   * @author Erich Schubert
+   */
+  public static class Column extends AbstractList<DoubleVector> implements RandomAccess {
+    /**
+     * Number of rows.
+     */
+    private final int size;
+
+    /**
+     * Dimensionality.
+     */
+    private final int dim;
+
+    /**
+     * Number of rows per chunk.
+     */
+    private final int rowsPerChunk;
+
+    /**
+     * Data chunks.
+     */
+    private final DoubleBuffer[] chunks;
+
+    /**
+     * Constructor.
+     *
+     * Every chunk except the last must hold exactly
+     * {@link PackedDoubleVectorRelation#rowsPerChunk(int)} rows.
+     *
+     * @param size Number of rows
+     * @param dim Dimensionality
+     * @param chunks Data chunks
+     */
+    public Column(int size, int dim, DoubleBuffer[] chunks) {
+      super();
+      this.size = size;
+      this.dim = dim;
+      this.rowsPerChunk = rowsPerChunk(dim);
+      this.chunks = chunks;
+      assert (chunks.length == (size + rowsPerChunk - 1) / rowsPerChunk);
+    }
+
+    @Override
+    public DoubleVector get(int index) {
+      return getRow(chunks[index / rowsPerChunk], (index % rowsPerChunk) * dim, dim);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Get the dimensionality of the stored vectors.
+     *
+     * @return Dimensionality
+     */
+    public int getDimensionality() {
+      return dim;
+    }
+
+    /**
+     * Get the data chunks.
+     *
+     * @return Chunks
+     */
+    public DoubleBuffer[] getChunks() {
+      return chunks;
+    }
+  }
+}
@@ -29,6 +29,7 @@ import java.nio.channels.FileChannel;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.datasource.bundle.BundleReader;
+import de.lmu.ifi.dbs.elki.datasource.bundle.ColumnarBundleReader;
 import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
 import de.lmu.ifi.dbs.elki.datasource.filter.ObjectFilter;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -44,10 +45,14 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
  * that parsing should be simpler, albeit the focus was on using it in on-disk
  * indexes.
  *
+ * Files in the columnar bundle format (see {@link ColumnarBundleReader}) are
+ * detected automatically; their vector columns are memory-mapped.
+ *
  * @author Erich Schubert
  * @since 0.5.5
  *
  * @apiviz.composedOf BundleReader
+ * @apiviz.composedOf ColumnarBundleReader
  */
 public class BundleDatabaseConnection extends AbstractDatabaseConnection {
   /**
@@ -76,7 +81,13 @@ public class BundleDatabaseConnection extends AbstractDatabaseConnection {
     try {
       FileInputStream fis = new FileInputStream(infile);
       FileChannel channel = fis.getChannel();
-      MultipleObjectsBundle bundle = invokeStreamFilters(new BundleReader(channel)).asMultipleObjectsBundle();
+      MultipleObjectsBundle bundle;
+      if(ColumnarBundleReader.isColumnarBundle(channel)) {
+        bundle = invokeBundleFilters(new ColumnarBundleReader(channel).readBundle());
+      }
+      else {
+        bundle = invokeStreamFilters(new BundleReader(channel)).asMultipleObjectsBundle();
+      }
       channel.close();
       fis.close();
       return bundle;
@@ -0,0 +1,232 @@
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformationSerializer;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.relation.PackedDoubleVectorRelation;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Read a file in the columnar bundle format written by
+ * {@link ColumnarBundleWriter}.
+ *
+ * Packed vector columns are memory-mapped, and returned as
+ * {@link PackedDoubleVectorRelation.Column}, which
+ * {@link de.lmu.ifi.dbs.elki.database.StaticArrayDatabase} uses as relation
+ * storage without copying or deserializing the vectors. The mapping remains
+ * valid after the channel has been closed. Other columns are deserialized.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses FileChannel - - «reads»
+ * @apiviz.has PackedDoubleVectorRelation.Column
+ */
+public class ColumnarBundleReader {
+  /**
+   * Maximum size of a mapped window for object columns.
+   */
+  private static final int MAX_WINDOW = 1 << 30;
+
+  /**
+   * Input channel.
+   */
+  private FileChannel input;
+
+  /**
+   * Constructor.
+   *
+   * @param input Input channel
+   */
+  public ColumnarBundleReader(FileChannel input) {
+    super();
+    this.input = input;
+  }
+
+  /**
+   * Test whether a file is in the columnar bundle format.
+   *
+   * @param input Input channel
+   * @return {@code true} if the file begins with the columnar magic number
+   * @throws IOException on IO errors
+   */
+  public static boolean isColumnarBundle(FileChannel input) throws IOException {
+    if(input.size() < ByteArrayUtil.SIZE_INT) {
+      return false;
+    }
+    ByteBuffer magic = ByteBuffer.allocate(ByteArrayUtil.SIZE_INT);
+    while(magic.hasRemaining() && input.read(magic, magic.position()) > 0) {
+      // Read fully.
+    }
+    return magic.getInt(0) == ColumnarBundleWriter.MAGIC;
+  }
+
+  /**
+   * Read the bundle.
+   *
+   * @return Bundle
+   * @throws IOException on IO errors
+   */
+  public MultipleObjectsBundle readBundle() throws IOException {
+    final long fsize = input.size();
+    ByteBuffer header = input.map(MapMode.READ_ONLY, 0, Math.min(fsize, MAX_WINDOW));
+    if(header.getInt() != ColumnarBundleWriter.MAGIC) {
+      throw new AbortException("Not a columnar bundle file.");
+    }
+    final int version = header.getInt();
+    if(version != ColumnarBundleWriter.VERSION) {
+      throw new AbortException("Unsupported columnar bundle version: " + version);
+    }
+    final int rows = header.getInt(), ncol = header.getInt();
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    for(int i = 0; i < ncol; i++) {
+      final byte kind = header.get();
+      if(kind == ColumnarBundleWriter.KIND_PACKED) {
+        final int dim = header.getInt();
+        String[] labels = null;
+        if(header.get() != 0) {
+          labels = new String[dim];
+          for(int d = 0; d < dim; d++) {
+            labels[d] = ByteArrayUtil.STRING_SERIALIZER.fromByteBuffer(header);
+          }
+        }
+        final long offset = header.getLong(), length = header.getLong();
+        checkRange(offset, length, fsize);
+        if(length != rows * (long) dim * ByteArrayUtil.SIZE_DOUBLE) {
+          throw new AbortException("Inconsistent length of packed column " + i);
+        }
+        bundle.appendColumn(new VectorFieldTypeInformation<>(DoubleVector.FACTORY, dim, labels), mapPacked(rows, dim, offset));
+      }
+      else if(kind == ColumnarBundleWriter.KIND_OBJECTS) {
+        final SimpleTypeInformation<?> type = (SimpleTypeInformation<?>) TypeInformationSerializer.STATIC.fromByteBuffer(header);
+        final long offset = header.getLong(), length = header.getLong();
+        checkRange(offset, length, fsize);
+        bundle.appendColumn(type, readObjects(rows, type.getSerializer(), offset, offset + length));
+      }
+      else {
+        throw new AbortException("Unknown column kind " + kind + " in columnar bundle.");
+      }
+    }
+    return bundle;
+  }
+
+  /**
+   * Map a packed vector column.
+   *
+   * @param rows Number of rows
+   * @param dim Dimensionality
+   * @param offset Data offset
+   * @return Column
+   * @throws IOException on IO errors
+   */
+  private PackedDoubleVectorRelation.Column mapPacked(int rows, int dim, long offset) throws IOException {
+    final int perChunk = PackedDoubleVectorRelation.rowsPerChunk(dim);
+    DoubleBuffer[] chunks = new DoubleBuffer[(rows + perChunk - 1) / perChunk];
+    for(int c = 0, remaining = rows; c < chunks.length; c++, remaining -= perChunk) {
+      final long start = offset + c * (long) perChunk * dim * ByteArrayUtil.SIZE_DOUBLE;
+      final long len = Math.min(perChunk, remaining) * (long) dim * ByteArrayUtil.SIZE_DOUBLE;
+      chunks[c] = input.map(MapMode.READ_ONLY, start, len).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+    return new PackedDoubleVectorRelation.Column(rows, dim, chunks);
+  }
+
+  /**
+   * Deserialize an object column.
+   *
+   * @param rows Number of rows
+   * @param ser Serializer
+   * @param start Data start
+   * @param end Data end
+   * @return Objects
+   * @throws IOException on IO errors
+   */
+  private ArrayList<Object> readObjects(int rows, ByteBufferSerializer<?> ser, long start, long end) throws IOException {
+    if(ser == null) {
+      throw new AbortException("No deserializer available for column.");
+    }
+    ArrayList<Object> data = new ArrayList<>(rows);
+    long wstart = start;
+    ByteBuffer window = map(wstart, end, 0);
+    for(int r = 0; r < rows; r++) {
+      if(window.remaining() < ByteArrayUtil.SIZE_INT) {
+        wstart += window.position();
+        window = map(wstart, end, ByteArrayUtil.SIZE_INT);
+      }
+      final int size = window.getInt();
+      if(window.remaining() < size) {
+        wstart += window.position();
+        window = map(wstart, end, size);
+      }
+      final int pos = window.position();
+      data.add(ser.fromByteBuffer(window));
+      if(window.position() - pos != size) {
+        throw new AbortException("Object size mismatch when deserializing with " + ser.getClass().getName());
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Map a window of the file.
+   *
+   * @param start Window start
+   * @param end End of the data
+   * @param minsize Minimum number of bytes required
+   * @return Mapped buffer
+   * @throws IOException on IO errors
+   */
+  private ByteBuffer map(long start, long end, int minsize) throws IOException {
+    final long len = Math.min(end - start, Math.max(MAX_WINDOW, minsize));
+    if(len < minsize) {
+      throw new AbortException("Unexpected end of column data in columnar bundle.");
+    }
+    return input.map(MapMode.READ_ONLY, start, len).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Validate a data range.
+   *
+   * @param offset Offset
+   * @param length Length
+   * @param fsize File size
+   */
+  private static void checkRange(long offset, long length, long fsize) {
+    if(offset < 0 || length < 0 || offset + length > fsize) {
+      throw new AbortException("Columnar bundle file is truncated or corrupt.");
+    }
+  }
+}
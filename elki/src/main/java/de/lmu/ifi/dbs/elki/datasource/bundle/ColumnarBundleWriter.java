@@ -0,0 +1,299 @@
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformationSerializer;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteBufferSerializer;
+
+/**
+ * Write an object bundle to a file in the columnar bundle format.
+ *
+ * In contrast to {@link BundleWriter}, the data is stored column by column.
+ * Fixed-dimensional numerical vector columns are stored as a contiguous,
+ * row-major block of little-endian doubles, aligned to {@link #ALIGNMENT}
+ * bytes, so that {@link ColumnarBundleReader} can memory-map them without
+ * deserializing individual objects. Other columns are serialized using the
+ * serializer of their type, with each object prefixed by its size.
+ *
+ * File layout (header in big-endian byte order):
+ * <ul>
+ * <li>int {@link #MAGIC}, int {@link #VERSION}, int rows, int columns</li>
+ * <li>per column: byte kind, then for packed columns int dimensionality and
+ * optional column labels, for object columns the serialized type information;
+ * followed by the long offset and the long length of the column data</li>
+ * <li>the column data blocks</li>
+ * </ul>
+ *
+ * Packed vectors are stored as doubles, i.e. the original vector type is not
+ * preserved. Object ids are not stored.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses MultipleObjectsBundle - - «reads»
+ * @apiviz.uses FileChannel - - «writes»
+ */
+public class ColumnarBundleWriter {
+  /**
+   * Magic number of the columnar format.
+   */
+  public static final int MAGIC = 0xa8123b13;
+
+  /**
+   * Format version.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * Alignment of the column data blocks.
+   */
+  public static final int ALIGNMENT = 64;
+
+  /**
+   * Column kind: packed numerical vectors.
+   */
+  public static final byte KIND_PACKED = 1;
+
+  /**
+   * Column kind: serialized objects.
+   */
+  public static final byte KIND_OBJECTS = 2;
+
+  /**
+   * Write buffer size.
+   */
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  /**
+   * Write a bundle to a file channel.
+   *
+   * @param bundle Bundle to write
+   * @param output Output channel
+   * @throws IOException on IO errors
+   */
+  public void writeBundle(MultipleObjectsBundle bundle, FileChannel output) throws IOException {
+    final int rows = bundle.dataLength(), ncol = bundle.metaLength();
+    final boolean[] packed = new boolean[ncol];
+    final long[] lengths = new long[ncol];
+    // Compute the header size and column lengths.
+    int hsize = 4 * ByteArrayUtil.SIZE_INT;
+    for(int i = 0; i < ncol; i++) {
+      final SimpleTypeInformation<?> type = bundle.meta(i);
+      packed[i] = isPackable(type);
+      hsize += ByteArrayUtil.SIZE_BYTE + 2 * ByteArrayUtil.SIZE_LONG;
+      if(packed[i]) {
+        final VectorFieldTypeInformation<?> vtype = (VectorFieldTypeInformation<?>) type;
+        hsize += ByteArrayUtil.SIZE_INT + ByteArrayUtil.SIZE_BYTE;
+        if(vtype.getLabel(0) != null) {
+          for(int d = 0; d < vtype.getDimensionality(); d++) {
+            hsize += ByteArrayUtil.STRING_SERIALIZER.getByteSize(vtype.getLabel(d));
+          }
+        }
+        lengths[i] = rows * (long) vtype.getDimensionality() * ByteArrayUtil.SIZE_DOUBLE;
+      }
+      else {
+        final ByteBufferSerializer<Object> ser = getSerializer(type);
+        hsize += TypeInformationSerializer.STATIC.getByteSize(type);
+        long len = 0;
+        for(Object o : bundle.getColumn(i)) {
+          len += ByteArrayUtil.SIZE_INT + ser.getByteSize(o);
+        }
+        lengths[i] = len;
+      }
+    }
+    // Compute the data offsets.
+    final long[] offsets = new long[ncol];
+    for(int i = 0; i < ncol; i++) {
+      offsets[i] = align(i > 0 ? offsets[i - 1] + lengths[i - 1] : hsize);
+    }
+    // Write the header.
+    ByteBuffer header = ByteBuffer.allocate(hsize);
+    header.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(ncol);
+    for(int i = 0; i < ncol; i++) {
+      final SimpleTypeInformation<?> type = bundle.meta(i);
+      if(packed[i]) {
+        final VectorFieldTypeInformation<?> vtype = (VectorFieldTypeInformation<?>) type;
+        final boolean haslabels = vtype.getLabel(0) != null;
+        header.put(KIND_PACKED).putInt(vtype.getDimensionality()).put((byte) (haslabels ? 1 : 0));
+        for(int d = 0; haslabels && d < vtype.getDimensionality(); d++) {
+          ByteArrayUtil.STRING_SERIALIZER.toByteBuffer(header, vtype.getLabel(d));
+        }
+      }
+      else {
+        header.put(KIND_OBJECTS);
+        TypeInformationSerializer.STATIC.toByteBuffer(header, type);
+      }
+      header.putLong(offsets[i]).putLong(lengths[i]);
+    }
+    assert (header.remaining() == 0);
+    header.flip();
+    output.position(0);
+    writeFully(header, output);
+    // Write the columns.
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    for(int i = 0; i < ncol; i++) {
+      output.position(offsets[i]);
+      if(packed[i]) {
+        writePacked(bundle.getColumn(i), ((VectorFieldTypeInformation<?>) bundle.meta(i)).getDimensionality(), buffer, output);
+      }
+      else {
+        buffer = writeObjects(bundle.getColumn(i), getSerializer(bundle.meta(i)), buffer, output);
+      }
+      assert (output.position() == offsets[i] + lengths[i]);
+    }
+    output.truncate(output.position());
+  }
+
+  /**
+   * Write a column of packed vectors.
+   *
+   * @param column Column data
+   * @param dim Dimensionality
+   * @param buffer Write buffer
+   * @param output Output channel
+   * @throws IOException on IO errors
+   */
+  private void writePacked(List<?> column, int dim, ByteBuffer buffer, FileChannel output) throws IOException {
+    for(Object o : column) {
+      final NumberVector vec = (NumberVector) o;
+      if(vec.getDimensionality() != dim) {
+        throw new AbortException("Vector dimensionality does not match the column type.");
+      }
+      for(int d = 0; d < dim; d++) {
+        if(buffer.remaining() < ByteArrayUtil.SIZE_DOUBLE) {
+          flushBuffer(buffer, output);
+        }
+        buffer.putDouble(vec.doubleValue(d));
+      }
+    }
+    flushBuffer(buffer, output);
+  }
+
+  /**
+   * Write a column of serialized objects.
+   *
+   * @param column Column data
+   * @param ser Serializer
+   * @param buffer Write buffer
+   * @param output Output channel
+   * @return Write buffer, eventually resized
+   * @throws IOException on IO errors
+   */
+  private ByteBuffer writeObjects(List<?> column, ByteBufferSerializer<Object> ser, ByteBuffer buffer, FileChannel output) throws IOException {
+    for(Object o : column) {
+      final int size = ser.getByteSize(o);
+      if(buffer.remaining() < ByteArrayUtil.SIZE_INT + size) {
+        flushBuffer(buffer, output);
+        if(buffer.remaining() < ByteArrayUtil.SIZE_INT + size) {
+          buffer = ByteBuffer.allocateDirect(ByteArrayUtil.SIZE_INT + size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+      }
+      buffer.putInt(size);
+      final int start = buffer.position();
+      ser.toByteBuffer(buffer, o);
+      if(buffer.position() - start != size) {
+        throw new AbortException("Serializer " + ser.getClass().getName() + " reported an incorrect object size.");
+      }
+    }
+    flushBuffer(buffer, output);
+    return buffer;
+  }
+
+  /**
+   * Flush the write buffer.
+   *
+   * @param buffer Buffer to write
+   * @param output Output channel
+   * @throws IOException on IO errors
+   */
+  private static void flushBuffer(ByteBuffer buffer, FileChannel output) throws IOException {
+    buffer.flip();
+    writeFully(buffer, output);
+    buffer.clear();
+  }
+
+  /**
+   * Write the entire buffer.
+   *
+   * @param buffer Buffer to write
+   * @param output Output channel
+   * @throws IOException on IO errors
+   */
+  private static void writeFully(ByteBuffer buffer, FileChannel output) throws IOException {
+    while(buffer.hasRemaining()) {
+      output.write(buffer);
+    }
+  }
+
+  /**
+   * Round up to the next multiple of {@link #ALIGNMENT}.
+   *
+   * @param pos Position
+   * @return Aligned position
+   */
+  private static long align(long pos) {
+    return (pos + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+  }
+
+  /**
+   * Get the serializer of a type.
+   *
+   * @param type Type information
+   * @return Serializer
+   */
+  @SuppressWarnings("unchecked")
+  private static ByteBufferSerializer<Object> getSerializer(SimpleTypeInformation<?> type) {
+    ByteBufferSerializer<?> ser = type.getSerializer();
+    if(ser == null) {
+      throw new AbortException("Cannot serialize - no serializer found for type: " + type.toString());
+    }
+    return (ByteBufferSerializer<Object>) ser;
+  }
+
+  /**
+   * Test whether a column can be stored packed.
+   *
+   * @param type Type information
+   * @return {@code true} for fixed-dimensional numerical vectors
+   */
+  public static boolean isPackable(SimpleTypeInformation<?> type) {
+    if(!(type instanceof VectorFieldTypeInformation)) {
+      return false;
+    }
+    VectorFieldTypeInformation<?> vtype = (VectorFieldTypeInformation<?>) type;
+    return vtype.getDimensionality() > 0 && vtype.mindim() == vtype.maxdim() //
+        && NumberVector.class.isAssignableFrom(vtype.getRestrictionClass());
+  }
+}
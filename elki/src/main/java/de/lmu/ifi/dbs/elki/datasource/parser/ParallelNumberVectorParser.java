@@ -0,0 +1,579 @@
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorTypeInformation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.DoubleArray;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.hash.Unique;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ParseUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.WrongParameterValueException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntListParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.StringParameter;
+
+/**
+ * Parser for CSV-like files of number vectors with labels, that parses blocks
+ * of the input in parallel.
+ *
+ * The input is read in blocks of whole lines by the calling thread. Each block
+ * is tokenized by a worker thread, operating directly on the bytes and using
+ * {@link ParseUtil#parseDouble(byte[], int, int)}, so no strings are created
+ * for numerical columns. The resulting columns are concatenated in input
+ * order, so the result is the same as with {@link NumberVectorLabelParser}.
+ *
+ * In contrast to {@link NumberVectorLabelParser}, the column separators are
+ * given as a set of characters, not as regular expression: a separator is a
+ * single separator character, optionally surrounded by whitespace. Lines
+ * starting with {@code #}, {@code ;} or {@code //} are ignored, as are blank
+ * lines. The input must be ASCII-compatible (e.g. UTF-8).
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has NumberVector
+ * @apiviz.uses ParallelCore
+ *
+ * @param <V> the type of NumberVector used
+ */
+@Alias("parallelcsv")
+public class ParallelNumberVectorParser<V extends NumberVector> implements Parser {
+  /**
+   * Default column separators.
+   */
+  public static final String DEFAULT_SEPARATORS = " \t,;";
+
+  /**
+   * Default block size.
+   */
+  public static final int DEFAULT_BLOCKSIZE = 1 << 22;
+
+  /**
+   * Column separator characters.
+   */
+  private final boolean[] separator = new boolean[128];
+
+  /**
+   * Quotation characters.
+   */
+  private final boolean[] quote = new boolean[128];
+
+  /**
+   * Keeps the indices of the attributes to be treated as a string label.
+   */
+  private long[] labelIndices;
+
+  /**
+   * Vector factory class.
+   */
+  protected NumberVector.Factory<V> factory;
+
+  /**
+   * Block size in bytes.
+   */
+  private int blocksize;
+
+  /**
+   * Constructor.
+   *
+   * @param separators Column separator characters
+   * @param quoteChars Quotation characters
+   * @param labelIndices Column indexes that are not numeric.
+   * @param factory Vector factory
+   * @param blocksize Block size in bytes
+   */
+  public ParallelNumberVectorParser(String separators, String quoteChars, long[] labelIndices, NumberVector.Factory<V> factory, int blocksize) {
+    super();
+    if(!isASCII(separators) || !isASCII(quoteChars)) {
+      throw new IllegalArgumentException("Only ASCII separator and quote characters are supported.");
+    }
+    for(int i = 0; i < separators.length(); i++) {
+      separator[separators.charAt(i)] = true;
+    }
+    for(int i = 0; i < quoteChars.length(); i++) {
+      quote[quoteChars.charAt(i)] = true;
+    }
+    this.labelIndices = labelIndices;
+    this.factory = factory;
+    this.blocksize = blocksize;
+  }
+
+  /**
+   * Constructor with defaults.
+   *
+   * @param factory Vector factory
+   */
+  public ParallelNumberVectorParser(NumberVector.Factory<V> factory) {
+    this(DEFAULT_SEPARATORS, CSVReaderFormat.QUOTE_CHARS, null, factory, DEFAULT_BLOCKSIZE);
+  }
+
+  /**
+   * Test if a string contains ASCII characters only. The input is processed as
+   * bytes, so other characters cannot be used as separators or quotes.
+   *
+   * @param str String
+   * @return {@code true} if all characters are ASCII
+   */
+  protected static boolean isASCII(String str) {
+    for(int i = 0; i < str.length(); i++) {
+      if(str.charAt(i) >= 0x80) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public MultipleObjectsBundle parse(InputStream in) {
+    final ParallelCore core = ParallelCore.getCore();
+    final boolean parallel = core.getParallelism() > 1;
+    // Limit the number of blocks in memory, if the reader is faster.
+    final int maxpending = core.getParallelism() << 1;
+    ArrayDeque<Future<Block>> pending = new ArrayDeque<>(maxpending);
+    Block result = new Block(true);
+    if(parallel) {
+      core.connect();
+    }
+    try {
+      byte[] buf = new byte[blocksize];
+      int len = 0;
+      boolean first = true, eof = false;
+      while(!eof) {
+        // Fill the buffer:
+        while(len < buf.length) {
+          final int r = in.read(buf, len, buf.length - len);
+          if(r < 0) {
+            eof = true;
+            break;
+          }
+          len += r;
+        }
+        // Cut at the last line break:
+        int cut = len;
+        if(!eof) {
+          while(cut > 0 && buf[cut - 1] != '\n') {
+            --cut;
+          }
+          if(cut == 0) { // Very long line, enlarge buffer.
+            buf = Arrays.copyOf(buf, buf.length << 1);
+            continue;
+          }
+        }
+        // Hand over the full lines, keep the remainder.
+        final byte[] block = buf;
+        final int end = cut;
+        final boolean isfirst = first;
+        buf = new byte[Math.max(blocksize, len - cut)];
+        System.arraycopy(block, cut, buf, 0, len - cut);
+        len -= cut;
+        first = false;
+        if(!parallel) {
+          result.append(parseBlock(block, end, isfirst));
+          continue;
+        }
+        if(pending.size() >= maxpending) {
+          result.append(pending.removeFirst().get());
+        }
+        pending.addLast(core.submit(new Callable<Block>() {
+          @Override
+          public Block call() {
+            return parseBlock(block, end, isfirst);
+          }
+        }));
+      }
+      while(!pending.isEmpty()) {
+        result.append(pending.removeFirst().get());
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Error while reading input.", e);
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Parsing failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Parsing interrupted.");
+    }
+    finally {
+      if(parallel) {
+        core.disconnect();
+      }
+    }
+    if(result.maxdim == 0) {
+      throw new AbortException("No numeric data was read. Verify the column separator; for textual data use other parsers.");
+    }
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    bundle.appendColumn(getTypeInformation(result.mindim, result.maxdim, result.columnnames), result.vectors);
+    if(result.haslabels) {
+      bundle.appendColumn(TypeUtil.LABELLIST, result.labels);
+    }
+    return bundle;
+  }
+
+  /**
+   * Parse a block of complete lines.
+   *
+   * @param data Data buffer
+   * @param end End of valid data
+   * @param first Flag for the first block, which may contain column names
+   * @return Parsed block
+   */
+  protected Block parseBlock(byte[] data, int end, boolean first) {
+    Block block = new Block(first);
+    DoubleArray attributes = new DoubleArray(11);
+    ArrayList<String> labels = new ArrayList<>();
+    Unique<String> unique = new Unique<>();
+    for(int pos = 0; pos < end;) {
+      int eol = pos;
+      while(eol < end && data[eol] != '\n') {
+        ++eol;
+      }
+      final int lend = (eol > pos && data[eol - 1] == '\r') ? eol - 1 : eol;
+      if(parseLine(data, pos, lend, attributes, labels, unique, block)) {
+        final int dim = attributes.size;
+        block.mindim = (dim < block.mindim) ? dim : block.mindim;
+        block.maxdim = (dim > block.maxdim) ? dim : block.maxdim;
+        block.vectors.add(factory.newNumberVector(attributes, attributes));
+        block.labels.add(LabelList.make(labels));
+      }
+      attributes.clear();
+      labels.clear();
+      pos = eol + 1;
+    }
+    return block;
+  }
+
+  /**
+   * Tokenize a single line.
+   *
+   * @param data Data buffer
+   * @param start Line start
+   * @param end Line end
+   * @param attributes Output for numerical attributes
+   * @param labels Output for labels
+   * @param unique String unification
+   * @param block Block, for column names and the label flag
+   * @return {@code true} if a data row was read
+   */
+  private boolean parseLine(byte[] data, int start, int end, DoubleArray attributes, List<String> labels, Unique<String> unique, Block block) {
+    int p = skipWhitespace(data, start, end);
+    if(p == end || data[p] == '#' || data[p] == ';' || (data[p] == '/' && p + 1 < end && data[p + 1] == '/')) {
+      return false; // Blank line or comment
+    }
+    boolean haslabels = false;
+    for(int col = 0; p < end; col++) {
+      final byte c = data[p];
+      int ts = p, te;
+      final boolean quoted = c >= 0 && quote[c];
+      if(quoted) {
+        ts = ++p;
+        while(p < end && data[p] != c) {
+          ++p;
+        }
+        te = p;
+        p = (p < end) ? p + 1 : p;
+      }
+      else {
+        while(p < end && !isSeparator(data[p])) {
+          ++p;
+        }
+        te = p;
+      }
+      // Skip whitespace, one separator, and whitespace again.
+      p = skipWhitespace(data, p, end);
+      if(p < end && isSeparator(data[p]) && !isWhitespace(data[p])) {
+        p = skipWhitespace(data, p + 1, end);
+      }
+      if(!quoted && (labelIndices == null || !BitsUtil.get(labelIndices, col))) {
+        try {
+          attributes.add(ParseUtil.parseDouble(data, ts, te));
+          continue;
+        }
+        catch(NumberFormatException e) {
+          // Ignore attempt, add to labels below.
+        }
+      }
+      // Trim whitespace within quotes, too.
+      ts = skipWhitespace(data, ts, te);
+      while(te > ts && isWhitespace(data[te - 1])) {
+        --te;
+      }
+      if(te > ts) {
+        haslabels = true;
+        labels.add(unique.addOrGet(new String(data, ts, te - ts, StandardCharsets.UTF_8)));
+      }
+    }
+    // Column names?
+    if(block.first && block.vectors.isEmpty() && attributes.size == 0) {
+      block.columnnames = new ArrayList<>(labels);
+      return false;
+    }
+    block.haslabels |= haslabels;
+    return true;
+  }
+
+  /**
+   * Test for a separator character.
+   *
+   * @param c Character
+   * @return {@code true} if a separator
+   */
+  private boolean isSeparator(byte c) {
+    return c >= 0 && separator[c];
+  }
+
+  /**
+   * Test for whitespace.
+   *
+   * @param c Character
+   * @return {@code true} if whitespace
+   */
+  private static boolean isWhitespace(byte c) {
+    return c == ' ' || c == '\t';
+  }
+
+  /**
+   * Skip whitespace.
+   *
+   * @param data Data buffer
+   * @param p Current position
+   * @param end End
+   * @return Position of the next non-whitespace character, or end.
+   */
+  private static int skipWhitespace(byte[] data, int p, int end) {
+    while(p < end && isWhitespace(data[p])) {
+      ++p;
+    }
+    return p;
+  }
+
+  /**
+   * Get the type information for the given dimensionality.
+   *
+   * @param mindim Minimum dimensionality
+   * @param maxdim Maximum dimensionality
+   * @param columnnames Column names, may be {@code null}
+   * @return Type information
+   */
+  SimpleTypeInformation<V> getTypeInformation(int mindim, int maxdim, List<String> columnnames) {
+    if(mindim > maxdim) {
+      throw new AbortException("No vectors were read from the input file - cannot determine vector data type.");
+    }
+    if(mindim == maxdim) {
+      String[] colnames = null;
+      if(columnnames != null && mindim <= columnnames.size()) {
+        colnames = new String[mindim];
+        int j = 0;
+        for(int i = 0; i < columnnames.size() && j < mindim; i++) {
+          if(labelIndices != null && BitsUtil.get(labelIndices, i)) {
+            continue;
+          }
+          colnames[j++] = columnnames.get(i);
+        }
+        if(j != mindim) {
+          colnames = null; // Did not work
+        }
+      }
+      return new VectorFieldTypeInformation<>(factory, mindim, colnames);
+    }
+    // Variable dimensionality - return non-vector field type
+    return new VectorTypeInformation<>(factory, factory.getDefaultSerializer(), mindim, maxdim);
+  }
+
+  @Override
+  public void cleanup() {
+    // Nothing to do.
+  }
+
+  /**
+   * Parsing result of a single block.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  protected class Block {
+    /**
+     * Flag for the first block.
+     */
+    final boolean first;
+
+    /**
+     * Vectors read.
+     */
+    ArrayList<V> vectors = new ArrayList<>();
+
+    /**
+     * Labels read.
+     */
+    ArrayList<LabelList> labels = new ArrayList<>();
+
+    /**
+     * Column names, if present.
+     */
+    List<String> columnnames = null;
+
+    /**
+     * Whether any labels were found.
+     */
+    boolean haslabels = false;
+
+    /**
+     * Dimensionality range.
+     */
+    int mindim = Integer.MAX_VALUE, maxdim = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param first Flag for the first block
+     */
+    Block(boolean first) {
+      this.first = first;
+    }
+
+    /**
+     * Append the next block.
+     *
+     * @param other Next block
+     */
+    void append(Block other) {
+      if(other.first) {
+        columnnames = other.columnnames;
+      }
+      vectors.addAll(other.vectors);
+      labels.addAll(other.labels);
+      haslabels |= other.haslabels;
+      mindim = (other.mindim < mindim) ? other.mindim : mindim;
+      maxdim = (other.maxdim > maxdim) ? other.maxdim : maxdim;
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractParameterizer {
+    /**
+     * Column separator characters.
+     */
+    public static final OptionID SEPARATORS_ID = new OptionID("parser.separators", "Column separator characters; each may be surrounded by whitespace.");
+
+    /**
+     * Block size.
+     */
+    public static final OptionID BLOCKSIZE_ID = new OptionID("parser.blocksize", "Size of the blocks parsed in parallel, in bytes.");
+
+    /**
+     * Column separator characters.
+     */
+    protected String separators;
+
+    /**
+     * Quotation characters.
+     */
+    protected String quoteChars;
+
+    /**
+     * Keeps the indices of the attributes to be treated as a string label.
+     */
+    protected long[] labelIndices;
+
+    /**
+     * Factory object.
+     */
+    protected NumberVector.Factory<V> factory;
+
+    /**
+     * Block size.
+     */
+    protected int blocksize;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      StringParameter sepP = new StringParameter(SEPARATORS_ID, DEFAULT_SEPARATORS);
+      if(config.grab(sepP)) {
+        separators = sepP.getValue();
+        if(!isASCII(separators)) {
+          config.reportError(new WrongParameterValueException(sepP, separators, "Only ASCII separator characters are supported."));
+        }
+      }
+      StringParameter quoteP = new StringParameter(CSVReaderFormat.Parameterizer.QUOTE_ID, CSVReaderFormat.QUOTE_CHARS);
+      if(config.grab(quoteP)) {
+        quoteChars = quoteP.getValue();
+        if(!isASCII(quoteChars)) {
+          config.reportError(new WrongParameterValueException(quoteP, quoteChars, "Only ASCII quote characters are supported."));
+        }
+      }
+      IntListParameter labelIndicesP = new IntListParameter(NumberVectorLabelParser.Parameterizer.LABEL_INDICES_ID, true);
+      if(config.grab(labelIndicesP)) {
+        labelIndices = labelIndicesP.getValueAsBitSet();
+      }
+      ObjectParameter<NumberVector.Factory<V>> factoryP = new ObjectParameter<>(NumberVectorLabelParser.Parameterizer.VECTOR_TYPE_ID, NumberVector.Factory.class, DoubleVector.Factory.class);
+      if(config.grab(factoryP)) {
+        factory = factoryP.instantiateClass(config);
+      }
+      IntParameter blocksizeP = new IntParameter(BLOCKSIZE_ID, DEFAULT_BLOCKSIZE);
+      blocksizeP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(blocksizeP)) {
+        blocksize = blocksizeP.intValue();
+      }
+    }
+
+    @Override
+    protected ParallelNumberVectorParser<V> makeInstance() {
+      return new ParallelNumberVectorParser<>(separators, quoteChars, labelIndices, factory, blocksize);
+    }
+  }
+}
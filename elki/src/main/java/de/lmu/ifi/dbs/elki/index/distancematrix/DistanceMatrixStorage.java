@@ -0,0 +1,379 @@
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+
+/**
+ * Storage for the values of a triangular distance matrix, addressed with
+ * {@code long} offsets.
+ *
+ * The values are split into chunks of {@link #CHUNK_SIZE} entries, so the
+ * size is not limited by the maximum size of Java arrays and buffers. The
+ * chunks can be stored on the Java heap, in direct (off-heap) memory, or in
+ * a memory-mapped temporary file, which allows the operating system to page
+ * out parts of the matrix. Optionally, values are stored with single
+ * precision, which halves the memory requirements.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public abstract class DistanceMatrixStorage {
+  /**
+   * Storage location.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static enum Location {
+    /** Java heap */
+    HEAP, //
+    /** Direct (off-heap) memory */
+    DIRECT, //
+    /** Memory-mapped temporary file */
+    MAPPED, //
+  }
+
+  /**
+   * Number of bits for addressing entries within a chunk.
+   */
+  protected static final int CHUNK_BITS = 27;
+
+  /**
+   * Number of entries per chunk.
+   */
+  public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+  /**
+   * Mask for the offset within a chunk.
+   */
+  protected static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+  /**
+   * Number of entries.
+   */
+  protected final long size;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of entries
+   */
+  protected DistanceMatrixStorage(long size) {
+    this.size = size;
+  }
+
+  /**
+   * Size of a complete x by x triangle (without the diagonal).
+   *
+   * @param x Number of rows
+   * @return Number of entries
+   */
+  public static long triangleSize(long x) {
+    return (x * (x - 1)) >>> 1;
+  }
+
+  /**
+   * Number of entries.
+   *
+   * @return Size
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * Get a value.
+   *
+   * @param pos Position
+   * @return Value
+   */
+  public abstract double get(long pos);
+
+  /**
+   * Set a value.
+   *
+   * Different threads may write to different positions concurrently.
+   *
+   * @param pos Position
+   * @param val Value
+   */
+  public abstract void set(long pos, double val);
+
+  /**
+   * Allocate new storage.
+   *
+   * @param size Number of entries
+   * @param location Storage location
+   * @param single Use single precision
+   * @return Storage
+   */
+  public static DistanceMatrixStorage allocate(long size, Location location, boolean single) {
+    final int nchunks = (int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+    switch(location){
+    case HEAP:
+      if(single) {
+        float[][] chunks = new float[nchunks][];
+        for(int i = 0; i < nchunks; i++) {
+          chunks[i] = new float[chunkLength(size, i)];
+        }
+        return new FloatArrays(size, chunks);
+      }
+      double[][] chunks = new double[nchunks][];
+      for(int i = 0; i < nchunks; i++) {
+        chunks[i] = new double[chunkLength(size, i)];
+      }
+      return new DoubleArrays(size, chunks);
+    case DIRECT:
+    case MAPPED:
+      ByteBuffer[] buffers = (location == Location.DIRECT) ? //
+          allocateDirect(size, single ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE) : //
+          allocateMapped(size, single ? ByteArrayUtil.SIZE_FLOAT : ByteArrayUtil.SIZE_DOUBLE);
+      if(single) {
+        FloatBuffer[] fchunks = new FloatBuffer[nchunks];
+        for(int i = 0; i < nchunks; i++) {
+          fchunks[i] = buffers[i].order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        return new FloatBuffers(size, fchunks);
+      }
+      DoubleBuffer[] dchunks = new DoubleBuffer[nchunks];
+      for(int i = 0; i < nchunks; i++) {
+        dchunks[i] = buffers[i].order(ByteOrder.nativeOrder()).asDoubleBuffer();
+      }
+      return new DoubleBuffers(size, dchunks);
+    default:
+      throw new AbortException("Unsupported storage location: " + location);
+    }
+  }
+
+  /**
+   * Number of entries in a chunk.
+   *
+   * @param size Total size
+   * @param chunk Chunk number
+   * @return Length of the chunk
+   */
+  private static int chunkLength(long size, int chunk) {
+    return (int) Math.min(CHUNK_SIZE, size - ((long) chunk << CHUNK_BITS));
+  }
+
+  /**
+   * Allocate direct memory buffers.
+   *
+   * @param size Number of entries
+   * @param bytes Bytes per entry
+   * @return Buffers
+   */
+  private static ByteBuffer[] allocateDirect(long size, int bytes) {
+    ByteBuffer[] buffers = new ByteBuffer[(int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+    for(int i = 0; i < buffers.length; i++) {
+      buffers[i] = ByteBuffer.allocateDirect(chunkLength(size, i) * bytes);
+    }
+    return buffers;
+  }
+
+  /**
+   * Map a temporary file into memory. The file is deleted immediately, the
+   * mapping remains valid until the buffers are garbage collected.
+   *
+   * @param size Number of entries
+   * @param bytes Bytes per entry
+   * @return Buffers
+   */
+  private static ByteBuffer[] allocateMapped(long size, int bytes) {
+    ByteBuffer[] buffers = new ByteBuffer[(int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+    File tmp = null;
+    try {
+      tmp = File.createTempFile("elki-distance-matrix", ".bin");
+      try (RandomAccessFile file = new RandomAccessFile(tmp, "rw")) {
+        file.setLength(size * bytes);
+        FileChannel channel = file.getChannel();
+        for(int i = 0; i < buffers.length; i++) {
+          final long start = ((long) i << CHUNK_BITS) * bytes;
+          buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, chunkLength(size, i) * (long) bytes);
+        }
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Could not map distance matrix file: " + e.getMessage(), e);
+    }
+    finally {
+      if(tmp != null && !tmp.delete()) {
+        tmp.deleteOnExit();
+      }
+    }
+    return buffers;
+  }
+
+  /**
+   * Double precision storage on the heap.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class DoubleArrays extends DistanceMatrixStorage {
+    /**
+     * Data chunks.
+     */
+    private final double[][] chunks;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of entries
+     * @param chunks Data chunks
+     */
+    DoubleArrays(long size, double[][] chunks) {
+      super(size);
+      this.chunks = chunks;
+    }
+
+    @Override
+    public double get(long pos) {
+      return chunks[(int) (pos >>> CHUNK_BITS)][(int) (pos & CHUNK_MASK)];
+    }
+
+    @Override
+    public void set(long pos, double val) {
+      chunks[(int) (pos >>> CHUNK_BITS)][(int) (pos & CHUNK_MASK)] = val;
+    }
+  }
+
+  /**
+   * Single precision storage on the heap.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class FloatArrays extends DistanceMatrixStorage {
+    /**
+     * Data chunks.
+     */
+    private final float[][] chunks;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of entries
+     * @param chunks Data chunks
+     */
+    FloatArrays(long size, float[][] chunks) {
+      super(size);
+      this.chunks = chunks;
+    }
+
+    @Override
+    public double get(long pos) {
+      return chunks[(int) (pos >>> CHUNK_BITS)][(int) (pos & CHUNK_MASK)];
+    }
+
+    @Override
+    public void set(long pos, double val) {
+      chunks[(int) (pos >>> CHUNK_BITS)][(int) (pos & CHUNK_MASK)] = (float) val;
+    }
+  }
+
+  /**
+   * Double precision storage in buffers.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class DoubleBuffers extends DistanceMatrixStorage {
+    /**
+     * Data chunks.
+     */
+    private final DoubleBuffer[] chunks;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of entries
+     * @param chunks Data chunks
+     */
+    DoubleBuffers(long size, DoubleBuffer[] chunks) {
+      super(size);
+      this.chunks = chunks;
+    }
+
+    @Override
+    public double get(long pos) {
+      return chunks[(int) (pos >>> CHUNK_BITS)].get((int) (pos & CHUNK_MASK));
+    }
+
+    @Override
+    public void set(long pos, double val) {
+      chunks[(int) (pos >>> CHUNK_BITS)].put((int) (pos & CHUNK_MASK), val);
+    }
+  }
+
+  /**
+   * Single precision storage in buffers.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class FloatBuffers extends DistanceMatrixStorage {
+    /**
+     * Data chunks.
+     */
+    private final FloatBuffer[] chunks;
+
+    /**
+     * Constructor.
+     *
+     * @param size Number of entries
+     * @param chunks Data chunks
+     */
+    FloatBuffers(long size, FloatBuffer[] chunks) {
+      super(size);
+      this.chunks = chunks;
+    }
+
+    @Override
+    public double get(long pos) {
+      return chunks[(int) (pos >>> CHUNK_BITS)].get((int) (pos & CHUNK_MASK));
+    }
+
+    @Override
+    public void set(long pos, double val) {
+      chunks[(int) (pos >>> CHUNK_BITS)].put((int) (pos & CHUNK_MASK), (float) val);
+    }
+  }
+}
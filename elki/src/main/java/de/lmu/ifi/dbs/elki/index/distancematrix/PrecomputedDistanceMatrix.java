@@ -25,6 +25,9 @@ package de.lmu.ifi.dbs.elki.index.distancematrix;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
@@ -51,10 +54,13 @@ import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.EnumParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -62,10 +68,14 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  *
  * This class uses a linear memory layout (not a ragged array), and assumes
  * symmetry as well as strictness. This way, it only stores the upper triangle
- * matrix with double precision. It has to store (n-1) * (n-2) distance values
- * in memory, requiring 8 * (n-1) * (n-2) bytes. Since Java has a size limit of
- * arrays of 31 bits (signed integer), we can store at most 2^16 objects
- * (precisely, 65536 objects) in a single array, which needs about 16 GB of RAM.
+ * matrix. It has to store n * (n-1) / 2 distance values, requiring
+ * 4 * n * (n-1) bytes with double precision, or half of this with single
+ * precision. The values are stored in chunks (see
+ * {@link DistanceMatrixStorage}), on the heap, off-heap, or in a memory-mapped
+ * file, so the matrix is not limited by the maximum Java array size.
+ *
+ * If multiple threads are available, the matrix is computed in parallel, in
+ * blocks of rows.
  *
  * @author Erich Schubert
  * @since 0.7.0
@@ -73,6 +83,8 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * @apiviz.has PrecomputedDistanceQuery
  * @apiviz.has PrecomputedKNNQuery
  * @apiviz.has PrecomputedRangeQuery
+ * @apiviz.composedOf DistanceMatrixStorage
+ * @apiviz.uses ParallelCore
  *
  * @param <O> Object type
  */
@@ -92,10 +104,25 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    */
   protected DistanceQuery<O> distanceQuery;
 
+  /**
+   * Minimum number of objects for parallel computation.
+   */
+  private static final int PARALLEL_MIN = 1000;
+
+  /**
+   * Storage location.
+   */
+  private final DistanceMatrixStorage.Location location;
+
+  /**
+   * Flag to use single precision.
+   */
+  private final boolean single;
+
   /**
    * Distance matrix.
    */
-  private double[] matrix = null;
+  private DistanceMatrixStorage matrix = null;
 
   /**
    * DBID range.
@@ -114,8 +141,22 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    * @param distanceFunction Distance function
    */
   public PrecomputedDistanceMatrix(Relation<O> relation, DistanceFunction<? super O> distanceFunction) {
+    this(relation, distanceFunction, DistanceMatrixStorage.Location.HEAP, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distanceFunction Distance function
+   * @param location Storage location
+   * @param single Store distances with single precision
+   */
+  public PrecomputedDistanceMatrix(Relation<O> relation, DistanceFunction<? super O> distanceFunction, DistanceMatrixStorage.Location location, boolean single) {
     super(relation);
     this.distanceFunction = distanceFunction;
+    this.location = location;
+    this.single = single;
 
     if(!distanceFunction.isSymmetric()) {
       throw new AbortException("Distance matrixes currently only support symmetric distance functions (Patches welcome).");
@@ -130,29 +171,83 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
     }
     ids = (DBIDRange) rids;
     size = ids.size();
-    if(size > 65536) {
-      throw new AbortException("Distance matrixes currently have a limit of 65536 objects (~16 GB). After this, the array size exceeds the Java integer range, and a different data structure needs to be used.");
-    }
 
     distanceQuery = distanceFunction.instantiate(relation);
 
-    final int msize = triangleSize(size);
-    matrix = new double[msize];
-    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    matrix = DistanceMatrixStorage.allocate(triangleSize(size), location, single);
 
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", msize, LOG) : null;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", size, LOG) : null;
+    final ParallelCore core = ParallelCore.getCore();
+    if(size >= PARALLEL_MIN && core.getParallelism() > 1) {
+      computeParallel(core, prog);
+    }
+    else {
+      computeRows(0, size, prog);
+    }
+    LOG.ensureCompleted(prog);
+  }
+
+  /**
+   * Compute a block of rows of the matrix.
+   *
+   * @param start First row
+   * @param end End row (exclusive)
+   * @param prog Progress
+   */
+  private void computeRows(int start, int end, FiniteProgress prog) {
+    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    long pos = triangleSize(start);
+    for(int x = start; x < end; x++) {
+      ix.seek(x);
       // y < x -- must match {@link #getOffset}!
-      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        matrix[pos] = distanceQuery.distance(ix, iy);
-        pos++;
+      for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
+        matrix.set(pos++, distanceQuery.distance(ix, iy));
+      }
+      LOG.incrementProcessed(prog);
+    }
+  }
+
+  /**
+   * Compute the matrix in parallel. As later rows are longer, the row blocks
+   * are chosen to contain roughly the same number of entries.
+   *
+   * @param core Parallel core
+   * @param prog Progress
+   */
+  private void computeParallel(ParallelCore core, FiniteProgress prog) {
+    // Aim for a few tasks per thread, for load balancing.
+    final int ntasks = core.getParallelism() << 2;
+    final double total = triangleSize(size);
+    List<Future<Void>> futures = new ArrayList<>(ntasks);
+    core.connect();
+    try {
+      for(int i = 1, start = 0; i <= ntasks && start < size; i++) {
+        // Solve triangleSize(end) = total * i / ntasks for end:
+        int end = (i == ntasks) ? size : (int) Math.ceil(.5 + Math.sqrt(.25 + 2. * total * i / ntasks));
+        end = Math.max(start + 1, Math.min(end, size));
+        final int s = start, e = end;
+        futures.add(core.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            computeRows(s, e, prog);
+            return null;
+          }
+        }));
+        start = end;
       }
-      if(prog != null) {
-        prog.setProcessed(prog.getProcessed() + ix.getOffset(), LOG);
+      for(Future<Void> fut : futures) {
+        fut.get();
       }
     }
-    LOG.ensureCompleted(prog);
+    catch(ExecutionException e) {
+      throw new AbortException("Distance matrix computation failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Distance matrix computation interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
   }
 
   /**
@@ -161,8 +256,8 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    * @param x Offset
    * @return Size of complete triangle
    */
-  protected static int triangleSize(int x) {
-    return (x * (x - 1)) >>> 1;
+  protected static long triangleSize(int x) {
+    return DistanceMatrixStorage.triangleSize(x);
   }
 
   /**
@@ -172,14 +267,14 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    * @param y Y parameter
    * @return Array offset
    */
-  private int getOffset(int x, int y) {
+  private long getOffset(int x, int y) {
     return (y < x) ? (triangleSize(x) + y) : (triangleSize(y) + x);
   }
 
   @Override
   public void logStatistics() {
     if(matrix != null) {
-      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", matrix.length));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", matrix.size()));
     }
   }
 
@@ -226,7 +321,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
     @Override
     public double distance(DBIDRef id1, DBIDRef id2) {
       final int x = ids.getOffset(id1), y = ids.getOffset(id2);
-      return (x != y) ? matrix[getOffset(x, y)] : 0.;
+      return (x != y) ? matrix.get(getOffset(x, y)) : 0.;
     }
 
     @Override
@@ -276,9 +371,9 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
 
       final int x = ids.getOffset(id);
       // Case y < x: triangleSize(x) + y
-      int pos = triangleSize(x);
+      long pos = triangleSize(x);
       for(int y = 0; y < x; y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(pos);
         if(dist <= range) {
           result.add(dist, it.seek(y));
         }
@@ -288,7 +383,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
       // Case y > x: triangleSize(y) + x
       pos = triangleSize(x + 1) + x;
       for(int y = x + 1; y < size; y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(pos);
         if(dist <= range) {
           result.add(dist, it.seek(y));
         }
@@ -321,9 +416,9 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
       double max = Double.POSITIVE_INFINITY;
       final int x = ids.getOffset(id);
       // Case y < x: triangleSize(x) + y
-      int pos = triangleSize(x);
+      long pos = triangleSize(x);
       for(int y = 0; y < x; y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(pos);
         if(dist <= max) {
           max = heap.insert(dist, it.seek(y));
         }
@@ -333,7 +428,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
       // Case y > x: triangleSize(y) + x
       pos = triangleSize(x + 1) + x;
       for(int y = x + 1; y < size; y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(pos);
         if(dist <= max) {
           max = heap.insert(dist, it.seek(y));
         }
@@ -373,19 +468,42 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
      */
     final protected DistanceFunction<? super O> distanceFunction;
 
+    /**
+     * Storage location.
+     */
+    final protected DistanceMatrixStorage.Location location;
+
+    /**
+     * Flag to use single precision.
+     */
+    final protected boolean single;
+
     /**
      * Constructor.
      *
      * @param distanceFunction Distance function
      */
     public Factory(DistanceFunction<? super O> distanceFunction) {
+      this(distanceFunction, DistanceMatrixStorage.Location.HEAP, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param location Storage location
+     * @param single Store distances with single precision
+     */
+    public Factory(DistanceFunction<? super O> distanceFunction, DistanceMatrixStorage.Location location, boolean single) {
       super();
       this.distanceFunction = distanceFunction;
+      this.location = location;
+      this.single = single;
     }
 
     @Override
     public PrecomputedDistanceMatrix<O> instantiate(Relation<O> relation) {
-      return new PrecomputedDistanceMatrix<>(relation, distanceFunction);
+      return new PrecomputedDistanceMatrix<>(relation, distanceFunction, location, single);
     }
 
     @Override
@@ -408,11 +526,31 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
        */
       public static final OptionID DISTANCE_ID = new OptionID("matrix.distance", "Distance function for the precomputed distance matrix.");
 
+      /**
+       * Option for the storage location.
+       */
+      public static final OptionID STORAGE_ID = new OptionID("matrix.storage", "Storage location of the distance matrix: Java heap, direct (off-heap) memory, or a memory-mapped temporary file.");
+
+      /**
+       * Flag to use single precision.
+       */
+      public static final OptionID FLOAT_ID = new OptionID("matrix.float", "Store distances with single precision, to halve the memory usage.");
+
       /**
        * Nested distance function.
        */
       protected DistanceFunction<? super O> distanceFunction;
 
+      /**
+       * Storage location.
+       */
+      protected DistanceMatrixStorage.Location location;
+
+      /**
+       * Flag to use single precision.
+       */
+      protected boolean single;
+
       @Override
       protected void makeOptions(Parameterization config) {
         super.makeOptions(config);
@@ -420,11 +558,19 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
         if(config.grab(distanceP)) {
           distanceFunction = distanceP.instantiateClass(config);
         }
+        EnumParameter<DistanceMatrixStorage.Location> storageP = new EnumParameter<>(STORAGE_ID, DistanceMatrixStorage.Location.class, DistanceMatrixStorage.Location.HEAP);
+        if(config.grab(storageP)) {
+          location = storageP.getValue();
+        }
+        Flag floatF = new Flag(FLOAT_ID);
+        if(config.grab(floatF)) {
+          single = floatF.isTrue();
+        }
       }
 
       @Override
       protected Factory<O> makeInstance() {
-        return new Factory<>(distanceFunction);
+        return new Factory<>(distanceFunction, location, single);
       }
     }
   }
@@ -23,19 +23,21 @@ package de.lmu.ifi.dbs.elki.index.lsh;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import gnu.trove.iterator.TIntObjectIterator;
-import gnu.trove.map.TIntObjectMap;
-import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.list.array.TIntArrayList;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
-import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
@@ -52,6 +54,8 @@ import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.LocalitySensitiveHashFunction
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -62,6 +66,11 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 /**
  * Locality Sensitive Hashing.
  *
+ * The hash tables are stored as sorted arrays of bucket keys with compact
+ * member arrays, and are built in parallel. Queries can optionally probe
+ * multiple neighboring buckets in each table (multi-probe LSH), which allows
+ * obtaining the same recall with much fewer hash tables.
+ *
  * @author Erich Schubert
  * @since 0.6.0
  *
@@ -91,6 +100,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
    */
   int numberOfBuckets;
 
+  /**
+   * Number of buckets to probe in each table.
+   */
+  int probes;
+
   /**
    * Constructor.
    *
@@ -99,10 +113,23 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
    * @param numberOfBuckets Number of buckets to use.
    */
   public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets) {
+    this(family, l, numberOfBuckets, 1);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param family Projection family
+   * @param l Number of hash tables to use
+   * @param numberOfBuckets Number of buckets to use.
+   * @param probes Number of buckets to probe in each table.
+   */
+  public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets, int probes) {
     super();
     this.family = family;
     this.l = l;
     this.numberOfBuckets = numberOfBuckets;
+    this.probes = probes;
   }
 
   @Override
@@ -129,9 +156,14 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
     ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions;
 
     /**
-     * The actual table
+     * The actual tables.
+     */
+    ArrayList<Table> hashtables;
+
+    /**
+     * Object ids, table members are offsets into this array.
      */
-    ArrayList<TIntObjectMap<DBIDs>> hashtables;
+    ArrayDBIDs ids;
 
     /**
      * Number of buckets to use.
@@ -163,48 +195,53 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
     @Override
     public void initialize() {
       final int numhash = hashfunctions.size();
+      ids = DBIDUtil.ensureArray(relation.getDBIDs());
       hashtables = new ArrayList<>(numhash);
-      for(int i = 0; i < numhash; i++) {
-        hashtables.add(new TIntObjectHashMap<DBIDs>(numberOfBuckets));
+      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index", numhash, LOG) : null;
+      ParallelCore core = ParallelCore.getCore();
+      if(core.getParallelism() <= 1 || numhash <= 1) {
+        core = null;
       }
-
-      // TODO: We assume all hash functions have the same dimensionality.
-      double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
-      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index", relation.size(), LOG) : null;
-      int expect = Math.max(2, (int) Math.ceil(relation.size() / (double) numberOfBuckets));
-      for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-        V obj = relation.get(iter);
-        for(int i = 0; i < numhash; i++) {
-          final TIntObjectMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj, buf);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur == null) {
-            table.put(bucket, DBIDUtil.deref(iter));
+      else {
+        core.connect();
+      }
+      try {
+        if(core == null) {
+          for(int i = 0; i < numhash; i++) {
+            hashtables.add(new TableBuilder(hashfunctions.get(i)).call());
+            LOG.incrementProcessed(progress);
           }
-          else if(cur.size() > 1) {
-            ((ModifiableDBIDs) cur).add(iter);
+        }
+        else {
+          List<Future<Table>> futures = new ArrayList<>(numhash);
+          for(int i = 0; i < numhash; i++) {
+            futures.add(core.submit(new TableBuilder(hashfunctions.get(i))));
           }
-          else {
-            ModifiableDBIDs newbuck = DBIDUtil.newArray(expect);
-            newbuck.addDBIDs(cur);
-            newbuck.add(iter);
-            table.put(bucket, newbuck);
+          for(Future<Table> fut : futures) {
+            hashtables.add(fut.get());
+            LOG.incrementProcessed(progress);
           }
         }
-        LOG.incrementProcessed(progress);
+      }
+      catch(ExecutionException e) {
+        throw new AbortException("Parallel LSH index construction failed.", e.getCause());
+      }
+      catch(InterruptedException e) {
+        throw new AbortException("LSH index construction interrupted.");
+      }
+      finally {
+        if(core != null) {
+          core.disconnect();
+        }
       }
       LOG.ensureCompleted(progress);
       if(LOG.isStatistics()) {
         int min = Integer.MAX_VALUE, max = 0;
-        for(int i = 0; i < numhash; i++) {
-          final TIntObjectMap<DBIDs> table = hashtables.get(i);
-          for(TIntObjectIterator<DBIDs> iter = table.iterator(); iter.hasNext();) {
-            iter.advance();
-            int size = iter.value().size();
+        long buckets = 0;
+        for(Table table : hashtables) {
+          final int[] starts = table.starts;
+          for(int j = 0; j < table.keys.length; j++) {
+            int size = starts[j + 1] - starts[j];
             if(size < min) {
               min = size;
             }
@@ -212,13 +249,51 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
               max = size;
             }
           }
+          buckets += table.keys.length;
         }
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.min", min));
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.max", max));
+        LOG.statistics(new LongStatistic(this.getClass().getName() + ".buckets", buckets));
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".hashtables", hashtables.size()));
       }
     }
 
+    /**
+     * Collect the candidates from all hash tables.
+     *
+     * @param obj Query object
+     * @return Sorted offsets of the candidates, without duplicates.
+     */
+    protected TIntArrayList collectCandidates(V obj) {
+      TIntArrayList candidates = new TIntArrayList();
+      // TODO: We assume all hash functions have the same dimensionality.
+      double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
+      int[] hashes = new int[probes];
+      for(int i = 0; i < hashtables.size(); i++) {
+        final Table table = hashtables.get(i);
+        final int n = hashfunctions.get(i).hashProbes(obj, buf, hashes);
+        for(int j = 0; j < n; j++) {
+          // Reduce to hash table size
+          final int pos = Arrays.binarySearch(table.keys, hashes[j] % numberOfBuckets);
+          if(pos >= 0) {
+            candidates.add(table.members, table.starts[pos], table.starts[pos + 1] - table.starts[pos]);
+          }
+        }
+      }
+      candidates.sort();
+      // Remove duplicates
+      int size = 0;
+      for(int i = 0, len = candidates.size(), prev = -1; i < len; i++) {
+        final int cur = candidates.getQuick(i);
+        if(cur != prev) {
+          candidates.setQuick(size++, cur);
+          prev = cur;
+        }
+      }
+      candidates.remove(size, candidates.size() - size);
+      return candidates;
+    }
+
     @Override
     public Logging getLogger() {
       return LOG;
@@ -271,31 +346,12 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
 
       @Override
       public KNNList getKNNForObject(V obj, int k) {
-        ModifiableDBIDs candidates = null;
-        final int numhash = hashtables.size();
-        double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
-        for(int i = 0; i < numhash; i++) {
-          final TIntObjectMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj, buf);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur != null) {
-            if(candidates == null) {
-              candidates = DBIDUtil.newHashSet(cur.size() * numhash + k);
-            }
-            candidates.addDBIDs(cur);
-          }
-        }
-        if(candidates == null) {
-          candidates = DBIDUtil.newArray();
-        }
-
+        TIntArrayList candidates = collectCandidates(obj);
         // Refine.
         KNNHeap heap = DBIDUtil.newHeap(k);
-        for(DBIDIter iter = candidates.iter(); iter.valid(); iter.advance()) {
+        DBIDArrayIter iter = ids.iter();
+        for(int i = 0; i < candidates.size(); i++) {
+          iter.seek(candidates.getQuick(i));
           final double dist = distanceQuery.distance(obj, iter);
           super.incRefinements(1);
           heap.insert(dist, iter);
@@ -323,24 +379,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
 
       @Override
       public void getRangeForObject(V obj, double range, ModifiableDoubleDBIDList result) {
-        ModifiableDBIDs candidates = DBIDUtil.newHashSet();
-        final int numhash = hashtables.size();
-        double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
-        for(int i = 0; i < numhash; i++) {
-          final TIntObjectMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj, buf);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur != null) {
-            candidates.addDBIDs(cur);
-          }
-        }
-
+        TIntArrayList candidates = collectCandidates(obj);
         // Refine.
-        for(DBIDIter iter = candidates.iter(); iter.valid(); iter.advance()) {
+        DBIDArrayIter iter = ids.iter();
+        for(int i = 0; i < candidates.size(); i++) {
+          iter.seek(candidates.getQuick(i));
           final double dist = distanceQuery.distance(obj, iter);
           super.incRefinements(1);
           if(dist <= range) {
@@ -349,6 +392,101 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
         }
       }
     }
+
+    /**
+     * Build a single hash table.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    private class TableBuilder implements Callable<Table> {
+      /**
+       * Hash function of this table.
+       */
+      private LocalitySensitiveHashFunction<? super V> hashfunc;
+
+      /**
+       * Constructor.
+       *
+       * @param hashfunc Hash function
+       */
+      TableBuilder(LocalitySensitiveHashFunction<? super V> hashfunc) {
+        this.hashfunc = hashfunc;
+      }
+
+      @Override
+      public Table call() {
+        final int size = ids.size();
+        double[] buf = new double[hashfunc.getNumberOfProjections()];
+        // Pack bucket and offset into a long, so we can sort both at once.
+        long[] pairs = new long[size];
+        DBIDArrayIter iter = ids.iter();
+        for(int i = 0; i < size; i++, iter.advance()) {
+          // Get the initial (unbounded) hash code:
+          int hash = hashfunc.hashObject(relation.get(iter), buf);
+          // Reduce to hash table size
+          int bucket = hash % numberOfBuckets;
+          pairs[i] = (((long) bucket) << 32) | i;
+        }
+        Arrays.sort(pairs);
+        int nkeys = 0;
+        for(int i = 0; i < size; i++) {
+          if(i == 0 || (int) (pairs[i] >> 32) != (int) (pairs[i - 1] >> 32)) {
+            ++nkeys;
+          }
+        }
+        int[] keys = new int[nkeys], starts = new int[nkeys + 1], members = new int[size];
+        for(int i = 0, j = 0; i < size; i++) {
+          final int bucket = (int) (pairs[i] >> 32);
+          if(i == 0 || bucket != keys[j - 1]) {
+            keys[j] = bucket;
+            starts[j++] = i;
+          }
+          members[i] = (int) pairs[i];
+        }
+        starts[nkeys] = size;
+        return new Table(keys, starts, members);
+      }
+    }
+  }
+
+  /**
+   * Compact hash table: sorted bucket keys, and the members of each bucket as
+   * offsets in a single array.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class Table {
+    /**
+     * Sorted bucket keys.
+     */
+    final int[] keys;
+
+    /**
+     * Start of each bucket in the members array, with a final sentinel.
+     */
+    final int[] starts;
+
+    /**
+     * Object offsets, grouped by bucket.
+     */
+    final int[] members;
+
+    /**
+     * Constructor.
+     *
+     * @param keys Sorted bucket keys
+     * @param starts Bucket starts
+     * @param members Object offsets
+     */
+    Table(int[] keys, int[] starts, int[] members) {
+      this.keys = keys;
+      this.starts = starts;
+      this.members = members;
+    }
   }
 
   /**
@@ -374,6 +512,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
      */
     public static final OptionID BUCKETS_ID = new OptionID("lsh.buckets", "Number of hash buckets to use.");
 
+    /**
+     * Number of buckets to probe in each hash table.
+     */
+    public static final OptionID PROBES_ID = new OptionID("lsh.probes", "Number of buckets to probe in each hash table (multi-probe LSH).");
+
     /**
      * LSH hash function family to use.
      */
@@ -389,6 +532,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
      */
     int numberOfBuckets;
 
+    /**
+     * Number of buckets to probe in each table.
+     */
+    int probes;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -409,11 +557,17 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
       if(config.grab(bucketsP)) {
         numberOfBuckets = bucketsP.intValue();
       }
+
+      IntParameter probesP = new IntParameter(PROBES_ID, 1);
+      probesP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(probesP)) {
+        probes = probesP.intValue();
+      }
     }
 
     @Override
     protected InMemoryLSHIndex<V> makeInstance() {
-      return new InMemoryLSHIndex<>(family, l, numberOfBuckets);
+      return new InMemoryLSHIndex<>(family, l, numberOfBuckets, probes);
     }
   }
 }
@@ -84,6 +84,33 @@ public class CosineLocalitySensitiveHashFunction implements LocalitySensitiveHas
     return hashValue;
   }
 
+  @Override
+  public int hashProbes(NumberVector obj, double[] buf, int[] hashes) {
+    projection.project(obj, buf);
+    // Only the first 32 projections contribute to the hash value.
+    final int num = Math.min(buf.length, 32);
+    // Candidate perturbations: flip a single bit.
+    double[] scores = new double[num];
+    int[] dims = new int[num];
+    long[] deltas = new long[num];
+    int hashValue = 0;
+    for(int i = 0, j = 1; i < num; i++, j <<= 1) {
+      if(buf[i] > 0) {
+        hashValue = hashValue | j;
+      }
+      scores[i] = buf[i] * buf[i];
+      dims[i] = i;
+      deltas[i] = buf[i] > 0 ? -(j & 0xFFFFFFFFL) : (j & 0xFFFFFFFFL);
+    }
+    hashes[0] = hashValue;
+    long[] perturbations = new long[hashes.length - 1];
+    final int c = PerturbationSequence.generate(scores, dims, deltas, perturbations);
+    for(int i = 0; i < c; i++) {
+      hashes[i + 1] = (int) (hashValue + perturbations[i]);
+    }
+    return c + 1;
+  }
+
   @Override
   public int getNumberOfProjections() {
     return projection.getOutputDimensionality();
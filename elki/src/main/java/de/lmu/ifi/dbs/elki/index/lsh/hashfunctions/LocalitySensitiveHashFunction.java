@@ -49,6 +49,24 @@ public interface LocalitySensitiveHashFunction<V> {
    */
   int hashObject(V obj, double[] buf);
 
+  /**
+   * Compute the hash values of the buckets to probe for multi-probe LSH.
+   *
+   * The first value is the hash value of the object itself, followed by the
+   * hash values of neighboring buckets in order of decreasing likelihood of
+   * containing near neighbors. Hash functions that do not support multiple
+   * probes only return the object hash.
+   *
+   * @param obj Object to hash
+   * @param buf Buffer, sized according to the number of projections.
+   * @param hashes Output array, its length is the maximum number of probes.
+   * @return Number of hash values produced
+   */
+  default int hashProbes(V obj, double[] buf, int[] hashes) {
+    hashes[0] = hashObject(obj, buf);
+    return 1;
+  }
+
   /**
    * Get the number of projections performed.
    *
@@ -121,6 +121,37 @@ public class MultipleProjectionsLocalitySensitiveHashFunction implements Localit
     return fastModPrime(t1sum);
   }
 
+  @Override
+  public int hashProbes(NumberVector vec, double[] buf, int[] hashes) {
+    // Project the vector:
+    projection.project(vec, buf);
+    final int num = shift.length;
+    // Candidate perturbations: move to the lower or upper neighbor bin.
+    double[] scores = new double[num << 1];
+    int[] dims = new int[num << 1];
+    long[] deltas = new long[num << 1];
+    long t1sum = 0L;
+    for(int i = 0, j = 0; i < num; i++) {
+      final double f = (buf[i] + shift[i]) * iwidth, fl = Math.floor(f);
+      final long r = randoms1[i] & MASK32;
+      t1sum += r * (int) fl; // unsigned math!
+      final double frac = f - fl;
+      scores[j] = frac * frac;
+      dims[j] = i;
+      deltas[j++] = -r;
+      scores[j] = (1. - frac) * (1. - frac);
+      dims[j] = i;
+      deltas[j++] = r;
+    }
+    hashes[0] = fastModPrime(t1sum);
+    long[] perturbations = new long[hashes.length - 1];
+    final int c = PerturbationSequence.generate(scores, dims, deltas, perturbations);
+    for(int i = 0; i < c; i++) {
+      hashes[i + 1] = fastModPrime(t1sum + perturbations[i]);
+    }
+    return c + 1;
+  }
+
   /**
    * Fast modulo operation for the largest unsigned integer prime.
    *
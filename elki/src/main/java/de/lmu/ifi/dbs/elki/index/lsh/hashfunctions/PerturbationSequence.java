@@ -0,0 +1,134 @@
+package de.lmu.ifi.dbs.elki.index.lsh.hashfunctions;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.DoubleIntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Generate perturbation sequences for multi-probe LSH.
+ *
+ * Each candidate perturbation modifies a single hash coordinate, and has a
+ * score (the squared distance of the query to the corresponding bucket
+ * boundary). Perturbation sets are enumerated in order of increasing total
+ * score using the shift and expand operations; sets that modify the same
+ * coordinate twice are skipped.
+ *
+ * Reference:
+ * <p>
+ * Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li<br />
+ * Multi-probe LSH: efficient indexing for high-dimensional similarity
+ * search<br />
+ * Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB'07)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+@Reference(authors = "Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li", //
+title = "Multi-probe LSH: efficient indexing for high-dimensional similarity search", //
+booktitle = "Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB'07)", //
+url = "http://www.vldb.org/conf/2007/papers/research/p950-lv.pdf")
+public final class PerturbationSequence {
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private PerturbationSequence() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Generate the best perturbation sets.
+   *
+   * The score array will be sorted in-place.
+   *
+   * @param scores Scores of the individual perturbations (will be modified)
+   * @param dims Coordinate modified by each perturbation
+   * @param deltas Change of the (unreduced) hash code for each perturbation
+   * @param out Output array, receives the summed deltas of each set
+   * @return Number of perturbation sets generated
+   */
+  public static int generate(double[] scores, int[] dims, long[] deltas, long[] out) {
+    final int n = scores.length, max = out.length;
+    if(n == 0 || max == 0) {
+      return 0;
+    }
+    int[] idx = new int[n];
+    for(int i = 0; i < n; i++) {
+      idx[i] = i;
+    }
+    DoubleIntegerArrayQuickSort.sort(scores, idx, n);
+    DoubleObjectMinHeap<int[]> heap = new DoubleObjectMinHeap<>(max << 1);
+    heap.add(scores[0], new int[] { 0 });
+    int c = 0;
+    while(c < max && !heap.isEmpty()) {
+      final double score = heap.peekKey();
+      final int[] set = heap.peekValue();
+      heap.poll();
+      final int len = set.length, last = set[len - 1];
+      if(last + 1 < n) {
+        // Shift: replace the largest element with its successor.
+        int[] shifted = Arrays.copyOf(set, len);
+        shifted[len - 1] = last + 1;
+        heap.add(score - scores[last] + scores[last + 1], shifted);
+        // Expand: add the successor of the largest element.
+        int[] expanded = Arrays.copyOf(set, len + 1);
+        expanded[len] = last + 1;
+        heap.add(score + scores[last + 1], expanded);
+      }
+      if(!isValid(set, idx, dims)) {
+        continue;
+      }
+      long sum = 0L;
+      for(int i = 0; i < len; i++) {
+        sum += deltas[idx[set[i]]];
+      }
+      out[c++] = sum;
+    }
+    return c;
+  }
+
+  /**
+   * Check that a perturbation set modifies each coordinate at most once.
+   *
+   * @param set Perturbation set (positions in sorted order)
+   * @param idx Sort permutation
+   * @param dims Coordinates of the perturbations
+   * @return {@code true} if valid
+   */
+  private static boolean isValid(int[] set, int[] idx, int[] dims) {
+    for(int i = 1; i < set.length; i++) {
+      final int di = dims[idx[set[i]]];
+      for(int j = 0; j < i; j++) {
+        if(dims[idx[set[j]]] == di) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
@@ -26,9 +26,14 @@ package de.lmu.ifi.dbs.elki.index.preprocessed.fastoptics;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
 */
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.optics.FastOPTICS;
 import de.lmu.ifi.dbs.elki.data.NumberVector;
@@ -54,13 +59,15 @@ import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
 import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
 import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
-import gnu.trove.iterator.TIntIterator;
+import de.lmu.ifi.dbs.elki.utilities.random.Xoroshiro128NonThreadsafeRandom;
 import gnu.trove.list.array.TIntArrayList;
 import net.jafama.FastMath;
 
@@ -81,6 +88,10 @@ import net.jafama.FastMath;
  * This is based on the original code provided by Johannes Schneider, with
  * ELKIfications and optimizations by Erich Schubert.
  *
+ * The projections, the split rounds, and the distance computations for the
+ * density estimates are processed concurrently. Every split round uses its own
+ * random generator, so the result does not depend on the number of threads.
+ *
  * TODO: implement one of the Index APIs?
  *
  * @author Johannes Schneider
@@ -116,6 +127,11 @@ public class RandomProjectedNeighborsAndDensities<V extends NumberVector> {
    */
   private static final float sizeTolerance = 2f / 3;
 
+  /**
+   * Number of split sets per parallel block in the density estimation.
+   */
+  private static final int SETS_PER_BLOCK = 256;
+
   /**
    * minimum size for which a point set is further partitioned (roughly
    * corresponds to minPts in OPTICS)
@@ -182,12 +198,12 @@ public class RandomProjectedNeighborsAndDensities<V extends NumberVector> {
 
     // perform projections of points
     projectedPoints = new DoubleDataStore[nProject1d];
-    DoubleDataStore[] tmpPro = new DoubleDataStore[nProject1d];
+    WritableDoubleDataStore[] tmpPro = new WritableDoubleDataStore[nProject1d];
+    double[][] rps = new double[nProject1d][dim];
 
     Random rand = rnd.getSingleThreadedRandom();
-    FiniteProgress projp = LOG.isVerbose() ? new FiniteProgress("Random projections", nProject1d, LOG) : null;
     for(int j = 0; j < nProject1d; j++) {
-      double[] currRp = new double[dim];
+      double[] currRp = rps[j];
       double sum = 0;
       for(int i = 0; i < dim; i++) {
         double fl = rand.nextDouble() - 0.5;
@@ -198,50 +214,196 @@ public class RandomProjectedNeighborsAndDensities<V extends NumberVector> {
       for(int i = 0; i < dim; i++) {
         currRp[i] /= sum;
       }
-      WritableDoubleDataStore currPro = DataStoreUtil.makeDoubleStorage(ptList, DataStoreFactory.HINT_HOT);
+      projectedPoints[j] = tmpPro[j] = DataStoreUtil.makeDoubleStorage(ptList, DataStoreFactory.HINT_HOT);
+    }
+    // Every split round uses its own random generator, so the rounds can be
+    // processed concurrently with deterministic results.
+    long[] seeds = new long[nPointSetSplits];
+    for(int avgP = 0; avgP < nPointSetSplits; avgP++) {
+      seeds[avgP] = rand.nextLong();
+    }
+
+    ParallelCore core = ParallelCore.getCore();
+    if(core.getParallelism() <= 1) {
+      core = null;
+    }
+    else {
+      core.connect();
+    }
+    try {
+      FiniteProgress projp = LOG.isVerbose() ? new FiniteProgress("Random projections", nProject1d, LOG) : null;
+      List<Callable<Void>> projs = new ArrayList<>(nProject1d);
+      for(int j = 0; j < nProject1d; j++) {
+        projs.add(new Projection(points, ptList, rps[j], tmpPro[j]));
+      }
+      for(Void v : run(projs, core)) {
+        LOG.incrementProcessed(projp);
+      }
+      LOG.ensureCompleted(projp);
+      // Log the number of scalar projections performed.
+      long numprod = nProject1d * ptList.size();
+      LOG.statistics(new LongStatistic(PREFIX + ".num-scalar-products", numprod));
+
+      // split entire point set, reuse projections by shuffling them
+      FiniteProgress splitp = LOG.isVerbose() ? new FiniteProgress("Splitting data", nPointSetSplits, LOG) : null;
+      List<Callable<ArrayList<ArrayDBIDs>>> rounds = new ArrayList<>(nPointSetSplits);
+      for(int avgP = 0; avgP < nPointSetSplits; avgP++) {
+        rounds.add(new SplitRound(ptList, seeds[avgP]));
+      }
+      for(ArrayList<ArrayDBIDs> sets : run(rounds, core)) {
+        splitsets.addAll(sets);
+        LOG.incrementProcessed(splitp);
+      }
+      LOG.ensureCompleted(splitp);
+    }
+    finally {
+      if(core != null) {
+        core.disconnect();
+      }
+    }
+  }
 
+  /**
+   * Run a list of tasks, in parallel if possible.
+   *
+   * @param tasks Tasks to run
+   * @param core Parallel core, may be {@code null}
+   * @return Results, in the order of the tasks
+   */
+  private static <T> List<T> run(List<? extends Callable<T>> tasks, ParallelCore core) {
+    List<T> results = new ArrayList<>(tasks.size());
+    try {
+      if(core == null) {
+        for(Callable<T> task : tasks) {
+          results.add(task.call());
+        }
+        return results;
+      }
+      List<Future<T>> futures = new ArrayList<>(tasks.size());
+      for(Callable<T> task : tasks) {
+        futures.add(core.submit(task));
+      }
+      for(Future<T> fut : futures) {
+        results.add(fut.get());
+      }
+      return results;
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Parallel random projections failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Random projections interrupted.");
+    }
+    catch(RuntimeException e) {
+      throw e;
+    }
+    catch(Exception e) {
+      throw new AbortException("Random projections failed.", e);
+    }
+  }
+
+  /**
+   * Project the data onto a single random vector.
+   *
+   * @author Erich Schubert
+   */
+  private static class Projection implements Callable<Void> {
+    /**
+     * Data relation.
+     */
+    private Relation<? extends NumberVector> points;
+
+    /**
+     * Points to project.
+     */
+    private DBIDs ptList;
+
+    /**
+     * Projection vector.
+     */
+    private double[] rp;
+
+    /**
+     * Output storage.
+     */
+    private WritableDoubleDataStore out;
+
+    /**
+     * Constructor.
+     *
+     * @param points Data relation
+     * @param ptList Points to project
+     * @param rp Projection vector
+     * @param out Output storage
+     */
+    Projection(Relation<? extends NumberVector> points, DBIDs ptList, double[] rp, WritableDoubleDataStore out) {
+      this.points = points;
+      this.ptList = ptList;
+      this.rp = rp;
+      this.out = out;
+    }
+
+    @Override
+    public Void call() {
+      final int dim = rp.length;
       for(DBIDIter it = ptList.iter(); it.valid(); it.advance()) {
         NumberVector vecPt = points.get(it);
         // Dot product:
         double sum2 = 0;
         for(int i = 0; i < dim; i++) {
-          sum2 += currRp[i] * vecPt.doubleValue(i);
+          sum2 += rp[i] * vecPt.doubleValue(i);
         }
-        currPro.put(it, sum2);
+        out.put(it, sum2);
       }
-      projectedPoints[j] = currPro;
-      LOG.incrementProcessed(projp);
+      return null;
     }
-    LOG.ensureCompleted(projp);
-    // Log the number of scalar projections performed.
-    long numprod = nProject1d * ptList.size();
-    LOG.statistics(new LongStatistic(PREFIX + ".num-scalar-products", numprod));
+  }
 
-    // split entire point set, reuse projections by shuffling them
-    TIntArrayList proind = new TIntArrayList(nProject1d);
-    for(int j = 0; j < nProject1d; j++) {
-      proind.add(j);
+  /**
+   * A single round of recursive splits, using a shuffled order of the
+   * projections.
+   *
+   * @author Erich Schubert
+   */
+  private class SplitRound implements Callable<ArrayList<ArrayDBIDs>> {
+    /**
+     * Points to split.
+     */
+    private DBIDs ptList;
+
+    /**
+     * Random seed of this round.
+     */
+    private long seed;
+
+    /**
+     * Constructor.
+     *
+     * @param ptList Points to split
+     * @param seed Random seed of this round
+     */
+    SplitRound(DBIDs ptList, long seed) {
+      this.ptList = ptList;
+      this.seed = seed;
     }
-    FiniteProgress splitp = LOG.isVerbose() ? new FiniteProgress("Splitting data", nPointSetSplits, LOG) : null;
-    for(int avgP = 0; avgP < nPointSetSplits; avgP++) {
+
+    @Override
+    public ArrayList<ArrayDBIDs> call() {
+      Random rand = new Xoroshiro128NonThreadsafeRandom(seed);
       // shuffle projections
-      for(int i = 0; i < nProject1d; i++) {
-        tmpPro[i] = projectedPoints[i];
+      TIntArrayList proind = new TIntArrayList(projectedPoints.length);
+      for(int j = 0; j < projectedPoints.length; j++) {
+        proind.add(j);
       }
       proind.shuffle(rand);
-      TIntIterator it = proind.iterator();
-      int i = 0;
-      while(it.hasNext()) {
-        int cind = it.next();
-        projectedPoints[cind] = tmpPro[i];
-        i++;
+      DoubleDataStore[] proj = new DoubleDataStore[projectedPoints.length];
+      for(int i = 0; i < proj.length; i++) {
+        proj[proind.getQuick(i)] = projectedPoints[i];
       }
-
-      // split point set
-      splitupNoSort(DBIDUtil.newArray(ptList), 0, size, 0, rand);
-      LOG.incrementProcessed(splitp);
+      ArrayList<ArrayDBIDs> sets = new ArrayList<>();
+      splitupNoSort(proj, sets, DBIDUtil.newArray(ptList), 0, ptList.size(), 0, rand);
+      return sets;
     }
-    LOG.ensureCompleted(splitp);
   }
 
   /**
@@ -255,16 +417,32 @@ public class RandomProjectedNeighborsAndDensities<V extends NumberVector> {
    * @param rand Random generator
    */
   public void splitupNoSort(ArrayModifiableDBIDs ind, int begin, int end, int dim, Random rand) {
+    splitupNoSort(projectedPoints, splitsets, ind, begin, end, dim, rand);
+  }
+
+  /**
+   * Recursively splits entire point set until the set is below a threshold
+   *
+   * @param proj Projections, in the order to use
+   * @param out Output list of sets
+   * @param ind points that are in the current set
+   * @param begin Interval begin in the ind array
+   * @param end Interval end in the ind array
+   * @param dim depth of projection (how many times point set has been split
+   *        already)
+   * @param rand Random generator
+   */
+  private void splitupNoSort(DoubleDataStore[] proj, List<ArrayDBIDs> out, ArrayModifiableDBIDs ind, int begin, int end, int dim, Random rand) {
     final int nele = end - begin;
-    dim = dim % projectedPoints.length;// choose a projection of points
-    DoubleDataStore tpro = projectedPoints[dim];
+    dim = dim % proj.length;// choose a projection of points
+    DoubleDataStore tpro = proj[dim];
 
     // save set such that used for density or neighborhood computation
     // sets should be roughly minSplitSize
     if(nele > minSplitSize * (1 - sizeTolerance) && nele < minSplitSize * (1 + sizeTolerance)) {
       // sort set, since need median element later
       ind.sort(begin, end, new DataStoreUtil.AscendingByDoubleDataStore(tpro));
-      splitsets.add(DBIDUtil.newArray(ind.slice(begin, end)));
+      out.add(DBIDUtil.newArray(ind.slice(begin, end)));
     }
 
     // compute splitting element
@@ -281,8 +459,8 @@ public class RandomProjectedNeighborsAndDensities<V extends NumberVector> {
       // position used for splitting the projected points into two
       // sets used for recursive splitting
       int splitpos = minInd + 1;
-      splitupNoSort(ind, begin, splitpos, dim + 1, rand);
-      splitupNoSort(ind, splitpos, end, dim + 1, rand);
+      splitupNoSort(proj, out, ind, begin, splitpos, dim + 1, rand);
+      splitupNoSort(proj, out, ind, splitpos, end, dim + 1, rand);
     }
   }
 
@@ -419,18 +597,83 @@ public class RandomProjectedNeighborsAndDensities<V extends NumberVector> {
     WritableDoubleDataStore davg = DataStoreUtil.makeDoubleStorage(points.getDBIDs(), DataStoreFactory.HINT_HOT);
     WritableIntegerDataStore nDists = DataStoreUtil.makeIntegerStorage(points.getDBIDs(), DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
     FiniteProgress splitp = LOG.isVerbose() ? new FiniteProgress("Processing splits for density estimation", splitsets.size(), LOG) : null;
+    // Compute the distances in parallel, but aggregate them in a fixed order.
+    final int numsets = splitsets.size();
+    ParallelCore core = ParallelCore.getCore();
+    if(core.getParallelism() <= 1 || numsets <= SETS_PER_BLOCK) {
+      core = null;
+    }
+    else {
+      core.connect();
+    }
+    try {
+      if(core == null) {
+        for(int start = 0; start < numsets; start += SETS_PER_BLOCK) {
+          aggregateDistances(start, new DistanceBlock(start, Math.min(start + SETS_PER_BLOCK, numsets)).call(), davg, nDists, splitp);
+        }
+      }
+      else {
+        // Bound the number of blocks in memory, by waiting for the oldest.
+        final int window = core.getParallelism() << 1;
+        ArrayDeque<Future<double[][]>> pending = new ArrayDeque<>(window);
+        int done = 0;
+        for(int start = 0; start < numsets; start += SETS_PER_BLOCK) {
+          if(pending.size() >= window) {
+            aggregateDistances(done, pending.poll().get(), davg, nDists, splitp);
+            done += SETS_PER_BLOCK;
+          }
+          pending.add(core.submit(new DistanceBlock(start, Math.min(start + SETS_PER_BLOCK, numsets))));
+        }
+        for(; !pending.isEmpty(); done += SETS_PER_BLOCK) {
+          aggregateDistances(done, pending.poll().get(), davg, nDists, splitp);
+        }
+      }
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Parallel density estimation failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Density estimation interrupted.");
+    }
+    finally {
+      if(core != null) {
+        core.disconnect();
+      }
+    }
+    LOG.ensureCompleted(splitp);
+    for(DBIDIter it = points.getDBIDs().iter(); it.valid(); it.advance()) {
+      // it might be that a point does not occur for a certain size of a
+      // projection (likely if do few projections, in this case there is no avg
+      // distance)
+      int count = nDists.intValue(it);
+      double val = (count == 0) ? FastOPTICS.UNDEFINED_DISTANCE : (davg.doubleValue(it) / count);
+      davg.put(it, val);
+    }
+    nDists.destroy(); // No longer needed after normalization
+    return davg;
+  }
+
+  /**
+   * Add the distances of a block of split sets to the density sums.
+   *
+   * @param start First set of the block
+   * @param dists Distances to the middle points, see {@link DistanceBlock}
+   * @param davg Sum of distances
+   * @param nDists Number of distances
+   * @param splitp Progress
+   */
+  private void aggregateDistances(int start, double[][] dists, WritableDoubleDataStore davg, WritableIntegerDataStore nDists, FiniteProgress splitp) {
     DBIDVar v = DBIDUtil.newVar();
-    for(Iterator<ArrayDBIDs> it1 = splitsets.iterator(); it1.hasNext();) {
-      ArrayDBIDs pinSet = it1.next();
+    for(int i = 0; i < dists.length; i++) {
+      final double[] setdists = dists[i];
+      ArrayDBIDs pinSet = splitsets.get(start + i);
       final int len = pinSet.size();
-      final int indoff = len >> 1;
-      pinSet.assignVar(indoff, v);
-      V midpoint = points.get(v);
+      pinSet.assignVar(len >> 1, v);
       for(DBIDArrayIter it = pinSet.iter(); it.getOffset() < len; it.advance()) {
         if(DBIDUtil.equal(it, v)) {
           continue;
         }
-        double dist = EuclideanDistanceFunction.STATIC.distance(points.get(it), midpoint);
+        double dist = setdists[it.getOffset()];
         ++distanceComputations;
         davg.increment(v, dist);
         nDists.increment(v, 1);
@@ -439,17 +682,48 @@ public class RandomProjectedNeighborsAndDensities<V extends NumberVector> {
       }
       LOG.incrementProcessed(splitp);
     }
-    LOG.ensureCompleted(splitp);
-    for(DBIDIter it = points.getDBIDs().iter(); it.valid(); it.advance()) {
-      // it might be that a point does not occur for a certain size of a
-      // projection (likely if do few projections, in this case there is no avg
-      // distance)
-      int count = nDists.intValue(it);
-      double val = (count == 0) ? FastOPTICS.UNDEFINED_DISTANCE : (davg.doubleValue(it) / count);
-      davg.put(it, val);
+  }
+
+  /**
+   * Compute the distances to the middle point for a block of split sets.
+   *
+   * @author Erich Schubert
+   */
+  private class DistanceBlock implements Callable<double[][]> {
+    /**
+     * Range of split sets.
+     */
+    private int start, end;
+
+    /**
+     * Constructor.
+     *
+     * @param start First set
+     * @param end End of sets (exclusive)
+     */
+    DistanceBlock(int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public double[][] call() {
+      double[][] dists = new double[end - start][];
+      DBIDVar v = DBIDUtil.newVar();
+      for(int i = start; i < end; i++) {
+        ArrayDBIDs pinSet = splitsets.get(i);
+        final int len = pinSet.size();
+        pinSet.assignVar(len >> 1, v);
+        V midpoint = points.get(v);
+        double[] setdists = dists[i - start] = new double[len];
+        for(DBIDArrayIter it = pinSet.iter(); it.getOffset() < len; it.advance()) {
+          if(!DBIDUtil.equal(it, v)) {
+            setdists[it.getOffset()] = EuclideanDistanceFunction.STATIC.distance(points.get(it), midpoint);
+          }
+        }
+      }
+      return dists;
     }
-    nDists.destroy(); // No longer needed after normalization
-    return davg;
   }
 
   /**
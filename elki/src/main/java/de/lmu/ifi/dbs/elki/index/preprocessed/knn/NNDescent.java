@@ -0,0 +1,918 @@
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.PreprocessorKNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Approximate kNN graph construction using NN-Descent.
+ *
+ * Starting from a random graph, the neighbors of neighbors of every object are
+ * compared, and the graph is improved until few updates occur. Only a sample
+ * of the new candidates is joined in each iteration. The distance
+ * computations of the local joins are distributed over multiple threads, while
+ * the graph updates are applied in a fixed order, so the result is the same
+ * for any number of threads.
+ *
+ * Queries for database objects use the materialized graph. Queries for other
+ * objects use a greedy best-first search on the (symmetrized) graph; the size
+ * of the candidate list controls the trade-off of recall versus speed.
+ *
+ * Reference:
+ * <p>
+ * W. Dong, C. Moses, K. Li<br />
+ * Efficient k-nearest neighbor graph construction for generic similarity
+ * measures<br />
+ * Proc. 20th International Conference on World Wide Web (WWW'11)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has NNDescentKNNQuery
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "W. Dong, C. Moses, K. Li", //
+title = "Efficient k-nearest neighbor graph construction for generic similarity measures", //
+booktitle = "Proc. 20th International Conference on World Wide Web (WWW'11)", //
+url = "http://dx.doi.org/10.1145/1963405.1963487")
+public class NNDescent<O> extends AbstractMaterializeKNNPreprocessor<O> {
+  /**
+   * Logger
+   */
+  private static final Logging LOG = Logging.getLogger(NNDescent.class);
+
+  /**
+   * Number of objects per parallel block.
+   */
+  private static final int BLOCKSIZE = 256;
+
+  /**
+   * Number of blocks joined before the graph is updated.
+   */
+  private static final int BLOCKS_PER_CHUNK = 64;
+
+  /**
+   * Random generator
+   */
+  private final RandomFactory rnd;
+
+  /**
+   * Sampling rate of new candidates.
+   */
+  private final double rho;
+
+  /**
+   * Early termination threshold.
+   */
+  private final double delta;
+
+  /**
+   * Maximum number of iterations.
+   */
+  private final int iterations;
+
+  /**
+   * Size of the candidate list for object queries.
+   */
+  private final int search;
+
+  /**
+   * Object ids, in the order of the graph.
+   */
+  private ArrayDBIDs ids;
+
+  /**
+   * Neighbor offsets of each object.
+   */
+  private int[][] neighbors;
+
+  /**
+   * Neighbor distances of each object, ascending.
+   */
+  private double[][] distances;
+
+  /**
+   * Flags for neighbors not yet joined.
+   */
+  private boolean[][] isnew;
+
+  /**
+   * Symmetrized graph for object queries.
+   */
+  private int[][] graph;
+
+  /**
+   * Number of distance computations.
+   */
+  private long distanceComputations;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param distanceFunction distance function
+   * @param k k
+   * @param rnd Random generator
+   * @param rho Sampling rate
+   * @param delta Early termination threshold
+   * @param iterations Maximum number of iterations
+   * @param search Candidate list size for object queries
+   */
+  public NNDescent(Relation<O> relation, DistanceFunction<? super O> distanceFunction, int k, RandomFactory rnd, double rho, double delta, int iterations, int search) {
+    super(relation, distanceFunction, k);
+    this.rnd = rnd;
+    this.rho = rho;
+    this.delta = delta;
+    this.iterations = iterations;
+    this.search = search;
+  }
+
+  @Override
+  protected void preprocess() {
+    ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size(), kk = Math.max(0, Math.min(k, size - 1));
+    neighbors = new int[size][kk];
+    distances = new double[size][kk];
+    isnew = new boolean[size][kk];
+    distanceComputations = 0;
+    Random random = rnd.getSingleThreadedRandom();
+
+    ParallelCore core = ParallelCore.getCore();
+    if(core.getParallelism() <= 1 || size < BLOCKSIZE << 1) {
+      core = null;
+    }
+    else {
+      core.connect();
+    }
+    try {
+      // Random initial graph.
+      for(int i = 0; i < size; i++) {
+        final int[] nb = neighbors[i];
+        for(int c = 0; c < kk;) {
+          final int j = random.nextInt(size);
+          if(j != i && indexOf(nb, c, j) < 0) {
+            nb[c++] = j;
+          }
+        }
+        Arrays.fill(isnew[i], true);
+      }
+      List<Callable<Long>> init = new ArrayList<>();
+      for(int start = 0; start < size; start += BLOCKSIZE) {
+        init.add(new InitBlock(start, Math.min(start + BLOCKSIZE, size)));
+      }
+      for(Long c : run(init, core)) {
+        distanceComputations += c;
+      }
+
+      final int samples = Math.max(1, (int) Math.ceil(rho * kk));
+      final long threshold = (long) Math.ceil(delta * size * kk);
+      IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("NN-Descent iterations", LOG) : null;
+      int iter = 0;
+      while(iter < iterations) {
+        ++iter;
+        int[][][] cands = sampleCandidates(samples, random);
+        long updates = localJoin(cands[0], cands[1], core);
+        LOG.incrementProcessed(prog);
+        if(LOG.isVerbose()) {
+          LOG.verbose("Iteration " + iter + ": " + updates + " updates.");
+        }
+        if(updates <= threshold) {
+          break;
+        }
+      }
+      LOG.setCompleted(prog);
+      LOG.statistics(new LongStatistic(NNDescent.class.getName() + ".iterations", iter));
+      LOG.statistics(new LongStatistic(NNDescent.class.getName() + ".distance-computations", distanceComputations));
+    }
+    finally {
+      if(core != null) {
+        core.disconnect();
+      }
+    }
+    isnew = null;
+
+    // Materialize the kNN lists, including the query object itself.
+    createStorage();
+    DBIDArrayIter it = ids.iter(), it2 = ids.iter();
+    for(int i = 0; i < size; i++) {
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      heap.insert(0., it.seek(i));
+      final int[] nb = neighbors[i];
+      final double[] nd = distances[i];
+      for(int c = 0; c < nb.length; c++) {
+        heap.insert(nd[c], it2.seek(nb[c]));
+      }
+      storage.put(it, heap.toKNNList());
+    }
+    buildSearchGraph();
+    distances = null;
+    neighbors = null;
+  }
+
+  /**
+   * Sample the old and new join candidates of every object, including reverse
+   * neighbors.
+   *
+   * @param samples Sample size
+   * @param random Random generator
+   * @return New and old candidates
+   */
+  private int[][][] sampleCandidates(int samples, Random random) {
+    final int size = neighbors.length;
+    TIntArrayList[] newc = new TIntArrayList[size], oldc = new TIntArrayList[size];
+    for(int i = 0; i < size; i++) {
+      newc[i] = new TIntArrayList();
+      oldc[i] = new TIntArrayList();
+    }
+    TIntArrayList tmp = new TIntArrayList();
+    for(int i = 0; i < size; i++) {
+      final int[] nb = neighbors[i];
+      final boolean[] nf = isnew[i];
+      tmp.resetQuick();
+      for(int c = 0; c < nb.length; c++) {
+        if(nf[c]) {
+          tmp.add(c);
+        }
+        else {
+          oldc[i].add(nb[c]);
+        }
+      }
+      sample(tmp, samples, random);
+      for(int j = 0; j < tmp.size(); j++) {
+        final int c = tmp.getQuick(j);
+        newc[i].add(nb[c]);
+        nf[c] = false;
+      }
+    }
+    // Reverse neighbors:
+    TIntArrayList[] rnewc = new TIntArrayList[size], roldc = new TIntArrayList[size];
+    for(int i = 0; i < size; i++) {
+      rnewc[i] = new TIntArrayList();
+      roldc[i] = new TIntArrayList();
+    }
+    for(int i = 0; i < size; i++) {
+      for(int j = 0; j < newc[i].size(); j++) {
+        rnewc[newc[i].getQuick(j)].add(i);
+      }
+      for(int j = 0; j < oldc[i].size(); j++) {
+        roldc[oldc[i].getQuick(j)].add(i);
+      }
+    }
+    int[][] newa = new int[size][], olda = new int[size][];
+    for(int i = 0; i < size; i++) {
+      sample(rnewc[i], samples, random);
+      sample(roldc[i], samples, random);
+      newa[i] = union(newc[i], rnewc[i]);
+      olda[i] = union(oldc[i], roldc[i]);
+      rnewc[i] = roldc[i] = newc[i] = oldc[i] = null;
+    }
+    return new int[][][] { newa, olda };
+  }
+
+  /**
+   * Perform the local joins, and update the graph.
+   *
+   * @param newc New candidates
+   * @param oldc Old candidates
+   * @param core Parallel core, may be {@code null}
+   * @return Number of updates
+   */
+  private long localJoin(int[][] newc, int[][] oldc, ParallelCore core) {
+    final int size = newc.length;
+    long updates = 0;
+    final int chunksize = BLOCKSIZE * BLOCKS_PER_CHUNK;
+    for(int cstart = 0; cstart < size; cstart += chunksize) {
+      final int cend = Math.min(cstart + chunksize, size);
+      List<Callable<JoinBlock>> blocks = new ArrayList<>();
+      for(int start = cstart; start < cend; start += BLOCKSIZE) {
+        blocks.add(new JoinBlock(newc, oldc, start, Math.min(start + BLOCKSIZE, cend)));
+      }
+      // Apply the updates in a deterministic order.
+      for(JoinBlock block : run(blocks, core)) {
+        distanceComputations += block.distcount;
+        for(int i = 0; i < block.a.size(); i++) {
+          final int a = block.a.getQuick(i), b = block.b.getQuick(i);
+          final double d = block.d.getQuick(i);
+          updates += insert(a, b, d) + insert(b, a, d);
+        }
+      }
+    }
+    return updates;
+  }
+
+  /**
+   * Try to insert a neighbor into the sorted neighbor list.
+   *
+   * @param a Object
+   * @param b Neighbor candidate
+   * @param d Distance
+   * @return 1 if the graph was updated, 0 otherwise
+   */
+  private int insert(int a, int b, double d) {
+    final int[] nb = neighbors[a];
+    final double[] nd = distances[a];
+    final boolean[] nf = isnew[a];
+    int pos = nb.length - 1;
+    if(pos < 0 || !(d < nd[pos]) || indexOf(nb, nb.length, b) >= 0) {
+      return 0;
+    }
+    for(; pos > 0 && nd[pos - 1] > d; pos--) {
+      nb[pos] = nb[pos - 1];
+      nd[pos] = nd[pos - 1];
+      nf[pos] = nf[pos - 1];
+    }
+    nb[pos] = b;
+    nd[pos] = d;
+    nf[pos] = true;
+    return 1;
+  }
+
+  /**
+   * Build the symmetrized graph used for object queries.
+   */
+  private void buildSearchGraph() {
+    final int size = neighbors.length;
+    TIntArrayList[] rev = new TIntArrayList[size];
+    for(int i = 0; i < size; i++) {
+      rev[i] = new TIntArrayList();
+    }
+    for(int i = 0; i < size; i++) {
+      for(int j : neighbors[i]) {
+        rev[j].add(i);
+      }
+    }
+    graph = new int[size][];
+    for(int i = 0; i < size; i++) {
+      graph[i] = union(new TIntArrayList(neighbors[i]), rev[i]);
+      rev[i] = null;
+    }
+  }
+
+  /**
+   * Keep a random sample of the list.
+   *
+   * @param list List
+   * @param samples Sample size
+   * @param random Random generator
+   */
+  private static void sample(TIntArrayList list, int samples, Random random) {
+    final int size = list.size();
+    if(size <= samples) {
+      return;
+    }
+    // Partial Fisher-Yates shuffle:
+    for(int i = 0; i < samples; i++) {
+      final int j = i + random.nextInt(size - i);
+      final int tmp = list.getQuick(i);
+      list.setQuick(i, list.getQuick(j));
+      list.setQuick(j, tmp);
+    }
+    list.remove(samples, size - samples);
+  }
+
+  /**
+   * Union of two lists, without duplicates.
+   *
+   * @param a First list
+   * @param b Second list
+   * @return Union
+   */
+  private static int[] union(TIntArrayList a, TIntArrayList b) {
+    TIntArrayList out = new TIntArrayList(a.size() + b.size());
+    out.addAll(a);
+    for(int i = 0; i < b.size(); i++) {
+      final int v = b.getQuick(i);
+      if(!out.contains(v)) {
+        out.add(v);
+      }
+    }
+    return out.toArray();
+  }
+
+  /**
+   * Find a value in the first elements of an array.
+   *
+   * @param arr Array
+   * @param len Number of elements to search
+   * @param v Value
+   * @return Position, or -1
+   */
+  private static int indexOf(int[] arr, int len, int v) {
+    for(int i = 0; i < len; i++) {
+      if(arr[i] == v) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Run a list of tasks, in parallel if possible.
+   *
+   * @param tasks Tasks to run
+   * @param core Parallel core, may be {@code null}
+   * @return Results, in the order of the tasks
+   */
+  private static <T> List<T> run(List<? extends Callable<T>> tasks, ParallelCore core) {
+    List<T> results = new ArrayList<>(tasks.size());
+    try {
+      if(core == null) {
+        for(Callable<T> task : tasks) {
+          results.add(task.call());
+        }
+        return results;
+      }
+      List<Future<T>> futures = new ArrayList<>(tasks.size());
+      for(Callable<T> task : tasks) {
+        futures.add(core.submit(task));
+      }
+      for(Future<T> fut : futures) {
+        results.add(fut.get());
+      }
+      return results;
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("Parallel NN-Descent failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("NN-Descent interrupted.");
+    }
+    catch(RuntimeException e) {
+      throw e;
+    }
+    catch(Exception e) {
+      throw new AbortException("NN-Descent failed.", e);
+    }
+  }
+
+  /**
+   * Compute the distances of the initial random graph.
+   *
+   * @author Erich Schubert
+   */
+  private class InitBlock implements Callable<Long> {
+    /**
+     * Block range.
+     */
+    private int start, end;
+
+    /**
+     * Constructor.
+     *
+     * @param start Block start
+     * @param end Block end
+     */
+    InitBlock(int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public Long call() {
+      DBIDArrayIter it = ids.iter(), it2 = ids.iter();
+      long count = 0;
+      for(int i = start; i < end; i++) {
+        final int[] nb = neighbors[i];
+        final double[] nd = distances[i];
+        it.seek(i);
+        for(int c = 0; c < nb.length; c++) {
+          nd[c] = distanceQuery.distance(it, it2.seek(nb[c]));
+        }
+        count += nb.length;
+        // Insertion sort by distance:
+        for(int c = 1; c < nb.length; c++) {
+          final int v = nb[c];
+          final double d = nd[c];
+          int p = c;
+          for(; p > 0 && nd[p - 1] > d; p--) {
+            nb[p] = nb[p - 1];
+            nd[p] = nd[p - 1];
+          }
+          nb[p] = v;
+          nd[p] = d;
+        }
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Local join of a block of objects. The graph is only read, and the
+   * candidate updates are collected for later application.
+   *
+   * @author Erich Schubert
+   */
+  private class JoinBlock implements Callable<JoinBlock> {
+    /**
+     * Join candidates.
+     */
+    private int[][] newc, oldc;
+
+    /**
+     * Block range.
+     */
+    private int start, end;
+
+    /**
+     * Proposed updates.
+     */
+    TIntArrayList a = new TIntArrayList(), b = new TIntArrayList();
+
+    /**
+     * Proposed distances.
+     */
+    TDoubleArrayList d = new TDoubleArrayList();
+
+    /**
+     * Number of distance computations.
+     */
+    long distcount;
+
+    /**
+     * Constructor.
+     *
+     * @param newc New candidates
+     * @param oldc Old candidates
+     * @param start Block start
+     * @param end Block end
+     */
+    JoinBlock(int[][] newc, int[][] oldc, int start, int end) {
+      this.newc = newc;
+      this.oldc = oldc;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public JoinBlock call() {
+      DBIDArrayIter it = ids.iter(), it2 = ids.iter();
+      for(int v = start; v < end; v++) {
+        final int[] nv = newc[v], ov = oldc[v];
+        for(int i = 0; i < nv.length; i++) {
+          final int u1 = nv[i];
+          it.seek(u1);
+          for(int j = i + 1; j < nv.length; j++) {
+            propose(u1, nv[j], it, it2);
+          }
+          for(int j = 0; j < ov.length; j++) {
+            if(ov[j] != u1) {
+              propose(u1, ov[j], it, it2);
+            }
+          }
+        }
+      }
+      return this;
+    }
+
+    /**
+     * Compute a distance, and keep the pair if it may improve the graph.
+     *
+     * @param u1 First object
+     * @param u2 Second object
+     * @param it Iterator positioned at the first object
+     * @param it2 Iterator for the second object
+     */
+    private void propose(int u1, int u2, DBIDArrayIter it, DBIDArrayIter it2) {
+      final double dist = distanceQuery.distance(it, it2.seek(u2));
+      ++distcount;
+      if(dist < kDistance(u1) || dist < kDistance(u2)) {
+        a.add(u1);
+        b.add(u2);
+        d.add(dist);
+      }
+    }
+
+    /**
+     * Current k-distance of an object.
+     *
+     * @param u Object
+     * @return k-distance
+     */
+    private double kDistance(int u) {
+      final double[] nd = distances[u];
+      return nd.length > 0 ? nd[nd.length - 1] : Double.NEGATIVE_INFINITY;
+    }
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distQ, Object... hints) {
+    for(Object hint : hints) {
+      if(DatabaseQuery.HINT_EXACT.equals(hint)) {
+        return null;
+      }
+    }
+    if(!this.distanceFunction.equals(distQ.getDistanceFunction())) {
+      return null;
+    }
+    for(Object hint : hints) {
+      if(hint instanceof Integer) {
+        if(((Integer) hint) > k) {
+          return null;
+        }
+        break;
+      }
+    }
+    return new NNDescentKNNQuery(relation);
+  }
+
+  /**
+   * kNN query using the materialized graph for database objects, and a greedy
+   * graph search for other objects.
+   *
+   * @author Erich Schubert
+   */
+  public class NNDescentKNNQuery extends PreprocessorKNNQuery<O> {
+    /**
+     * Constructor.
+     *
+     * @param relation Relation to query
+     */
+    public NNDescentKNNQuery(Relation<O> relation) {
+      super(relation, NNDescent.this);
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      if(storage == null) {
+        preprocess();
+      }
+      final int size = graph.length, ef = Math.min(size, Math.max(k, search));
+      DBIDArrayIter it = ids.iter();
+      TIntHashSet visited = new TIntHashSet(ef << 2);
+      DoubleIntegerMinHeap candidates = new DoubleIntegerMinHeap(ef);
+      DoubleIntegerMaxHeap results = new DoubleIntegerMaxHeap(ef);
+      // Evenly spread entry points, to reach all components of the graph.
+      for(int e = 0; e < ef; e++) {
+        final int off = (int) (e * (long) size / ef);
+        if(visited.add(off)) {
+          final double dist = distanceQuery.distance(obj, it.seek(off));
+          candidates.add(dist, off);
+          results.add(dist, off, ef);
+        }
+      }
+      while(!candidates.isEmpty()) {
+        final double cdist = candidates.peekKey();
+        final int c = candidates.peekValue();
+        candidates.poll();
+        if(results.size() >= ef && cdist > results.peekKey()) {
+          break;
+        }
+        for(int n : graph[c]) {
+          if(!visited.add(n)) {
+            continue;
+          }
+          final double dist = distanceQuery.distance(obj, it.seek(n));
+          if(results.size() < ef || dist < results.peekKey()) {
+            candidates.add(dist, n);
+            results.add(dist, n, ef);
+          }
+        }
+      }
+      KNNHeap heap = DBIDUtil.newHeap(k);
+      for(; !results.isEmpty(); results.poll()) {
+        heap.insert(results.peekKey(), it.seek(results.peekValue()));
+      }
+      return heap.toKNNList();
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  @Override
+  public String getLongName() {
+    return "NN-Descent kNN graph";
+  }
+
+  @Override
+  public String getShortName() {
+    return "nn-descent";
+  }
+
+  @Override
+  public void logStatistics() {
+    LOG.statistics(new LongStatistic(NNDescent.class.getName() + ".distance-computations", distanceComputations));
+  }
+
+  /**
+   * The parameterizable factory.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.landmark
+   * @apiviz.stereotype factory
+   * @apiviz.uses NNDescent oneway - - «create»
+   *
+   * @param <O> The object type
+   */
+  public static class Factory<O> extends AbstractMaterializeKNNPreprocessor.Factory<O> {
+    /**
+     * Random generator
+     */
+    private final RandomFactory rnd;
+
+    /**
+     * Sampling rate of new candidates.
+     */
+    private final double rho;
+
+    /**
+     * Early termination threshold.
+     */
+    private final double delta;
+
+    /**
+     * Maximum number of iterations.
+     */
+    private final int iterations;
+
+    /**
+     * Size of the candidate list for object queries.
+     */
+    private final int search;
+
+    /**
+     * Constructor.
+     *
+     * @param k K
+     * @param distanceFunction distance function
+     * @param rnd Random generator
+     * @param rho Sampling rate
+     * @param delta Early termination threshold
+     * @param iterations Maximum number of iterations
+     * @param search Candidate list size for object queries
+     */
+    public Factory(int k, DistanceFunction<? super O> distanceFunction, RandomFactory rnd, double rho, double delta, int iterations, int search) {
+      super(k, distanceFunction);
+      this.rnd = rnd;
+      this.rho = rho;
+      this.delta = delta;
+      this.iterations = iterations;
+      this.search = search;
+    }
+
+    @Override
+    public NNDescent<O> instantiate(Relation<O> relation) {
+      return new NNDescent<>(relation, distanceFunction, k, rnd, rho, delta, iterations, search);
+    }
+
+    /**
+     * Parameterization class
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     *
+     * @param <O> Object type
+     */
+    public static class Parameterizer<O> extends AbstractMaterializeKNNPreprocessor.Factory.Parameterizer<O> {
+      /**
+       * Random number generator seed.
+       */
+      public static final OptionID SEED_ID = new OptionID("nndescent.seed", "The random number seed.");
+
+      /**
+       * Sampling rate of new candidates.
+       */
+      public static final OptionID RHO_ID = new OptionID("nndescent.rho", "Sampling rate of the join candidates; smaller values are faster, larger values give better recall.");
+
+      /**
+       * Early termination threshold.
+       */
+      public static final OptionID DELTA_ID = new OptionID("nndescent.delta", "Stop when fewer than delta * n * k neighbors were updated in an iteration.");
+
+      /**
+       * Maximum number of iterations.
+       */
+      public static final OptionID ITER_ID = new OptionID("nndescent.iterations", "Maximum number of iterations.");
+
+      /**
+       * Size of the candidate list for object queries.
+       */
+      public static final OptionID SEARCH_ID = new OptionID("nndescent.search", "Candidate list size of the graph search for non-database objects; larger values give better recall.");
+
+      /**
+       * Random generator
+       */
+      private RandomFactory rnd;
+
+      /**
+       * Sampling rate of new candidates.
+       */
+      private double rho;
+
+      /**
+       * Early termination threshold.
+       */
+      private double delta;
+
+      /**
+       * Maximum number of iterations.
+       */
+      private int iterations;
+
+      /**
+       * Size of the candidate list for object queries.
+       */
+      private int search;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        RandomParameter rndP = new RandomParameter(SEED_ID);
+        if(config.grab(rndP)) {
+          rnd = rndP.getValue();
+        }
+        DoubleParameter rhoP = new DoubleParameter(RHO_ID, 1.) //
+        .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE) //
+        .addConstraint(CommonConstraints.LESS_EQUAL_ONE_DOUBLE);
+        if(config.grab(rhoP)) {
+          rho = rhoP.doubleValue();
+        }
+        DoubleParameter deltaP = new DoubleParameter(DELTA_ID, 0.001) //
+        .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE);
+        if(config.grab(deltaP)) {
+          delta = deltaP.doubleValue();
+        }
+        IntParameter iterP = new IntParameter(ITER_ID, 50) //
+        .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(iterP)) {
+          iterations = iterP.intValue();
+        }
+        IntParameter searchP = new IntParameter(SEARCH_ID, 100) //
+        .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(searchP)) {
+          search = searchP.intValue();
+        }
+      }
+
+      @Override
+      protected NNDescent.Factory<O> makeInstance() {
+        return new NNDescent.Factory<>(k, distanceFunction, rnd, rho, delta, iterations, search);
+      }
+    }
+  }
+}
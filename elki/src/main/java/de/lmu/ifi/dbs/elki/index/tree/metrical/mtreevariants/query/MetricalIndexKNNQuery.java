@@ -27,6 +27,7 @@ import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.ThreadSafeQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
@@ -47,7 +48,7 @@ import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
  * 
  * @param <O> Object type
  */
-public class MetricalIndexKNNQuery<O> extends AbstractDistanceKNNQuery<O> {
+public class MetricalIndexKNNQuery<O> extends AbstractDistanceKNNQuery<O> implements ThreadSafeQuery {
   /**
    * The index to use
    */
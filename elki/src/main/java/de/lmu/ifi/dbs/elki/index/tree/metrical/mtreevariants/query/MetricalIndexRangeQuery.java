@@ -25,6 +25,7 @@ package de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.query;
 
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.ThreadSafeQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
@@ -42,7 +43,7 @@ import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.MTreeEntry;
  * 
  * @param <O> Object type
  */
-public class MetricalIndexRangeQuery<O> extends AbstractDistanceRangeQuery<O> {
+public class MetricalIndexRangeQuery<O> extends AbstractDistanceRangeQuery<O> implements ThreadSafeQuery {
   /**
    * The index to use
    */
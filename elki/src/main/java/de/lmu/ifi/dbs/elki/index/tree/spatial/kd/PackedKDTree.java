@@ -0,0 +1,702 @@
+package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.AbstractDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.AbstractDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndex;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.index.KNNIndex;
+import de.lmu.ifi.dbs.elki.index.RangeIndex;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.Alias;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+
+/**
+ * Static in-memory k-d-tree, with the coordinates copied into a single
+ * contiguous array in tree order.
+ *
+ * In contrast to {@link SmallMemoryKDTree}, queries do not need to access the
+ * vector objects of the relation at all, but scan the packed coordinate array
+ * directly. This costs {@code n * dim} doubles of memory, but is considerably
+ * faster for low-dimensional data. The tree is implicit (the median of each
+ * range is the splitting element), and built in O(n log n) by partitioning
+ * with QuickSelect; independent subtrees are built in parallel.
+ *
+ * Currently, only Euclidean and squared Euclidean distance are supported.
+ *
+ * Reference:
+ * <p>
+ * J. L. Bentley<br/>
+ * Multidimensional binary search trees used for associative searching<br />
+ * Communications of the ACM, Vol. 18 Issue 9, Sept. 1975
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.has PackedKDTreeKNNQuery
+ * @apiviz.has PackedKDTreeRangeQuery
+ * @apiviz.uses ParallelCore
+ *
+ * @param <O> Vector type
+ */
+@Reference(authors = "J. L. Bentley", //
+title = "Multidimensional binary search trees used for associative searching", //
+booktitle = "Communications of the ACM, Vol. 18 Issue 9, Sept. 1975", //
+url = "http://dx.doi.org/10.1145/361002.361007")
+public class PackedKDTree<O extends NumberVector> extends AbstractIndex<O>implements KNNIndex<O>, RangeIndex<O> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(PackedKDTree.class);
+
+  /**
+   * Minimum size of a subtree to be built by a separate task.
+   */
+  private static final int PARALLEL_MIN = 1 << 13;
+
+  /**
+   * Ranges smaller than this are partitioned using insertion sort.
+   */
+  private static final int SMALL = 16;
+
+  /**
+   * Slack for squaring distances, to not lose ties to rounding errors.
+   */
+  private static final double SLACK = 1 + 1e-12;
+
+  /**
+   * Object ids, in tree order.
+   */
+  ArrayModifiableDBIDs sorted = null;
+
+  /**
+   * Coordinates, in tree order, row-major.
+   */
+  double[] data = null;
+
+  /**
+   * The number of dimensions.
+   */
+  int dims = -1;
+
+  /**
+   * Maximum size of leaf nodes.
+   */
+  int leafsize;
+
+  /**
+   * Build the tree in parallel.
+   */
+  boolean parallel;
+
+  /**
+   * Counter for distance computations.
+   */
+  final Counter distcalc;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Relation to index
+   * @param leafsize Maximum size of leaf nodes
+   * @param parallel Build the tree in parallel
+   */
+  public PackedKDTree(Relation<O> relation, int leafsize, boolean parallel) {
+    super(relation);
+    this.leafsize = leafsize;
+    this.parallel = parallel;
+    assert(leafsize >= 1);
+    this.distcalc = LOG.isStatistics() ? LOG.newCounter(this.getClass().getName() + ".distancecalcs") : null;
+  }
+
+  @Override
+  public void initialize() {
+    final int size = relation.size();
+    dims = RelationUtil.dimensionality(relation);
+    if(size * (long) dims > 0x7FFF_FFFAL) {
+      throw new AbortException("Packed k-d-tree data (" + size + " x " + dims + " values) exceeds the Java array size limit.");
+    }
+    sorted = DBIDUtil.newArray(size);
+    data = new double[size * dims];
+    int off = 0;
+    for(DBIDIter it = relation.iterDBIDs(); it.valid(); it.advance(), off += dims) {
+      sorted.add(it);
+      NumberVector v = relation.get(it);
+      for(int d = 0; d < dims; d++) {
+        data[off + d] = v.doubleValue(d);
+      }
+    }
+    Duration duration = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".construction").begin() : null;
+    if(parallel && size >= 2 * PARALLEL_MIN && ParallelCore.getCore().getParallelism() > 1) {
+      buildParallel(size);
+    }
+    else if(size > 0) {
+      buildTree(0, size, 0, null, 0);
+    }
+    if(duration != null) {
+      LOG.statistics(duration.end());
+    }
+  }
+
+  /**
+   * Build the tree in parallel: the top levels are partitioned by the calling
+   * thread, the remaining subtrees are independent, and are built by worker
+   * threads.
+   *
+   * @param size Data set size
+   */
+  private void buildParallel(int size) {
+    final ParallelCore core = ParallelCore.getCore();
+    // Aim for a few tasks per thread, for load balancing.
+    final int tasksize = Math.max(PARALLEL_MIN, size / (core.getParallelism() << 2));
+    List<Callable<Void>> tasks = new ArrayList<>();
+    buildTree(0, size, 0, tasks, tasksize);
+    core.connect();
+    try {
+      List<Future<Void>> futures = new ArrayList<>(tasks.size());
+      for(Callable<Void> task : tasks) {
+        futures.add(core.submit(task));
+      }
+      for(Future<Void> fut : futures) {
+        fut.get();
+      }
+    }
+    catch(ExecutionException e) {
+      throw new AbortException("k-d-tree construction failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("k-d-tree construction interrupted.");
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Recursively build the tree by partial sorting. O(n log n) complexity.
+   *
+   * @param left Interval minimum
+   * @param right Interval maximum
+   * @param axis Current splitting axis
+   * @param tasks Collect subtrees smaller than {@code tasksize} here, instead
+   *        of building them (may be {@code null})
+   * @param tasksize Subtree size for parallel tasks
+   */
+  private void buildTree(final int left, final int right, final int axis, List<Callable<Void>> tasks, int tasksize) {
+    assert(left < right);
+    if(right - left <= leafsize) {
+      return;
+    }
+    if(tasks != null && right - left < tasksize) {
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          buildTree(left, right, axis, null, 0);
+          return null;
+        }
+      });
+      return;
+    }
+    int middle = (left + right) >>> 1;
+    quickSelect(left, right, middle, axis);
+    final int next = (axis + 1) % dims;
+    if(left < middle) {
+      buildTree(left, middle, next, tasks, tasksize);
+    }
+    ++middle;
+    if(middle < right) {
+      buildTree(middle, right, next, tasks, tasksize);
+    }
+  }
+
+  /**
+   * QuickSelect on the packed rows: afterwards, the row at {@code rank} has
+   * the median value in the given axis, all rows before it are less or equal,
+   * and all rows after it are greater or equal.
+   *
+   * @param start Interval start
+   * @param end Interval end (exclusive)
+   * @param rank Rank to select
+   * @param axis Axis to partition
+   */
+  private void quickSelect(int start, int end, int rank, int axis) {
+    while(end - start > SMALL) {
+      // Median of three pivot, moved to the end.
+      final int middle = (start + end) >>> 1;
+      final int last = end - 1;
+      if(value(middle, axis) < value(start, axis)) {
+        swap(start, middle);
+      }
+      if(value(last, axis) < value(start, axis)) {
+        swap(start, last);
+      }
+      if(value(middle, axis) < value(last, axis)) {
+        swap(middle, last);
+      }
+      final double pivot = value(last, axis);
+      // Hoare-style partitioning of [start+1, last)
+      int i = start, j = last;
+      while(true) {
+        while(value(++i, axis) < pivot) {
+          // Advance
+        }
+        while(j > i && value(--j, axis) > pivot) {
+          // Retreat
+        }
+        if(i >= j) {
+          break;
+        }
+        swap(i, j);
+      }
+      swap(i, last);
+      if(rank < i) {
+        end = i;
+      }
+      else if(rank > i) {
+        start = i + 1;
+      }
+      else {
+        return;
+      }
+    }
+    // Insertion sort for small ranges.
+    for(int i = start + 1; i < end; i++) {
+      for(int j = i; j > start && value(j - 1, axis) > value(j, axis); j--) {
+        swap(j, j - 1);
+      }
+    }
+  }
+
+  /**
+   * Get a coordinate of a packed row.
+   *
+   * @param row Row number
+   * @param axis Axis
+   * @return Value
+   */
+  private double value(int row, int axis) {
+    return data[row * dims + axis];
+  }
+
+  /**
+   * Swap two rows, including their object ids.
+   *
+   * @param a First row
+   * @param b Second row
+   */
+  private void swap(int a, int b) {
+    sorted.swap(a, b);
+    for(int oa = a * dims, ob = b * dims, e = oa + dims; oa < e; oa++, ob++) {
+      final double tmp = data[oa];
+      data[oa] = data[ob];
+      data[ob] = tmp;
+    }
+  }
+
+  /**
+   * Squared Euclidean distance of a query to a packed row.
+   *
+   * @param query Query coordinates
+   * @param row Row number
+   * @return Squared distance
+   */
+  private double squaredDistance(double[] query, int row) {
+    countDistanceComputation();
+    double agg = 0.;
+    for(int d = 0, off = row * dims; d < dims; d++, off++) {
+      final double delta = query[d] - data[off];
+      agg += delta * delta;
+    }
+    return agg;
+  }
+
+  @Override
+  public String getLongName() {
+    return "packed kd-tree";
+  }
+
+  @Override
+  public String getShortName() {
+    return "packed-kd-tree";
+  }
+
+  @Override
+  public void logStatistics() {
+    if(distcalc != null) {
+      LOG.statistics(distcalc);
+    }
+  }
+
+  /**
+   * Count a distance computation.
+   */
+  protected void countDistanceComputation() {
+    if(distcalc != null) {
+      distcalc.increment();
+    }
+  }
+
+  @Override
+  public KNNQuery<O> getKNNQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    DistanceFunction<? super O> df = distanceQuery.getDistanceFunction();
+    if(df instanceof EuclideanDistanceFunction) {
+      return new PackedKDTreeKNNQuery(distanceQuery, false);
+    }
+    if(df instanceof SquaredEuclideanDistanceFunction) {
+      return new PackedKDTreeKNNQuery(distanceQuery, true);
+    }
+    return null;
+  }
+
+  @Override
+  public RangeQuery<O> getRangeQuery(DistanceQuery<O> distanceQuery, Object... hints) {
+    DistanceFunction<? super O> df = distanceQuery.getDistanceFunction();
+    if(df instanceof EuclideanDistanceFunction) {
+      return new PackedKDTreeRangeQuery(distanceQuery, false);
+    }
+    if(df instanceof SquaredEuclideanDistanceFunction) {
+      return new PackedKDTreeRangeQuery(distanceQuery, true);
+    }
+    return null;
+  }
+
+  /**
+   * kNN query for the packed k-d-tree.
+   *
+   * The search uses squared distances internally, and only takes the square
+   * root for candidates that enter the heap.
+   *
+   * @author Erich Schubert
+   */
+  public class PackedKDTreeKNNQuery extends AbstractDistanceKNNQuery<O> {
+    /**
+     * Report squared distances.
+     */
+    private boolean squared;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     * @param squared Report squared distances
+     */
+    public PackedKDTreeKNNQuery(DistanceQuery<O> distanceQuery, boolean squared) {
+      super(distanceQuery);
+      this.squared = squared;
+    }
+
+    @Override
+    public KNNList getKNNForObject(O obj, int k) {
+      final KNNHeap knns = DBIDUtil.newHeap(k);
+      if(!sorted.isEmpty()) {
+        kdKNNSearch(0, sorted.size(), 0, obj.toArray(), knns, sorted.iter(), Double.POSITIVE_INFINITY);
+      }
+      return knns.toKNNList();
+    }
+
+    /**
+     * Insert a row into the heap, if it is close enough.
+     *
+     * @param query Query coordinates
+     * @param row Row number
+     * @param knns kNN heap
+     * @param iter Iterator
+     * @param maxdist Current squared upper bound of kNN distance
+     * @return New squared upper bound of kNN distance.
+     */
+    private double insert(double[] query, int row, KNNHeap knns, DBIDArrayIter iter, double maxdist) {
+      final double dist = squaredDistance(query, row);
+      if(dist <= maxdist) {
+        knns.insert(squared ? dist : Math.sqrt(dist), iter.seek(row));
+        final double kdist = knns.getKNNDistance();
+        return squared ? kdist : kdist * kdist * SLACK;
+      }
+      return maxdist;
+    }
+
+    /**
+     * Perform a kNN search on the kd-tree.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @param axis Current splitting axis
+     * @param query Query coordinates
+     * @param knns kNN heap
+     * @param iter Iterator variable (reduces memory footprint!)
+     * @param maxdist Current squared upper bound of kNN distance.
+     * @return New squared upper bound of kNN distance.
+     */
+    private double kdKNNSearch(int left, int right, int axis, double[] query, KNNHeap knns, DBIDArrayIter iter, double maxdist) {
+      if(right - left <= leafsize) {
+        for(int row = left; row < right; row++) {
+          maxdist = insert(query, row, knns, iter, maxdist);
+        }
+        return maxdist;
+      }
+      final int middle = (left + right) >>> 1;
+      final double delta = value(middle, axis) - query[axis];
+      final double delta2 = delta * delta;
+      final int next = (axis + 1) % dims;
+      // Descend into the side containing the query first:
+      if(delta >= 0) {
+        if(left < middle) {
+          maxdist = kdKNNSearch(left, middle, next, query, knns, iter, maxdist);
+        }
+        if(delta2 <= maxdist) {
+          maxdist = insert(query, middle, knns, iter, maxdist);
+          if(middle + 1 < right && delta2 <= maxdist) {
+            maxdist = kdKNNSearch(middle + 1, right, next, query, knns, iter, maxdist);
+          }
+        }
+      }
+      else {
+        if(middle + 1 < right) {
+          maxdist = kdKNNSearch(middle + 1, right, next, query, knns, iter, maxdist);
+        }
+        if(delta2 <= maxdist) {
+          maxdist = insert(query, middle, knns, iter, maxdist);
+          if(left < middle && delta2 <= maxdist) {
+            maxdist = kdKNNSearch(left, middle, next, query, knns, iter, maxdist);
+          }
+        }
+      }
+      return maxdist;
+    }
+  }
+
+  /**
+   * Range query for the packed k-d-tree.
+   *
+   * @author Erich Schubert
+   */
+  public class PackedKDTreeRangeQuery extends AbstractDistanceRangeQuery<O> {
+    /**
+     * Report squared distances.
+     */
+    private boolean squared;
+
+    /**
+     * Constructor.
+     *
+     * @param distanceQuery Distance query
+     * @param squared Report squared distances
+     */
+    public PackedKDTreeRangeQuery(DistanceQuery<O> distanceQuery, boolean squared) {
+      super(distanceQuery);
+      this.squared = squared;
+    }
+
+    @Override
+    public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList result) {
+      if(!sorted.isEmpty()) {
+        kdRangeSearch(0, sorted.size(), 0, obj.toArray(), result, sorted.iter(), range, squared ? range : range * range * SLACK);
+      }
+    }
+
+    /**
+     * Perform a range search on the kd-tree.
+     *
+     * @param left Subtree begin
+     * @param right Subtree end (exclusive)
+     * @param axis Current splitting axis
+     * @param query Query coordinates
+     * @param res Result list
+     * @param iter Iterator variable (reduces memory footprint!)
+     * @param range Query radius
+     * @param radius Query radius, in squared distances
+     */
+    private void kdRangeSearch(int left, int right, int axis, double[] query, ModifiableDoubleDBIDList res, DBIDArrayIter iter, double range, double radius) {
+      if(right - left <= leafsize) {
+        for(int row = left; row < right; row++) {
+          check(query, row, res, iter, range, radius);
+        }
+        return;
+      }
+      final int middle = (left + right) >>> 1;
+      final double delta = value(middle, axis) - query[axis];
+      final boolean close = (delta * delta <= radius);
+      final int next = (axis + 1) % dims;
+      if(close) {
+        check(query, middle, res, iter, range, radius);
+      }
+      if(left < middle && (delta >= 0 || close)) {
+        kdRangeSearch(left, middle, next, query, res, iter, range, radius);
+      }
+      if(middle + 1 < right && (delta <= 0 || close)) {
+        kdRangeSearch(middle + 1, right, next, query, res, iter, range, radius);
+      }
+    }
+
+    /**
+     * Add a row to the result, if it is within the query radius.
+     *
+     * @param query Query coordinates
+     * @param row Row number
+     * @param res Result list
+     * @param iter Iterator
+     * @param range Query radius
+     * @param radius Query radius, in squared distances
+     */
+    private void check(double[] query, int row, ModifiableDoubleDBIDList res, DBIDArrayIter iter, double range, double radius) {
+      final double dist = squaredDistance(query, row);
+      if(dist <= radius) {
+        final double d = squared ? dist : Math.sqrt(dist);
+        if(d <= range) {
+          res.add(d, iter.seek(row));
+        }
+      }
+    }
+  }
+
+  /**
+   * Factory class
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.stereotype factory
+   * @apiviz.has PackedKDTree
+   *
+   * @param <O> Vector type
+   */
+  @Alias({ "packedkd" })
+  public static class Factory<O extends NumberVector> implements IndexFactory<O, PackedKDTree<O>> {
+    /**
+     * Maximum size of leaf nodes.
+     */
+    int leafsize;
+
+    /**
+     * Build the tree in parallel.
+     */
+    boolean parallel;
+
+    /**
+     * Constructor.
+     */
+    public Factory() {
+      this(8, true);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param leafsize Maximum size of leaf nodes.
+     * @param parallel Build the tree in parallel
+     */
+    public Factory(int leafsize, boolean parallel) {
+      super();
+      this.leafsize = leafsize;
+      this.parallel = parallel;
+    }
+
+    @Override
+    public PackedKDTree<O> instantiate(Relation<O> relation) {
+      return new PackedKDTree<>(relation, leafsize, parallel);
+    }
+
+    @Override
+    public TypeInformation getInputTypeRestriction() {
+      return TypeUtil.NUMBER_VECTOR_FIELD;
+    }
+
+    /**
+     * Parameterization class.
+     *
+     * @author Erich Schubert
+     *
+     * @apiviz.exclude
+     */
+    public static class Parameterizer<O extends NumberVector> extends AbstractParameterizer {
+      /**
+       * Option to disable parallel construction.
+       */
+      public static final OptionID SERIAL_ID = new OptionID("kd.serial", "Build the k-d-tree in a single thread.");
+
+      /**
+       * Maximum size of leaf nodes.
+       */
+      int leafsize;
+
+      /**
+       * Build the tree in parallel.
+       */
+      boolean parallel;
+
+      @Override
+      protected void makeOptions(Parameterization config) {
+        super.makeOptions(config);
+        IntParameter leafP = new IntParameter(MinimalisticMemoryKDTree.Factory.Parameterizer.LEAFSIZE_P, 8) //
+        .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+        if(config.grab(leafP)) {
+          leafsize = leafP.intValue();
+        }
+        Flag serialF = new Flag(SERIAL_ID);
+        if(config.grab(serialF)) {
+          parallel = !serialF.isTrue();
+        }
+      }
+
+      @Override
+      protected Factory<O> makeInstance() {
+        return new Factory<>(leafsize, parallel);
+      }
+    }
+  }
+}
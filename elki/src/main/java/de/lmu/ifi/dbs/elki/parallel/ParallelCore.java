@@ -90,6 +90,23 @@ public class ParallelCore {
     return executor != null ? executor.getMaximumPoolSize() : processors;
   }
 
+  /**
+   * Set the desired level of parallelism.
+   *
+   * This may only be changed while no submitter is connected.
+   *
+   * @param processors Number of threads to run in parallel
+   */
+  public synchronized void setParallelism(int processors) {
+    if(connected.get() > 0) {
+      throw new IllegalStateException("Cannot change the parallelism while tasks are running.");
+    }
+    this.processors = processors;
+    if(executor != null) {
+      executor.setMaximumPoolSize(processors);
+    }
+  }
+
   /**
    * Submit a task to the executor core.
    * 
@@ -0,0 +1,317 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * A bounded page buffer using the CLOCK (second chance) replacement strategy.
+ *
+ * In contrast to {@link LRUCache}, a cache hit does not need to reorder a
+ * linked list, but only sets a reference bit. The cache slots are stored in
+ * plain arrays, and the clock hand sweeps over them to find a page that has not
+ * been referenced since the last sweep. Dirty pages are written back to the
+ * underlying page file when they are evicted, or when the cache is flushed.
+ * As cache misses modify the shared slot table, all operations are
+ * synchronized.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ *
+ * @apiviz.uses PageFile
+ *
+ * @param <P> Page type
+ */
+public class ClockCache<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(ClockCache.class);
+
+  /**
+   * Marker for unused slots.
+   */
+  private static final int NO_PAGE = -1;
+
+  /**
+   * Cache size in bytes.
+   */
+  protected int cacheSizeBytes;
+
+  /**
+   * The maximum number of pages in this cache.
+   */
+  protected int cacheSize;
+
+  /**
+   * The underlying file of this cache.
+   */
+  protected PageFile<P> file;
+
+  /**
+   * Map from page ids to cache slots.
+   */
+  private TIntIntMap slots;
+
+  /**
+   * Page id stored in each slot.
+   */
+  private int[] ids;
+
+  /**
+   * Page stored in each slot.
+   */
+  private P[] pages;
+
+  /**
+   * Reference bits of the slots.
+   */
+  private boolean[] referenced;
+
+  /**
+   * Number of occupied slots.
+   */
+  private int used;
+
+  /**
+   * Current position of the clock hand.
+   */
+  private int hand;
+
+  /**
+   * Cache hit and miss counters.
+   */
+  private Counter hits, misses;
+
+  /**
+   * Constructor.
+   *
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   */
+  public ClockCache(int cacheSizeBytes, PageFile<P> file) {
+    super();
+    this.file = file;
+    this.cacheSizeBytes = cacheSizeBytes;
+    this.hits = LOG.isStatistics() ? LOG.newCounter(this.getClass().getName() + ".hits") : null;
+    this.misses = LOG.isStatistics() ? LOG.newCounter(this.getClass().getName() + ".misses") : null;
+  }
+
+  @Override
+  public synchronized P readPage(int pageID) {
+    countRead();
+    final int slot = slots.get(pageID);
+    if(slot != NO_PAGE) {
+      if(hits != null) {
+        hits.increment();
+      }
+      referenced[slot] = true;
+      return pages[slot];
+    }
+    if(misses != null) {
+      misses.increment();
+    }
+    P page = file.readPage(pageID);
+    if(page != null) {
+      insert(pageID, page);
+    }
+    return page;
+  }
+
+  @Override
+  protected synchronized void writePage(int pageID, P page) {
+    countWrite();
+    page.setDirty(true);
+    final int slot = slots.get(pageID);
+    if(slot != NO_PAGE) {
+      pages[slot] = page;
+      referenced[slot] = true;
+      return;
+    }
+    insert(pageID, page);
+  }
+
+  /**
+   * Insert a page into the cache, evicting another page if necessary.
+   *
+   * @param pageID Page id
+   * @param page Page
+   */
+  private void insert(int pageID, P page) {
+    final int slot = (used < cacheSize) ? used++ : evict();
+    ids[slot] = pageID;
+    pages[slot] = page;
+    referenced[slot] = true;
+    slots.put(pageID, slot);
+  }
+
+  /**
+   * Advance the clock hand until an unreferenced slot is found, and evict its
+   * page.
+   *
+   * @return Free slot
+   */
+  private int evict() {
+    while(true) {
+      final int slot = hand;
+      hand = (hand + 1) % cacheSize;
+      if(ids[slot] == NO_PAGE) {
+        return slot;
+      }
+      if(referenced[slot]) {
+        referenced[slot] = false;
+        continue;
+      }
+      expirePage(pages[slot]);
+      slots.remove(ids[slot]);
+      ids[slot] = NO_PAGE;
+      pages[slot] = null;
+      return slot;
+    }
+  }
+
+  /**
+   * Write page through to disk, if it was modified.
+   *
+   * @param page page
+   */
+  protected void expirePage(P page) {
+    if(page.isDirty()) {
+      if(LOG.isDebuggingFine()) {
+        LOG.debugFine("Write to backing:" + page.getPageID());
+      }
+      file.writePage(page);
+    }
+  }
+
+  @Override
+  public synchronized void deletePage(int pageID) {
+    countWrite();
+    final int slot = slots.remove(pageID);
+    if(slot != NO_PAGE) {
+      // Keep the slot for reuse by the clock hand.
+      ids[slot] = NO_PAGE;
+      pages[slot] = null;
+      referenced[slot] = false;
+    }
+    file.deletePage(pageID);
+  }
+
+  @Override
+  public int setPageID(P page) {
+    return file.setPageID(page);
+  }
+
+  @Override
+  public int getNextPageID() {
+    return file.getNextPageID();
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    file.setNextPageID(nextPageID);
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public boolean initialize(PageHeader header) {
+    boolean created = file.initialize(header);
+    // Compute the actual cache size.
+    this.cacheSize = cacheSizeBytes / header.getPageSize();
+    if(this.cacheSize <= 0) {
+      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
+    }
+    if(LOG.isDebugging()) {
+      LOG.debug("CLOCK cache size is " + cacheSize + " pages.");
+    }
+    this.slots = new TIntIntHashMap(cacheSize, 0.5f, NO_PAGE, NO_PAGE);
+    this.ids = new int[cacheSize];
+    this.pages = (P[]) new Page[cacheSize];
+    this.referenced = new boolean[cacheSize];
+    this.used = 0;
+    this.hand = 0;
+    return created;
+  }
+
+  /**
+   * Flushes this cache by writing all modified pages to the underlying file.
+   * The pages remain in the cache.
+   */
+  public synchronized void flush() {
+    for(int i = 0; i < used; i++) {
+      if(ids[i] != NO_PAGE) {
+        expirePage(pages[i]);
+      }
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    flush();
+    clear();
+    file.close();
+  }
+
+  /**
+   * Clears this cache, without writing back modified pages.
+   */
+  @Override
+  public synchronized void clear() {
+    slots.clear();
+    for(int i = 0; i < used; i++) {
+      ids[i] = NO_PAGE;
+      pages[i] = null;
+      referenced[i] = false;
+    }
+    used = 0;
+    hand = 0;
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    if(hits != null) {
+      LOG.statistics(hits);
+    }
+    if(misses != null) {
+      LOG.statistics(misses);
+    }
+    file.logStatistics();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
@@ -38,6 +38,8 @@ import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
  * the cache is full and another object is added, the LRU (least recently used)
  * object is dropped.
  * 
+ * As every read updates the access order, all operations are synchronized.
+ * 
  * @author Elke Achtert
  * @since 0.2
  * 
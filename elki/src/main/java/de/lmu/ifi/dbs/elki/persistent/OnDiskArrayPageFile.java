@@ -130,9 +130,11 @@ public class OnDiskArrayPageFile<P extends Page> extends AbstractStoringPageFile
       super.deletePage(pageID);
 
       // delete from file
-      countWrite();
-      byte[] array = pageToByteArray(null);
-      file.getRecordBuffer(pageID).put(array);
+      if (pageID < file.getNumRecords()) {
+        countWrite();
+        byte[] array = pageToByteArray(null);
+        file.getRecordBuffer(pageID).put(array);
+      }
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -146,15 +148,18 @@ public class OnDiskArrayPageFile<P extends Page> extends AbstractStoringPageFile
    */
   @Override
   public void writePage(int pageID, P page) {
-    if (page.isDirty()) {
-      try {
-        countWrite();
-        byte[] array = pageToByteArray(page);
-        file.getRecordBuffer(pageID).put(array);
-        page.setDirty(false);
-      } catch (IOException e) {
-        throw new RuntimeException(e);
+    try {
+      countWrite();
+      byte[] array = pageToByteArray(page);
+      final int numrecs = file.getNumRecords();
+      if (pageID >= numrecs) {
+        // Grow geometrically, to avoid remapping the file on every new page.
+        file.resizeFile(Math.max(pageID + 1, numrecs + (numrecs >>> 1)));
       }
+      file.getRecordBuffer(pageID).put(array);
+      page.setDirty(false);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
     }
   }
 
@@ -164,7 +169,7 @@ public class OnDiskArrayPageFile<P extends Page> extends AbstractStoringPageFile
   @Override
   public void close() {
     try {
-      super.close();
+      // Do not call super.close(), which would clear the file.
       file.close();
     } catch (IOException e) {
       throw new RuntimeException(e);
@@ -207,6 +212,24 @@ public class OnDiskArrayPageFile<P extends Page> extends AbstractStoringPageFile
     }
   }
 
+  /**
+   * Read the page type marker of a record.
+   * 
+   * @param buffer Record buffer
+   * @return Page type; records never written are reported as empty.
+   * @throws IOException on IO errors
+   */
+  private int readPageType(ByteBuffer buffer) throws IOException {
+    // Preallocated records are all zero, and not a valid object stream.
+    if (buffer.getInt(0) == 0) {
+      return EMPTY_PAGE;
+    }
+    try (InputStream bais = new ByteBufferInputStream(buffer);
+        ObjectInputStream ois = new ObjectInputStream(bais)) {
+      return ois.readInt();
+    }
+  }
+
   /**
    * Serializes an object into a byte array.
    * 
@@ -268,9 +291,7 @@ public class OnDiskArrayPageFile<P extends Page> extends AbstractStoringPageFile
 
         // reading empty nodes in Stack
         for (int i = 0; i < file.getNumRecords(); i++) {
-          ByteBuffer buffer = file.getRecordBuffer(i);
-
-          int type = buffer.getInt();
+          int type = readPageType(file.getRecordBuffer(i));
           if (type == EMPTY_PAGE) {
             emptyPages.push(i);
           } else if (type == FILLED_PAGE) {
@@ -278,7 +299,10 @@ public class OnDiskArrayPageFile<P extends Page> extends AbstractStoringPageFile
           } else {
             throw new IllegalArgumentException("Unknown type: " + type);
           }
-          i++;
+        }
+        // Records beyond the last page are preallocated, not free pages.
+        while (!emptyPages.isEmpty() && emptyPages.peek() >= nextPageID) {
+          emptyPages.pop();
         }
         return true;
       }
@@ -30,6 +30,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -84,6 +86,16 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
    */
   private boolean existed;
 
+  /**
+   * Per-thread read buffers, for concurrent reads.
+   */
+  private final ThreadLocal<byte[]> readBuffer = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[pageSize];
+    }
+  };
+
   /**
    * Creates a new PersistentPageFile from an existing file.
    * 
@@ -109,6 +121,9 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
   /**
    * Reads the page with the given id from this file.
    * 
+   * Reads use positional access to the file channel and a per-thread buffer,
+   * so that multiple threads can read concurrently.
+   * 
    * @param pageID the id of the page to be returned
    * @return the page with the given pageId
    */
@@ -117,9 +132,18 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
     try {
       countRead();
       long offset = ((long) (header.getReservedPages() + pageID)) * (long) pageSize;
-      byte[] buffer = new byte[pageSize];
-      file.seek(offset);
-      file.read(buffer);
+      byte[] buffer = readBuffer.get();
+      if(buffer.length != pageSize) {
+        buffer = new byte[pageSize];
+        readBuffer.set(buffer);
+      }
+      ByteBuffer buf = ByteBuffer.wrap(buffer);
+      FileChannel channel = file.getChannel();
+      while(buf.hasRemaining()) {
+        if(channel.read(buf, offset + buf.position()) < 0) {
+          throw new IOException("Unexpected end of file.");
+        }
+      }
       return byteArrayToPage(buffer);
     }
     catch(IOException e) {
@@ -178,12 +202,16 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
   @Override
   public void close() {
     try {
-      super.close();
-      if(!emptyPages.isEmpty() && header instanceof TreeIndexHeader) {
+      // Do not call super.close(), which would clear the file.
+      // Remove stale data (such as an old list of empty pages) after the last
+      // page.
+      file.setLength(((long) (header.getReservedPages() + nextPageID)) * (long) pageSize);
+      if(header instanceof TreeIndexHeader) {
+        TreeIndexHeader tiHeader = (TreeIndexHeader) header;
         // write the list of empty pages to the end of the file
-        ((TreeIndexHeader) header).writeEmptyPages(emptyPages, file);
+        tiHeader.writeEmptyPages(emptyPages, file);
+        tiHeader.setLargestPageID(nextPageID);
       }
-      ((TreeIndexHeader) header).setLargestPageID(nextPageID);
       header.writeHeader(file);
       file.close();
     }
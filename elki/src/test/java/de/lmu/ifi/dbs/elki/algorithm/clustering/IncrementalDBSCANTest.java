@@ -0,0 +1,114 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.HashmapDatabase;
+import de.lmu.ifi.dbs.elki.database.UpdatableDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.evaluation.clustering.ClusterContingencyTable;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the incremental DBSCAN, by comparing it to static DBSCAN runs after
+ * deleting and reinserting objects.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class IncrementalDBSCANTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run incremental DBSCAN with fixed parameters and compare the result to a
+   * golden standard.
+   */
+  @Test
+  public void testIncrementalDBSCANResults() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, UNITTEST + "3clusters-and-noise-2d.csv");
+    UpdatableDatabase db = ClassGenericsUtil.parameterizeOrAbort(HashmapDatabase.class, params);
+    testParameterizationOk(params);
+    db.initialize();
+
+    // setup algorithm
+    params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 0.04);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 20);
+    IncrementalDBSCAN<DoubleVector> dbscan = ClassGenericsUtil.parameterizeOrAbort(IncrementalDBSCAN.class, params);
+    testParameterizationOk(params);
+    DBSCAN<DoubleVector> reference = new DBSCAN<>(dbscan.getDistanceFunction(), 0.04, 20);
+
+    Clustering<Model> result = dbscan.run(db);
+    testFMeasure(db, result, 0.996413);
+    testClusterSizes(result, new int[] { 29, 50, 101, 150 });
+
+    // Delete every third object, which splits and shrinks clusters.
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    ArrayModifiableDBIDs del = DBIDUtil.newArray();
+    List<DoubleVector> vecs = new ArrayList<>();
+    int i = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance(), i++) {
+      if(i % 3 == 0) {
+        del.add(it);
+        vecs.add(rel.get(it));
+      }
+    }
+    db.delete(del);
+    assertSame(reference.run(db), result);
+
+    // Reinsert the objects.
+    db.insert(MultipleObjectsBundle.makeSimple(rel.getDataTypeInformation(), vecs));
+    assertSame(reference.run(db), result);
+    testClusterSizes(result, new int[] { 29, 50, 101, 150 });
+  }
+
+  /**
+   * Compare two clusterings.
+   *
+   * @param expected Expected clustering
+   * @param actual Actual clustering
+   */
+  private void assertSame(Clustering<?> expected, Clustering<?> actual) {
+    assertEquals("Number of clusters does not match.", expected.getAllClusters().size(), actual.getAllClusters().size());
+    ClusterContingencyTable ct = new ClusterContingencyTable(false, false);
+    ct.process(expected, actual);
+    assertEquals("Clusterings differ.", 1., ct.getPaircount().f1Measure(), 1e-15);
+  }
+}
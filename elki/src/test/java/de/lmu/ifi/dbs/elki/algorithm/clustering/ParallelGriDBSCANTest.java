@@ -0,0 +1,121 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the partitioned GriDBSCAN.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelGriDBSCANTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run ParallelGriDBSCAN with fixed parameters and compare the result to the
+   * golden standard of GriDBSCAN.
+   */
+  @Test
+  public void testParallelGriDBSCANResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+
+    // setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 0.04);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 20);
+    params.addParameter(GriDBSCAN.Parameterizer.GRID_ID, 0.08);
+    // run DBSCAN on database, with multiple threads
+    Clustering<Model> result = runParallel(db, params);
+
+    testFMeasure(db, result, 0.996413);
+    testClusterSizes(result, new int[] { 29, 50, 101, 150 });
+  }
+
+  /**
+   * Run ParallelGriDBSCAN with partitions spilled to disk.
+   */
+  @Test
+  public void testParallelGriDBSCANSpill() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 11.5);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 120);
+    params.addParameter(GriDBSCAN.Parameterizer.GRID_ID, 25.);
+    params.addFlag(ParallelGriDBSCAN.Parameterizer.SPILL_ID);
+    // run DBSCAN on database, with multiple threads
+    Clustering<Model> result = runParallel(db, params);
+    testFMeasure(db, result, 0.954382);
+    testClusterSizes(result, new int[] { 11, 200, 203, 224 });
+  }
+
+  /**
+   * Run ParallelGriDBSCAN with larger grid width (fewer partitions).
+   */
+  @Test
+  public void testParallelGriDBSCANWide() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+
+    // setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 0.04);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 20);
+    params.addParameter(GriDBSCAN.Parameterizer.GRID_ID, 0.4);
+    // run DBSCAN on database, with multiple threads
+    Clustering<Model> result = runParallel(db, params);
+    testFMeasure(db, result, 0.996413);
+    testClusterSizes(result, new int[] { 29, 50, 101, 150 });
+  }
+
+  /**
+   * Run ParallelGriDBSCAN with four threads.
+   *
+   * @param db Database
+   * @param params Parameters
+   * @return Clustering
+   */
+  private Clustering<Model> runParallel(Database db, ListParameterization params) {
+    ParallelGriDBSCAN<DoubleVector> dbscan = ClassGenericsUtil.parameterizeOrAbort(ParallelGriDBSCAN.class, params);
+    testParameterizationOk(params);
+    final ParallelCore core = ParallelCore.getCore();
+    final int processors = core.getParallelism();
+    try {
+      core.setParallelism(4);
+      return dbscan.run(db);
+    }
+    finally {
+      core.setParallelism(processors);
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Performs a full ParallelEM run, and compares the result with a clustering
+ * derived from the data set labels.
+ *
+ * The tests use four threads, such that the partial statistics of each model
+ * type are merged.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelEMTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run ParallelEM with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testParallelEMResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 1);
+    params.addParameter(EM.Parameterizer.K_ID, 6);
+    params.addParameter(EM.Parameterizer.INIT_ID, MultivariateGaussianModelFactory.class);
+    Clustering<?> result = runParallel(db, params);
+    testFMeasure(db, result, 0.967410);
+    testClusterSizes(result, new int[] { 3, 5, 91, 98, 200, 313 });
+  }
+
+  /**
+   * Run ParallelEM with diagonal covariance models and compare the result to a
+   * golden standard.
+   */
+  @Test
+  public void testParallelEMResultsDiagonal() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 0);
+    params.addParameter(EM.Parameterizer.K_ID, 5);
+    params.addParameter(EM.Parameterizer.INIT_ID, DiagonalGaussianModelFactory.class);
+    Clustering<?> result = runParallel(db, params);
+    testFMeasure(db, result, 0.9681384);
+    testClusterSizes(result, new int[] { 7, 91, 99, 200, 313 });
+  }
+
+  /**
+   * Run ParallelEM with spherical models and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testParallelEMResultsSpherical() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 1);
+    params.addParameter(EM.Parameterizer.K_ID, 4);
+    params.addParameter(EM.Parameterizer.INIT_ID, SphericalGaussianModelFactory.class);
+    Clustering<?> result = runParallel(db, params);
+    testFMeasure(db, result, 0.812082);
+    testClusterSizes(result, new int[] { 87, 143, 163, 317 });
+  }
+
+  /**
+   * Run mini-batch EM with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testMiniBatchEMResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 1);
+    params.addParameter(EM.Parameterizer.K_ID, 5);
+    params.addParameter(ParallelEM.Parameterizer.MINIBATCH_ID, 100);
+    params.addParameter(ParallelEM.Parameterizer.SEED_ID, 0);
+    Clustering<?> result = runParallel(db, params);
+    testFMeasure(db, result, 0.681994836254926);
+    testClusterSizes(result, new int[] { 8, 100, 134, 176, 292 });
+  }
+
+  /**
+   * Run ParallelEM with four threads.
+   *
+   * @param db Database
+   * @param params Parameters
+   * @return Clustering
+   */
+  private Clustering<?> runParallel(Database db, ListParameterization params) {
+    ParallelEM<DoubleVector, ?> em = ClassGenericsUtil.parameterizeOrAbort(ParallelEM.class, params);
+    testParameterizationOk(params);
+    final ParallelCore core = ParallelCore.getCore();
+    final int processors = core.getParallelism();
+    try {
+      core.setParallelism(4);
+      return em.run(db);
+    }
+    finally {
+      core.setParallelism(processors);
+    }
+  }
+}
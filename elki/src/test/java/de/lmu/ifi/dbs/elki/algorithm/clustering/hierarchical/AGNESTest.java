@@ -23,12 +23,20 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical.extraction.CutDendrogramByNumberOfClusters;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.DoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.Result;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -133,4 +141,76 @@ public class AGNESTest extends AbstractSimpleAlgorithmTest {
     testFMeasure(db, clustering, 0.938167802);
     testClusterSizes(clustering, new int[] { 200, 217, 221 });
   }
+
+  /**
+   * Run agglomerative hierarchical clustering with a single precision distance
+   * matrix.
+   */
+  @Test
+  public void testWardFloat() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(CutDendrogramByNumberOfClusters.Parameterizer.MINCLUSTERS_ID, 3);
+    params.addParameter(AlgorithmStep.Parameterizer.ALGORITHM_ID, AGNES.class);
+    params.addFlag(AGNES.Parameterizer.FLOAT_ID);
+    CutDendrogramByNumberOfClusters c = ClassGenericsUtil.parameterizeOrAbort(CutDendrogramByNumberOfClusters.class, params);
+    testParameterizationOk(params);
+
+    // run clustering algorithm on database
+    Result result = c.run(db);
+    Clustering<?> clustering = findSingleClustering(result);
+    testFMeasure(db, clustering, 0.93866265);
+    testClusterSizes(clustering, new int[] { 200, 211, 227 });
+  }
+
+  /**
+   * Compare the hierarchies of AGNES and Anderberg computed with multiple
+   * threads to the serial results.
+   */
+  @Test
+  public void testParallel() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+    Class<?>[] algorithms = { AGNES.class, AnderbergHierarchicalClustering.class };
+    Class<?>[] linkages = { SingleLinkageMethod.class, GroupAverageLinkageMethod.class, WardLinkageMethod.class };
+    final ParallelCore core = ParallelCore.getCore();
+    final int processors = core.getParallelism();
+    try {
+      for(Class<?> algorithm : algorithms) {
+        for(Class<?> linkage : linkages) {
+          final String name = algorithm.getSimpleName() + " with " + linkage.getSimpleName();
+          core.setParallelism(1);
+          PointerHierarchyRepresentationResult serial = runHierarchical(db, algorithm, linkage);
+          core.setParallelism(4);
+          PointerHierarchyRepresentationResult parallel = runHierarchical(db, algorithm, linkage);
+          DBIDDataStore spar = serial.getParentStore(), ppar = parallel.getParentStore();
+          DoubleDataStore sdist = serial.getParentDistanceStore(), pdist = parallel.getParentDistanceStore();
+          for(DBIDIter it = serial.getDBIDs().iter(); it.valid(); it.advance()) {
+            assertTrue("Parent differs for " + name, DBIDUtil.equal(spar.get(it), ppar.get(it)));
+            assertEquals("Merge distance differs for " + name, sdist.doubleValue(it), pdist.doubleValue(it), 0.);
+          }
+        }
+      }
+    }
+    finally {
+      core.setParallelism(processors);
+    }
+  }
+
+  /**
+   * Run a hierarchical clustering algorithm.
+   *
+   * @param db Database
+   * @param algorithm Hierarchical clustering algorithm
+   * @param linkage Linkage method
+   * @return Pointer hierarchy
+   */
+  private PointerHierarchyRepresentationResult runHierarchical(Database db, Class<?> algorithm, Class<?> linkage) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AGNES.Parameterizer.LINKAGE_ID, linkage);
+    HierarchicalClusteringAlgorithm alg = ClassGenericsUtil.parameterizeOrAbort(algorithm.asSubclass(HierarchicalClusteringAlgorithm.class), params);
+    testParameterizationOk(params);
+    return alg.run(db);
+  }
 }
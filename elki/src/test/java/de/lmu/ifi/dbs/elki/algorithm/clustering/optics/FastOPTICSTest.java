@@ -29,6 +29,7 @@ import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.index.preprocessed.fastoptics.RandomProjectedNeighborsAndDensities;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
@@ -41,6 +42,29 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParamet
 public class FastOPTICSTest extends AbstractSimpleAlgorithmTest {
   @Test
   public void testFastOPTICS() {
+    runFastOPTICS();
+  }
+
+  /**
+   * Test the parallel computation of the densities.
+   */
+  @Test
+  public void testFastOPTICSParallel() {
+    final ParallelCore core = ParallelCore.getCore();
+    final int processors = core.getParallelism();
+    try {
+      core.setParallelism(4);
+      runFastOPTICS();
+    }
+    finally {
+      core.setParallelism(processors);
+    }
+  }
+
+  /**
+   * Run FastOPTICS and check the result.
+   */
+  private void runFastOPTICS() {
     Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
 
     // Setup algorithm
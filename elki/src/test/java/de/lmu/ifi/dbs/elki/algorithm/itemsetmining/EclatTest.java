@@ -21,10 +21,12 @@ package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -133,4 +135,79 @@ public class EclatTest extends AbstractFrequentItemsetAlgorithmTest {
       assertEquals("Size not as expected.", 184, res.getItemsets().size());
     }
   }
+
+  @Test
+  public void testMaxLength() {
+    Database db = loadTransactions(UNITTEST + "itemsets/increasing.txt", 4);
+    ListParameterization params = new ListParameterization();
+    params.addParameter(Eclat.Parameterizer.MINSUPP_ID, 1);
+    params.addParameter(Eclat.Parameterizer.MAXLENGTH_ID, 2);
+    Eclat ap = ClassGenericsUtil.parameterizeOrAbort(Eclat.class, params);
+    FrequentItemsetsResult res = ap.run(db);
+    assertEquals("Size not as expected.", 10, res.getItemsets().size());
+    for(Itemset i : res.getItemsets()) {
+      assertTrue("Itemset too long: " + i, i.length() <= 2);
+    }
+  }
+
+  @Test
+  public void testDense() {
+    // Dense data, where diffsets are smaller than transaction lists.
+    Database db = loadTransactions(UNITTEST + "itemsets/dense.txt", 12);
+    {
+      ListParameterization params = new ListParameterization();
+      params.addParameter(Eclat.Parameterizer.MINSUPP_ID, 1);
+      Eclat ap = ClassGenericsUtil.parameterizeOrAbort(Eclat.class, params);
+      FrequentItemsetsResult res = ap.run(db);
+      assertEquals("Size not as expected.", 31, res.getItemsets().size());
+      assertEquals("Total support not as expected.", 268, totalSupport(res));
+    }
+    {
+      ListParameterization params = new ListParameterization();
+      params.addParameter(Eclat.Parameterizer.MINSUPP_ID, 9);
+      Eclat ap = ClassGenericsUtil.parameterizeOrAbort(Eclat.class, params);
+      FrequentItemsetsResult res = ap.run(db);
+      assertEquals("Size not as expected.", 16, res.getItemsets().size());
+      assertEquals("Total support not as expected.", 155, totalSupport(res));
+    }
+  }
+
+  @Test
+  public void testParallel() {
+    Database db = loadTransactions(UNITTEST + "itemsets/zutaten.txt.gz", 16401);
+    ListParameterization params = new ListParameterization();
+    params.addParameter(Eclat.Parameterizer.MINSUPP_ID, 100);
+    Eclat ap = ClassGenericsUtil.parameterizeOrAbort(Eclat.class, params);
+    final ParallelCore core = ParallelCore.getCore();
+    final int processors = core.getParallelism();
+    try {
+      core.setParallelism(1);
+      FrequentItemsetsResult serial = ap.run(db);
+      core.setParallelism(4);
+      FrequentItemsetsResult parallel = ap.run(db);
+      assertEquals("Size not as expected.", serial.getItemsets().size(), parallel.getItemsets().size());
+      for(int i = 0; i < serial.getItemsets().size(); i++) {
+        Itemset a = serial.getItemsets().get(i), b = parallel.getItemsets().get(i);
+        assertEquals("Itemsets differ.", a, b);
+        assertEquals("Support differs.", a.getSupport(), b.getSupport());
+      }
+    }
+    finally {
+      core.setParallelism(processors);
+    }
+  }
+
+  /**
+   * Sum of the supports of all itemsets.
+   *
+   * @param res Result
+   * @return Total support
+   */
+  private static int totalSupport(FrequentItemsetsResult res) {
+    int sum = 0;
+    for(Itemset i : res.getItemsets()) {
+      sum += i.getSupport();
+    }
+    return sum;
+  }
 }
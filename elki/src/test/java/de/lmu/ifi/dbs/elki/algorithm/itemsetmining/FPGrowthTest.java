@@ -25,6 +25,7 @@ import static org.junit.Assert.assertEquals;
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -133,4 +134,58 @@ public class FPGrowthTest extends AbstractFrequentItemsetAlgorithmTest {
       assertEquals("Size not as expected.", 184, res.getItemsets().size());
     }
   }
+
+  @Test
+  public void testBranches() {
+    // Items occur in several branches, but Four only in a single path.
+    Database db = loadTransactions(UNITTEST + "itemsets/branches.txt", 5);
+    {
+      ListParameterization params = new ListParameterization();
+      params.addParameter(FPGrowth.Parameterizer.MINSUPP_ID, 1);
+      FPGrowth ap = ClassGenericsUtil.parameterizeOrAbort(FPGrowth.class, params);
+      FrequentItemsetsResult res = ap.run(db);
+      assertEquals("Size not as expected.", 15, res.getItemsets().size());
+      int sum = 0;
+      for(Itemset i : res.getItemsets()) {
+        sum += i.getSupport();
+      }
+      assertEquals("Total support not as expected.", 23, sum);
+    }
+    {
+      ListParameterization params = new ListParameterization();
+      params.addParameter(FPGrowth.Parameterizer.MINSUPP_ID, 1);
+      params.addParameter(FPGrowth.Parameterizer.MINLENGTH_ID, 3);
+      FPGrowth ap = ClassGenericsUtil.parameterizeOrAbort(FPGrowth.class, params);
+      FrequentItemsetsResult res = ap.run(db);
+      assertEquals("Size not as expected.", 5, res.getItemsets().size());
+      for(Itemset i : res.getItemsets()) {
+        assertEquals("Bad support", 1, i.getSupport());
+      }
+    }
+  }
+
+  @Test
+  public void testParallel() {
+    Database db = loadTransactions(UNITTEST + "itemsets/zutaten.txt.gz", 16401);
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FPGrowth.Parameterizer.MINSUPP_ID, 100);
+    FPGrowth ap = ClassGenericsUtil.parameterizeOrAbort(FPGrowth.class, params);
+    final ParallelCore core = ParallelCore.getCore();
+    final int processors = core.getParallelism();
+    try {
+      core.setParallelism(1);
+      FrequentItemsetsResult serial = ap.run(db);
+      core.setParallelism(4);
+      FrequentItemsetsResult parallel = ap.run(db);
+      assertEquals("Size not as expected.", serial.getItemsets().size(), parallel.getItemsets().size());
+      for(int i = 0; i < serial.getItemsets().size(); i++) {
+        Itemset a = serial.getItemsets().get(i), b = parallel.getItemsets().get(i);
+        assertEquals("Itemsets differ.", a, b);
+        assertEquals("Support differs.", a.getSupport(), b.getSupport());
+      }
+    }
+    finally {
+      core.setParallelism(processors);
+    }
+  }
 }
@@ -0,0 +1,93 @@
+package de.lmu.ifi.dbs.elki.algorithm.projection;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the stored and blocked computations of tSNE, with different numbers of
+ * threads.
+ *
+ * @author Erich Schubert
+ */
+public class TSNETest extends AbstractSimpleAlgorithmTest {
+  @Test
+  public void testBlockedParallel() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    final ParallelCore core = ParallelCore.getCore();
+    final int processors = core.getParallelism();
+    try {
+      core.setParallelism(1);
+      Relation<DoubleVector> stored = runTSNE(rel, false);
+      Relation<DoubleVector> blocked = runTSNE(rel, true);
+      core.setParallelism(4);
+      Relation<DoubleVector> pstored = runTSNE(rel, false);
+      Relation<DoubleVector> pblocked = runTSNE(rel, true);
+      for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+        DoubleVector v = stored.get(it);
+        for(int d = 0; d < 2; d++) {
+          assertEquals("Blocked result differs.", v.doubleValue(d), blocked.get(it).doubleValue(d), 0.);
+          assertEquals("Parallel result differs.", v.doubleValue(d), pstored.get(it).doubleValue(d), 0.);
+          assertEquals("Parallel blocked result differs.", v.doubleValue(d), pblocked.get(it).doubleValue(d), 0.);
+        }
+      }
+    }
+    finally {
+      core.setParallelism(processors);
+    }
+  }
+
+  /**
+   * Run tSNE with a fixed seed.
+   *
+   * @param rel Data relation
+   * @param blocked Use the blocked computation
+   * @return Projected data
+   */
+  private Relation<DoubleVector> runTSNE(Relation<DoubleVector> rel, boolean blocked) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(TSNE.Parameterizer.ITER_ID, 20);
+    params.addParameter(TSNE.Parameterizer.RANDOM_ID, 0L);
+    params.addFlag(AbstractProjectionAlgorithm.KEEP_ID);
+    if(blocked) {
+      params.addFlag(TSNE.Parameterizer.BLOCKED_ID);
+    }
+    TSNE<DoubleVector> tsne = ClassGenericsUtil.parameterizeOrAbort(TSNE.class, params);
+    testParameterizationOk(params);
+    return tsne.run(rel);
+  }
+}
@@ -0,0 +1,89 @@
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+
+/**
+ * Unit test for the blocked batch kNN search of
+ * {@link LinearScanEuclideanDistanceKNNQuery}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class LinearScanEuclideanDistanceKNNQueryTest {
+  /**
+   * The batch search must return the same results as single queries, also for
+   * data far from the origin, where the norm decomposition loses precision.
+   */
+  @Test
+  public void testBatchMatchesSingle() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[1000][5];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = 1e6 + Math.round(rnd.nextDouble() * 100) * .01; // Include duplicates
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> knnq = QueryUtil.getLinearScanKNNQuery(dq);
+    assertTrue(knnq instanceof LinearScanEuclideanDistanceKNNQuery);
+
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    List<? extends KNNList> batch = knnq.getKNNForBulkDBIDs(ids, 10);
+    int i = 0;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      KNNList exp = knnq.getKNNForDBID(it, 10), res = batch.get(i);
+      assertEquals("kNN sizes do not match.", exp.size(), res.size());
+      for(DoubleDBIDListIter a = exp.iter(), b = res.iter(); a.valid(); a.advance(), b.advance()) {
+        assertEquals("Distances do not match.", a.doubleValue(), b.doubleValue(), 0.);
+        assertTrue("Neighbors do not match.", DBIDUtil.equal(a, b));
+      }
+    }
+  }
+}
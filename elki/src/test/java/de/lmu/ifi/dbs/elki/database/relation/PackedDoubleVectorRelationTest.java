@@ -0,0 +1,118 @@
+package de.lmu.ifi.dbs.elki.database.relation;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the packed vector storage against the default object storage.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class PackedDoubleVectorRelationTest {
+  /**
+   * Test data set.
+   */
+  public static final String filename = "data/testdata/unittests/hierarchical-3d2d1d.csv";
+
+  @Test
+  public void testHeap() {
+    testStorage(StaticArrayDatabase.VectorStorage.PACKED);
+  }
+
+  @Test
+  public void testDirect() {
+    testStorage(StaticArrayDatabase.VectorStorage.PACKED_DIRECT);
+  }
+
+  private void testStorage(StaticArrayDatabase.VectorStorage storage) {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1, null, null);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.VECTOR_STORAGE_ID, storage);
+    Database pdb = AbstractSimpleAlgorithmTest.makeSimpleDatabase(filename, -1, params, null);
+    Relation<DoubleVector> prel = pdb.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    assertTrue("Relation was not packed.", prel instanceof PackedDoubleVectorRelation);
+    assertNotNull("No serializer.", ((VectorFieldTypeInformation<?>) prel.getDataTypeInformation()).getSerializer());
+    assertEquals("Size differs.", rel.size(), prel.size());
+    final int dim = RelationUtil.dimensionality(rel);
+    assertEquals("Dimensionality differs.", dim, RelationUtil.dimensionality(prel));
+
+    // The fixed DBIDs filter assigns the same ids in both databases.
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      NumberVector v = rel.get(it), p = prel.get(it);
+      for(int d = 0; d < dim; d++) {
+        assertEquals("Value differs.", v.doubleValue(d), p.doubleValue(d), 0.);
+        assertEquals("Value differs.", v.doubleValue(d), ((PackedDoubleVectorRelation) prel).doubleValue(it, d), 0.);
+      }
+    }
+
+    DistanceQuery<NumberVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    DistanceQuery<DoubleVector> pdq = pdb.getDistanceQuery(prel, EuclideanDistanceFunction.STATIC);
+    DistanceQuery<DoubleVector> psq = pdb.getDistanceQuery(prel, SquaredEuclideanDistanceFunction.STATIC);
+    assertTrue("Distance query does not use the packed storage.", pdq instanceof PackedDoubleVectorRelation.EuclideanQuery);
+    assertTrue("Distance query does not use the packed storage.", psq instanceof PackedDoubleVectorRelation.EuclideanQuery);
+    DBIDIter first = rel.iterDBIDs();
+    DoubleVector q = prel.get(first);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      final double d = dq.distance(first, it);
+      assertEquals("Distance differs.", d, pdq.distance(first, it), 0.);
+      assertEquals("Distance differs.", d, pdq.distance(q, it), 0.);
+      assertEquals("Distance differs.", d, pdq.distance(it, q), 0.);
+      assertEquals("Squared distance differs.", SquaredEuclideanDistanceFunction.STATIC.distance(rel.get(first), rel.get(it)), psq.distance(first, it), 0.);
+    }
+
+    KNNQuery<NumberVector> knnq = db.getKNNQuery(dq, 10);
+    KNNQuery<DoubleVector> pknnq = pdb.getKNNQuery(pdq, 10);
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList knn = knnq.getKNNForDBID(it, 10), pknn = pknnq.getKNNForDBID(it, 10);
+      assertEquals("kNN size differs.", knn.size(), pknn.size());
+      for(DoubleDBIDListIter a = knn.iter(), b = pknn.iter(); a.valid(); a.advance(), b.advance()) {
+        assertEquals("kNN distance differs.", a.doubleValue(), b.doubleValue(), 0.);
+      }
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package de.lmu.ifi.dbs.elki.datasource.bundle;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.PackedDoubleVectorRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.BundleDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+
+/**
+ * Round-trip test for the columnar bundle format.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ColumnarBundleTest {
+  /**
+   * Test data set.
+   */
+  public static final String filename = "data/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    MultipleObjectsBundle orig;
+    try (InputStream is = AbstractSimpleAlgorithmTest.open(filename)) {
+      orig = new NumberVectorLabelParser<>(DoubleVector.FACTORY).parse(is);
+    }
+    File file = File.createTempFile("elki-columnar", ".bundle");
+    file.deleteOnExit();
+    try (FileOutputStream fos = new FileOutputStream(file); FileChannel channel = fos.getChannel()) {
+      new ColumnarBundleWriter().writeBundle(orig, channel);
+    }
+
+    Database db = new StaticArrayDatabase(new BundleDatabaseConnection(null, file), null);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    assertTrue("Relation was not mapped.", rel instanceof PackedDoubleVectorRelation);
+    Relation<LabelList> lrel = db.getRelation(TypeUtil.LABELLIST);
+    assertEquals("Size differs.", orig.dataLength(), rel.size());
+    DBIDArrayIter it = DBIDUtil.ensureArray(rel.getDBIDs()).iter();
+    for(int i = 0; i < orig.dataLength(); i++, it.advance()) {
+      NumberVector v = (NumberVector) orig.data(i, 0), p = rel.get(it);
+      assertEquals("Dimensionality differs.", v.getDimensionality(), p.getDimensionality());
+      for(int d = 0; d < v.getDimensionality(); d++) {
+        assertEquals("Value differs.", v.doubleValue(d), p.doubleValue(d), 0.);
+      }
+      assertEquals("Label differs.", orig.data(i, 1).toString(), lrel.get(it).toString());
+    }
+    assertTrue(file.delete());
+  }
+}
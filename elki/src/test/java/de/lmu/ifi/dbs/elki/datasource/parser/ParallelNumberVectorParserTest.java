@@ -0,0 +1,143 @@
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.utilities.ELKIServiceLoader;
+import de.lmu.ifi.dbs.elki.utilities.ELKIServiceRegistry;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Test the parallel parser against the regular number vector parser.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ParallelNumberVectorParserTest {
+  /** Test data set to use. */
+  public static String DATA = "data/testdata/unittests/3clusters-and-noise-2d.csv";
+
+  @Test
+  public void testSameResult() throws IOException {
+    MultipleObjectsBundle expect, actual;
+    try (InputStream is = AbstractSimpleAlgorithmTest.open(DATA)) {
+      expect = new NumberVectorLabelParser<>(DoubleVector.FACTORY).parse(is);
+    }
+    try (InputStream is = AbstractSimpleAlgorithmTest.open(DATA)) {
+      // Tiny blocks, to have many blocks and lines crossing block boundaries.
+      actual = new ParallelNumberVectorParser<>(ParallelNumberVectorParser.DEFAULT_SEPARATORS, CSVReaderFormat.QUOTE_CHARS, null, DoubleVector.FACTORY, 100).parse(is);
+    }
+    assertBundlesEqual(expect, actual);
+  }
+
+  @Test
+  public void testColumnNamesAndLabels() {
+    String data = "x,y,name\r\n1,2,a\r\n\r\n# comment\n3.5 , -4e1, \"b c\"\n5;6e-1;a\n";
+    MultipleObjectsBundle bundle = new ParallelNumberVectorParser<>(DoubleVector.FACTORY).parse(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+    assertEquals("Number of columns", 2, bundle.metaLength());
+    assertEquals("Number of rows", 3, bundle.dataLength());
+    VectorFieldTypeInformation<?> type = (VectorFieldTypeInformation<?>) bundle.meta(0);
+    assertEquals("Dimensionality", 2, type.getDimensionality());
+    assertEquals("Column name", "y", type.getLabel(1));
+    assertEquals("Value", -40., ((NumberVector) bundle.data(1, 0)).doubleValue(1), 0.);
+    assertEquals("Label", "b c", bundle.data(1, 1).toString());
+    assertEquals("Value", .6, ((NumberVector) bundle.data(2, 0)).doubleValue(1), 0.);
+  }
+
+  @Test
+  public void testNonASCII() {
+    // The section sign would alias the apostrophe in a 7 bit lookup table.
+    ListParameterization params = new ListParameterization();
+    params.addParameter(ParallelNumberVectorParser.Parameterizer.SEPARATORS_ID, ";\u00a7");
+    params.tryInstantiate(ParallelNumberVectorParser.class);
+    assertTrue("Non-ASCII separator not rejected.", params.hasErrors());
+    params = new ListParameterization();
+    params.addParameter(CSVReaderFormat.Parameterizer.QUOTE_ID, "\"\u00a7");
+    params.tryInstantiate(ParallelNumberVectorParser.class);
+    assertTrue("Non-ASCII quote not rejected.", params.hasErrors());
+  }
+
+  @Test
+  public void testRegistry() throws IOException, ClassNotFoundException {
+    // Every entry of the service file must be a loadable parser class:
+    List<Class<?>> registered = new ArrayList<>();
+    Enumeration<URL> files = Parser.class.getClassLoader().getResources(ELKIServiceLoader.RESOURCE_PREFIX + Parser.class.getName());
+    while(files.hasMoreElements()) {
+      try (InputStream is = files.nextElement().openStream(); //
+          BufferedReader r = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+        for(String line; (line = r.readLine()) != null;) {
+          line = line.trim();
+          if(line.isEmpty() || line.charAt(0) == '#') {
+            continue;
+          }
+          Class<?> c = Class.forName(line.split(" ")[0]);
+          assertTrue(c.getName() + " is not a parser.", Parser.class.isAssignableFrom(c));
+          registered.add(c);
+        }
+      }
+    }
+    assertTrue("Parser not registered.", registered.contains(ParallelNumberVectorParser.class));
+    assertTrue("Parser not registered.", registered.contains(ClusteringVectorParser.class));
+    assertEquals(ParallelNumberVectorParser.class, ELKIServiceRegistry.findImplementation(Parser.class, ParallelNumberVectorParser.class.getSimpleName()));
+  }
+
+  /**
+   * Compare two bundles.
+   *
+   * @param expect Expected bundle
+   * @param actual Actual bundle
+   */
+  private static void assertBundlesEqual(MultipleObjectsBundle expect, MultipleObjectsBundle actual) {
+    assertEquals("Number of columns", expect.metaLength(), actual.metaLength());
+    assertEquals("Number of rows", expect.dataLength(), actual.dataLength());
+    for(int c = 0; c < expect.metaLength(); c++) {
+      assertEquals("Column type", expect.meta(c).toString(), actual.meta(c).toString());
+    }
+    for(int r = 0; r < expect.dataLength(); r++) {
+      for(int c = 0; c < expect.metaLength(); c++) {
+        assertEquals("Row " + r, expect.data(r, c).toString(), actual.data(r, c).toString());
+      }
+    }
+  }
+}
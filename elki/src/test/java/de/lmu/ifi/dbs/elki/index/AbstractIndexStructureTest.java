@@ -26,13 +26,24 @@ package de.lmu.ifi.dbs.elki.index;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
 import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.ThreadSafeQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
@@ -208,4 +219,51 @@ public abstract class AbstractIndexStructureTest {
       }
     }
   }
+
+  /**
+   * Test concurrent kNN queries from multiple threads, which must produce the
+   * same results as sequential queries.
+   *
+   * @param inputparams Parameters
+   */
+  protected void testConcurrentEuclidean(ListParameterization inputparams) throws Exception {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(dataset, shoulds, inputparams, null);
+    Relation<DoubleVector> rep = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rep, EuclideanDistanceFunction.STATIC);
+    final KNNQuery<DoubleVector> knnq = db.getKNNQuery(dist, k);
+    assertTrue("Query is not thread safe: " + knnq.getClass(), knnq instanceof ThreadSafeQuery);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(rep.getDBIDs());
+    final double[] expect = new double[ids.size()];
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      expect[it.getOffset()] = knnq.getKNNForDBID(it, k).getKNNDistance();
+    }
+    final int threads = 4;
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Integer>> futures = new ArrayList<>(threads);
+      for(int t = 0; t < threads; t++) {
+        final int offset = t * ids.size() / threads;
+        futures.add(pool.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            int errors = 0;
+            DBIDArrayIter it = ids.iter();
+            for(int i = 0; i < ids.size(); i++) {
+              final int j = (i + offset) % ids.size();
+              if(knnq.getKNNForDBID(it.seek(j), k).getKNNDistance() != expect[j]) {
+                ++errors;
+              }
+            }
+            return errors;
+          }
+        }));
+      }
+      for(Future<Integer> f : futures) {
+        assertEquals("Concurrent queries returned different results.", 0, f.get().intValue());
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
 }
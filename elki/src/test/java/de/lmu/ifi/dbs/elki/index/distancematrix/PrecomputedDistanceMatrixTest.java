@@ -0,0 +1,87 @@
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+
+/**
+ * Unit test for the precomputed distance matrix.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class PrecomputedDistanceMatrixTest {
+  /**
+   * Compare the different storage options to the distance function. The data
+   * set is large enough to use the parallel computation, if available.
+   */
+  @Test
+  public void testStorage() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[1500][3];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = rnd.nextDouble();
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    for(DistanceMatrixStorage.Location location : DistanceMatrixStorage.Location.values()) {
+      for(boolean single : new boolean[] { false, true }) {
+        PrecomputedDistanceMatrix<NumberVector> idx = new PrecomputedDistanceMatrix<>(rel, EuclideanDistanceFunction.STATIC, location, single);
+        idx.initialize();
+        DistanceQuery<NumberVector> mq = idx.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+        final double tol = single ? 1e-7 : 0.;
+        for(DBIDIter a = rel.iterDBIDs(); a.valid(); a.advance()) {
+          for(DBIDIter b = rel.iterDBIDs(); b.valid(); b.advance()) {
+            assertEquals("Distance does not match.", dq.distance(a, b), mq.distance(a, b), tol);
+          }
+        }
+        KNNList knn = idx.getKNNQuery(mq).getKNNForDBID(rel.iterDBIDs(), 10);
+        KNNList exp = db.getKNNQuery(dq, 10).getKNNForDBID(rel.iterDBIDs(), 10);
+        for(DoubleDBIDListIter x = knn.iter(), y = exp.iter(); x.valid(); x.advance(), y.advance()) {
+          assertEquals("kNN distance does not match.", y.doubleValue(), x.doubleValue(), tol);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package de.lmu.ifi.dbs.elki.index.lsh;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.AbstractProjectedHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.EuclideanHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the in-memory LSH index.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class InMemoryLSHIndexTest extends AbstractIndexStructureTest {
+  /**
+   * Test the recall of single-probe and multi-probe LSH.
+   */
+  @Test
+  public void testMultiProbe() {
+    double single = recall(1), multi = recall(20);
+    assertTrue("Multi-probe recall not better: " + multi + " <= " + single, multi > single);
+    assertTrue("Multi-probe recall too low: " + multi, multi > .8);
+  }
+
+  /**
+   * Compute the kNN recall of the LSH index.
+   *
+   * @param probes Number of probes
+   * @return Recall
+   */
+  private double recall(int probes) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, InMemoryLSHIndex.class);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.FAMILY_ID, EuclideanHashFunctionFamily.class);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.L_ID, 2);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.PROBES_ID, probes);
+    params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.RANDOM_ID, 0L);
+    params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.WIDTH_ID, .1);
+    params.addParameter(AbstractProjectedHashFunctionFamily.Parameterizer.NUMPROJ_ID, 3);
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase("data/testdata/unittests/hierarchical-3d2d1d.csv", 600, params, null);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> approx = db.getKNNQuery(dist, 10);
+    KNNQuery<DoubleVector> exact = db.getKNNQuery(dist, 10, DatabaseQuery.HINT_EXACT);
+    assertTrue("Approximate query not used.", approx instanceof InMemoryLSHIndex.Instance.LSHKNNQuery);
+    int found = 0, total = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList a = approx.getKNNForDBID(it, 10), e = exact.getKNNForDBID(it, 10);
+      found += DBIDUtil.intersectionSize(DBIDUtil.ensureSet(a), e);
+      total += e.size();
+    }
+    return found / (double) total;
+  }
+}
@@ -0,0 +1,107 @@
+package de.lmu.ifi.dbs.elki.index.preprocessed.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.DatabaseQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Unit test for the NN-Descent kNN graph.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class NNDescentTest extends AbstractIndexStructureTest {
+  /**
+   * Test the graph search for non-database objects.
+   */
+  @Test
+  public void testNNDescent() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, NNDescent.Factory.class);
+    params.addParameter(NNDescent.Factory.K_ID, 10);
+    params.addParameter(NNDescent.Factory.Parameterizer.SEED_ID, 0);
+    testExactEuclidean(params, NNDescent.NNDescentKNNQuery.class, null);
+  }
+
+  /**
+   * Test the recall of the materialized kNN graph.
+   */
+  @Test
+  public void testRecall() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, NNDescent.Factory.class);
+    params.addParameter(NNDescent.Factory.K_ID, 10);
+    params.addParameter(NNDescent.Factory.Parameterizer.SEED_ID, 0);
+    params.addParameter(NNDescent.Factory.Parameterizer.RHO_ID, .5);
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase("data/testdata/unittests/hierarchical-3d2d1d.csv", 600, params, null);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> dist = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> approx = db.getKNNQuery(dist, 10);
+    KNNQuery<DoubleVector> exact = db.getKNNQuery(dist, 10, DatabaseQuery.HINT_EXACT);
+    assertTrue("Approximate query not used.", approx instanceof NNDescent.NNDescentKNNQuery);
+    assertTrue("Exact query must not use the approximate index.", !(exact instanceof NNDescent.NNDescentKNNQuery));
+    int found = 0, total = 0;
+    for(DBIDIter it = rel.iterDBIDs(); it.valid(); it.advance()) {
+      KNNList a = approx.getKNNForDBID(it, 10), e = exact.getKNNForDBID(it, 10);
+      found += DBIDUtil.intersectionSize(DBIDUtil.ensureSet(a), e);
+      total += e.size();
+    }
+    double recall = found / (double) total;
+    assertTrue("Recall too low: " + recall, recall > 0.98);
+  }
+
+  /**
+   * Test queries on an empty relation.
+   */
+  @Test
+  public void testEmpty() {
+    Relation<DoubleVector> rel = new MaterializedRelation<>(TypeUtil.DOUBLE_VECTOR_FIELD, DBIDUtil.EMPTYDBIDS);
+    NNDescent<DoubleVector> index = new NNDescent.Factory<DoubleVector>(10, EuclideanDistanceFunction.STATIC, RandomFactory.get(0L), 1., .001, 50, 100).instantiate(rel);
+    index.initialize();
+    KNNQuery<DoubleVector> knnq = index.getKNNQuery(EuclideanDistanceFunction.STATIC.instantiate(rel));
+    KNNList knn = knnq.getKNNForObject(DoubleVector.wrap(new double[] { 0., 0. }), 10);
+    assertEquals("Neighbors found in an empty relation.", 0, knn.size());
+  }
+}
@@ -0,0 +1,107 @@
+package de.lmu.ifi.dbs.elki.index.tree.spatial.kd;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.QueryUtil;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the packed k-d-tree index.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class PackedKDTreeTest extends AbstractIndexStructureTest {
+  /**
+   * Test {@link PackedKDTree} using a file based database connection.
+   */
+  @Test
+  public void testPackedKDTree() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, PackedKDTree.Factory.class);
+    testExactEuclidean(spatparams, PackedKDTree.PackedKDTreeKNNQuery.class, PackedKDTree.PackedKDTreeRangeQuery.class);
+  }
+
+  /**
+   * Test the parallel construction on a larger random data set.
+   */
+  @Test
+  public void testParallelBuild() {
+    Random rnd = new Random(0L);
+    double[][] data = new double[50000][3];
+    for(double[] row : data) {
+      for(int d = 0; d < row.length; d++) {
+        row[d] = Math.round(rnd.nextDouble() * 100) * .01; // Include duplicates
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    DistanceQuery<NumberVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<NumberVector> scan = QueryUtil.getLinearScanKNNQuery(dq);
+
+    final ParallelCore core = ParallelCore.getCore();
+    final int processors = core.getParallelism();
+    try {
+      core.setParallelism(4);
+      for(boolean parallel : new boolean[] { true, false }) {
+        PackedKDTree<NumberVector> tree = new PackedKDTree<>(rel, 8, parallel);
+        tree.initialize();
+        KNNQuery<NumberVector> knnq = tree.getKNNQuery(dq);
+        int i = 0;
+        for(DBIDIter it = rel.iterDBIDs(); it.valid() && i < 200; it.advance(), i++) {
+          KNNList exp = scan.getKNNForDBID(it, 10), res = knnq.getKNNForDBID(it, 10);
+          // Ties may differ due to rounding, but the distances must agree.
+          assertEquals("kNN distance does not match.", exp.getKNNDistance(), res.getKNNDistance(), 1e-15);
+          for(DoubleDBIDListIter a = exp.iter(), b = res.iter(); a.valid() && b.valid(); a.advance(), b.advance()) {
+            assertEquals("Distances do not match.", a.doubleValue(), b.doubleValue(), 1e-15);
+          }
+        }
+      }
+    }
+    finally {
+      core.setParallelism(processors);
+    }
+  }
+}
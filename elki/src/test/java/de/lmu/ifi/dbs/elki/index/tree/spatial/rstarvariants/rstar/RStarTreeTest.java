@@ -23,11 +23,28 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.PackedEuclideanRStarTreeKNNQuery;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.PackedEuclideanRStarTreeRangeQuery;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk.AdaptiveSortTileRecursiveBulkSplit;
@@ -47,6 +64,7 @@ import de.lmu.ifi.dbs.elki.math.spacefillingcurves.HilbertSpatialSorter;
 import de.lmu.ifi.dbs.elki.math.spacefillingcurves.PeanoSpatialSorter;
 import de.lmu.ifi.dbs.elki.math.spacefillingcurves.ZCurveSpatialSorter;
 import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -94,6 +112,70 @@ public class RStarTreeTest extends AbstractIndexStructureTest {
     testExactCosine(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
   }
 
+  /**
+   * Test concurrent queries on a {@link RStarTree}.
+   */
+  @Test
+  public void testRStarTreeConcurrent() throws Exception {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testConcurrentEuclidean(spatparams);
+  }
+
+  /**
+   * Test queries on a packed snapshot of a {@link RStarTree}.
+   */
+  @Test
+  public void testRStarTreePacked() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    spatparams.addFlag(RStarTreeFactory.Parameterizer.PACKED_ID);
+    testExactEuclidean(spatparams, PackedEuclideanRStarTreeKNNQuery.class, PackedEuclideanRStarTreeRangeQuery.class);
+    //
+    spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    spatparams.addParameter(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, SortTileRecursiveBulkSplit.class);
+    spatparams.addFlag(RStarTreeFactory.Parameterizer.PACKED_ID);
+    testExactEuclidean(spatparams, PackedEuclideanRStarTreeKNNQuery.class, PackedEuclideanRStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Test that queries on a packed snapshot follow modifications of the tree.
+   */
+  @Test
+  public void testRStarTreePackedModification() {
+    Database db = AbstractSimpleAlgorithmTest.makeSimpleDatabase(AbstractSimpleAlgorithmTest.UNITTEST + "hierarchical-3d2d1d.csv", 600, new ListParameterization(), null);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    spatparams.addFlag(RStarTreeFactory.Parameterizer.PACKED_ID);
+    RStarTreeFactory<DoubleVector> factory = ClassGenericsUtil.parameterizeOrAbort(RStarTreeFactory.class, spatparams);
+    RStarTreeIndex<DoubleVector> index = factory.instantiate(rel);
+    index.initialize();
+
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = index.getKNNQuery(dq);
+    RangeQuery<DoubleVector> rq = index.getRangeQuery(dq);
+    assertTrue(knnq instanceof PackedEuclideanRStarTreeKNNQuery);
+    assertTrue(rq instanceof PackedEuclideanRStarTreeRangeQuery);
+
+    DBIDRef id = rel.iterDBIDs();
+    DoubleVector v = rel.get(id);
+    assertTrue("Object not found.", DBIDUtil.equal(id, knnq.getKNNForObject(v, 1).iter()));
+    assertEquals("Object not found.", 1, rq.getRangeForObject(v, 0.).size());
+    // Queries obtained before the modification must see the change.
+    assertTrue("Object not deleted.", index.delete(id));
+    assertFalse("Deleted object found.", DBIDUtil.equal(id, knnq.getKNNForObject(v, 1).iter()));
+    assertEquals("Deleted object found.", 0, rq.getRangeForObject(v, 0.).size());
+    assertEquals("Wrong number of neighbors.", 599, knnq.getKNNForObject(v, 600).size());
+    index.insert(id);
+    assertTrue("Object not reinserted.", DBIDUtil.equal(id, knnq.getKNNForObject(v, 1).iter()));
+    assertEquals("Object not reinserted.", 1, rq.getRangeForObject(v, 0.).size());
+  }
+
   /**
    * Test {@link RStarTree} using {@link RTreeLinearSplit}
    */
@@ -322,6 +404,19 @@ public class RStarTreeTest extends AbstractIndexStructureTest {
     testExactCosine(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
   }
 
+  /**
+   * Test {@link RStarTree} bulk loaded using {@link SortTileRecursiveBulkSplit}
+   * with small pages, so that many nodes are built.
+   */
+  @Test
+  public void testSortTileRecursiveBulkSplitSmallPages() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 200);
+    spatparams.addParameter(RStarTreeFactory.Parameterizer.BULK_SPLIT_ID, SortTileRecursiveBulkSplit.class);
+    testExactEuclidean(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
   /**
    * Test {@link RStarTree} bulk loaded using
    * {@link MaxExtensionSortTileRecursiveBulkSplit}
@@ -0,0 +1,83 @@
+package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.strategies.bulk;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+
+/**
+ * Unit test for the sort-tile-recursive bulk split.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class SortTileRecursiveBulkSplitTest {
+  /**
+   * Test partitioning a data set large enough for parallel partitioning.
+   */
+  @Test
+  public void testLargePartition() {
+    final int size = 100000, maxEntries = 20, dim = 3;
+    Random rnd = new Random(0L);
+    List<DoubleVector> data = new ArrayList<>(size);
+    for(int i = 0; i < size; i++) {
+      double[] v = new double[dim];
+      for(int d = 0; d < dim; d++) {
+        v[d] = rnd.nextDouble();
+      }
+      data.add(new DoubleVector(v));
+    }
+    List<List<DoubleVector>> partitions = SortTileRecursiveBulkSplit.STATIC.partition(data, maxEntries >> 1, maxEntries);
+    // 5000 pages: 18 slabs, each cut into 17 x 17 pages.
+    assertEquals("Wrong number of partitions.", 18 * 17 * 17, partitions.size());
+    int total = 0;
+    for(List<DoubleVector> part : partitions) {
+      assertTrue("Partition too large: " + part.size(), part.size() <= maxEntries);
+      total += part.size();
+    }
+    assertEquals("Objects lost.", size, total);
+    // The first slab must contain the smallest values in the first dimension.
+    final int slab = 17 * 17;
+    double max = Double.NEGATIVE_INFINITY, min = Double.POSITIVE_INFINITY;
+    for(int i = 0; i < slab; i++) {
+      for(DoubleVector v : partitions.get(i)) {
+        max = Math.max(max, v.doubleValue(0));
+      }
+    }
+    for(int i = slab; i < partitions.size(); i++) {
+      for(DoubleVector v : partitions.get(i)) {
+        min = Math.min(min, v.doubleValue(0));
+      }
+    }
+    assertTrue("Slabs not ordered.", max <= min);
+  }
+}
@@ -0,0 +1,215 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2016
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the CLOCK page cache, and the disk-backed page files.
+ *
+ * @author Erich Schubert
+ * @since 0.7.2
+ */
+public class ClockCacheTest {
+  /**
+   * Page size used in the tests.
+   */
+  private static final int PAGESIZE = 256;
+
+  /**
+   * Test that evicted pages are written back to the underlying file.
+   */
+  @Test
+  public void testWriteBack() {
+    MemoryPageFile<TestPage> inner = new MemoryPageFile<>(PAGESIZE);
+    ClockCache<TestPage> cache = new ClockCache<>(3 * PAGESIZE, inner);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    TestPage[] pages = new TestPage[10];
+    for(int i = 0; i < pages.length; i++) {
+      pages[i] = new TestPage(i * 3);
+      assertEquals("Page ids not assigned sequentially.", i, cache.writePage(pages[i]));
+    }
+    // Only three pages fit into the cache, all others must have been evicted.
+    for(int i = 0; i < pages.length - 3; i++) {
+      TestPage p = inner.readPage(i);
+      assertSame("Evicted page not written back.", pages[i], p);
+      assertFalse("Written page still dirty.", p.isDirty());
+    }
+    for(int i = 0; i < pages.length; i++) {
+      assertEquals("Wrong page read.", i * 3, cache.readPage(i).value);
+    }
+    cache.flush();
+    for(int i = 0; i < pages.length; i++) {
+      assertSame("Page not written back.", pages[i], inner.readPage(i));
+    }
+  }
+
+  /**
+   * Test that referenced pages get a second chance.
+   */
+  @Test
+  public void testSecondChance() {
+    CountingPageFile inner = new CountingPageFile(PAGESIZE);
+    for(int i = 0; i < 5; i++) {
+      inner.writePage(new TestPage(i));
+    }
+    ClockCache<TestPage> cache = new ClockCache<>(3 * PAGESIZE, inner);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    cache.readPage(0);
+    cache.readPage(1);
+    cache.readPage(2);
+    // Clears all reference bits, evicts 0.
+    cache.readPage(3);
+    assertEquals("Unexpected number of reads.", 4, inner.reads);
+    // Re-reference 1, which now is the oldest page:
+    cache.readPage(1);
+    assertEquals("Page 1 was not cached.", 4, inner.reads);
+    // Page 1 gets a second chance, so 2 is evicted (FIFO would evict 1).
+    cache.readPage(4);
+    assertEquals("Unexpected number of reads.", 5, inner.reads);
+    cache.readPage(1);
+    assertEquals("Page 1 was evicted.", 5, inner.reads);
+    cache.readPage(2);
+    assertEquals("Page 2 was not evicted.", 6, inner.reads);
+  }
+
+  /**
+   * Test that an on-disk page file can be closed and reopened.
+   *
+   * @throws IOException on errors
+   */
+  @Test
+  public void testOnDiskArrayReopen() throws IOException {
+    File file = File.createTempFile("ELKIUnitTest", null);
+    file.delete();
+    file.deleteOnExit();
+
+    OnDiskArrayPageFile<TestPage> pf = new OnDiskArrayPageFile<>(PAGESIZE, file.getPath());
+    ClockCache<TestPage> cache = new ClockCache<>(2 * PAGESIZE, pf);
+    assertFalse("New file reported as existing.", cache.initialize(new DefaultPageHeader(PAGESIZE)));
+    for(int i = 0; i < 7; i++) {
+      cache.writePage(new TestPage(i * 7));
+    }
+    cache.deletePage(5);
+    cache.close();
+
+    pf = new OnDiskArrayPageFile<>(PAGESIZE, file.getPath());
+    assertEquals("Existing file not detected.", true, pf.initialize(new DefaultPageHeader(PAGESIZE)));
+    assertEquals("Next page id not restored.", 7, pf.getNextPageID());
+    for(int i = 0; i < 7; i++) {
+      if(i == 5) {
+        continue;
+      }
+      TestPage p = pf.readPage(i);
+      assertNotNull("Page not restored.", p);
+      assertEquals("Page contents not restored.", i * 7, p.value);
+    }
+    // The deleted page must be reused.
+    assertEquals("Empty page not reused.", 5, pf.setPageID(new TestPage(0)));
+    pf.close();
+  }
+
+  /**
+   * Memory page file counting the page reads.
+   *
+   * @author Erich Schubert
+   */
+  private static class CountingPageFile extends MemoryPageFile<TestPage> {
+    /**
+     * Number of reads.
+     */
+    int reads = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param pageSize Page size
+     */
+    CountingPageFile(int pageSize) {
+      super(pageSize);
+    }
+
+    @Override
+    public TestPage readPage(int pageID) {
+      ++reads;
+      return super.readPage(pageID);
+    }
+  }
+
+  /**
+   * Simple page class for testing.
+   *
+   * @author Erich Schubert
+   */
+  public static class TestPage extends AbstractExternalizablePage {
+    /**
+     * Serial version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Page payload.
+     */
+    int value;
+
+    /**
+     * Empty constructor for serialization.
+     */
+    public TestPage() {
+      super();
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param value Page payload
+     */
+    public TestPage(int value) {
+      super();
+      this.value = value;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+      super.writeExternal(out);
+      out.writeInt(value);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+      super.readExternal(in);
+      value = in.readInt();
+    }
+  }
+}